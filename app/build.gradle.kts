@@ -42,6 +42,11 @@ android {
         }
     }
 
+    testOptions {
+        // Lets plain JVM tests run code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+    }
+
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -95,6 +100,7 @@ dependencies {
     // Add these dependencies to your existing build.gradle
     testImplementation ("junit:junit:4.13.2")
     testImplementation ("org.mockito:mockito-core:4.6.1")
+    testImplementation ("com.squareup.okhttp3:mockwebserver:4.11.0")
     androidTestImplementation ("androidx.test.ext:junit:1.1.5")
     androidTestImplementation ("androidx.test.espresso:espresso-core:3.5.1")
 }
\ No newline at end of file
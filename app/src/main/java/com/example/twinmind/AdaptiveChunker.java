@@ -0,0 +1,154 @@
+package com.example.twinmind;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Decides where to cut the captured stream into transcription chunks.
+ *
+ * Runs on the capture thread after the VAD. A chunk is cut at the first pause of at least
+ * {@code pauseMs} once it is {@code minChunkMs} long, or unconditionally at {@code maxChunkMs}
+ * so a monologue never exceeds the recognizer's per-request limit. Cut positions are handed to
+ * the chunk consumer through a small single-producer/single-consumer queue.
+ */
+public class AdaptiveChunker {
+
+    private static final int QUEUE_CAPACITY = 64; // power of two
+
+    public enum CutReason {
+        PAUSE, MAX_DURATION, SILENCE, FLUSH
+    }
+
+    public static class Config {
+        public int sampleRate = 16000;
+        public int minChunkMs = 2000;
+        // Google's synchronous recognize endpoint accepts at most 60s of audio
+        public int maxChunkMs = 30000;
+        // Measured after the VAD hangover, so the silence actually heard is longer
+        public int pauseMs = 400;
+    }
+
+    public static class Cut {
+        public final long endSample;
+        public final CutReason reason;
+        // System.nanoTime() when the capture thread published the cut
+        public final long publishedNanos;
+
+        Cut(long endSample, CutReason reason, long publishedNanos) {
+            this.endSample = endSample;
+            this.reason = reason;
+            this.publishedNanos = publishedNanos;
+        }
+    }
+
+    private final Config config;
+    private final long minSamples;
+    private final long maxSamples;
+    private final long pauseSamples;
+
+    // Capture-thread state
+    private long chunkStartSample;
+
+    // Consumer flushes (pause/stop) move the chunk start forward
+    private volatile long flushedSample;
+
+    private final AtomicLongArray cutPositions = new AtomicLongArray(QUEUE_CAPACITY);
+    private final AtomicIntegerArray cutReasons = new AtomicIntegerArray(QUEUE_CAPACITY);
+    private final AtomicLongArray cutNanos = new AtomicLongArray(QUEUE_CAPACITY);
+    private volatile long cutsWritten;
+    private volatile long cutsRead;
+    private final Semaphore cutsAvailable = new Semaphore(0);
+
+    public AdaptiveChunker() {
+        this(new Config());
+    }
+
+    public AdaptiveChunker(Config config) {
+        this.config = config;
+        this.minSamples = (long) config.sampleRate * config.minChunkMs / 1000;
+        this.maxSamples = (long) config.sampleRate * config.maxChunkMs / 1000;
+        this.pauseSamples = (long) config.sampleRate * config.pauseMs / 1000;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public void reset(long startSample) {
+        chunkStartSample = startSample;
+        flushedSample = startSample;
+        cutsRead = cutsWritten;
+        cutsAvailable.drainPermits();
+    }
+
+    // Capture thread
+
+    public void onAudio(long endSample, VoiceActivityDetector vad) {
+        long flushed = flushedSample;
+        if (flushed > chunkStartSample) {
+            chunkStartSample = flushed;
+        }
+
+        long duration = endSample - chunkStartSample;
+        if (duration < minSamples) {
+            return;
+        }
+
+        boolean speaking = vad.isSpeaking();
+        boolean hadSpeech = vad.getLastSpeechEnd() > chunkStartSample;
+
+        if (duration >= maxSamples) {
+            publishCut(endSample, hadSpeech ? CutReason.MAX_DURATION : CutReason.SILENCE);
+        } else if (hadSpeech && !speaking && endSample - vad.getLastSpeechEnd() >= pauseSamples) {
+            publishCut(endSample, CutReason.PAUSE);
+        } else if (!hadSpeech && !speaking) {
+            // Release dead air early, but leave the padding a following onset will want
+            publishCut(endSample - vad.getPaddingSamples(), CutReason.SILENCE);
+        }
+    }
+
+    private void publishCut(long endSample, CutReason reason) {
+        chunkStartSample = endSample;
+
+        long index = cutsWritten;
+        if (index - cutsRead >= QUEUE_CAPACITY) {
+            // Consumer is far behind; the next cut it reads will simply cover more audio
+            return;
+        }
+        int slot = (int) (index & (QUEUE_CAPACITY - 1));
+        cutPositions.lazySet(slot, endSample);
+        cutReasons.lazySet(slot, reason.ordinal());
+        cutNanos.lazySet(slot, System.nanoTime());
+        cutsWritten = index + 1;
+        cutsAvailable.release();
+    }
+
+    // Consumer thread
+
+    public Cut awaitCut(long timeoutMs) throws InterruptedException {
+        if (cutsRead != cutsWritten) {
+            cutsAvailable.tryAcquire();
+        } else if (!cutsAvailable.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+
+        long index = cutsRead;
+        if (index == cutsWritten) {
+            return null;
+        }
+        int slot = (int) (index & (QUEUE_CAPACITY - 1));
+        Cut cut = new Cut(cutPositions.get(slot), CutReason.values()[cutReasons.get(slot)], cutNanos.get(slot));
+        cutsRead = index + 1;
+        return cut;
+    }
+
+    public boolean hasPendingCut() {
+        return cutsRead != cutsWritten;
+    }
+
+    public void markFlushed(long endSample) {
+        flushedSample = endSample;
+    }
+}
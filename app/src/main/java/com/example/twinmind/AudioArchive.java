@@ -0,0 +1,335 @@
+package com.example.twinmind;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Per-session archive of the encoded audio that was sent for transcription, kept for replay and
+ * later re-recognition.
+ *
+ * Each session is two files under {@code <archiveDir>/<sessionId>/}: {@code audio.dat}, the
+ * chunks' encoded payloads (standalone FLAC streams) back to back, and {@code index.dat}, one
+ * fixed-size record per chunk. Records are appended in capture order, so sequence, sample offset
+ * and timestamp all increase with the record number and any of them can be binary searched
+ * straight from the file. Payloads are written before their record, so a crash can only leave a
+ * tail of audio with no record, which readers ignore.
+ */
+public class AudioArchive {
+
+    private static final int MAGIC = 0x544D4158; // "TMAX"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENCODING_OFFSET = 12;
+    private static final int ENCODING_LENGTH = HEADER_SIZE - ENCODING_OFFSET;
+    // sequence, sampleOffset, timestamp, byteOffset (longs), sampleCount, byteLength (ints)
+    static final int RECORD_SIZE = 40;
+
+    private static final String AUDIO_FILE = "audio.dat";
+    private static final String INDEX_FILE = "index.dat";
+
+    private final File archiveDir;
+
+    public AudioArchive(File archiveDir) {
+        this.archiveDir = archiveDir;
+        if (!archiveDir.exists()) {
+            archiveDir.mkdirs();
+        }
+    }
+
+    public Writer openWriter(String sessionId, String encoding, int sampleRate) throws IOException {
+        File sessionDir = new File(archiveDir, sessionId);
+        if (!sessionDir.exists() && !sessionDir.mkdirs()) {
+            throw new IOException("Cannot create archive directory " + sessionDir);
+        }
+
+        FileChannel audio = new RandomAccessFile(new File(sessionDir, AUDIO_FILE), "rw").getChannel();
+        FileChannel index = null;
+        try {
+            index = new RandomAccessFile(new File(sessionDir, INDEX_FILE), "rw").getChannel();
+            audio.truncate(0);
+            index.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort((short) RECORD_SIZE);
+            header.putInt(sampleRate);
+            byte[] encodingBytes = encoding.getBytes(StandardCharsets.US_ASCII);
+            header.put(encodingBytes, 0, Math.min(encodingBytes.length, ENCODING_LENGTH));
+            header.position(HEADER_SIZE);
+            header.flip();
+            writeFully(index, header);
+            return new Writer(audio, index);
+        } catch (IOException e) {
+            audio.close();
+            if (index != null) {
+                index.close();
+            }
+            throw e;
+        }
+    }
+
+    // Returns null if the session has no readable archive
+    public Reader openReader(String sessionId) throws IOException {
+        File sessionDir = new File(archiveDir, sessionId);
+        File audioFile = new File(sessionDir, AUDIO_FILE);
+        File indexFile = new File(sessionDir, INDEX_FILE);
+        if (!audioFile.exists() || !indexFile.exists() || indexFile.length() < HEADER_SIZE) {
+            return null;
+        }
+
+        FileChannel index = new RandomAccessFile(indexFile, "r").getChannel();
+        FileChannel audio = null;
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(index, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getShort() != VERSION || header.getShort() != RECORD_SIZE) {
+                index.close();
+                return null;
+            }
+            int sampleRate = header.getInt();
+            byte[] encodingBytes = new byte[ENCODING_LENGTH];
+            header.get(encodingBytes);
+            int encodingLength = 0;
+            while (encodingLength < ENCODING_LENGTH && encodingBytes[encodingLength] != 0) {
+                encodingLength++;
+            }
+            String encoding = new String(encodingBytes, 0, encodingLength, StandardCharsets.US_ASCII);
+
+            audio = new RandomAccessFile(audioFile, "r").getChannel();
+            int count = (int) ((index.size() - HEADER_SIZE) / RECORD_SIZE);
+            Reader reader = new Reader(index, audio, encoding, sampleRate, count);
+            // Drop records whose payload never fully reached the audio file
+            while (reader.count > 0) {
+                Entry last = reader.get(reader.count - 1);
+                if (last.byteOffset + last.byteLength <= audio.size()) {
+                    break;
+                }
+                reader.count--;
+            }
+            return reader;
+        } catch (IOException e) {
+            index.close();
+            if (audio != null) {
+                audio.close();
+            }
+            throw e;
+        }
+    }
+
+    public long getSessionBytes(String sessionId) {
+        File sessionDir = new File(archiveDir, sessionId);
+        return new File(sessionDir, AUDIO_FILE).length() + new File(sessionDir, INDEX_FILE).length();
+    }
+
+    public void deleteSession(String sessionId) {
+        File sessionDir = new File(archiveDir, sessionId);
+        File[] files = sessionDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        sessionDir.delete();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += read;
+        }
+    }
+
+    public static class Entry {
+        public final long sequence;
+        public final long sampleOffset;
+        public final long timestamp;
+        public final long byteOffset;
+        public final int sampleCount;
+        public final int byteLength;
+
+        Entry(long sequence, long sampleOffset, long timestamp, long byteOffset, int sampleCount, int byteLength) {
+            this.sequence = sequence;
+            this.sampleOffset = sampleOffset;
+            this.timestamp = timestamp;
+            this.byteOffset = byteOffset;
+            this.sampleCount = sampleCount;
+            this.byteLength = byteLength;
+        }
+
+        public long getEndSampleOffset() {
+            return sampleOffset + sampleCount;
+        }
+    }
+
+    /**
+     * Appends chunks as they are encoded. Memory use is one record buffer regardless of session
+     * length; payloads go straight from the chunk to the file.
+     */
+    public static class Writer implements Closeable {
+
+        private final FileChannel audio;
+        private final FileChannel index;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        private long audioBytes;
+        private int count;
+
+        Writer(FileChannel audio, FileChannel index) {
+            this.audio = audio;
+            this.index = index;
+        }
+
+        public synchronized void append(AudioChunk chunk) throws IOException {
+            byte[] payload = chunk.encodedAudio;
+            writeFully(audio, ByteBuffer.wrap(payload));
+
+            record.clear();
+            record.putLong(chunk.sequence);
+            record.putLong(chunk.sampleOffset);
+            record.putLong(chunk.timestamp);
+            record.putLong(audioBytes);
+            record.putInt(chunk.audioData.length / 2);
+            record.putInt(payload.length);
+            record.flip();
+            writeFully(index, record);
+
+            audioBytes += payload.length;
+            count++;
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public synchronized long getAudioBytes() {
+            return audioBytes;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                audio.force(false);
+                index.force(false);
+            } finally {
+                audio.close();
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * Random access over a session's archive. Lookups binary search the index file, reading one
+     * record per step, so seeking costs O(log n) reads whatever the session length.
+     */
+    public static class Reader implements Closeable {
+
+        // Byte offsets of the searchable fields within a record
+        private static final int FIELD_SEQUENCE = 0;
+        private static final int FIELD_SAMPLE_OFFSET = 8;
+        private static final int FIELD_TIMESTAMP = 16;
+
+        private final FileChannel index;
+        private final FileChannel audio;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        public final String encoding;
+        public final int sampleRate;
+        private int count;
+
+        Reader(FileChannel index, FileChannel audio, String encoding, int sampleRate, int count) {
+            this.index = index;
+            this.audio = audio;
+            this.encoding = encoding;
+            this.sampleRate = sampleRate;
+            this.count = count;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public synchronized Entry get(int position) throws IOException {
+            if (position < 0 || position >= count) {
+                throw new IndexOutOfBoundsException("Record " + position + " of " + count);
+            }
+            record.clear();
+            readFully(index, record, HEADER_SIZE + (long) position * RECORD_SIZE);
+            record.flip();
+            return new Entry(record.getLong(), record.getLong(), record.getLong(), record.getLong(),
+                    record.getInt(), record.getInt());
+        }
+
+        // Record for the chunk with this sequence number, or -1
+        public int findBySequence(long sequence) throws IOException {
+            int position = floor(FIELD_SEQUENCE, sequence);
+            return position >= 0 && readField(position, FIELD_SEQUENCE) == sequence ? position : -1;
+        }
+
+        // Record holding this session sample, or -1 if it falls in dropped silence
+        public int findBySample(long sample) throws IOException {
+            int position = floor(FIELD_SAMPLE_OFFSET, sample);
+            if (position < 0) {
+                return -1;
+            }
+            Entry entry = get(position);
+            return sample < entry.getEndSampleOffset() ? position : -1;
+        }
+
+        // Latest chunk created at or before this time, matching transcriptions.timestamp
+        public int findByTimestamp(long timestamp) throws IOException {
+            return floor(FIELD_TIMESTAMP, timestamp);
+        }
+
+        public byte[] readAudio(Entry entry) throws IOException {
+            ByteBuffer payload = ByteBuffer.allocate(entry.byteLength);
+            readFully(audio, payload, entry.byteOffset);
+            return payload.array();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                index.close();
+            } finally {
+                audio.close();
+            }
+        }
+
+        // Last record whose field is <= key, or -1
+        private int floor(int field, long key) throws IOException {
+            int low = 0;
+            int high = count - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (readField(mid, field) <= key) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+
+        private synchronized long readField(int position, int field) throws IOException {
+            record.clear().limit(8);
+            readFully(index, record, HEADER_SIZE + (long) position * RECORD_SIZE + field);
+            return record.getLong(0);
+        }
+    }
+}
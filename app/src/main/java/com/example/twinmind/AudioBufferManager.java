@@ -3,98 +3,372 @@ package com.example.twinmind;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.concurrent.locks.ReentrantLock;
+import java.nio.ByteBuffer;
 
 public class AudioBufferManager {
 
     private static final String TAG = "AudioBufferManager";
-    private static final int MAX_BUFFER_SIZE = 1024 * 1024; // 1MB max buffer
+    // 2MB holds ~65s of 16kHz mono PCM, enough headroom over a 30s transcription interval
+    private static final int RING_CAPACITY = 2 * 1024 * 1024;
+    // Under getFilesDir(); SessionRetranscriber reads the same archive after the session
+    static final String ARCHIVE_DIR = "audio_archive";
 
     private final Context context;
-    private final ReentrantLock bufferLock;
-    private ByteArrayOutputStream audioBuffer;
-    private File tempAudioDir;
+    private final PcmRingBuffer ringBuffer;
+    private final AudioSpool audioSpool;
+    private final AudioArchive audioArchive;
+    private AudioArchive.Writer archiveWriter;
+    private VoiceActivityDetector voiceActivityDetector;
+    private AdaptiveChunker chunker;
+    private AudioEncoder encoder;
+    private final ChunkingMetrics chunkingMetrics;
+    private final AudioLevelMeter levelMeter;
+
+    // Chunk bookkeeping, touched only by the thread that drains chunks
+    private String sessionId;
+    private long nextSequence = 0;
+    private long nextSampleOffset = 0;
+    private long silentChunksDropped = 0;
+    private long silentBytesTrimmed = 0;
+    // Sample range of the open chunk already fed to the encoder, -1 until speech is found
+    private long encodeStartSample = -1;
+    private long encodedToSample = -1;
+    // Start of audio not yet assigned to a chunk. The ring keeps up to overlapSamples before it
+    // so the next chunk can repeat the previous chunk's tail.
+    private long chunkStartPosition = 0;
+    private int overlapSamples = 0;
+    private boolean previousChunkUploaded = false;
+
+    // Capture-thread only
+    private long reportedDroppedBytes = 0;
 
     public AudioBufferManager(Context context) {
         this.context = context;
-        this.bufferLock = new ReentrantLock();
-        this.audioBuffer = new ByteArrayOutputStream();
-        initTempDirectory();
+        this.ringBuffer = new PcmRingBuffer(RING_CAPACITY);
+        this.audioSpool = new AudioSpool(new File(context.getCacheDir(), "audio_spool"));
+        // Kept in files rather than cache: the archive is the user's recording, not scratch data
+        this.audioArchive = new AudioArchive(new File(context.getFilesDir(), ARCHIVE_DIR));
+        this.voiceActivityDetector = new VoiceActivityDetector();
+        this.chunker = new AdaptiveChunker();
+        this.encoder = new FlacEncoder(AudioSpool.SAMPLE_RATE);
+        this.chunkingMetrics = new ChunkingMetrics();
+        this.levelMeter = new AudioLevelMeter(AudioSpool.SAMPLE_RATE);
+    }
+
+    public synchronized void startSession(String sessionId) {
+        this.sessionId = sessionId;
+        this.nextSequence = 0;
+        this.nextSampleOffset = 0;
+        ringBuffer.clear();
+        this.chunkStartPosition = ringBuffer.getWritePosition();
+        this.previousChunkUploaded = false;
+        voiceActivityDetector.reset(ringBuffer.getWritePosition() / 2);
+        chunker.reset(ringBuffer.getWritePosition() / 2);
+        resetEncoder();
+        levelMeter.reset();
+        chunkingMetrics.markSessionStart();
+        LatencyTimeline.getInstance().reset();
+        openArchive(sessionId);
+    }
+
+    public synchronized void endSession() {
+        closeArchive();
     }
 
-    private void initTempDirectory() {
-        tempAudioDir = new File(context.getCacheDir(), "temp_audio");
-        if (!tempAudioDir.exists()) {
-            tempAudioDir.mkdirs();
+    private void openArchive(String sessionId) {
+        closeArchive();
+        if (sessionId == null) {
+            return;
+        }
+        try {
+            archiveWriter = audioArchive.openWriter(sessionId, encoder.getSpeechEncoding(), AudioSpool.SAMPLE_RATE);
+        } catch (IOException e) {
+            // Transcription does not depend on the archive, so recording carries on without it
+            Log.e(TAG, "Error opening audio archive for " + sessionId, e);
         }
     }
 
-    public void addAudioData(byte[] data, int length) {
-        bufferLock.lock();
+    private void closeArchive() {
+        if (archiveWriter == null) {
+            return;
+        }
         try {
-            if (audioBuffer.size() + length > MAX_BUFFER_SIZE) {
-                Log.w(TAG, "Audio buffer reaching max size, saving to temp file");
-                saveBufferToTempFile();
-                audioBuffer.reset();
+            Log.d(TAG, "Archived " + archiveWriter.getCount() + " chunks, "
+                    + archiveWriter.getAudioBytes() + " bytes");
+            archiveWriter.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing audio archive", e);
+        }
+        archiveWriter = null;
+    }
+
+    private void archiveChunk(AudioChunk chunk) {
+        if (archiveWriter == null) {
+            return;
+        }
+        try {
+            archiveWriter.append(chunk);
+        } catch (IOException e) {
+            Log.e(TAG, "Error archiving audio chunk " + chunk.sequence + ", archive stopped", e);
+            closeArchive();
+        }
+    }
+
+    // Must be called before capture starts
+    public synchronized void setVadConfig(VoiceActivityDetector.Config config) {
+        voiceActivityDetector = new VoiceActivityDetector(config);
+        voiceActivityDetector.reset(ringBuffer.getWritePosition() / 2);
+    }
+
+    // Must be called before capture starts
+    public synchronized void setChunkerConfig(AdaptiveChunker.Config config) {
+        chunker = new AdaptiveChunker(config);
+        chunker.reset(ringBuffer.getWritePosition() / 2);
+    }
+
+    // Must be called before capture starts
+    public synchronized void setEncoder(AudioEncoder encoder) {
+        this.encoder = encoder;
+        resetEncoder();
+    }
+
+    // Must be called before capture starts
+    public synchronized void setChunkOverlapMs(int overlapMs) {
+        this.overlapSamples = AudioSpool.SAMPLE_RATE / 1000 * Math.max(0, overlapMs);
+    }
+
+    public void addAudioData(byte[] data, int length) {
+        int written = ringBuffer.write(data, 0, length);
+        // Only classify what the ring kept, so VAD positions stay aligned with ring positions
+        voiceActivityDetector.process(data, 0, written);
+        levelMeter.process(data, 0, length);
+        onAudioWritten(written, length);
+    }
+
+    // Consumes the buffer's remaining bytes. Allocation-free, for the capture thread.
+    public void addAudioData(ByteBuffer pcm) {
+        int start = pcm.position();
+        int length = pcm.remaining();
+        int written = ringBuffer.write(pcm);
+        voiceActivityDetector.process(pcm, start, written);
+        // The meter shows what the mic hears, including anything the ring had to drop
+        levelMeter.process(pcm, start, length);
+        onAudioWritten(written, length);
+    }
+
+    private void onAudioWritten(int written, int length) {
+        chunker.onAudio(ringBuffer.getWritePosition() / 2, voiceActivityDetector);
+
+        if (written < length) {
+            long dropped = ringBuffer.getDroppedBytes();
+            // Log once per overrun burst rather than on every read
+            if (reportedDroppedBytes == 0 || dropped - reportedDroppedBytes >= RING_CAPACITY / 4) {
+                Log.w(TAG, "Audio buffer overrun, dropped " + dropped + " bytes so far");
+                reportedDroppedBytes = dropped;
             }
+        }
+    }
 
-            audioBuffer.write(data, 0, length);
-        } finally {
-            bufferLock.unlock();
+    public AudioChunk awaitChunk(long timeoutMs) throws InterruptedException {
+        AdaptiveChunker.Cut cut = chunker.awaitCut(timeoutMs);
+        if (cut == null) {
+            // Use the idle wake-up to encode what has been captured so far
+            encodePending();
+            return null;
         }
+        chunkingMetrics.recordCut(cut.reason);
+        return drainChunk(cut.endSample * 2, cut.publishedNanos, System.nanoTime());
     }
 
-    public byte[] getAndClearBuffer() {
-        bufferLock.lock();
-        try {
-            if (audioBuffer.size() == 0) {
-                return null;
+    public synchronized AudioChunk drainChunk() {
+        long end = ringBuffer.getWritePosition();
+        chunker.markFlushed(end / 2);
+        chunkingMetrics.recordCut(AdaptiveChunker.CutReason.FLUSH);
+        long now = System.nanoTime();
+        return drainChunk(end, now, now);
+    }
+
+    private synchronized void encodePending() {
+        long writeSample = ringBuffer.getWritePosition() / 2;
+        if (chunker.hasPendingCut()) {
+            return;
+        }
+        // A cut published from here on lands at most one padding before the write position,
+        // so stopping there never encodes audio that belongs to the next chunk
+        long encodeTo = writeSample - voiceActivityDetector.getPaddingSamples();
+        long chunkStartSample = chunkStartPosition / 2;
+
+        if (encodedToSample < 0) {
+            long speechStart = voiceActivityDetector.getSpeechStart(chunkStartSample, encodeTo);
+            if (speechStart < 0) {
+                return;
             }
+            encodeStartSample = withOverlap(
+                    Math.max(chunkStartSample, speechStart - voiceActivityDetector.getPaddingSamples()),
+                    chunkStartSample);
+            encodedToSample = encodeStartSample;
+        }
+        if (encodeTo > encodedToSample) {
+            encodeRange(encodedToSample, encodeTo);
+            encodedToSample = encodeTo;
+        }
+    }
 
-            byte[] data = audioBuffer.toByteArray();
-            audioBuffer.reset();
-            return data;
-        } finally {
-            bufferLock.unlock();
+    // Speech that starts within the overlap of the boundary may have lost its first word to the
+    // previous cut, so back the chunk up over the retained tail of the previous chunk
+    private long withOverlap(long startSample, long chunkStartSample) {
+        if (overlapSamples == 0 || !previousChunkUploaded || startSample - chunkStartSample >= overlapSamples) {
+            return startSample;
         }
+        return Math.max(ringBuffer.getReadPosition() / 2, chunkStartSample - overlapSamples);
     }
 
-    private void saveBufferToTempFile() {
-        try {
-            File tempFile = new File(tempAudioDir, "audio_chunk_" + System.currentTimeMillis() + ".raw");
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            audioBuffer.writeTo(fos);
-            fos.close();
+    private void encodeRange(long fromSample, long toSample) {
+        PcmRingBuffer.PcmSlice slice = ringBuffer.slice(fromSample * 2, (int) (toSample - fromSample) * 2);
+        encoder.encode(slice.head());
+        if (slice.tail() != null) {
+            encoder.encode(slice.tail());
+        }
+    }
 
-            Log.d(TAG, "Saved audio buffer to temp file: " + tempFile.getName());
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving buffer to temp file", e);
+    private void resetEncoder() {
+        encoder.reset();
+        encodeStartSample = -1;
+        encodedToSample = -1;
+    }
+
+    private synchronized AudioChunk drainChunk(long endPosition, long cutNanos, long dequeuedNanos) {
+        if (endPosition <= chunkStartPosition) {
+            return null;
+        }
+        PcmRingBuffer.PcmSlice pending = ringBuffer.slice(chunkStartPosition,
+                (int) (Math.min(endPosition, ringBuffer.getWritePosition()) - chunkStartPosition));
+        if (pending.isEmpty()) {
+            return null;
         }
+
+        long fromSample = pending.position() / 2;
+        long toSample = fromSample + pending.length() / 2;
+        long speechStart = voiceActivityDetector.getSpeechStart(fromSample, toSample);
+
+        if (speechStart < 0) {
+            // Nothing but silence: skip the upload, but keep the session timeline intact
+            ringBuffer.releaseTo(pending.position() + pending.length());
+            chunkStartPosition = pending.position() + pending.length();
+            previousChunkUploaded = false;
+            nextSampleOffset += pending.length() / 2;
+            silentChunksDropped++;
+            resetEncoder();
+            Log.d(TAG, "Dropped silent chunk of " + pending.length() + " bytes");
+            return null;
+        }
+
+        long speechEnd = voiceActivityDetector.getSpeechEnd(fromSample, toSample);
+        int padding = voiceActivityDetector.getPaddingSamples();
+        long startSample = Math.max(fromSample, speechStart - padding);
+        long endSample = Math.min(toSample, speechEnd + padding);
+        if (encodedToSample >= 0) {
+            // Keep the trailing silence that was already encoded rather than re-encoding
+            startSample = encodeStartSample;
+            endSample = Math.max(endSample, Math.min(toSample, encodedToSample));
+        } else {
+            startSample = withOverlap(startSample, fromSample);
+            encodedToSample = startSample;
+        }
+        PcmRingBuffer.PcmSlice slice = ringBuffer.slice(startSample * 2, (int) (endSample - startSample) * 2);
+        int overlap = (int) Math.max(0, fromSample - startSample);
+        silentBytesTrimmed += pending.length() - (slice.length() - overlap * 2);
+
+        // The chunk outlives the ring slot (transcription is async), so this is the one copy we make
+        long chunkOffset = nextSampleOffset + (startSample - fromSample);
+        AudioChunk chunk = new AudioChunk(sessionId, nextSequence++, chunkOffset, new byte[slice.length()]);
+        slice.copyTo(chunk.audioData, 0);
+        chunk.overlapSamples = overlap;
+        chunk.trace.set(LatencyTimeline.Stage.CAPTURE_END, cutNanos);
+        chunk.trace.set(LatencyTimeline.Stage.DEQUEUED, dequeuedNanos);
+        chunk.segment = spoolChunk(chunk, slice);
+
+        if (endSample > encodedToSample) {
+            encodeRange(encodedToSample, endSample);
+        }
+        chunk.encodedAudio = encoder.finish();
+        chunk.encoding = encoder.getSpeechEncoding();
+        chunk.trace.mark(LatencyTimeline.Stage.ENCODED);
+        resetEncoder();
+        archiveChunk(chunk);
+        Log.d(TAG, "Chunk " + chunk.sequence + ": " + chunk.audioData.length + " bytes PCM, "
+                + chunk.encodedAudio.length + " bytes " + chunk.encoding);
+
+        long pendingEnd = pending.position() + pending.length();
+        ringBuffer.releaseTo(pendingEnd - (long) overlapSamples * 2);
+        chunkStartPosition = pendingEnd;
+        previousChunkUploaded = true;
+        nextSampleOffset += pending.length() / 2;
+        chunkingMetrics.recordChunk(pending.length() / 2 * 1000 / AudioSpool.SAMPLE_RATE,
+                slice.length() / 2 * 1000 / AudioSpool.SAMPLE_RATE);
+        return chunk;
     }
 
-    public void clearTempFiles() {
-        if (tempAudioDir != null && tempAudioDir.exists()) {
-            File[] files = tempAudioDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (file.delete()) {
-                        Log.d(TAG, "Deleted temp file: " + file.getName());
-                    }
-                }
+    private AudioSpool.Segment spoolChunk(AudioChunk chunk, PcmRingBuffer.PcmSlice slice) {
+        if (sessionId == null) {
+            return null;
+        }
+
+        AudioSpool.Segment segment = null;
+        try {
+            segment = audioSpool.openSegment(sessionId, chunk.sequence, chunk.sampleOffset);
+            segment.append(slice);
+            segment.commit();
+            return segment;
+        } catch (IOException e) {
+            // Transcription can still go ahead from memory, it just won't survive a crash
+            Log.e(TAG, "Error spooling audio chunk " + chunk.sequence, e);
+            if (segment != null) {
+                segment.delete();
             }
+            return null;
         }
     }
 
+    public AudioArchive getAudioArchive() {
+        return audioArchive;
+    }
+
+    public AudioSpool getAudioSpool() {
+        return audioSpool;
+    }
+
+    public PcmRingBuffer.PcmSlice peekBuffer() {
+        return ringBuffer.slice(ringBuffer.available());
+    }
+
+    public void release(PcmRingBuffer.PcmSlice slice) {
+        ringBuffer.releaseTo(slice.position() + slice.length());
+    }
+
     public long getBufferSize() {
-        bufferLock.lock();
-        try {
-            return audioBuffer.size();
-        } finally {
-            bufferLock.unlock();
-        }
+        return ringBuffer.available();
+    }
+
+    public long getDroppedBytes() {
+        return ringBuffer.getDroppedBytes();
+    }
+
+    public AudioLevelMeter getLevelMeter() {
+        return levelMeter;
+    }
+
+    public ChunkingMetrics getChunkingMetrics() {
+        return chunkingMetrics;
+    }
+
+    public long getSilentChunksDropped() {
+        return silentChunksDropped;
+    }
+
+    public long getSilentBytesTrimmed() {
+        return silentBytesTrimmed;
     }
-}
\ No newline at end of file
+}
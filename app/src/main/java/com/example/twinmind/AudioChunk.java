@@ -0,0 +1,31 @@
+package com.example.twinmind;
+
+public class AudioChunk {
+    public String sessionId;
+    public long sequence;
+    public long sampleOffset;
+    public long timestamp;
+    public byte[] audioData;
+    // Upload payload produced by the encoder stage, null if the chunk still needs encoding
+    public byte[] encodedAudio;
+    public String encoding;
+    // Leading samples repeated from the end of the previous chunk
+    public int overlapSamples;
+    public AudioSpool.Segment segment;
+    public boolean recovered;
+    // Set when the chunk is a retry taken from PendingTranscriptionQueue
+    public PendingTranscription pending;
+    // Immediate retries of this chunk's request; the pending queue keeps its own attempt count
+    public RetryPolicy.Backoff backoff = new RetryPolicy.Backoff();
+    public final LatencyTimeline.Trace trace = new LatencyTimeline.Trace();
+
+    public AudioChunk() {}
+
+    public AudioChunk(String sessionId, long sequence, long sampleOffset, byte[] audioData) {
+        this.sessionId = sessionId;
+        this.sequence = sequence;
+        this.sampleOffset = sampleOffset;
+        this.audioData = audioData;
+        this.timestamp = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.twinmind;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns a chunk of 16-bit little-endian mono PCM into the payload sent to the Speech API.
+ *
+ * Audio is fed incrementally while the chunk is still being captured; {@link #finish()} returns
+ * the complete encoded chunk and leaves the encoder ready for the next one. Not thread-safe.
+ */
+public interface AudioEncoder {
+
+    // RecognitionConfig.encoding value matching the produced payload
+    String getSpeechEncoding();
+
+    int getSampleRate();
+
+    // Consumes all remaining bytes of the buffer
+    void encode(ByteBuffer pcm);
+
+    byte[] finish();
+
+    void reset();
+}
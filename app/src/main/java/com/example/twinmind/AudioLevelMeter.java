@@ -0,0 +1,118 @@
+package com.example.twinmind;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RMS and peak level per 50 ms window of 16-bit PCM, computed on the capture thread straight from
+ * the read buffer. Finished windows go into a small ring that the UI samples once per frame;
+ * the capture thread never waits on or posts to the main thread.
+ *
+ * Each window is packed into one long (RMS float bits high, peak float bits low), both linear in
+ * [0, 1] relative to full scale.
+ */
+public class AudioLevelMeter {
+
+    public static final int WINDOW_MS = 50;
+    private static final int HISTORY = 64; // power of two, ~3s of windows
+    private static final float FULL_SCALE = 32768f;
+
+    private final int windowSamples;
+
+    // Capture-thread state
+    private long sumOfSquares;
+    private int peak;
+    private int fill;
+
+    private final AtomicLongArray windows = new AtomicLongArray(HISTORY);
+    private volatile long windowCount;
+
+    public AudioLevelMeter(int sampleRate) {
+        this.windowSamples = sampleRate * WINDOW_MS / 1000;
+    }
+
+    public void reset() {
+        sumOfSquares = 0;
+        peak = 0;
+        fill = 0;
+        windowCount = 0;
+    }
+
+    // Capture thread
+
+    public void process(byte[] pcm, int offset, int length) {
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            addSample((short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8)));
+        }
+    }
+
+    // Absolute reads, so the buffer's position and byte order are left alone
+    public void process(ByteBuffer pcm, int offset, int length) {
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            addSample((short) ((pcm.get(i) & 0xff) | (pcm.get(i + 1) << 8)));
+        }
+    }
+
+    private void addSample(int sample) {
+        sumOfSquares += (long) sample * sample;
+        int magnitude = Math.abs(sample);
+        if (magnitude > peak) {
+            peak = magnitude;
+        }
+
+        if (++fill == windowSamples) {
+            float rms = (float) Math.sqrt((double) sumOfSquares / windowSamples) / FULL_SCALE;
+            float peakLevel = Math.min(1f, peak / FULL_SCALE);
+            long index = windowCount;
+            windows.lazySet((int) (index & (HISTORY - 1)), pack(rms, peakLevel));
+            windowCount = index + 1;
+
+            sumOfSquares = 0;
+            peak = 0;
+            fill = 0;
+        }
+    }
+
+    // Any thread
+
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    public int getHistorySize() {
+        return HISTORY;
+    }
+
+    // Windows older than getWindowCount() - HISTORY have been overwritten
+    public long getWindow(long index) {
+        return windows.get((int) (index & (HISTORY - 1)));
+    }
+
+    public long getLatest() {
+        long count = windowCount;
+        return count == 0 ? 0 : getWindow(count - 1);
+    }
+
+    public static float rms(long window) {
+        return Float.intBitsToFloat((int) (window >>> 32));
+    }
+
+    public static float peak(long window) {
+        return Float.intBitsToFloat((int) window);
+    }
+
+    // Maps an RMS level onto 0..1 over a -60..0 dBFS range, which tracks loudness better than linear
+    public static float toDisplayLevel(float rms) {
+        if (rms <= 0f) {
+            return 0f;
+        }
+        float db = (float) (20 * Math.log10(rms));
+        return Math.max(0f, Math.min(1f, (db + 60f) / 60f));
+    }
+
+    private static long pack(float rms, float peak) {
+        return ((long) Float.floatToRawIntBits(rms) << 32) | (Float.floatToRawIntBits(peak) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.twinmind;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only on-disk spool of captured PCM, one segment file per transcription chunk.
+ *
+ * Segments live under {@code <spoolDir>/<sessionId>/} and start with a small header holding the
+ * session id, chunk sequence and sample offset. A segment whose chunk has been transcribed is
+ * acknowledged by truncating it back to its header, so the session's recorded length survives
+ * a crash even after the audio itself is gone.
+ */
+public class AudioSpool {
+
+    public static final int SAMPLE_RATE = 16000;
+
+    private static final int MAGIC = 0x544D5350; // "TMSP"
+    private static final short VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 38;
+    private static final int SAMPLE_COUNT_OFFSET = 24;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final File spoolDir;
+
+    public AudioSpool(File spoolDir) {
+        this.spoolDir = spoolDir;
+        if (!spoolDir.exists()) {
+            spoolDir.mkdirs();
+        }
+    }
+
+    public Segment openSegment(String sessionId, long sequence, long sampleOffset) throws IOException {
+        File sessionDir = new File(spoolDir, sessionId);
+        if (!sessionDir.exists() && !sessionDir.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + sessionDir);
+        }
+
+        File file = new File(sessionDir, String.format(Locale.US, "%010d%s", sequence, SEGMENT_SUFFIX));
+        byte[] idBytes = sessionId.getBytes(StandardCharsets.UTF_8);
+        int headerLength = FIXED_HEADER_SIZE + idBytes.length;
+
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        header.putShort((short) headerLength);
+        header.putLong(sequence);
+        header.putLong(sampleOffset);
+        header.putLong(0); // sample count, filled in on commit
+        header.putInt(SAMPLE_RATE);
+        header.putShort((short) idBytes.length);
+        header.put(idBytes);
+        header.flip();
+
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        try {
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new Segment(file, sessionId, sequence, sampleOffset, 0, headerLength, 0, channel);
+    }
+
+    public List<String> listSessionIds() {
+        List<String> sessionIds = new ArrayList<>();
+        File[] dirs = spoolDir.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                sessionIds.add(dir.getName());
+            }
+        }
+        Collections.sort(sessionIds);
+        return sessionIds;
+    }
+
+    public List<Segment> listSegments(String sessionId) {
+        List<Segment> segments = new ArrayList<>();
+        File[] files = new File(spoolDir, sessionId).listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return segments;
+        }
+
+        for (File file : files) {
+            Segment segment = readSegment(file);
+            if (segment != null) {
+                segments.add(segment);
+            } else {
+                // Header never made it to disk; there is nothing to recover
+                file.delete();
+            }
+        }
+        Collections.sort(segments, (a, b) -> Long.compare(a.sequence, b.sequence));
+        return segments;
+    }
+
+    public void deleteSession(String sessionId) {
+        File sessionDir = new File(spoolDir, sessionId);
+        File[] files = sessionDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        sessionDir.delete();
+    }
+
+    private static Segment readSegment(File file) {
+        long fileLength = file.length();
+        if (fileLength < FIXED_HEADER_SIZE) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                return null;
+            }
+            int headerLength = in.readShort();
+            long sequence = in.readLong();
+            long sampleOffset = in.readLong();
+            long sampleCount = in.readLong();
+            in.readInt(); // sample rate, fixed at SAMPLE_RATE for version 1
+            byte[] idBytes = new byte[in.readShort()];
+            in.readFully(idBytes);
+
+            if (fileLength < headerLength) {
+                return null;
+            }
+            // A torn final write can leave half a sample behind
+            long pendingBytes = (fileLength - headerLength) & ~1L;
+            if (sampleCount == 0) {
+                // Never committed: the file length is the only record of what was captured
+                sampleCount = pendingBytes / 2;
+            }
+
+            return new Segment(file, new String(idBytes, StandardCharsets.UTF_8), sequence,
+                    sampleOffset, sampleCount, headerLength, pendingBytes, null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static class Segment {
+        public final File file;
+        public final String sessionId;
+        public final long sequence;
+        public final long sampleOffset;
+
+        private final int headerLength;
+        private long sampleCount;
+        private long pendingBytes;
+        private FileChannel channel;
+
+        Segment(File file, String sessionId, long sequence, long sampleOffset, long sampleCount,
+                int headerLength, long pendingBytes, FileChannel channel) {
+            this.file = file;
+            this.sessionId = sessionId;
+            this.sequence = sequence;
+            this.sampleOffset = sampleOffset;
+            this.sampleCount = sampleCount;
+            this.headerLength = headerLength;
+            this.pendingBytes = pendingBytes;
+            this.channel = channel;
+        }
+
+        public synchronized void append(PcmRingBuffer.PcmSlice slice) throws IOException {
+            ensureOpen();
+            slice.writeTo(channel);
+            pendingBytes += slice.length();
+            sampleCount = pendingBytes / 2;
+        }
+
+        public synchronized void append(byte[] data, int offset, int length) throws IOException {
+            ensureOpen();
+            ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            pendingBytes += length;
+            sampleCount = pendingBytes / 2;
+        }
+
+        public synchronized void commit() throws IOException {
+            ensureOpen();
+            try {
+                ByteBuffer count = ByteBuffer.allocate(8);
+                count.putLong(0, sampleCount);
+                channel.write(count, SAMPLE_COUNT_OFFSET);
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+            }
+        }
+
+        public synchronized void acknowledge() throws IOException {
+            if (channel != null) {
+                commit();
+            }
+            try (FileChannel ack = new RandomAccessFile(file, "rw").getChannel()) {
+                ack.truncate(headerLength);
+                ack.force(false);
+            }
+            pendingBytes = 0;
+        }
+
+        public synchronized byte[] readAudio() throws IOException {
+            byte[] audio = new byte[(int) pendingBytes];
+            try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+                in.seek(headerLength);
+                in.readFully(audio);
+            }
+            return audio;
+        }
+
+        public synchronized boolean hasPendingAudio() {
+            return pendingBytes > 0;
+        }
+
+        public synchronized long getSampleCount() {
+            return sampleCount;
+        }
+
+        public synchronized long getEndSampleOffset() {
+            return sampleOffset + sampleCount;
+        }
+
+        public synchronized boolean delete() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+            }
+            return file.delete();
+        }
+
+        private void ensureOpen() throws IOException {
+            if (channel == null) {
+                throw new IOException("Segment " + file.getName() + " is closed");
+            }
+        }
+    }
+}
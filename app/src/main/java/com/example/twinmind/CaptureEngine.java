@@ -0,0 +1,498 @@
+package com.example.twinmind;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the microphone and the whole capture pipeline for one recording at a time: AudioRecord,
+ * the buffer/chunking stage, transcription and the threads that connect them. RecordingService
+ * holds the only instance; screens observe it through {@link Listener}.
+ *
+ * State machine: IDLE -> RECORDING <-> PAUSED -> STOPPING -> IDLE. Transitions are made from the
+ * main thread; listeners are called on the main thread.
+ */
+public class CaptureEngine implements TranscriptionManager.TranscriptionListener {
+
+    private static final String TAG = "CaptureEngine";
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
+    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+    private static final int BUFFER_SIZE_FACTOR = 2;
+    private static final int BYTES_PER_FRAME = 2; // 16-bit mono
+    private static final long CHUNK_POLL_TIMEOUT_MS = 500;
+    private static final long CAPTURE_STOP_TIMEOUT_MS = 1000;
+    // Longest the final notes wait for the results still in flight at stop; a little over the time
+    // TranscriptionManager gives a missing chunk once the session has ended
+    private static final long NOTES_SETTLE_TIMEOUT_MS = 20_000;
+    // Chunks starting right at a boundary repeat this much of the previous chunk for stitching
+    private static final int CHUNK_OVERLAP_MS = 1500;
+    // Also stream audio to the recognizer as it is captured, for an interim preview of what is being
+    // said. Chunks are still uploaded and are the only results saved, since they are spooled, queued
+    // and retried until transcribed while the stream only replays the last 30s after an outage.
+    private static final boolean DEFAULT_STREAMING_TRANSCRIPTION = true;
+
+    public enum State {
+        IDLE, RECORDING, PAUSED, STOPPING
+    }
+
+    public interface Listener {
+        void onStateChanged(State state);
+        void onTranscriptionReceived(String transcription, long timestamp);
+        void onInterimTranscription(String transcription);
+        void onTranscriptionError(String error);
+    }
+
+    private final Context context;
+    private final AudioBufferManager audioBufferManager;
+    private final TranscriptionManager transcriptionManager;
+    private final TranscriptionDatabaseHelper dbHelper;
+    private final ExecutorService captureExecutor;
+    private final ExecutorService chunkExecutor;
+    // Rolling summary updates and the notes at stop, one request at a time
+    private final ExecutorService summaryExecutor;
+    private final OpenAIManager openAIManager;
+    private final Handler mainHandler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Guards state changes; the capture thread waits on it while paused
+    private final Object stateLock = new Object();
+    private volatile State state = State.IDLE;
+
+    private AudioRecord audioRecord;
+    // Reused across sessions; only reallocated if a recorder wants bigger reads
+    private ByteBuffer captureBuffer;
+    private final CaptureStats captureStats = new CaptureStats();
+    private boolean streamingTranscription = DEFAULT_STREAMING_TRANSCRIPTION;
+    // Fixed for the lifetime of one capture loop
+    private volatile boolean streamingActive;
+    private Future<?> captureTask;
+    // Set by pause; the chunk thread ships what was buffered before the pause
+    private volatile boolean drainRequested;
+
+    private String sessionId;
+    private RollingSummarizer rollingSummarizer;
+    private volatile int transcriptionCount;
+    private long recordingStartTime;
+    private long totalPausedTime;
+    private long pauseStartTime;
+
+    public CaptureEngine(Context context) {
+        this.context = context.getApplicationContext();
+        this.audioBufferManager = new AudioBufferManager(this.context);
+        this.audioBufferManager.setChunkOverlapMs(CHUNK_OVERLAP_MS);
+        this.transcriptionManager = new TranscriptionManager(this.context);
+        this.transcriptionManager.setTranscriptionListener(this);
+        this.dbHelper = TranscriptionDatabaseHelper.getInstance(this.context);
+        this.captureExecutor = Executors.newSingleThreadExecutor();
+        this.chunkExecutor = Executors.newSingleThreadExecutor();
+        this.summaryExecutor = Executors.newSingleThreadExecutor();
+        this.openAIManager = new OpenAIManager(this.context);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Must be called before start
+    public void setStreamingTranscription(boolean enabled) {
+        this.streamingTranscription = enabled;
+    }
+
+    public boolean start() {
+        if (state != State.IDLE) {
+            Log.w(TAG, "Recording already in progress");
+            return false;
+        }
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.RECORD_AUDIO)
+                != PackageManager.PERMISSION_GRANTED) {
+            Log.e(TAG, "RECORD_AUDIO permission not granted");
+            return false;
+        }
+
+        int bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
+        if (bufferSize == AudioRecord.ERROR || bufferSize == AudioRecord.ERROR_BAD_VALUE) {
+            Log.e(TAG, "Invalid buffer size: " + bufferSize);
+            return false;
+        }
+
+        try {
+            audioRecord = new AudioRecord(
+                    MediaRecorder.AudioSource.MIC,
+                    SAMPLE_RATE,
+                    CHANNEL_CONFIG,
+                    AUDIO_FORMAT,
+                    bufferSize * BUFFER_SIZE_FACTOR
+            );
+
+            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+                Log.e(TAG, "AudioRecord initialization failed - state: " + audioRecord.getState());
+                releaseAudioRecord();
+                return false;
+            }
+
+            audioRecord.startRecording();
+            if (audioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+                Log.e(TAG, "AudioRecord failed to start recording - state: " + audioRecord.getRecordingState());
+                releaseAudioRecord();
+                return false;
+            }
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception when starting recording", e);
+            releaseAudioRecord();
+            return false;
+        }
+
+        // Half the recorder's buffer per read leaves the other half as headroom for scheduling delays
+        int recorderBufferBytes = audioRecord.getBufferSizeInFrames() * BYTES_PER_FRAME;
+        int readBytes = Math.max(BYTES_PER_FRAME, (recorderBufferBytes / 2) & ~(BYTES_PER_FRAME - 1));
+        if (captureBuffer == null || captureBuffer.capacity() < readBytes) {
+            captureBuffer = ByteBuffer.allocateDirect(readBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        captureBuffer.clear().limit(readBytes);
+        captureStats.reset(SAMPLE_RATE, readBytes, recorderBufferBytes);
+
+        sessionId = "session_" + System.currentTimeMillis();
+        recordingStartTime = System.currentTimeMillis();
+        totalPausedTime = 0;
+        pauseStartTime = 0;
+        transcriptionCount = 0;
+
+        // Every update prompt holds new transcript and is sent once, so none of them go through the
+        // response cache; the notes are saved with the session anyway
+        rollingSummarizer = new RollingSummarizer(sessionId, openAIManager::generateTextAsync, dbHelper,
+                summaryExecutor, RollingSummarizer.DEFAULT_CHUNKS_PER_UPDATE);
+
+        transcriptionManager.setCurrentSessionId(sessionId);
+        audioBufferManager.startSession(sessionId);
+        streamingActive = streamingTranscription;
+        if (streamingActive) {
+            transcriptionManager.startStreaming(sessionId);
+        }
+        dbHelper.createRecordingSession(sessionId, "Recording Session", recordingStartTime, "Current Location");
+        new SpoolRecovery(context, audioBufferManager.getAudioSpool(), transcriptionManager)
+                .recoverAsync(sessionId);
+
+        setState(State.RECORDING);
+        captureTask = captureExecutor.submit(this::captureLoop);
+        chunkExecutor.execute(this::chunkLoop);
+
+        Log.d(TAG, "Recording started: " + sessionId);
+        return true;
+    }
+
+    public boolean pause() {
+        synchronized (stateLock) {
+            if (state != State.RECORDING) {
+                return false;
+            }
+            pauseStartTime = System.currentTimeMillis();
+            setState(State.PAUSED);
+        }
+
+        try {
+            // Unblocks the pending read; the capture thread then parks until resume or stop
+            audioRecord.stop();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error pausing audio record", e);
+        }
+        // Draining spools and encodes the chunk, so it is left to the chunk thread
+        drainRequested = true;
+        Log.d(TAG, "Recording paused");
+        return true;
+    }
+
+    public boolean resume() {
+        synchronized (stateLock) {
+            if (state != State.PAUSED) {
+                return false;
+            }
+            try {
+                audioRecord.startRecording();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Error resuming audio record", e);
+                return false;
+            }
+            if (audioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+                Log.e(TAG, "Failed to resume recording");
+                return false;
+            }
+            totalPausedTime += System.currentTimeMillis() - pauseStartTime;
+            pauseStartTime = 0;
+            captureStats.onResume();
+            setState(State.RECORDING);
+            stateLock.notifyAll();
+        }
+        Log.d(TAG, "Recording resumed");
+        return true;
+    }
+
+    public void stop() {
+        long endTime = System.currentTimeMillis();
+        synchronized (stateLock) {
+            if (state != State.RECORDING && state != State.PAUSED) {
+                return;
+            }
+            if (state == State.PAUSED) {
+                totalPausedTime += endTime - pauseStartTime;
+                pauseStartTime = 0;
+            }
+            setState(State.STOPPING);
+            stateLock.notifyAll();
+        }
+
+        try {
+            audioRecord.stop();
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "Error stopping audio record", e);
+        }
+        // The rest waits for the capture thread and writes files and the database, so it runs on the
+        // chunk thread once chunkLoop has seen STOPPING; listeners hear IDLE on the main thread
+        chunkExecutor.execute(() -> finishStop(endTime));
+    }
+
+    // chunkExecutor
+    private void finishStop(long endTime) {
+        // The capture thread must be out of read() before the native recorder is released
+        awaitTask(captureTask);
+        releaseAudioRecord();
+        if (streamingActive) {
+            // The final chunk below covers the same audio, so the stream's last results are not needed
+            transcriptionManager.stopStreaming();
+            streamingActive = false;
+        }
+
+        AudioChunk finalChunk = audioBufferManager.drainChunk();
+        if (finalChunk != null) {
+            transcriptionManager.transcribeAudioChunk(finalChunk);
+        }
+        // No more chunks for this session, so its reorder state can go once the last results are in
+        Future<Void> transcriptSettled = transcriptionManager.endSession(sessionId);
+        audioBufferManager.endSession();
+
+        dbHelper.endRecordingSession(sessionId, endTime, endTime - recordingStartTime - totalPausedTime);
+        // Only what was said since the last rolling update is left to read. The notes wait for the
+        // results still in flight, so the notes screen rarely has rows to add to them.
+        rollingSummarizer.finish(transcriptSettled, NOTES_SETTLE_TIMEOUT_MS);
+        Log.d(TAG, rollingSummarizer.summary());
+        Log.d(TAG, "Capture: " + captureStats.summary());
+        Log.d(TAG, "Chunking: " + audioBufferManager.getChunkingMetrics().summary());
+        Log.d(TAG, "Rate limits: " + RateLimiter.getInstance().summary());
+        Log.d(TAG, "Retries: " + RetryPolicy.getInstance().summary());
+        Log.d(TAG, LatencyTimeline.getInstance().summary());
+        Log.d(TAG, "Hedging: " + transcriptionManager.getHedgingSummary());
+        transcriptionManager.syncPendingTranscriptions();
+        // Chunks still queued when the engine is released are sent by a job once there is a network
+        PendingTranscriptionJobService.schedule(context);
+        // The archived audio gets a second, long-form pass once the device is charging or idle
+        RetranscriptionJobService.schedule(context);
+
+        setState(State.IDLE);
+        Log.d(TAG, "Recording stopped: " + sessionId);
+    }
+
+    public void release() {
+        stop();
+        // Queued behind the final drain, whose last chunk and notes still need both
+        chunkExecutor.execute(() -> {
+            // Lets the notes started by stop finish; OpenAIManager is left running for the same
+            // reason and its idle threads exit on their own
+            summaryExecutor.shutdown();
+            transcriptionManager.cleanup();
+        });
+        chunkExecutor.shutdown();
+        captureExecutor.shutdown();
+        listeners.clear();
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public int getTranscriptionCount() {
+        return transcriptionCount;
+    }
+
+    public long getElapsedMillis() {
+        if (recordingStartTime == 0) {
+            return 0;
+        }
+        long now = state == State.PAUSED && pauseStartTime > 0 ? pauseStartTime : System.currentTimeMillis();
+        return now - recordingStartTime - totalPausedTime;
+    }
+
+    public AudioBufferManager getAudioBufferManager() {
+        return audioBufferManager;
+    }
+
+    public CaptureStats getCaptureStats() {
+        return captureStats;
+    }
+
+    // Applies from the next chunk request, so it can be switched mid-recording
+    public void setHedging(boolean enabled) {
+        transcriptionManager.setHedging(enabled, TranscriptionManager.DEFAULT_HEDGE_PERCENTILE);
+    }
+
+    public boolean isHedging() {
+        return transcriptionManager.isHedging();
+    }
+
+    public String getHedgingSummary() {
+        return transcriptionManager.getHedgingSummary();
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onStateChanged(newState);
+            }
+        });
+    }
+
+    // Nothing in here may allocate: it runs ~30 times a second for the whole meeting
+    private void captureLoop() {
+        ByteBuffer buffer = captureBuffer;
+        int readBytes = buffer.limit();
+        Log.d(TAG, "Audio capture thread started, " + readBytes + " bytes per read");
+
+        while (true) {
+            State current = state;
+            if (current == State.PAUSED) {
+                synchronized (stateLock) {
+                    while (state == State.PAUSED) {
+                        try {
+                            stateLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                continue;
+            }
+            if (current != State.RECORDING) {
+                break;
+            }
+
+            int bytesRead = audioRecord.read(buffer, readBytes, AudioRecord.READ_BLOCKING);
+            if (bytesRead > 0) {
+                captureStats.onRead(System.nanoTime(), bytesRead);
+                // read() fills from index 0 without moving the position
+                buffer.limit(bytesRead).position(0);
+                if (streamingActive) {
+                    transcriptionManager.feedStreaming(buffer);
+                }
+                audioBufferManager.addAudioData(buffer);
+                buffer.clear().limit(readBytes);
+            } else if (bytesRead < 0) {
+                // A stop or pause racing the read also lands here; only give up while recording
+                if (state == State.RECORDING && audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                    captureStats.onReadError();
+                    Log.e(TAG, "AudioRecord read error: " + bytesRead);
+                    break;
+                }
+            }
+        }
+
+        Log.d(TAG, "Audio capture thread finished");
+    }
+
+    // Runs until stop, which it notices within CHUNK_POLL_TIMEOUT_MS; stop's final drain is queued
+    // behind it on the same thread
+    private void chunkLoop() {
+        // Chunks are cut at speech pauses by AudioBufferManager; this thread just ships them
+        while (state == State.RECORDING || state == State.PAUSED) {
+            try {
+                AudioChunk audioChunk = audioBufferManager.awaitChunk(CHUNK_POLL_TIMEOUT_MS);
+                if (audioChunk != null) {
+                    Log.d(TAG, "Sending audio chunk for transcription: " + audioChunk.audioData.length + " bytes");
+                    transcriptionManager.transcribeAudioChunk(audioChunk);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (drainRequested && state == State.PAUSED) {
+                drainRequested = false;
+                AudioChunk pauseChunk = audioBufferManager.drainChunk();
+                if (pauseChunk != null) {
+                    transcriptionManager.transcribeAudioChunk(pauseChunk);
+                }
+            }
+        }
+    }
+
+    private void awaitTask(Future<?> task) {
+        if (task == null) {
+            return;
+        }
+        try {
+            task.get(CAPTURE_STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "Capture thread did not finish cleanly: " + e);
+        }
+    }
+
+    private void releaseAudioRecord() {
+        if (audioRecord != null) {
+            audioRecord.release();
+            audioRecord = null;
+        }
+    }
+
+    // TranscriptionManager delivers on the main thread
+
+    @Override
+    public void onTranscriptionReceived(String transcription, long timestamp) {
+        // TranscriptionManager has already persisted it under the chunk's session
+        transcriptionCount++;
+        audioBufferManager.getChunkingMetrics().recordTextReceived();
+        if (rollingSummarizer != null) {
+            rollingSummarizer.onTranscription();
+        }
+        for (Listener listener : listeners) {
+            listener.onTranscriptionReceived(transcription, timestamp);
+        }
+    }
+
+    @Override
+    public void onInterimTranscription(String transcription) {
+        for (Listener listener : listeners) {
+            listener.onInterimTranscription(transcription);
+        }
+    }
+
+    @Override
+    public void onTranscriptionError(String error) {
+        for (Listener listener : listeners) {
+            listener.onTranscriptionError(error);
+        }
+    }
+}
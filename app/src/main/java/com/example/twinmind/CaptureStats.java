@@ -0,0 +1,164 @@
+package com.example.twinmind;
+
+import java.util.Locale;
+
+/**
+ * Live counters for the capture thread: read sizes, late reads, recorder overruns and
+ * scheduling jitter. Written by the capture thread only and read by the debug UI, so each
+ * field is a single-writer volatile and nothing is allocated per read.
+ *
+ * A read is late when the gap since the previous one exceeds 1.5x the audio that read returned.
+ * It is an overrun when the gap exceeds the recorder's whole buffer, since audio was then lost
+ * inside AudioRecord before we could read it.
+ */
+public class CaptureStats {
+
+    private long sampleRate;
+    private long recorderBufferNanos;
+    private int requestedReadBytes;
+
+    private long lastReadNanos;
+    private long expectedIntervalNanos;
+
+    private volatile long reads;
+    private volatile long bytesRead;
+    private volatile int minReadBytes;
+    private volatile int maxReadBytes;
+    private volatile long shortReads;
+    private volatile long lateReads;
+    private volatile long overruns;
+    private volatile long readErrors;
+    private volatile long maxIntervalNanos;
+    // Smoothed as in RFC 3550: J += (|D| - J) / 16
+    private volatile long jitterNanos;
+    private volatile long maxJitterNanos;
+
+    public void reset(int sampleRate, int requestedReadBytes, int recorderBufferBytes) {
+        this.sampleRate = sampleRate;
+        this.requestedReadBytes = requestedReadBytes;
+        this.recorderBufferNanos = bytesToNanos(recorderBufferBytes);
+        lastReadNanos = 0;
+        expectedIntervalNanos = 0;
+        reads = 0;
+        bytesRead = 0;
+        minReadBytes = 0;
+        maxReadBytes = 0;
+        shortReads = 0;
+        lateReads = 0;
+        overruns = 0;
+        readErrors = 0;
+        maxIntervalNanos = 0;
+        jitterNanos = 0;
+        maxJitterNanos = 0;
+    }
+
+    // Capture thread
+
+    public void onRead(long nowNanos, int bytes) {
+        if (lastReadNanos != 0) {
+            long interval = nowNanos - lastReadNanos;
+            if (interval > maxIntervalNanos) {
+                maxIntervalNanos = interval;
+            }
+            if (interval > recorderBufferNanos) {
+                overruns++;
+            } else if (interval * 2 > expectedIntervalNanos * 3) {
+                lateReads++;
+            }
+
+            long deviation = Math.abs(interval - expectedIntervalNanos);
+            long jitter = jitterNanos + (deviation - jitterNanos) / 16;
+            jitterNanos = jitter;
+            if (deviation > maxJitterNanos) {
+                maxJitterNanos = deviation;
+            }
+        }
+        lastReadNanos = nowNanos;
+        expectedIntervalNanos = bytesToNanos(bytes);
+
+        long count = reads + 1;
+        reads = count;
+        bytesRead += bytes;
+        if (count == 1 || bytes < minReadBytes) {
+            minReadBytes = bytes;
+        }
+        if (bytes > maxReadBytes) {
+            maxReadBytes = bytes;
+        }
+        if (bytes < requestedReadBytes) {
+            shortReads++;
+        }
+    }
+
+    public void onReadError() {
+        readErrors++;
+    }
+
+    // Resuming after a pause is not a late read
+    public void onResume() {
+        lastReadNanos = 0;
+    }
+
+    private long bytesToNanos(long bytes) {
+        return sampleRate == 0 ? 0 : bytes / 2 * 1_000_000_000L / sampleRate;
+    }
+
+    // Any thread
+
+    public long getReads() {
+        return reads;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getRequestedReadBytes() {
+        return requestedReadBytes;
+    }
+
+    public int getMinReadBytes() {
+        return minReadBytes;
+    }
+
+    public int getMaxReadBytes() {
+        return maxReadBytes;
+    }
+
+    public long getShortReads() {
+        return shortReads;
+    }
+
+    public long getLateReads() {
+        return lateReads;
+    }
+
+    public long getOverruns() {
+        return overruns;
+    }
+
+    public long getReadErrors() {
+        return readErrors;
+    }
+
+    public double getMaxIntervalMs() {
+        return maxIntervalNanos / 1e6;
+    }
+
+    public double getJitterMs() {
+        return jitterNanos / 1e6;
+    }
+
+    public double getMaxJitterMs() {
+        return maxJitterNanos / 1e6;
+    }
+
+    public String summary() {
+        long count = reads;
+        return String.format(Locale.US,
+                "reads=%d requested=%dB avg=%dB min=%dB max=%dB short=%d late=%d overruns=%d errors=%d "
+                        + "maxGap=%.1fms jitter=%.2fms maxJitter=%.1fms",
+                count, requestedReadBytes, count == 0 ? 0 : bytesRead / count, minReadBytes, maxReadBytes,
+                shortReads, lateReads, overruns, readErrors, getMaxIntervalMs(), getJitterMs(), getMaxJitterMs());
+    }
+}
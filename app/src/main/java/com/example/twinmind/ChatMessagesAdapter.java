@@ -1,5 +1,6 @@
 package com.example.twinmind;
 
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,8 +9,10 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 public class ChatMessagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
@@ -17,9 +20,28 @@ public class ChatMessagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     private static final int TYPE_ASSISTANT = 2;
     private static final int TYPE_SYSTEM = 3;
 
+    // Rebinds only the text, so a growing bubble is not cross-faded on every update
+    private static final Object PAYLOAD_TEXT = new Object();
+
     private List<ChatMessage> messages;
     private SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
 
+    private final Set<ChatMessage> changedMessages = new LinkedHashSet<>();
+    private boolean frameScheduled;
+    private final Choreographer.FrameCallback textFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            frameScheduled = false;
+            for (ChatMessage message : changedMessages) {
+                int position = messages.indexOf(message);
+                if (position >= 0) {
+                    notifyItemChanged(position, PAYLOAD_TEXT);
+                }
+            }
+            changedMessages.clear();
+        }
+    };
+
     public ChatMessagesAdapter(List<ChatMessage> messages) {
         this.messages = messages;
     }
@@ -65,6 +87,26 @@ public class ChatMessagesAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_TEXT) && holder instanceof AssistantMessageViewHolder) {
+            ((AssistantMessageViewHolder) holder).messageText.setText(messages.get(position).content);
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    // Main thread. Streamed text can arrive faster than the display refreshes, so the bubble is
+    // redrawn at most once per frame with everything appended since the last one.
+    public void appendText(ChatMessage message, String text) {
+        message.content += text;
+        changedMessages.add(message);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(textFrameCallback);
+        }
+    }
+
     @Override
     public int getItemCount() {
         return messages.size();
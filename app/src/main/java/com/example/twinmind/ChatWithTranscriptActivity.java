@@ -20,11 +20,14 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class ChatWithTranscriptActivity extends AppCompatActivity {
 
     private static final String TAG = "ChatTranscript";
+    private static final String THINKING_MESSAGE = "🤔 Thinking...";
 
     private RecyclerView recyclerView;
     private EditText inputField;
@@ -37,12 +40,18 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
     private ChatMessagesAdapter adapter;
     private List<ChatMessage> chatMessages;
     private OpenAIManager openAIManager;
+    private GeminiStreamClient.Generation generation;
     private TranscriptionDatabaseHelper dbHelper;
     private Handler mainHandler;
     private LinearLayoutManager layoutManager;
 
     private String sessionId;
-    private String fullTranscript;
+    // Questions are sent with the passages they match rather than the whole transcript
+    private final TranscriptIndex transcriptIndex = new TranscriptIndex();
+    // Rows already in the index, so a refresh only adds what was transcribed since
+    private final Set<Long> indexedIds = new HashSet<>();
+    // Highest chunk_index seen by the last refresh
+    private int lastIndexedChunk = -1;
     private boolean isProcessing = false;
 
     @Override
@@ -145,25 +154,17 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
         showLoading(true);
         new Thread(() -> {
             try {
-                List<TranscriptionEntry> transcriptions = dbHelper.getTranscriptionsForSession(sessionId);
-
-                StringBuilder transcriptBuilder = new StringBuilder();
-                for (TranscriptionEntry entry : transcriptions) {
-                    if (entry.transcriptionText != null && !entry.transcriptionText.trim().isEmpty()) {
-                        transcriptBuilder.append(entry.transcriptionText.trim()).append(" ");
-                    }
-                }
-
-                fullTranscript = transcriptBuilder.toString().trim();
+                refreshIndex();
 
                 mainHandler.post(() -> {
                     showLoading(false);
 
-                    if (fullTranscript.isEmpty()) {
+                    if (transcriptIndex.getWordCount() == 0) {
                         addMessage("No transcript found for this session. Please make sure the recording has been transcribed.",
                                 ChatMessage.MessageType.SYSTEM);
                     } else {
-                        Log.d(TAG, "Loaded transcript: " + fullTranscript.length() + " characters");
+                        Log.d(TAG, "Loaded transcript: " + transcriptIndex.getWordCount() + " words in "
+                                + transcriptIndex.getPassageCount() + " passages");
                         inputField.setEnabled(true);
                         addMessage("Transcript loaded! You can now ask questions about your meeting.",
                                 ChatMessage.MessageType.SYSTEM);
@@ -181,6 +182,50 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
         }).start();
     }
 
+    // Adds rows transcribed since the last refresh. Re-transcription replaces a session's rows, and
+    // a late chunk is slotted in before rows already saved, so if any indexed row is gone or a new
+    // row is not at the end the index is rebuilt. Call from a background thread.
+    private void refreshIndex() {
+        List<TranscriptionEntry> transcriptions = dbHelper.getTranscriptionsForSession(sessionId);
+        Set<Long> ids = new HashSet<>();
+        for (TranscriptionEntry entry : transcriptions) {
+            ids.add(entry.id);
+        }
+        synchronized (transcriptIndex) {
+            if (!ids.containsAll(indexedIds)) {
+                Log.d(TAG, "Transcript was replaced, rebuilding index");
+                clearIndex();
+            } else {
+                for (TranscriptionEntry entry : transcriptions) {
+                    // The rows after a slotted-in one are shifted up, so it takes an index already seen
+                    if (!indexedIds.contains(entry.id) && entry.chunkIndex <= lastIndexedChunk) {
+                        Log.d(TAG, "Late transcription at chunk " + entry.chunkIndex + ", rebuilding index");
+                        clearIndex();
+                        break;
+                    }
+                }
+            }
+            int added = 0;
+            for (TranscriptionEntry entry : transcriptions) {
+                if (indexedIds.add(entry.id) && entry.transcriptionText != null) {
+                    transcriptIndex.add(entry.transcriptionText);
+                    added++;
+                }
+                lastIndexedChunk = Math.max(lastIndexedChunk, entry.chunkIndex);
+            }
+            if (added > 0) {
+                Log.d(TAG, "Indexed " + added + " transcriptions");
+            }
+        }
+    }
+
+    // Holding the transcriptIndex lock
+    private void clearIndex() {
+        transcriptIndex.clear();
+        indexedIds.clear();
+        lastIndexedChunk = -1;
+    }
+
     private void addSuggestionMessage() {
         String suggestions = "💡 Try asking:\n" +
                 "• \"Summarize the key points\"\n" +
@@ -205,25 +250,49 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
         isProcessing = true;
         sendButton.setEnabled(false);
         inputField.setEnabled(false);
-        ChatMessage typingMessage = new ChatMessage("🤔 Thinking...", ChatMessage.MessageType.ASSISTANT);
-        addMessage(typingMessage);
-        String contextPrompt = buildContextPrompt(userMessage);
+        // Stays until the first words arrive, then becomes the answer
+        ChatMessage reply = new ChatMessage(THINKING_MESSAGE, ChatMessage.MessageType.ASSISTANT);
+        addMessage(reply);
+        String history = buildHistory();
+        String previousQuestion = findPreviousQuestion();
+
+        new Thread(() -> {
+            refreshIndex();
+            // The previous question helps follow-ups like "who owns that?" find their passages
+            TranscriptIndex.Selection context = transcriptIndex.select(
+                    previousQuestion == null ? userMessage : previousQuestion + " " + userMessage,
+                    TranscriptIndex.DEFAULT_CONTEXT_TOKENS);
+            Log.d(TAG, context.full ? "Sending full transcript, " + transcriptIndex.estimateTokens() + " tokens"
+                    : "Sending " + context.passages + " passages, "
+                    + TranscriptSummarizer.estimateTokens(context.text) + " of "
+                    + transcriptIndex.estimateTokens() + " tokens");
+            String contextPrompt = buildContextPrompt(context, history, userMessage);
+            mainHandler.post(() -> {
+                if (!isDestroyed()) {
+                    streamResponse(contextPrompt, reply);
+                }
+            });
+        }, TAG).start();
+    }
 
-        openAIManager.generateText(contextPrompt, new OpenAIManager.OpenAICallback() {
+    private void streamResponse(String contextPrompt, ChatMessage reply) {
+        generation = openAIManager.streamText(contextPrompt, new GeminiStreamClient.Callback() {
             @Override
-            public void onSuccess(String response) {
+            public void onDelta(String text) {
                 mainHandler.post(() -> {
-                    if (!chatMessages.isEmpty() && chatMessages.get(chatMessages.size() - 1).content.equals("🤔 Thinking...")) {
-                        chatMessages.remove(chatMessages.size() - 1);
-                        adapter.notifyItemRemoved(chatMessages.size());
+                    if (reply.content.equals(THINKING_MESSAGE)) {
+                        reply.content = "";
+                        scrollToBottom();
                     }
+                    adapter.appendText(reply, text);
+                });
+            }
 
-                    addMessage(response, ChatMessage.MessageType.ASSISTANT);
-
-                    isProcessing = false;
-                    inputField.setEnabled(true);
-                    sendButton.setEnabled(!inputField.getText().toString().trim().isEmpty());
-
+            @Override
+            public void onComplete(String text) {
+                mainHandler.post(() -> {
+                    finishResponse();
+                    scrollToBottom();
                     Log.d(TAG, "AI response received successfully");
                 });
             }
@@ -231,16 +300,15 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
             @Override
             public void onError(String error) {
                 mainHandler.post(() -> {
-                    if (!chatMessages.isEmpty() && chatMessages.get(chatMessages.size() - 1).content.equals("🤔 Thinking...")) {
-                        chatMessages.remove(chatMessages.size() - 1);
-                        adapter.notifyItemRemoved(chatMessages.size());
+                    // A partial answer stays on screen, followed by the error
+                    int position = chatMessages.indexOf(reply);
+                    if (position >= 0 && reply.content.equals(THINKING_MESSAGE)) {
+                        chatMessages.remove(position);
+                        adapter.notifyItemRemoved(position);
                     }
 
                     addMessage("Sorry, I encountered an error: " + error, ChatMessage.MessageType.SYSTEM);
-
-                    isProcessing = false;
-                    inputField.setEnabled(true);
-                    sendButton.setEnabled(!inputField.getText().toString().trim().isEmpty());
+                    finishResponse();
 
                     Log.e(TAG, "AI response error: " + error);
                 });
@@ -248,27 +316,62 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
         });
     }
 
-    private String buildContextPrompt(String userMessage) {
+    private void finishResponse() {
+        generation = null;
+        isProcessing = false;
+        inputField.setEnabled(true);
+        sendButton.setEnabled(!inputField.getText().toString().trim().isEmpty());
+    }
+
+    private String buildHistory() {
+        StringBuilder history = new StringBuilder();
+        if (chatMessages.size() > 1) {
+            int startIndex = Math.max(0, chatMessages.size() - 6);
+            for (int i = startIndex; i < chatMessages.size(); i++) {
+                ChatMessage msg = chatMessages.get(i);
+                if (msg.type != ChatMessage.MessageType.SYSTEM && !msg.content.equals(THINKING_MESSAGE)) {
+                    String role = msg.type == ChatMessage.MessageType.USER ? "User" : "Assistant";
+                    history.append(role).append(": ").append(msg.content).append("\n");
+                }
+            }
+        }
+        return history.toString();
+    }
+
+    // The user's question before the one just asked, or null
+    private String findPreviousQuestion() {
+        boolean current = true;
+        for (int i = chatMessages.size() - 1; i >= 0; i--) {
+            ChatMessage msg = chatMessages.get(i);
+            if (msg.type == ChatMessage.MessageType.USER) {
+                if (!current) {
+                    return msg.content;
+                }
+                current = false;
+            }
+        }
+        return null;
+    }
+
+    private String buildContextPrompt(TranscriptIndex.Selection context, String history, String userMessage) {
         StringBuilder prompt = new StringBuilder();
 
         prompt.append("You are an AI assistant helping analyze and discuss a meeting transcript. ");
         prompt.append("Answer questions about the content, provide summaries, extract key points, ");
         prompt.append("and help users understand the discussion. Be concise but thorough.\n\n");
 
-        prompt.append("MEETING TRANSCRIPT:\n");
-        prompt.append(fullTranscript);
+        if (context.full) {
+            prompt.append("MEETING TRANSCRIPT:\n");
+        } else {
+            prompt.append("EXCERPTS FROM THE MEETING TRANSCRIPT (the parts most relevant to the question, in order; ");
+            prompt.append("[...] marks skipped parts. If they do not answer the question, say so):\n");
+        }
+        prompt.append(context.text);
         prompt.append("\n\n");
 
-        if (chatMessages.size() > 1) {
+        if (!history.isEmpty()) {
             prompt.append("CONVERSATION HISTORY:\n");
-            int startIndex = Math.max(0, chatMessages.size() - 6);
-            for (int i = startIndex; i < chatMessages.size(); i++) {
-                ChatMessage msg = chatMessages.get(i);
-                if (msg.type != ChatMessage.MessageType.SYSTEM && !msg.content.equals("🤔 Thinking...")) {
-                    String role = msg.type == ChatMessage.MessageType.USER ? "User" : "Assistant";
-                    prompt.append(role).append(": ").append(msg.content).append("\n");
-                }
-            }
+            prompt.append(history);
             prompt.append("\n");
         }
 
@@ -312,6 +415,9 @@ public class ChatWithTranscriptActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (generation != null) {
+            generation.cancel();
+        }
         if (openAIManager != null) {
             openAIManager.shutdown();
         }
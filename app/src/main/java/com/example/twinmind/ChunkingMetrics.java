@@ -0,0 +1,81 @@
+package com.example.twinmind;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public class ChunkingMetrics {
+
+    private long sessionStartNanos;
+    private long firstTextNanos;
+
+    private int chunkCount;
+    private long totalChunkMs;
+    private long minChunkMs = Long.MAX_VALUE;
+    private long maxChunkMs;
+    private long totalSentMs;
+    private final int[] cutsByReason = new int[AdaptiveChunker.CutReason.values().length];
+
+    public synchronized void markSessionStart() {
+        sessionStartNanos = System.nanoTime();
+        firstTextNanos = 0;
+        chunkCount = 0;
+        totalChunkMs = 0;
+        minChunkMs = Long.MAX_VALUE;
+        maxChunkMs = 0;
+        totalSentMs = 0;
+        Arrays.fill(cutsByReason, 0);
+    }
+
+    public synchronized void recordCut(AdaptiveChunker.CutReason reason) {
+        cutsByReason[reason.ordinal()]++;
+    }
+
+    public synchronized void recordChunk(long chunkMs, long sentMs) {
+        chunkCount++;
+        totalChunkMs += chunkMs;
+        totalSentMs += sentMs;
+        minChunkMs = Math.min(minChunkMs, chunkMs);
+        maxChunkMs = Math.max(maxChunkMs, chunkMs);
+    }
+
+    public synchronized void recordTextReceived() {
+        if (firstTextNanos == 0 && sessionStartNanos != 0) {
+            firstTextNanos = System.nanoTime();
+        }
+    }
+
+    public synchronized long getTimeToFirstTextMs() {
+        return firstTextNanos == 0 ? -1 : (firstTextNanos - sessionStartNanos) / 1_000_000;
+    }
+
+    public synchronized int getChunkCount() {
+        return chunkCount;
+    }
+
+    public synchronized long getAverageChunkMs() {
+        return chunkCount == 0 ? 0 : totalChunkMs / chunkCount;
+    }
+
+    public synchronized long getMinChunkMs() {
+        return chunkCount == 0 ? 0 : minChunkMs;
+    }
+
+    public synchronized long getMaxChunkMs() {
+        return maxChunkMs;
+    }
+
+    public synchronized long getTotalSentMs() {
+        return totalSentMs;
+    }
+
+    public synchronized int getCutCount(AdaptiveChunker.CutReason reason) {
+        return cutsByReason[reason.ordinal()];
+    }
+
+    public synchronized String summary() {
+        return String.format(Locale.US,
+                "chunks=%d avg=%dms min=%dms max=%dms sent=%dms ttft=%dms cuts[pause=%d max=%d silence=%d flush=%d]",
+                chunkCount, getAverageChunkMs(), getMinChunkMs(), maxChunkMs, totalSentMs, getTimeToFirstTextMs(),
+                cutsByReason[0], cutsByReason[1], cutsByReason[2], cutsByReason[3]);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.twinmind;
+
+import java.io.IOException;
+
+/**
+ * Decodes the FLAC streams {@link FlacEncoder} writes back to 16-bit little-endian PCM, so archived
+ * chunks can be joined and re-encoded for the second transcription pass.
+ *
+ * Only what the encoder produces is supported: mono 16-bit, fixed block size, CONSTANT, VERBATIM
+ * and FIXED subframes with 4-bit Rice parameters. Anything else fails with an IOException rather
+ * than decoding to noise. Frame CRCs are not checked; the archive is our own file.
+ */
+final class FlacDecoder {
+
+    private static final int STREAMINFO_LENGTH = 34;
+
+    private final byte[] data;
+    // Bits not yet consumed are the low cacheBits of cache
+    private long cache;
+    private int cacheBits;
+    private int position;
+
+    private FlacDecoder(byte[] data) {
+        this.data = data;
+    }
+
+    static byte[] decode(byte[] flac) throws IOException {
+        return new FlacDecoder(flac).decodeStream();
+    }
+
+    private byte[] decodeStream() throws IOException {
+        if (data.length < 8 + STREAMINFO_LENGTH || readBits(32) != 0x664C6143) {
+            throw new IOException("Not a FLAC stream");
+        }
+        long totalSamples = -1;
+        boolean last;
+        do {
+            last = readBits(1) == 1;
+            int type = readBits(7);
+            int length = readBits(24);
+            if (type == 0) {
+                skipBits(16 + 16 + 24 + 24 + 20); // block sizes, frame sizes, sample rate
+                if (readBits(3) != 0 || readBits(5) != 15) {
+                    throw new IOException("Only mono 16-bit FLAC is supported");
+                }
+                totalSamples = ((long) readBits(4) << 32) | (readBits(32) & 0xFFFFFFFFL);
+                skipBits(128); // MD5
+            } else {
+                skipBits(length * 8L);
+            }
+        } while (!last);
+        if (totalSamples < 0 || totalSamples > Integer.MAX_VALUE / 2) {
+            throw new IOException("Missing or oversized STREAMINFO");
+        }
+
+        byte[] pcm = new byte[(int) totalSamples * 2];
+        int[] block = new int[0];
+        int written = 0;
+        while (written < pcm.length) {
+            if (readBits(16) != 0xFFF8) {
+                throw new IOException("Lost frame sync at sample " + written / 2);
+            }
+            int blockSizeCode = readBits(4);
+            skipBits(4 + 8); // sample rate code, channel assignment and sample size
+            skipUtf8();
+            int samples = blockSize(blockSizeCode);
+            skipBits(8); // header CRC
+            if (samples > (pcm.length - written) / 2) {
+                throw new IOException("Frame runs past STREAMINFO's sample count");
+            }
+            if (block.length < samples) {
+                block = new int[samples];
+            }
+
+            readSubframe(block, samples);
+            alignToByte();
+            skipBits(16); // frame CRC
+
+            for (int i = 0; i < samples; i++) {
+                pcm[written++] = (byte) block[i];
+                pcm[written++] = (byte) (block[i] >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    private int blockSize(int code) throws IOException {
+        if (code == 1) {
+            return 192;
+        } else if (code >= 2 && code <= 5) {
+            return 576 << (code - 2);
+        } else if (code == 6) {
+            return readBits(8) + 1;
+        } else if (code == 7) {
+            return readBits(16) + 1;
+        } else if (code >= 8) {
+            return 256 << (code - 8);
+        }
+        throw new IOException("Reserved block size code");
+    }
+
+    private void readSubframe(int[] block, int samples) throws IOException {
+        int header = readBits(8);
+        if ((header & 0x81) != 0) {
+            throw new IOException("Unsupported subframe header " + header);
+        }
+        int type = header >> 1;
+        if (type == 0) {
+            int value = readSigned(16);
+            for (int i = 0; i < samples; i++) {
+                block[i] = value;
+            }
+        } else if (type == 1) {
+            for (int i = 0; i < samples; i++) {
+                block[i] = readSigned(16);
+            }
+        } else if ((type & 0x38) == 0x08 && (type & 0x07) <= 4) {
+            int order = type & 0x07;
+            for (int i = 0; i < order; i++) {
+                block[i] = readSigned(16);
+            }
+            readResidual(block, order, samples);
+            restore(block, order, samples);
+        } else {
+            throw new IOException("Unsupported subframe type " + type);
+        }
+    }
+
+    private void readResidual(int[] block, int order, int samples) throws IOException {
+        if (readBits(2) != 0) {
+            throw new IOException("Only 4-bit Rice parameters are supported");
+        }
+        int partitionOrder = readBits(4);
+        int partitionSize = samples >> partitionOrder;
+        if (partitionSize < order) {
+            throw new IOException("Partition smaller than predictor order");
+        }
+        int index = order;
+        for (int p = 0; p < (1 << partitionOrder); p++) {
+            int parameter = readBits(4);
+            if (parameter == 15) {
+                throw new IOException("Escaped partitions are not supported");
+            }
+            int end = (p + 1) * partitionSize;
+            while (index < end) {
+                int value = (readUnary() << parameter) | readBits(parameter);
+                block[index++] = (value >>> 1) ^ -(value & 1);
+            }
+        }
+    }
+
+    private static void restore(int[] x, int order, int samples) {
+        switch (order) {
+            case 1:
+                for (int i = 1; i < samples; i++) {
+                    x[i] += x[i - 1];
+                }
+                break;
+            case 2:
+                for (int i = 2; i < samples; i++) {
+                    x[i] += 2 * x[i - 1] - x[i - 2];
+                }
+                break;
+            case 3:
+                for (int i = 3; i < samples; i++) {
+                    x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                }
+                break;
+            case 4:
+                for (int i = 4; i < samples; i++) {
+                    x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void skipUtf8() throws IOException {
+        int lead = readBits(8);
+        int continuation = 0;
+        if (lead >= 0x80) {
+            while ((lead & (0x40 >> continuation)) != 0) {
+                continuation++;
+            }
+        }
+        skipBits(continuation * 8L);
+    }
+
+    // Bit reading
+
+    private void fill() throws IOException {
+        while (cacheBits <= 56) {
+            if (position >= data.length) {
+                if (cacheBits == 0) {
+                    throw new IOException("Unexpected end of FLAC stream");
+                }
+                return;
+            }
+            cache = (cache << 8) | (data[position++] & 0xff);
+            cacheBits += 8;
+        }
+    }
+
+    // count <= 32
+    private int readBits(int count) throws IOException {
+        if (count == 0) {
+            return 0;
+        }
+        if (cacheBits < count) {
+            fill();
+            if (cacheBits < count) {
+                throw new IOException("Unexpected end of FLAC stream");
+            }
+        }
+        cacheBits -= count;
+        return (int) ((cache >>> cacheBits) & (0xFFFFFFFFL >>> (32 - count)));
+    }
+
+    private int readSigned(int count) throws IOException {
+        return (readBits(count) << (32 - count)) >> (32 - count);
+    }
+
+    // Zero bits up to the next one bit, which is consumed too
+    private int readUnary() throws IOException {
+        int zeros = 0;
+        while (true) {
+            if (cacheBits == 0) {
+                fill();
+            }
+            long bits = cache << (64 - cacheBits);
+            if (bits != 0) {
+                int leading = Long.numberOfLeadingZeros(bits);
+                zeros += leading;
+                cacheBits -= leading + 1;
+                return zeros;
+            }
+            zeros += cacheBits;
+            cacheBits = 0;
+        }
+    }
+
+    private void skipBits(long count) throws IOException {
+        while (count > 0) {
+            int step = (int) Math.min(count, 32);
+            readBits(step);
+            count -= step;
+        }
+    }
+
+    private void alignToByte() {
+        cacheBits -= cacheBits % 8;
+    }
+}
@@ -0,0 +1,507 @@
+package com.example.twinmind;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Lossless FLAC encoder for 16-bit mono PCM.
+ *
+ * Each block is coded with the best of the fixed polynomial predictors (orders 0-4) and a
+ * partitioned Rice residual, which is how libFLAC's fast presets work and takes speech to
+ * roughly half its PCM size. A frame is emitted as soon as a block fills, so the cost is spread
+ * across the recording instead of landing on the chunk boundary. Steady-state encoding does not
+ * allocate.
+ */
+public class FlacEncoder implements AudioEncoder {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 6;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int STREAMINFO_LENGTH = 34;
+    // "fLaC" marker, metadata block header, STREAMINFO
+    private static final int STREAM_HEADER_LENGTH = 4 + 4 + STREAMINFO_LENGTH;
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xff;
+            CRC16_TABLE[i] = crc16 & 0xffff;
+        }
+    }
+
+    private final int sampleRate;
+    private final int blockSize;
+    private final int sampleRateCode;
+
+    private final int[] block;
+    private final int[] residual;
+    private final long[] partitionSums = new long[1 << MAX_PARTITION_ORDER];
+    private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] bestRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private int bestPartitionOrder;
+    private final BitWriter frames = new BitWriter(64 * 1024);
+    private final MessageDigest md5;
+
+    private int blockFill;
+    private int pendingLowByte = -1;
+    private long frameNumber;
+    private long totalSamples;
+    private int minFrameSize;
+    private int maxFrameSize;
+
+    public FlacEncoder(int sampleRate) {
+        this(sampleRate, DEFAULT_BLOCK_SIZE);
+    }
+
+    public FlacEncoder(int sampleRate, int blockSize) {
+        if (blockSize < 16 || blockSize > 65535) {
+            throw new IllegalArgumentException("Block size out of range: " + blockSize);
+        }
+        this.sampleRate = sampleRate;
+        this.blockSize = blockSize;
+        this.sampleRateCode = sampleRateCode(sampleRate);
+        this.block = new int[blockSize];
+        this.residual = new int[blockSize];
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // STREAMINFO allows an all-zero signature when it is unknown
+            digest = null;
+        }
+        this.md5 = digest;
+        reset();
+    }
+
+    @Override
+    public String getSpeechEncoding() {
+        return "FLAC";
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void encode(ByteBuffer pcm) {
+        if (md5 != null) {
+            int start = pcm.position();
+            md5.update(pcm);
+            pcm.position(start);
+        }
+        if (pendingLowByte >= 0 && pcm.hasRemaining()) {
+            addSample((short) (pendingLowByte | (pcm.get() << 8)));
+            pendingLowByte = -1;
+        }
+        while (pcm.remaining() >= 2) {
+            int low = pcm.get() & 0xff;
+            addSample((short) (low | (pcm.get() << 8)));
+        }
+        if (pcm.hasRemaining()) {
+            pendingLowByte = pcm.get() & 0xff;
+        }
+    }
+
+    private void addSample(int sample) {
+        block[blockFill++] = sample;
+        if (blockFill == blockSize) {
+            writeFrame(blockSize);
+            blockFill = 0;
+        }
+    }
+
+    @Override
+    public byte[] finish() {
+        if (blockFill > 0) {
+            writeFrame(blockFill);
+            blockFill = 0;
+        }
+
+        BitWriter header = new BitWriter(STREAM_HEADER_LENGTH);
+        header.writeBits(0x664C6143, 32); // "fLaC"
+        header.writeBits(0x80, 8); // last metadata block, type STREAMINFO
+        header.writeBits(STREAMINFO_LENGTH, 24);
+        header.writeBits(blockSize, 16);
+        header.writeBits(blockSize, 16);
+        header.writeBits(frameNumber == 0 ? 0 : minFrameSize, 24);
+        header.writeBits(maxFrameSize, 24);
+        header.writeBits(sampleRate, 20);
+        header.writeBits(0, 3); // channels - 1
+        header.writeBits(BITS_PER_SAMPLE - 1, 5);
+        header.writeBits((int) (totalSamples >>> 32), 4);
+        header.writeBits((int) totalSamples, 32);
+        byte[] signature = md5 != null ? md5.digest() : new byte[16];
+        for (byte b : signature) {
+            header.writeBits(b & 0xff, 8);
+        }
+
+        byte[] stream = new byte[STREAM_HEADER_LENGTH + frames.length()];
+        System.arraycopy(header.buffer, 0, stream, 0, STREAM_HEADER_LENGTH);
+        System.arraycopy(frames.buffer, 0, stream, STREAM_HEADER_LENGTH, frames.length());
+        reset();
+        return stream;
+    }
+
+    @Override
+    public void reset() {
+        frames.clear();
+        if (md5 != null) {
+            md5.reset();
+        }
+        blockFill = 0;
+        pendingLowByte = -1;
+        frameNumber = 0;
+        totalSamples = 0;
+        minFrameSize = Integer.MAX_VALUE;
+        maxFrameSize = 0;
+    }
+
+    // Frame coding
+
+    private void writeFrame(int samples) {
+        int frameStart = frames.length();
+
+        int blockSizeCode = blockSizeCode(samples);
+        frames.writeBits(0xFFF8, 16); // sync code, fixed-blocksize stream
+        frames.writeBits(blockSizeCode, 4);
+        frames.writeBits(sampleRateCode, 4);
+        frames.writeBits(0x08, 8); // mono, 16 bits per sample
+        writeUtf8(frameNumber);
+        if (blockSizeCode == 6) {
+            frames.writeBits(samples - 1, 8);
+        } else if (blockSizeCode == 7) {
+            frames.writeBits(samples - 1, 16);
+        }
+        frames.writeBits(crc8(frames.buffer, frameStart, frames.length()), 8);
+
+        writeSubframe(samples);
+
+        frames.alignToByte();
+        frames.writeBits(crc16(frames.buffer, frameStart, frames.length()), 16);
+
+        int frameSize = frames.length() - frameStart;
+        minFrameSize = Math.min(minFrameSize, frameSize);
+        maxFrameSize = Math.max(maxFrameSize, frameSize);
+        frameNumber++;
+        totalSamples += samples;
+    }
+
+    private void writeSubframe(int samples) {
+        if (isConstant(samples)) {
+            frames.writeBits(0, 8);
+            frames.writeBits(block[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        int order = samples > MAX_FIXED_ORDER ? bestFixedOrder(samples) : -1;
+        if (order >= 0) {
+            computeResidual(order, samples);
+            long residualBits = chooseRicePartitioning(order, samples);
+            if (residualBits > 0) {
+                long fixedBits = 8 + (long) order * BITS_PER_SAMPLE + residualBits;
+                if (fixedBits < 8 + (long) samples * BITS_PER_SAMPLE) {
+                    writeFixedSubframe(order, samples);
+                    return;
+                }
+            }
+        }
+
+        frames.writeBits(0x02, 8); // VERBATIM
+        for (int i = 0; i < samples; i++) {
+            frames.writeBits(block[i], BITS_PER_SAMPLE);
+        }
+    }
+
+    private boolean isConstant(int samples) {
+        int first = block[0];
+        for (int i = 1; i < samples; i++) {
+            if (block[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Picks the fixed predictor with the smallest total absolute residual, as libFLAC does
+    private int bestFixedOrder(int samples) {
+        long error0 = 0, error1 = 0, error2 = 0, error3 = 0, error4 = 0;
+        int last0 = block[3];
+        int last1 = block[3] - block[2];
+        int last2 = last1 - (block[2] - block[1]);
+        int last3 = last2 - (block[2] - 2 * block[1] + block[0]);
+        for (int i = MAX_FIXED_ORDER; i < samples; i++) {
+            int e0 = block[i];
+            int e1 = e0 - last0;
+            int e2 = e1 - last1;
+            int e3 = e2 - last2;
+            int e4 = e3 - last3;
+            error0 += Math.abs(e0);
+            error1 += Math.abs(e1);
+            error2 += Math.abs(e2);
+            error3 += Math.abs(e3);
+            error4 += Math.abs(e4);
+            last0 = e0;
+            last1 = e1;
+            last2 = e2;
+            last3 = e3;
+        }
+
+        int order = 0;
+        long best = error0;
+        if (error1 < best) { order = 1; best = error1; }
+        if (error2 < best) { order = 2; best = error2; }
+        if (error3 < best) { order = 3; best = error3; }
+        if (error4 < best) { order = 4; }
+        return order;
+    }
+
+    private void computeResidual(int order, int samples) {
+        int[] x = block;
+        switch (order) {
+            case 0:
+                System.arraycopy(x, 0, residual, 0, samples);
+                break;
+            case 1:
+                for (int i = 1; i < samples; i++) {
+                    residual[i] = x[i] - x[i - 1];
+                }
+                break;
+            case 2:
+                for (int i = 2; i < samples; i++) {
+                    residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+                }
+                break;
+            case 3:
+                for (int i = 3; i < samples; i++) {
+                    residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                }
+                break;
+            default:
+                for (int i = 4; i < samples; i++) {
+                    residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                }
+                break;
+        }
+    }
+
+    /**
+     * Finds the partition order with the smallest estimated Rice cost and leaves its parameters
+     * in {@code bestRiceParameters}. Returns the estimated residual size in bits, or -1 if no
+     * partitioning is valid for this block.
+     */
+    private long chooseRicePartitioning(int order, int samples) {
+        int maxPartitionOrder = 0;
+        while (maxPartitionOrder < MAX_PARTITION_ORDER
+                && samples % (1 << (maxPartitionOrder + 1)) == 0
+                && (samples >> (maxPartitionOrder + 1)) > order) {
+            maxPartitionOrder++;
+        }
+        if ((samples >> maxPartitionOrder) <= order) {
+            return -1;
+        }
+
+        // Sums at the finest level, merged pairwise for coarser ones
+        int partitions = 1 << maxPartitionOrder;
+        int partitionSize = samples >> maxPartitionOrder;
+        for (int p = 0; p < partitions; p++) {
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            long sum = 0;
+            for (int i = start; i < end; i++) {
+                int r = residual[i];
+                sum += (r << 1) ^ (r >> 31);
+            }
+            partitionSums[p] = sum;
+        }
+
+        long bestBits = Long.MAX_VALUE;
+        int bestPartitionOrder = 0;
+        for (int partitionOrder = maxPartitionOrder; partitionOrder >= 0; partitionOrder--) {
+            partitions = 1 << partitionOrder;
+            partitionSize = samples >> partitionOrder;
+            if (partitionOrder < maxPartitionOrder) {
+                for (int p = 0; p < partitions; p++) {
+                    partitionSums[p] = partitionSums[2 * p] + partitionSums[2 * p + 1];
+                }
+            }
+
+            long bits = 6; // coding method and partition order
+            for (int p = 0; p < partitions; p++) {
+                int count = p == 0 ? partitionSize - order : partitionSize;
+                int parameter = riceParameter(partitionSums[p], count);
+                riceParameters[p] = parameter;
+                bits += 4 + (long) count * (parameter + 1) + (partitionSums[p] >> parameter);
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestPartitionOrder = partitionOrder;
+                System.arraycopy(riceParameters, 0, bestRiceParameters, 0, partitions);
+            }
+        }
+
+        this.bestPartitionOrder = bestPartitionOrder;
+        return bestBits;
+    }
+
+    private static int riceParameter(long sum, int count) {
+        int parameter = 0;
+        while (parameter < MAX_RICE_PARAMETER && ((long) count << (parameter + 1)) < sum) {
+            parameter++;
+        }
+        return parameter;
+    }
+
+    private void writeFixedSubframe(int order, int samples) {
+        frames.writeBits((0x08 | order) << 1, 8);
+        for (int i = 0; i < order; i++) {
+            frames.writeBits(block[i], BITS_PER_SAMPLE);
+        }
+
+        frames.writeBits(0, 2); // Rice coding with 4-bit parameters
+        frames.writeBits(bestPartitionOrder, 4);
+        int partitions = 1 << bestPartitionOrder;
+        int partitionSize = samples >> bestPartitionOrder;
+        for (int p = 0; p < partitions; p++) {
+            int parameter = bestRiceParameters[p];
+            frames.writeBits(parameter, 4);
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            for (int i = start; i < end; i++) {
+                int r = residual[i];
+                frames.writeRice((r << 1) ^ (r >> 31), parameter);
+            }
+        }
+    }
+
+    private void writeUtf8(long value) {
+        if (value < 0x80) {
+            frames.writeBits((int) value, 8);
+            return;
+        }
+        int continuationBytes = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3
+                : value < 0x4000000 ? 4 : 5;
+        int leadBits = 6 - continuationBytes;
+        int lead = (0xFF00 >> (continuationBytes + 1)) & 0xFF;
+        frames.writeBits(lead | (int) (value >>> (6 * continuationBytes)) & ((1 << leadBits) - 1), 8);
+        for (int i = continuationBytes - 1; i >= 0; i--) {
+            frames.writeBits(0x80 | (int) (value >>> (6 * i)) & 0x3F, 8);
+        }
+    }
+
+    private int blockSizeCode(int samples) {
+        if (samples == 192) {
+            return 1;
+        }
+        for (int code = 2; code <= 5; code++) {
+            if (samples == 576 << (code - 2)) {
+                return code;
+            }
+        }
+        for (int code = 8; code <= 15; code++) {
+            if (samples == 256 << (code - 8)) {
+                return code;
+            }
+        }
+        return samples <= 256 ? 6 : 7;
+    }
+
+    private static int sampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 8000: return 4;
+            case 16000: return 5;
+            case 22050: return 6;
+            case 24000: return 7;
+            case 32000: return 8;
+            case 44100: return 9;
+            case 48000: return 10;
+            case 96000: return 11;
+            default: return 0; // taken from STREAMINFO
+        }
+    }
+
+    private static int crc8(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xff];
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >> 8) ^ data[i]) & 0xff]) & 0xffff;
+        }
+        return crc;
+    }
+
+    private static final class BitWriter {
+        byte[] buffer;
+        private int length;
+        private long bits;
+        private int bitCount;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        int length() {
+            return length;
+        }
+
+        void clear() {
+            length = 0;
+            bits = 0;
+            bitCount = 0;
+        }
+
+        // Writes the low {@code count} bits of value, count <= 32
+        void writeBits(int value, int count) {
+            bits = (bits << count) | (value & (0xFFFFFFFFL >>> (32 - count)));
+            bitCount += count;
+            if (length + 5 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[length++] = (byte) (bits >>> bitCount);
+            }
+        }
+
+        void writeRice(int value, int parameter) {
+            int quotient = value >>> parameter;
+            while (quotient >= 32) {
+                writeBits(0, 32);
+                quotient -= 32;
+            }
+            int lowMask = (1 << parameter) - 1;
+            int total = quotient + 1 + parameter;
+            if (total <= 32) {
+                writeBits((1 << parameter) | (value & lowMask), total);
+            } else {
+                writeBits(1, quotient + 1);
+                writeBits(value & lowMask, parameter);
+            }
+        }
+
+        void alignToByte() {
+            if (bitCount > 0) {
+                writeBits(0, 8 - bitCount);
+            }
+        }
+    }
+}
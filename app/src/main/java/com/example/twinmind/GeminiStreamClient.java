@@ -0,0 +1,315 @@
+package com.example.twinmind;
+
+import android.util.Log;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+/**
+ * Gemini's streamGenerateContent over server-sent events: the answer arrives as a series of
+ * small responses, each handed to {@link Callback#onDelta} as soon as it is read, so the first
+ * words show up in about the time the blocking endpoint takes to start.
+ *
+ * Requests take a Gemini token from {@link RateLimiter} and go through the endpoint's
+ * {@link RetryPolicy} breaker. A failed request is resent only while no text has been delivered;
+ * after that a retry would repeat what the user already sees, so the error is reported instead.
+ */
+public class GeminiStreamClient {
+
+    private static final String TAG = "GeminiStreamClient";
+
+    public static final String DEFAULT_BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
+    static final String MODEL = "gemini-2.0-flash";
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    public interface Callback {
+        // Called in order on a background thread; text is only what is new
+        void onDelta(String text);
+        void onComplete(String text);
+        void onError(String error);
+    }
+
+    // Refused or cut off by the API itself; the same prompt would fail the same way
+    static class StreamRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StreamRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    // A running request; no callback is made after cancel
+    public static class Generation {
+        private volatile boolean cancelled;
+        private volatile Call call;
+        private volatile Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            Call current = call;
+            if (current != null) {
+                current.cancel();
+            }
+            Future<?> task = future;
+            if (task != null) {
+                task.cancel(true);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final String baseUrl;
+    private final String apiKey;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final ExecutorService executor;
+
+    public GeminiStreamClient(OkHttpClient httpClient, String baseUrl, String apiKey, RateLimiter rateLimiter,
+                              RetryPolicy retryPolicy, ExecutorService executor) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.executor = executor;
+    }
+
+    public Generation stream(String prompt, Callback callback) {
+        Request request = new Request.Builder()
+                .url(baseUrl + MODEL + ":streamGenerateContent?alt=sse")
+                .header("x-goog-api-key", apiKey)
+                .post(RequestBody.create(requestJson(prompt), JSON))
+                .build();
+        Generation generation = new Generation();
+        attempt(request, callback, generation, new RetryPolicy.Backoff(), System.nanoTime());
+        return generation;
+    }
+
+    private void attempt(Request request, Callback callback, Generation generation, RetryPolicy.Backoff backoff,
+                         long startNanos) {
+        // Held on the limiter's timer until a token is free, so no pool thread sleeps for it;
+        // cancelling the future drops an attempt that has not started
+        generation.future = rateLimiter.schedule(RateLimiter.Endpoint.GEMINI, executor, () -> {
+            if (generation.cancelled) {
+                return;
+            }
+            if (!retryPolicy.allowRequest(RateLimiter.Endpoint.GEMINI)) {
+                callback.onError("Gemini is unavailable right now, please try again shortly");
+                return;
+            }
+
+            StringBuilder text = new StringBuilder();
+            String failure;
+            boolean retryable;
+            Call call = httpClient.newCall(request);
+            generation.call = call;
+            if (generation.cancelled) {
+                return;
+            }
+            try (Response response = call.execute()) {
+                int code = response.code();
+                if (response.isSuccessful()) {
+                    rateLimiter.onSuccess(RateLimiter.Endpoint.GEMINI);
+                    readEvents(response.body().source(), text, callback, generation, startNanos);
+                    if (generation.cancelled) {
+                        return;
+                    }
+                    retryPolicy.onSuccess(RateLimiter.Endpoint.GEMINI);
+                    Log.d(TAG, "Streamed " + text.length() + " chars in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+                    if (text.length() == 0) {
+                        callback.onError("Empty response from Gemini");
+                    } else {
+                        callback.onComplete(text.toString());
+                    }
+                    return;
+                }
+                if (code == 429) {
+                    rateLimiter.onRateLimited(RateLimiter.Endpoint.GEMINI, response.header("Retry-After"));
+                }
+                retryPolicy.onResponse(RateLimiter.Endpoint.GEMINI, code);
+                failure = describeError(code, response.body().string());
+                retryable = RetryPolicy.isRetryable(code, true);
+            } catch (StreamRejectedException e) {
+                // The endpoint answered; only this prompt was refused
+                retryPolicy.onSuccess(RateLimiter.Endpoint.GEMINI);
+                failure = e.getMessage();
+                retryable = false;
+            } catch (IOException e) {
+                if (generation.cancelled) {
+                    return;
+                }
+                Log.e(TAG, "Gemini stream failed", e);
+                retryPolicy.onFailure(RateLimiter.Endpoint.GEMINI);
+                failure = text.length() == 0 ? "Network error: " + e.getMessage()
+                        : "Connection lost: " + e.getMessage();
+                retryable = RetryPolicy.isRetryable(e, true);
+            }
+
+            // The backoff delay runs on the policy's timer too; the retry then queues for a token
+            if (!retryPolicy.retry(RateLimiter.Endpoint.GEMINI, backoff, retryable && text.length() == 0, executor,
+                    () -> attempt(request, callback, generation, backoff, startNanos))) {
+                Log.e(TAG, "Gemini stream error: " + failure);
+                callback.onError(failure);
+                return;
+            }
+            Log.w(TAG, failure + ", retrying");
+        });
+    }
+
+    // Server-sent events: data lines up to a blank line make one event, lines starting ':' are comments
+    private static void readEvents(BufferedSource source, StringBuilder text, Callback callback,
+                                   Generation generation, long startNanos) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String line;
+        while ((line = source.readUtf8Line()) != null && !generation.cancelled) {
+            if (line.isEmpty()) {
+                dispatch(data, text, callback, startNanos);
+            } else if (line.startsWith("data:")) {
+                if (data.length() > 0) {
+                    data.append('\n');
+                }
+                data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+            }
+        }
+        if (!generation.cancelled) {
+            dispatch(data, text, callback, startNanos);
+        }
+    }
+
+    private static void dispatch(StringBuilder data, StringBuilder text, Callback callback, long startNanos)
+            throws IOException {
+        if (data.length() == 0) {
+            return;
+        }
+        String delta = parseEvent(data.toString());
+        data.setLength(0);
+        if (delta.isEmpty()) {
+            return;
+        }
+        if (text.length() == 0) {
+            Log.d(TAG, "First token after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+        }
+        text.append(delta);
+        callback.onDelta(delta);
+    }
+
+    // One GenerateContentResponse; returns its text, empty if it only carries metadata
+    static String parseEvent(String json) throws IOException {
+        JsonObject root;
+        try {
+            root = JsonParser.parseString(json).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed stream event", e);
+        }
+        if (root.has("error")) {
+            JsonObject error = root.getAsJsonObject("error");
+            throw new StreamRejectedException("Gemini API error: " + string(error, "message"));
+        }
+        if (root.has("promptFeedback") && root.getAsJsonObject("promptFeedback").has("blockReason")) {
+            throw new StreamRejectedException("Prompt blocked: "
+                    + string(root.getAsJsonObject("promptFeedback"), "blockReason"));
+        }
+        JsonArray candidates = root.getAsJsonArray("candidates");
+        if (candidates == null || candidates.size() == 0) {
+            return "";
+        }
+        JsonObject candidate = candidates.get(0).getAsJsonObject();
+        StringBuilder text = new StringBuilder();
+        JsonObject content = candidate.getAsJsonObject("content");
+        JsonArray parts = content != null ? content.getAsJsonArray("parts") : null;
+        if (parts != null) {
+            for (JsonElement part : parts) {
+                text.append(string(part.getAsJsonObject(), "text"));
+            }
+        }
+        String finishReason = string(candidate, "finishReason");
+        if (finishReason.equals("SAFETY") || finishReason.equals("RECITATION")) {
+            throw new StreamRejectedException("Response stopped: " + finishReason);
+        }
+        return text.toString();
+    }
+
+    private static String string(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : "";
+    }
+
+    static String requestJson(String prompt) {
+        JsonObject part = new JsonObject();
+        part.addProperty("text", prompt);
+        JsonArray parts = new JsonArray();
+        parts.add(part);
+        JsonObject content = new JsonObject();
+        content.add("parts", parts);
+        JsonArray contents = new JsonArray();
+        contents.add(content);
+
+        JsonObject generationConfig = new JsonObject();
+        generationConfig.addProperty("temperature", 0.7);
+        generationConfig.addProperty("topK", 40);
+        generationConfig.addProperty("topP", 0.95);
+        generationConfig.addProperty("maxOutputTokens", 2048);
+
+        JsonObject request = new JsonObject();
+        request.add("contents", contents);
+        request.add("generationConfig", generationConfig);
+        return request.toString();
+    }
+
+    // Hex SHA-256 of the model and the request body, which holds the prompt and generation config;
+    // equal keys mean the same request to either endpoint
+    static String cacheKey(String prompt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(MODEL.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        byte[] hash = digest.digest(requestJson(prompt).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    // Shared with the blocking generateContent path
+    static String describeError(int code, String body) {
+        switch (code) {
+            case 400:
+                return "Bad request - check your prompt";
+            case 403:
+                return "API key issue or Generative Language API not enabled";
+            case 429:
+                return "Rate limit exceeded";
+            default:
+                return "Gemini API error: " + code + " - " + body;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import com.google.android.gms.auth.api.signin.GoogleSignInAccount;
 import com.google.android.gms.common.api.Scope;
 import com.google.api.client.extensions.android.http.AndroidHttp;
 import com.google.api.client.googleapis.extensions.android.gms.auth.GoogleAccountCredential;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.CalendarScopes;
@@ -27,6 +28,7 @@ public class GoogleCalendarService {
     private Context context;
     private Calendar calendarService;
     private ExecutorService executorService;
+    private final RateLimiter rateLimiter;
 
     public interface CalendarCallback {
         void onEventsLoaded(List<CalendarEvent> events);
@@ -37,6 +39,7 @@ public class GoogleCalendarService {
     public GoogleCalendarService(Context context) {
         this.context = context;
         this.executorService = Executors.newSingleThreadExecutor();
+        this.rateLimiter = RateLimiter.getInstance();
     }
 
     public void loadUpcomingEvents(CalendarCallback callback) {
@@ -61,10 +64,17 @@ public class GoogleCalendarService {
             callback.onError("Failed to setup calendar service");
             return;
         }
-        executorService.execute(() -> {
+        rateLimiter.schedule(RateLimiter.Endpoint.CALENDAR, executorService, () -> {
             try {
                 List<CalendarEvent> events = fetchEventsFromAPI(daysAhead);
+                rateLimiter.onSuccess(RateLimiter.Endpoint.CALENDAR);
                 callback.onEventsLoaded(events);
+            } catch (HttpResponseException e) {
+                if (e.getStatusCode() == 429) {
+                    rateLimiter.onRateLimited(RateLimiter.Endpoint.CALENDAR, e.getHeaders().getRetryAfter());
+                }
+                Log.e(TAG, "Error loading calendar events", e);
+                callback.onError("Failed to load calendar events: " + e.getMessage());
             } catch (Exception e) {
                 Log.e(TAG, "Error loading calendar events", e);
                 callback.onError("Failed to load calendar events: " + e.getMessage());
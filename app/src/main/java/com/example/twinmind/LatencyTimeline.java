@@ -0,0 +1,230 @@
+package com.example.twinmind;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+
+/**
+ * Where a chunk's time goes between the end of its audio and its text reaching the screen.
+ *
+ * Each chunk carries a {@link Trace}: one monotonic timestamp per {@link Stage}, set by whichever
+ * thread does that step. When the chunk is done its trace is folded into one histogram per stage,
+ * holding the time since the previous stage, and one for the whole trip. A mark is a
+ * System.nanoTime() and an array store; a finished trace costs a few atomic increments.
+ *
+ * The last {@link #RECENT_TRACES} traces are kept whole, so an export shows individual slow
+ * chunks as well as the distributions.
+ */
+public class LatencyTimeline {
+
+    public enum Stage {
+        // The capture thread saw the cut that ends the chunk's audio
+        CAPTURE_END,
+        // The chunk thread took the cut from the chunker
+        DEQUEUED,
+        ENCODED,
+        // Request headers started going out; includes queueing for a rate-limit token
+        REQUEST_SENT,
+        // Response headers arrived
+        FIRST_BYTE,
+        PARSED,
+        DB_COMMITTED,
+        // The listener was called on the main thread
+        DELIVERED
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    static final int RECENT_TRACES = 256;
+
+    // One chunk's timestamps; 0 where the stage has not happened
+    public static class Trace {
+        private final long[] nanos = new long[STAGES.length];
+
+        public void mark(Stage stage) {
+            nanos[stage.ordinal()] = System.nanoTime();
+        }
+
+        // For stages more than one thread may reach, e.g. a request and its hedge
+        public void markFirst(Stage stage) {
+            if (nanos[stage.ordinal()] == 0) {
+                nanos[stage.ordinal()] = System.nanoTime();
+            }
+        }
+
+        void set(Stage stage, long nanoTime) {
+            nanos[stage.ordinal()] = nanoTime;
+        }
+
+        // A retried request starts its network stages over
+        public void clearFrom(Stage stage) {
+            for (int i = stage.ordinal(); i < nanos.length; i++) {
+                nanos[i] = 0;
+            }
+        }
+
+        public long get(Stage stage) {
+            return nanos[stage.ordinal()];
+        }
+    }
+
+    // Marks REQUEST_SENT and FIRST_BYTE on calls whose request is tagged with a Trace
+    public static final EventListener.Factory EVENT_LISTENER_FACTORY = call -> {
+        Trace trace = call.request().tag(Trace.class);
+        if (trace == null) {
+            return EventListener.NONE;
+        }
+        return new EventListener() {
+            @Override
+            public void requestHeadersStart(Call call) {
+                trace.markFirst(Stage.REQUEST_SENT);
+            }
+
+            @Override
+            public void responseHeadersStart(Call call) {
+                trace.markFirst(Stage.FIRST_BYTE);
+            }
+        };
+    };
+
+    private static LatencyTimeline instance;
+
+    private final LatencyHistogram[] stageHistograms = new LatencyHistogram[STAGES.length];
+    private final LatencyHistogram totalHistogram = new LatencyHistogram();
+    private final long[][] recent = new long[RECENT_TRACES][STAGES.length];
+    private final long[] recentSequences = new long[RECENT_TRACES];
+    private long traces;
+
+    public static synchronized LatencyTimeline getInstance() {
+        if (instance == null) {
+            instance = new LatencyTimeline();
+        }
+        return instance;
+    }
+
+    LatencyTimeline() {
+        for (int i = 0; i < STAGES.length; i++) {
+            stageHistograms[i] = new LatencyHistogram();
+        }
+    }
+
+    // Once per chunk, after its last stage. Traces without a capture end, such as replayed
+    // chunks, are ignored.
+    public void record(long sequence, Trace trace) {
+        long start = trace.nanos[0];
+        if (start == 0) {
+            return;
+        }
+        long previous = start;
+        long last = start;
+        for (int i = 1; i < STAGES.length; i++) {
+            long at = trace.nanos[i];
+            if (at == 0) {
+                continue;
+            }
+            stageHistograms[i].record((at - previous) / 1000);
+            previous = at;
+            last = Math.max(last, at);
+        }
+        totalHistogram.record((last - start) / 1000);
+
+        synchronized (recent) {
+            int slot = (int) (traces % RECENT_TRACES);
+            System.arraycopy(trace.nanos, 0, recent[slot], 0, STAGES.length);
+            recentSequences[slot] = sequence;
+            traces++;
+        }
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return stageHistograms[stage.ordinal()];
+    }
+
+    public LatencyHistogram getTotalHistogram() {
+        return totalHistogram;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : stageHistograms) {
+            histogram.reset();
+        }
+        totalHistogram.reset();
+        synchronized (recent) {
+            traces = 0;
+        }
+    }
+
+    // One line per stage: time since the previous stage, percentiles in ms
+    public String summary() {
+        StringBuilder builder = new StringBuilder("Chunk latency (ms since previous stage)");
+        for (int i = 1; i < STAGES.length; i++) {
+            appendLine(builder, STAGES[i].name().toLowerCase(Locale.US), stageHistograms[i]);
+        }
+        appendLine(builder, "total", totalHistogram);
+        return builder.toString();
+    }
+
+    private static void appendLine(StringBuilder builder, String name, LatencyHistogram histogram) {
+        builder.append(String.format(Locale.US, "\n%s: n=%d p50=%.1f p90=%.1f p99=%.1f max=%.1f", name,
+                histogram.getCount(), histogram.getPercentileMicros(0.5) / 1000.0,
+                histogram.getPercentileMicros(0.9) / 1000.0, histogram.getPercentileMicros(0.99) / 1000.0,
+                histogram.getMaxMicros() / 1000.0));
+    }
+
+    public File exportTo(File file) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            export(writer);
+        }
+        return file;
+    }
+
+    // CSV: per-stage percentiles, then the recent traces as ms since their capture end (-1 where
+    // a stage was never reached)
+    public void export(Writer writer) throws IOException {
+        writer.write("stage,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms\n");
+        for (int i = 1; i < STAGES.length; i++) {
+            writeStage(writer, STAGES[i].name().toLowerCase(Locale.US), stageHistograms[i]);
+        }
+        writeStage(writer, "total", totalHistogram);
+
+        writer.write("\nsequence");
+        for (Stage stage : STAGES) {
+            writer.write(',');
+            writer.write(stage.name().toLowerCase(Locale.US) + "_ms");
+        }
+        writer.write('\n');
+        long[][] copy;
+        long[] sequences;
+        long count;
+        synchronized (recent) {
+            count = Math.min(traces, RECENT_TRACES);
+            long first = traces - count;
+            copy = new long[(int) count][];
+            sequences = new long[(int) count];
+            for (int i = 0; i < count; i++) {
+                int slot = (int) ((first + i) % RECENT_TRACES);
+                copy[i] = recent[slot].clone();
+                sequences[i] = recentSequences[slot];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder().append(sequences[i]);
+            long start = copy[i][0];
+            for (long at : copy[i]) {
+                line.append(',').append(at == 0 ? "-1" : String.format(Locale.US, "%.3f", (at - start) / 1e6));
+            }
+            writer.write(line.append('\n').toString());
+        }
+    }
+
+    private static void writeStage(Writer writer, String name, LatencyHistogram histogram) throws IOException {
+        writer.write(String.format(Locale.US, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f\n", name, histogram.getCount(),
+                histogram.getMeanMicros() / 1000.0, histogram.getPercentileMicros(0.5) / 1000.0,
+                histogram.getPercentileMicros(0.9) / 1000.0, histogram.getPercentileMicros(0.99) / 1000.0,
+                histogram.getMaxMicros() / 1000.0));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.twinmind;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generated text by request, so reopening a session's notes does not pay for the same answer
+ * twice. Keys come from {@link GeminiStreamClient#cacheKey}, a hash of model, generation config
+ * and prompt. A small {@link ResponseLru} sits in front of a table in the transcription database
+ * that is bounded by size and kept for {@link #TTL_MS}.
+ *
+ * Entries are filed under the session they were generated from. The database drops them whenever
+ * that session's transcript is written, replaced or deleted; the prompt holds the transcript, so
+ * they could not be hit again anyway, and this keeps them from taking up the space.
+ *
+ * Lookups may read the database; call from a background thread.
+ */
+public class LlmResponseCache {
+
+    private static final String TAG = "LlmResponseCache";
+
+    static final long TTL_MS = TimeUnit.DAYS.toMillis(30);
+    private static final long MEMORY_MAX_CHARS = 256 * 1024;
+    private static final long DISK_MAX_BYTES = 4 * 1024 * 1024;
+
+    private static LlmResponseCache instance;
+
+    private final TranscriptionDatabaseHelper dbHelper;
+    private final ResponseLru memory = new ResponseLru(MEMORY_MAX_CHARS, TTL_MS);
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public static synchronized LlmResponseCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new LlmResponseCache(TranscriptionDatabaseHelper.getInstance(context));
+        }
+        return instance;
+    }
+
+    // For the database, which has no Context to hand; does nothing before the cache is first used
+    static void onTranscriptChanged(String sessionId) {
+        LlmResponseCache cache;
+        synchronized (LlmResponseCache.class) {
+            cache = instance;
+        }
+        if (cache != null) {
+            cache.memory.removeSession(sessionId);
+            cache.invalidations.incrementAndGet();
+        }
+    }
+
+    static void onAllCleared() {
+        LlmResponseCache cache;
+        synchronized (LlmResponseCache.class) {
+            cache = instance;
+        }
+        if (cache != null) {
+            cache.memory.clear();
+        }
+    }
+
+    private LlmResponseCache(TranscriptionDatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    // Null on a miss
+    public String get(String key) {
+        long now = System.currentTimeMillis();
+        String response = memory.get(key, now);
+        if (response != null) {
+            memoryHits.incrementAndGet();
+            return response;
+        }
+        TranscriptionDatabaseHelper.CachedResponse cached = dbHelper.getCachedResponse(key, now - TTL_MS, now);
+        if (cached != null) {
+            diskHits.incrementAndGet();
+            memory.put(key, cached.sessionId, cached.response, cached.createdAt);
+            return cached.response;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // sessionId may be null for answers that depend on no transcript
+    public void put(String key, String sessionId, String response) {
+        long now = System.currentTimeMillis();
+        memory.put(key, sessionId, response, now);
+        dbHelper.putCachedResponse(key, sessionId, response, now);
+        stores.incrementAndGet();
+        int evicted = dbHelper.trimCachedResponses(DISK_MAX_BYTES, now - TTL_MS);
+        if (evicted > 0) {
+            diskEvictions.addAndGet(evicted);
+            Log.d(TAG, "Evicted " + evicted + " cached responses");
+        }
+    }
+
+    public String summary() {
+        long hits = memoryHits.get() + diskHits.get();
+        long lookups = hits + misses.get();
+        return String.format(Locale.US,
+                "LLM cache: hits=%d (memory %d, disk %d) misses=%d hit rate=%.0f%% stores=%d "
+                        + "memory=%d entries/%dKB evictions memory=%d disk=%d invalidations=%d",
+                hits, memoryHits.get(), diskHits.get(), misses.get(), lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                stores.get(), memory.size(), memory.getChars() / 1024, memory.getEvictions(), diskEvictions.get(),
+                invalidations.get());
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.twinmind;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Blocking client for the Speech API's speech:longrunningrecognize: starts an operation for a
+ * long stretch of audio with the long-form model and polls it until the transcript is ready.
+ *
+ * Meant for a background thread that may wait. Every request takes a Speech API token from
+ * {@link RateLimiter} and goes through the endpoint's {@link RetryPolicy} breaker; polls are
+ * retried after network errors and server faults, starting an operation only when resending it
+ * cannot start a second one. Interrupting the thread abandons the operation.
+ */
+public class LongRunningRecognizer {
+
+    private static final String TAG = "LongRunningRecognizer";
+
+    public static final String DEFAULT_BASE_URL = "https://speech.googleapis.com/v1/";
+    // Trained on long audio like meetings; too slow for the live path's short requests
+    static final String MODEL = "latest_long";
+
+    static final long INITIAL_POLL_MS = 2_000;
+    static final long MAX_POLL_MS = 15_000;
+    // Operations usually finish in well under the audio's duration; past this one is stuck
+    static final long OPERATION_TIMEOUT_MS = 15 * 60_000;
+
+    // The request or its audio was refused, or cannot be read; trying again will not help
+    public static class RejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final String baseUrl;
+    private final String apiKey;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private long initialPollMs = INITIAL_POLL_MS;
+    private long maxPollMs = MAX_POLL_MS;
+
+    public LongRunningRecognizer(OkHttpClient httpClient, String baseUrl, String apiKey, RateLimiter rateLimiter,
+                                 RetryPolicy retryPolicy) {
+        this.httpClient = httpClient;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+    }
+
+    void setPollIntervalMs(long initialPollMs, long maxPollMs) {
+        this.initialPollMs = initialPollMs;
+        this.maxPollMs = maxPollMs;
+    }
+
+    public SpeechJson.Recognition recognize(byte[] audio, String encoding, int sampleRate, String languageCode)
+            throws IOException, InterruptedException {
+        RequestBody body = SpeechJson.recognizeRequest(audio, encoding, sampleRate, languageCode, MODEL);
+        Request start = new Request.Builder()
+                .url(baseUrl + "speech:longrunningrecognize")
+                .header("x-goog-api-key", apiKey)
+                .post(body)
+                .build();
+        // A resent start may begin, and bill, a second operation
+        SpeechJson.Operation operation = execute(start, false);
+        if (operation.name == null) {
+            throw new IOException("No operation name in response");
+        }
+        String name = operation.name;
+        Log.d(TAG, "Started operation " + name + " for " + audio.length + " bytes of " + encoding);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(OPERATION_TIMEOUT_MS);
+        long pollMs = initialPollMs;
+        while (!operation.done) {
+            if (System.nanoTime() > deadline) {
+                throw new IOException("Timed out waiting for operation " + name);
+            }
+            Thread.sleep(pollMs);
+            pollMs = Math.min(maxPollMs, pollMs * 3 / 2);
+            Request poll = new Request.Builder()
+                    .url(baseUrl + "operations/" + name)
+                    .header("x-goog-api-key", apiKey)
+                    .get()
+                    .build();
+            operation = execute(poll, true);
+        }
+
+        if (operation.error != null) {
+            throw new RejectedException("Operation " + name + " failed: " + operation.error);
+        }
+        // Audio with no speech finishes without results
+        return operation.recognition != null ? operation.recognition
+                : new SpeechJson.Recognition("", new ArrayList<>());
+    }
+
+    private SpeechJson.Operation execute(Request request, boolean idempotent) throws IOException, InterruptedException {
+        RetryPolicy.Backoff backoff = new RetryPolicy.Backoff();
+        while (true) {
+            Thread.sleep(rateLimiter.reserve(RateLimiter.Endpoint.SPEECH));
+            if (!retryPolicy.allowRequest(RateLimiter.Endpoint.SPEECH)) {
+                throw new IOException("Speech API unavailable");
+            }
+
+            String failure = null;
+            boolean retryable = false;
+            Response response;
+            try {
+                response = httpClient.newCall(request).execute();
+            } catch (IOException e) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                retryPolicy.onFailure(RateLimiter.Endpoint.SPEECH);
+                failure = "Network error: " + e.getMessage();
+                retryable = RetryPolicy.isRetryable(e, idempotent);
+                response = null;
+            }
+
+            if (response != null) {
+                try (Response closing = response) {
+                    int code = closing.code();
+                    if (closing.isSuccessful()) {
+                        rateLimiter.onSuccess(RateLimiter.Endpoint.SPEECH);
+                        retryPolicy.onSuccess(RateLimiter.Endpoint.SPEECH);
+                        try {
+                            return SpeechJson.parseOperation(closing.body().charStream());
+                        } catch (IllegalStateException e) {
+                            throw new IOException("Malformed operation response", e);
+                        }
+                    }
+                    if (code == 429) {
+                        rateLimiter.onRateLimited(RateLimiter.Endpoint.SPEECH, closing.header("Retry-After"));
+                    }
+                    retryPolicy.onResponse(RateLimiter.Endpoint.SPEECH, code);
+                    failure = "HTTP " + code;
+                    retryable = RetryPolicy.isRetryable(code, idempotent);
+                    if (code == 400) {
+                        throw new RejectedException(failure + ": " + closing.body().string());
+                    }
+                }
+            }
+
+            long delayMs = retryPolicy.retryDelayMs(RateLimiter.Endpoint.SPEECH, backoff, retryable);
+            if (delayMs < 0) {
+                throw new IOException(failure);
+            }
+            Log.w(TAG, failure + ", retrying in " + delayMs + "ms");
+            Thread.sleep(delayMs);
+        }
+    }
+}
@@ -15,7 +15,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class NotesFragment extends Fragment implements OpenAIManager.OpenAICallback {
 
@@ -147,67 +150,93 @@ public class NotesFragment extends Fragment implements OpenAIManager.OpenAICallb
     }
 
     private void processTranscriptions(List<TranscriptionEntry> transcriptions) {
-        StringBuilder fullTranscript = new StringBuilder();
+        List<String> segments = new ArrayList<>();
+        int length = 0;
         for (TranscriptionEntry entry : transcriptions) {
-            fullTranscript.append(entry.transcriptionText).append(" ");
-            Log.d(TAG, "Adding transcription: " + entry.transcriptionText);
+            if (entry.transcriptionText != null && !entry.transcriptionText.trim().isEmpty()) {
+                segments.add(entry.transcriptionText);
+                length += entry.transcriptionText.length();
+            }
         }
 
-        String transcriptText = fullTranscript.toString().trim();
-
-        if (transcriptText.isEmpty()) {
+        if (segments.isEmpty()) {
             Log.w(TAG, "Transcript text is empty - showing error");
             showError("No transcription content available");
             return;
         }
 
-        Log.d(TAG, "Full transcript: " + transcriptText);
-        Log.d(TAG, "Transcript length: " + transcriptText.length());
+        Log.d(TAG, "Transcript length: " + length + " chars in " + segments.size() + " segments");
 
-        generateSummaryAndNotes(transcriptText);
+        generateSummaryAndNotes(segments);
     }
 
-    private void generateSummaryAndNotes(String transcriptText) {
-        String prompt = createNotesPrompt(transcriptText);
-
-        Log.d(TAG, "Calling OpenAI with prompt length: " + prompt.length());
-
-        openAIManager.generateText(prompt, new OpenAIManager.OpenAICallback() {
-            @Override
-            public void onSuccess(String response) {
-                Log.d(TAG, "OpenAI Success: " + response);
+    private void generateSummaryAndNotes(List<String> segments) {
+        // One prompt unless the transcript is too long for the model's context; then it is
+        // summarized in windows, each cached, so a retry only pays for the windows that failed
+        TranscriptSummarizer summarizer = new TranscriptSummarizer(segments,
+                prompt -> openAIManager.generateTextAsync(prompt, sessionId));
+        Log.d(TAG, "Summarizing transcript in " + summarizer.getWindowCount() + " windows");
+
+        new Thread(() -> {
+            try {
+                // Sessions summarized while recording only need the part said since
+                String rolling = loadRollingNotes();
+                String response = rolling != null ? rolling : summarizer.summarize();
+                Log.d(TAG, "Notes generated: " + response.length() + " chars");
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(() -> {
                         parseAndDisplayNotes(response);
                         showLoading(false);
                     });
                 }
-            }
-
-            @Override
-            public void onError(String error) {
-                Log.e(TAG, "OpenAI Error: " + error);
+            } catch (Exception e) {
+                Log.e(TAG, "Notes generation failed after " + summarizer.getCompletedWindows() + " of "
+                        + summarizer.getWindowCount() + " windows", e);
                 if (getActivity() != null) {
                     getActivity().runOnUiThread(() -> {
-                        showError("Failed to generate notes: " + error);
+                        showError("Failed to generate notes: " + e.getMessage());
                     });
                 }
             }
-        });
+        }, TAG).start();
     }
 
-    private String createNotesPrompt(String transcriptText) {
-        return "Please analyze the following meeting/conversation transcript and provide a structured summary in the following format:\n\n" +
-                "## Summary\n" +
-                "[Provide a concise 2-3 sentence overview of the main topics discussed]\n\n" +
-                "## Meeting Process Overview\n" +
-                "[Outline the flow and structure of the meeting/conversation]\n\n" +
-                "## Action Items\n" +
-                "[List specific action items, tasks, or next steps mentioned]\n\n" +
-                "## Your Notes\n" +
-                "[Provide detailed notes organized by topic or speaker, including key decisions, important points, and any other relevant information]\n\n" +
-                "Transcript:\n" + transcriptText + "\n\n" +
-                "Please ensure the response is well-formatted and easy to read. If the transcript is unclear or incomplete, work with what's available and note any limitations.";
+    // Notes from the summary RollingSummarizer kept while recording: as saved if nothing was
+    // transcribed after them, else rewritten with just the rows the summary has not seen. Null if
+    // the session has none, e.g. it was recorded before rolling summaries, or this fails.
+    private String loadRollingNotes() throws InterruptedException {
+        CompletableFuture<String> pending = RollingSummarizer.getPendingNotes(sessionId);
+        if (pending != null) {
+            Log.d(TAG, "Waiting for the notes started when recording stopped");
+            try {
+                pending.get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Notes started at stop failed", e);
+            }
+        }
+        TranscriptionDatabaseHelper.RollingSummary saved = dbHelper.getRollingSummary(sessionId);
+        if (saved == null) {
+            return null;
+        }
+        if (saved.notes != null && dbHelper.getTranscriptionsAfter(sessionId, saved.notesCoveredId).isEmpty()) {
+            Log.d(TAG, "Showing notes written during recording");
+            return saved.notes;
+        }
+        if (saved.summary == null) {
+            return null;
+        }
+        List<TranscriptionEntry> rows = dbHelper.getTranscriptionsAfter(sessionId, saved.coveredId);
+        long lastId = rows.isEmpty() ? saved.coveredId : rows.get(rows.size() - 1).id;
+        try {
+            String notes = openAIManager.generateTextAsync(
+                    RollingSummarizer.notesPrompt(saved.summary, RollingSummarizer.join(rows)), sessionId).get();
+            dbHelper.saveSessionNotes(sessionId, notes, lastId);
+            Log.d(TAG, "Notes written from the rolling summary and " + rows.size() + " new rows");
+            return notes;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Notes from the rolling summary failed, summarizing the transcript instead", e);
+            return null;
+        }
     }
 
     private void parseAndDisplayNotes(String response) {
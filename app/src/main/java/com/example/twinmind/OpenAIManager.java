@@ -7,12 +7,18 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
 
 public class OpenAIManager {
 
@@ -24,10 +30,24 @@ public class OpenAIManager {
 
     private ExecutorService executorService;
     private Context context;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final GeminiStreamClient streamClient;
+    private final LlmResponseCache responseCache;
 
     public OpenAIManager(Context context) {
         this.context = context;
         this.executorService = Executors.newCachedThreadPool();
+        this.rateLimiter = RateLimiter.getInstance();
+        this.retryPolicy = RetryPolicy.getInstance();
+        // Read timeout applies between events, so a long answer is fine as long as it keeps coming
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+        this.streamClient = new GeminiStreamClient(httpClient, GeminiStreamClient.DEFAULT_BASE_URL, API_KEY,
+                rateLimiter, retryPolicy, executorService);
+        this.responseCache = LlmResponseCache.getInstance(context);
     }
 
     public interface OpenAICallback {
@@ -35,14 +55,86 @@ public class OpenAIManager {
         void onError(String error);
     }
 
+    // Error with the HTTP status, so failures can be classified for retry
+    private static class GeminiHttpException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        GeminiHttpException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    // Text arrives in pieces as Gemini writes it; cancel the returned generation to stop early
+    public GeminiStreamClient.Generation streamText(String prompt, GeminiStreamClient.Callback callback) {
+        Log.d(TAG, "Starting Gemini streaming request");
+        return streamClient.stream(prompt, callback);
+    }
+
     public void generateText(String prompt, OpenAICallback callback) {
         Log.d(TAG, "Starting Gemini text generation request");
+        attemptGenerateText(prompt, callback, new RetryPolicy.Backoff());
+    }
 
+    // Like generateText, but a request identical to an earlier one is answered from
+    // LlmResponseCache. The answer is filed under sessionId, whose transcript changing drops it.
+    public void generateTextCached(String prompt, String sessionId, OpenAICallback callback) {
+        String key = GeminiStreamClient.cacheKey(prompt);
         executorService.execute(() -> {
+            String cached = responseCache.get(key);
+            if (cached != null) {
+                Log.d(TAG, "Gemini response served from cache");
+                callback.onSuccess(cached);
+                return;
+            }
+            generateText(prompt, new OpenAICallback() {
+                @Override
+                public void onSuccess(String response) {
+                    // The prompt holds the transcript, so an answer stored after the transcript
+                    // changed is keyed by the old text and never served for the new one
+                    responseCache.put(key, sessionId, response);
+                    callback.onSuccess(response);
+                }
+
+                @Override
+                public void onError(String error) {
+                    callback.onError(error);
+                }
+            });
+        });
+    }
+
+    private void attemptGenerateText(String prompt, OpenAICallback callback, RetryPolicy.Backoff backoff) {
+        // Waits for a Gemini token on the limiter's timer, not on a pool thread
+        rateLimiter.schedule(RateLimiter.Endpoint.GEMINI, executorService, () -> {
+            if (!retryPolicy.allowRequest(RateLimiter.Endpoint.GEMINI)) {
+                callback.onError("Gemini is unavailable right now, please try again shortly");
+                return;
+            }
+            // generateContent has no side effects, so a failed request may always be resent
+            Runnable retry = () -> attemptGenerateText(prompt, callback, backoff);
             try {
                 String response = callGeminiAPI(prompt);
+                retryPolicy.onSuccess(RateLimiter.Endpoint.GEMINI);
                 callback.onSuccess(response);
+            } catch (GeminiHttpException e) {
+                retryPolicy.onResponse(RateLimiter.Endpoint.GEMINI, e.code);
+                if (!retryPolicy.retry(RateLimiter.Endpoint.GEMINI, backoff, RetryPolicy.isRetryable(e.code, true),
+                        executorService, retry)) {
+                    callback.onError(e.getMessage());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Gemini API call failed", e);
+                retryPolicy.onFailure(RateLimiter.Endpoint.GEMINI);
+                if (!retryPolicy.retry(RateLimiter.Endpoint.GEMINI, backoff, RetryPolicy.isRetryable(e, true),
+                        executorService, retry)) {
+                    callback.onError(e.getMessage());
+                }
             } catch (Exception e) {
+                // Only thrown for a 200 whose body could not be used, so the endpoint itself is up
+                retryPolicy.onSuccess(RateLimiter.Endpoint.GEMINI);
                 Log.e(TAG, "Error calling Gemini API", e);
                 callback.onError(e.getMessage());
             }
@@ -57,33 +149,15 @@ public class OpenAIManager {
         connection.setRequestMethod("POST");
         connection.setRequestProperty("Content-Type", "application/json");
         connection.setDoOutput(true);
+        // The defaults never time out, which would hold a pool thread for as long as the endpoint hangs
+        connection.setConnectTimeout(30_000);
+        connection.setReadTimeout(60_000);
 
-        // Create request body for Gemini API
-        JSONObject requestBody = new JSONObject();
-        JSONArray contents = new JSONArray();
-        JSONObject content = new JSONObject();
-        JSONArray parts = new JSONArray();
-        JSONObject part = new JSONObject();
-
-        part.put("text", prompt);
-        parts.put(part);
-        content.put("parts", parts);
-        contents.put(content);
-        requestBody.put("contents", contents);
-
-        // Add generation config for better results
-        JSONObject generationConfig = new JSONObject();
-        generationConfig.put("temperature", 0.7);
-        generationConfig.put("topK", 40);
-        generationConfig.put("topP", 0.95);
-        generationConfig.put("maxOutputTokens", 2048);
-        requestBody.put("generationConfig", generationConfig);
-
-        Log.d(TAG, "Sending request to Gemini API with model: gemini-2.0-flash");
-
-        // Send request
+        Log.d(TAG, "Sending request to Gemini API with model: " + GeminiStreamClient.MODEL);
+
+        // Same body as the streaming endpoint, so cache keys describe either request
         try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestBody.toString().getBytes("utf-8");
+            byte[] input = GeminiStreamClient.requestJson(prompt).getBytes(StandardCharsets.UTF_8);
             os.write(input, 0, input.length);
         }
 
@@ -92,6 +166,7 @@ public class OpenAIManager {
         Log.d(TAG, "Gemini API Response Code: " + responseCode);
 
         if (responseCode == HttpURLConnection.HTTP_OK) {
+            rateLimiter.onSuccess(RateLimiter.Endpoint.GEMINI);
             BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
             StringBuilder response = new StringBuilder();
             String line;
@@ -110,8 +185,8 @@ public class OpenAIManager {
 
                 if (candidates.length() > 0) {
                     JSONObject candidate = candidates.getJSONObject(0);
-                    content = candidate.getJSONObject("content");
-                    parts = content.getJSONArray("parts");
+                    JSONObject content = candidate.getJSONObject("content");
+                    JSONArray parts = content.getJSONArray("parts");
                     String text = parts.getJSONObject(0).getString("text");
 
                     Log.d(TAG, "Gemini response parsed successfully");
@@ -134,19 +209,42 @@ public class OpenAIManager {
 
             Log.e(TAG, "Gemini API Error: " + errorResponse.toString());
 
-            // Handle specific error cases
-            if (responseCode == 400) {
-                throw new Exception("Bad request - check your prompt");
-            } else if (responseCode == 403) {
-                throw new Exception("API key issue or Generative Language API not enabled");
-            } else if (responseCode == 429) {
-                throw new Exception("Rate limit exceeded");
-            } else {
-                throw new Exception("Gemini API error: " + responseCode + " - " + errorResponse.toString());
+            if (responseCode == 429) {
+                rateLimiter.onRateLimited(RateLimiter.Endpoint.GEMINI, connection.getHeaderField("Retry-After"));
             }
+            throw new GeminiHttpException(responseCode,
+                    GeminiStreamClient.describeError(responseCode, errorResponse.toString()));
         }
     }
 
+    // generateTextCached as a future, failed with an IOException carrying the error message
+    public CompletableFuture<String> generateTextAsync(String prompt, String sessionId) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        generateTextCached(prompt, sessionId, completing(future));
+        return future;
+    }
+
+    // generateText as a future, for prompts that are never sent twice and so are not worth caching
+    public CompletableFuture<String> generateTextAsync(String prompt) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        generateText(prompt, completing(future));
+        return future;
+    }
+
+    private static OpenAICallback completing(CompletableFuture<String> future) {
+        return new OpenAICallback() {
+            @Override
+            public void onSuccess(String response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onError(String error) {
+                future.completeExceptionally(new IOException(error));
+            }
+        };
+    }
+
     public void shutdown() {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
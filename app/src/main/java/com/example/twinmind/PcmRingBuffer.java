@@ -0,0 +1,224 @@
+package com.example.twinmind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity single-producer/single-consumer byte ring for 16-bit PCM.
+ *
+ * The capture thread is the only writer and never blocks: if the consumer falls behind,
+ * the part of a write that does not fit is dropped and counted. The consumer reads the
+ * buffered audio through read-only views of the backing array and releases it once done.
+ */
+public class PcmRingBuffer {
+
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final int mask;
+
+    // Positions are absolute byte counts since creation; index = position & mask
+    private final AtomicLong writePosition = new AtomicLong();
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    // Producer-local snapshot of readPosition, refreshed only when the ring looks full
+    private long cachedReadPosition;
+
+    public PcmRingBuffer(int minCapacityBytes) {
+        if (minCapacityBytes < BYTES_PER_SAMPLE) {
+            throw new IllegalArgumentException("Capacity too small: " + minCapacityBytes);
+        }
+        int size = Integer.highestOneBit(minCapacityBytes - 1) << 1;
+        if (size <= 0) {
+            throw new IllegalArgumentException("Capacity too large: " + minCapacityBytes);
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.buffer = new byte[size];
+    }
+
+    // Producer side
+
+    public int write(byte[] src, int offset, int length) {
+        long write = writePosition.get();
+        int toWrite = writableBytes(write, length);
+
+        if (toWrite > 0) {
+            int index = (int) (write & mask);
+            int first = Math.min(toWrite, capacity - index);
+            System.arraycopy(src, offset, buffer, index, first);
+            if (toWrite > first) {
+                System.arraycopy(src, offset + first, buffer, 0, toWrite - first);
+            }
+            writePosition.lazySet(write + toWrite);
+        }
+        return toWrite;
+    }
+
+    public int write(ByteBuffer src) {
+        int length = src.remaining();
+        long write = writePosition.get();
+        int toWrite = writableBytes(write, length);
+
+        if (toWrite > 0) {
+            int index = (int) (write & mask);
+            int first = Math.min(toWrite, capacity - index);
+            src.get(buffer, index, first);
+            if (toWrite > first) {
+                src.get(buffer, 0, toWrite - first);
+            }
+            writePosition.lazySet(write + toWrite);
+        }
+        // Whatever did not fit is discarded, so the caller's buffer is always fully consumed
+        src.position(src.limit());
+        return toWrite;
+    }
+
+    private int writableBytes(long write, int length) {
+        long free = capacity - (write - cachedReadPosition);
+        if (free < length) {
+            cachedReadPosition = readPosition.get();
+            free = capacity - (write - cachedReadPosition);
+        }
+
+        // Keep partial writes on a sample boundary so the stream never gets misaligned
+        int toWrite = (int) Math.min(length, free) & ~(BYTES_PER_SAMPLE - 1);
+        if (toWrite < length) {
+            droppedBytes.addAndGet(length - toWrite);
+        }
+        return toWrite;
+    }
+
+    // Consumer side
+
+    public int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+
+    public PcmSlice slice(int maxBytes) {
+        long read = readPosition.get();
+        int length = (int) Math.min(maxBytes, writePosition.get() - read) & ~(BYTES_PER_SAMPLE - 1);
+        return sliceAt(read, Math.max(length, 0));
+    }
+
+    public PcmSlice slice(long fromPosition, int length) {
+        long read = readPosition.get();
+        if (fromPosition < read || fromPosition + length > writePosition.get()) {
+            throw new IllegalArgumentException("Range [" + fromPosition + ", " + (fromPosition + length)
+                    + ") is not buffered");
+        }
+        return sliceAt(fromPosition, length);
+    }
+
+    private PcmSlice sliceAt(long position, int length) {
+        int index = (int) (position & mask);
+        int first = Math.min(length, capacity - index);
+
+        ByteBuffer head = ByteBuffer.wrap(buffer, index, first).slice().asReadOnlyBuffer();
+        ByteBuffer tail = length > first
+                ? ByteBuffer.wrap(buffer, 0, length - first).slice().asReadOnlyBuffer()
+                : null;
+        return new PcmSlice(position, length, head, tail);
+    }
+
+    public void release(int bytes) {
+        long read = readPosition.get();
+        long target = Math.min(read + bytes, writePosition.get());
+        readPosition.lazySet(target);
+    }
+
+    public void releaseTo(long position) {
+        long read = readPosition.get();
+        if (position > read) {
+            release((int) Math.min(Integer.MAX_VALUE, position - read));
+        }
+    }
+
+    public int read(byte[] dst, int offset, int length) {
+        PcmSlice slice = slice(length);
+        slice.copyTo(dst, offset);
+        release(slice.length());
+        return slice.length();
+    }
+
+    public void clear() {
+        readPosition.lazySet(writePosition.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getWritePosition() {
+        return writePosition.get();
+    }
+
+    public long getReadPosition() {
+        return readPosition.get();
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    /**
+     * Read-only view over a buffered range. Valid until the consumer releases the range.
+     */
+    public static class PcmSlice {
+        private final long position;
+        private final int length;
+        private final ByteBuffer head;
+        private final ByteBuffer tail;
+
+        PcmSlice(long position, int length, ByteBuffer head, ByteBuffer tail) {
+            this.position = position;
+            this.length = length;
+            this.head = head;
+            this.tail = tail;
+        }
+
+        public long position() {
+            return position;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public boolean isEmpty() {
+            return length == 0;
+        }
+
+        public ByteBuffer head() {
+            return head.duplicate();
+        }
+
+        public ByteBuffer tail() {
+            return tail != null ? tail.duplicate() : null;
+        }
+
+        public void copyTo(byte[] dst, int offset) {
+            head.duplicate().get(dst, offset, head.remaining());
+            if (tail != null) {
+                tail.duplicate().get(dst, offset + head.remaining(), tail.remaining());
+            }
+        }
+
+        public void writeTo(WritableByteChannel channel) throws IOException {
+            ByteBuffer first = head.duplicate();
+            while (first.hasRemaining()) {
+                channel.write(first);
+            }
+            if (tail != null) {
+                ByteBuffer second = tail.duplicate();
+                while (second.hasRemaining()) {
+                    channel.write(second);
+                }
+            }
+        }
+    }
+}
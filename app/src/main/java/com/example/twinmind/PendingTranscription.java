@@ -0,0 +1,18 @@
+package com.example.twinmind;
+
+// A chunk waiting for the network, with its encoded audio in a file under files/pending_audio
+public class PendingTranscription {
+    public long id;
+    public String sessionId;
+    public long sequence;
+    public long sampleOffset;
+    public long timestamp;
+    public String encoding;
+    public String audioPath;
+    public int attempts;
+    public String lastError;
+    public long nextAttemptTime;
+    public long createdAt;
+
+    public PendingTranscription() {}
+}
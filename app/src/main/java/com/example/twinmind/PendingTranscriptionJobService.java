@@ -0,0 +1,80 @@
+package com.example.twinmind;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sends the chunks left in {@link PendingTranscriptionQueue} once no recording is draining it. The
+ * job waits for any network and is rescheduled with backoff while entries remain, so a meeting
+ * that ended offline is transcribed when the device is next online, and its second pass in
+ * {@link RetranscriptionJobService} is no longer held back by the queued chunks.
+ */
+public class PendingTranscriptionJobService extends JobService {
+
+    private static final String TAG = "PendingTranscriptionJob";
+
+    private static final int JOB_ID = 1903;
+    private static final long INITIAL_BACKOFF_MS = 60_000;
+    // JobScheduler stops a job after ten minutes; what is still in flight then is retried next time
+    private static final long DRAIN_TIMEOUT_MS = 8 * 60_000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile Future<?> running;
+
+    // Safe to call often: a job already waiting is left alone
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null || scheduler.getPendingJob(JOB_ID) != null) {
+            return;
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID, new ComponentName(context, PendingTranscriptionJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setBackoffCriteria(INITIAL_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        Context context = getApplicationContext();
+        running = executor.submit(() -> {
+            TranscriptionManager transcriptionManager = new TranscriptionManager(context);
+            int remaining;
+            try {
+                remaining = transcriptionManager.drainAllPending(DRAIN_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                // onStopJob already asked for a reschedule
+                return;
+            } finally {
+                transcriptionManager.cleanup();
+            }
+            Log.d(TAG, "Job finished" + (remaining > 0 ? ", " + remaining + " chunks remain" : ""));
+            jobFinished(params, remaining > 0);
+        });
+        return true;
+    }
+
+    // The network went away; chunks in flight fail back into the queue and are sent next time
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Future<?> future = running;
+        if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.twinmind;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Durable queue of chunks that could not be transcribed when they were captured, because the
+ * device was offline or the Speech API failed. The encoded audio goes to a file under
+ * {@code files/pending_audio} and the metadata to the pending_transcriptions table, so a meeting
+ * recorded in a lift or on a flight survives until the network comes back, and a process restart.
+ *
+ * TranscriptionManager drains it, during a recording and from {@link PendingTranscriptionJobService}
+ * after one; results are saved by capture time, so chunks of one session may be retried in
+ * parallel without reordering the transcript. Every attempt is counted, and failed
+ * entries back off exponentially. Only a permanent error (a request the API rejects outright)
+ * removes an entry without a transcript.
+ */
+public class PendingTranscriptionQueue {
+
+    private static final String TAG = "PendingTranscriptions";
+
+    static final long INITIAL_RETRY_MS = 30_000;
+    static final long MAX_RETRY_MS = 30 * 60_000;
+    private static final String AUDIO_SUFFIX = ".audio";
+
+    private static PendingTranscriptionQueue instance;
+
+    private final File audioDir;
+    private final TranscriptionDatabaseHelper dbHelper;
+    private final Set<Long> inFlight = new HashSet<>();
+
+    // One per process, so a recording and the background job never send the same entry twice
+    public static synchronized PendingTranscriptionQueue getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new PendingTranscriptionQueue(new File(appContext.getFilesDir(), "pending_audio"),
+                    TranscriptionDatabaseHelper.getInstance(appContext));
+        }
+        return instance;
+    }
+
+    PendingTranscriptionQueue(File audioDir, TranscriptionDatabaseHelper dbHelper) {
+        this.audioDir = audioDir;
+        this.dbHelper = dbHelper;
+        if (!audioDir.exists()) {
+            audioDir.mkdirs();
+        }
+    }
+
+    // The chunk's failed live request counts as its first attempt
+    public synchronized PendingTranscription enqueue(AudioChunk chunk, String error, long nowMs) throws IOException {
+        File file = new File(audioDir, String.format(Locale.US, "%s_%010d_%d%s",
+                chunk.sessionId, chunk.sequence, nowMs, AUDIO_SUFFIX));
+        File temp = new File(audioDir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(chunk.encodedAudio);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot move pending audio into place: " + file);
+        }
+
+        PendingTranscription pending = new PendingTranscription();
+        pending.sessionId = chunk.sessionId;
+        pending.sequence = chunk.sequence;
+        pending.sampleOffset = chunk.sampleOffset;
+        pending.timestamp = chunk.timestamp;
+        pending.encoding = chunk.encoding;
+        pending.audioPath = file.getAbsolutePath();
+        pending.attempts = 1;
+        pending.lastError = error;
+        pending.nextAttemptTime = nowMs + backoffMs(1);
+        pending.createdAt = nowMs;
+        if (dbHelper.insertPendingTranscription(pending) == -1) {
+            file.delete();
+            throw new IOException("Cannot record pending transcription");
+        }
+        Log.d(TAG, "Queued chunk " + chunk.sequence + " of " + chunk.sessionId + ": " + error);
+        return pending;
+    }
+
+    // Marks up to max due entries as in flight and returns them, oldest first. With ignoreBackoff,
+    // entries still backing off are taken too, for when the network has just come back.
+    public synchronized List<PendingTranscription> takeReady(int max, long nowMs, boolean ignoreBackoff) {
+        List<PendingTranscription> ready = selectReady(dbHelper.getPendingTranscriptions(), inFlight, max,
+                nowMs, ignoreBackoff);
+        for (PendingTranscription pending : ready) {
+            inFlight.add(pending.id);
+        }
+        return ready;
+    }
+
+    public byte[] readAudio(PendingTranscription pending) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(pending.audioPath, "r")) {
+            byte[] audio = new byte[(int) file.length()];
+            file.readFully(audio);
+            return audio;
+        }
+    }
+
+    public synchronized void complete(PendingTranscription pending) {
+        dbHelper.deletePendingTranscription(pending.id);
+        new File(pending.audioPath).delete();
+        inFlight.remove(pending.id);
+        notifyAll();
+    }
+
+    public synchronized void fail(PendingTranscription pending, String error, boolean permanent, long nowMs) {
+        pending.attempts++;
+        pending.lastError = error;
+        if (permanent) {
+            Log.e(TAG, "Giving up on chunk " + pending.sequence + " of " + pending.sessionId
+                    + " after " + pending.attempts + " attempts: " + error);
+            complete(pending);
+            return;
+        }
+        pending.nextAttemptTime = nowMs + backoffMs(pending.attempts);
+        dbHelper.updatePendingAttempt(pending.id, pending.attempts, error, pending.nextAttemptTime);
+        inFlight.remove(pending.id);
+        notifyAll();
+        Log.d(TAG, "Chunk " + pending.sequence + " of " + pending.sessionId + " failed attempt "
+                + pending.attempts + ", retrying in " + (pending.nextAttemptTime - nowMs) + "ms: " + error);
+    }
+
+    // Milliseconds until the next entry is due, 0 if one is due now, -1 if nothing is waiting
+    public synchronized long nextAttemptDelay(long nowMs) {
+        long delay = -1;
+        for (PendingTranscription pending : dbHelper.getPendingTranscriptions()) {
+            if (inFlight.contains(pending.id)) {
+                continue;
+            }
+            long due = Math.max(0, pending.nextAttemptTime - nowMs);
+            delay = delay < 0 ? due : Math.min(delay, due);
+        }
+        return delay;
+    }
+
+    // Entries taken but never completed or failed, e.g. by a TranscriptionManager that was cleaned
+    // up mid-request; they may be taken again
+    public synchronized void release(Collection<PendingTranscription> entries) {
+        for (PendingTranscription pending : entries) {
+            inFlight.remove(pending.id);
+        }
+        notifyAll();
+    }
+
+    // Makes every waiting entry due now, for when a network is known to be back
+    public synchronized void makeAllDue(long nowMs) {
+        for (PendingTranscription pending : dbHelper.getPendingTranscriptions()) {
+            if (!inFlight.contains(pending.id) && pending.nextAttemptTime > nowMs) {
+                dbHelper.updatePendingAttempt(pending.id, pending.attempts, pending.lastError, nowMs);
+            }
+        }
+    }
+
+    // Blocks until nothing is in flight and every entry left is backing off. False on timeout.
+    public synchronized boolean awaitSettled(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!inFlight.isEmpty() || nextAttemptDelay(System.currentTimeMillis()) == 0) {
+            long remainingMs = deadline - System.currentTimeMillis();
+            if (remainingMs <= 0) {
+                return false;
+            }
+            // Due entries are taken by the drain, not announced, so look again every second
+            wait(Math.min(remainingMs, 1000));
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return dbHelper.getPendingTranscriptions().size();
+    }
+
+    // Drops rows whose audio is gone and audio no row refers to, e.g. after a crash mid-enqueue
+    public synchronized void sweep() {
+        Set<String> referenced = new HashSet<>();
+        for (PendingTranscription pending : dbHelper.getPendingTranscriptions()) {
+            if (new File(pending.audioPath).exists()) {
+                referenced.add(new File(pending.audioPath).getName());
+            } else if (!inFlight.contains(pending.id)) {
+                Log.w(TAG, "Pending audio missing, dropping " + pending.audioPath);
+                dbHelper.deletePendingTranscription(pending.id);
+            }
+        }
+        File[] files = audioDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!referenced.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    static List<PendingTranscription> selectReady(List<PendingTranscription> ordered, Set<Long> inFlight,
+                                                  int max, long nowMs, boolean ignoreBackoff) {
+        List<PendingTranscription> ready = new ArrayList<>();
+        int available = max - inFlight.size();
+        for (PendingTranscription pending : ordered) {
+            if (ready.size() >= available) {
+                break;
+            }
+            if (inFlight.contains(pending.id)) {
+                continue;
+            }
+            if (ignoreBackoff || pending.nextAttemptTime <= nowMs) {
+                ready.add(pending);
+            }
+        }
+        return ready;
+    }
+
+    static long backoffMs(int attempts) {
+        long delay = INITIAL_RETRY_MS;
+        for (int i = 1; i < attempts && delay < MAX_RETRY_MS; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, MAX_RETRY_MS);
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.twinmind;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide token buckets for the cloud APIs we call, one per endpoint.
+ *
+ * Nothing here sleeps. {@link #reserve} takes a token and returns how long the caller must wait
+ * before sending, going into debt when the bucket is empty so that later callers queue up behind
+ * earlier ones; {@link #schedule} does the waiting on a shared timer and then hands the task to the
+ * caller's executor. A 429 empties the bucket and blocks the endpoint for the server's Retry-After,
+ * or for an exponential backoff when it gives none, until a request succeeds again.
+ */
+public class RateLimiter {
+
+    public enum Endpoint {
+        // Chunks average one per few seconds; the burst lets a backlog drain after a stall
+        SPEECH(1.0, 3),
+        // Free-tier Gemini allows 15 requests a minute
+        GEMINI(0.25, 2),
+        CALENDAR(2.0, 3);
+
+        final double permitsPerSecond;
+        final int burst;
+
+        Endpoint(double permitsPerSecond, int burst) {
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+    }
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    private static final long INITIAL_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    private static RateLimiter instance;
+
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Endpoint, Bucket> buckets = new EnumMap<>(Endpoint.class);
+
+    public static synchronized RateLimiter getInstance() {
+        if (instance == null) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RateLimiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new RateLimiter(System::nanoTime, scheduler);
+        }
+        return instance;
+    }
+
+    RateLimiter(Clock clock, ScheduledExecutorService scheduler) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        for (Endpoint endpoint : Endpoint.values()) {
+            buckets.put(endpoint, new Bucket(endpoint.permitsPerSecond, endpoint.burst, clock.nanoTime()));
+        }
+    }
+
+    // Takes a token; the caller must wait the returned number of milliseconds before sending
+    public long reserve(Endpoint endpoint) {
+        return buckets.get(endpoint).reserve(clock.nanoTime());
+    }
+
+    // Runs the task on the executor once the endpoint has a token for it. The timer thread only
+    // hands the task over, so blocking work stays on the caller's executor.
+    public ScheduledFuture<?> schedule(Endpoint endpoint, Executor executor, Runnable task) {
+        long delayMs = reserve(endpoint);
+        return scheduler.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void onSuccess(Endpoint endpoint) {
+        buckets.get(endpoint).onSuccess();
+    }
+
+    // retryAfter is the raw Retry-After header, or null if the response had none
+    public void onRateLimited(Endpoint endpoint, String retryAfter) {
+        long retryAfterMs = parseRetryAfterMs(retryAfter, System.currentTimeMillis());
+        buckets.get(endpoint).onRateLimited(clock.nanoTime(), retryAfterMs);
+    }
+
+    public long getRequestCount(Endpoint endpoint) {
+        return buckets.get(endpoint).requests;
+    }
+
+    public long getDelayedCount(Endpoint endpoint) {
+        return buckets.get(endpoint).delayed;
+    }
+
+    public long getTotalWaitMs(Endpoint endpoint) {
+        return buckets.get(endpoint).totalWaitMs;
+    }
+
+    public long getMaxWaitMs(Endpoint endpoint) {
+        return buckets.get(endpoint).maxWaitMs;
+    }
+
+    public long getRateLimitedCount(Endpoint endpoint) {
+        return buckets.get(endpoint).rateLimited;
+    }
+
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        for (Endpoint endpoint : Endpoint.values()) {
+            Bucket bucket = buckets.get(endpoint);
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            synchronized (bucket) {
+                builder.append(String.format(Locale.US, "%s[requests=%d delayed=%d wait=%dms max=%dms 429=%d]",
+                        endpoint.name().toLowerCase(Locale.US), bucket.requests, bucket.delayed,
+                        bucket.totalWaitMs, bucket.maxWaitMs, bucket.rateLimited));
+            }
+        }
+        return builder.toString();
+    }
+
+    // Retry-After is either delay-seconds or an HTTP date. Returns -1 if absent or unreadable.
+    static long parseRetryAfterMs(String value, long nowMillis) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException e) {
+            // Not a number, try the date form
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(trimmed);
+            return Math.max(0, date.getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static class Bucket {
+        private final double permitsPerNano;
+        private final int burst;
+
+        // May go negative: that is the debt owed by callers already told to wait
+        private double tokens;
+        private long lastRefillNanos;
+        private long blockedUntilNanos;
+        private long backoffMs;
+
+        volatile long requests;
+        volatile long delayed;
+        volatile long totalWaitMs;
+        volatile long maxWaitMs;
+        volatile long rateLimited;
+
+        Bucket(double permitsPerSecond, int burst, long nowNanos) {
+            this.permitsPerNano = permitsPerSecond / 1e9;
+            this.burst = burst;
+            this.tokens = burst;
+            this.lastRefillNanos = nowNanos;
+            this.blockedUntilNanos = nowNanos;
+        }
+
+        synchronized long reserve(long nowNanos) {
+            refill(nowNanos);
+            tokens -= 1;
+            // Tokens only start accruing again once a block ends
+            long waitNanos = Math.max(0, blockedUntilNanos - nowNanos);
+            if (tokens < 0) {
+                waitNanos += (long) Math.ceil(-tokens / permitsPerNano);
+            }
+            long waitMs = TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+
+            requests++;
+            if (waitMs > 0) {
+                delayed++;
+                totalWaitMs += waitMs;
+                maxWaitMs = Math.max(maxWaitMs, waitMs);
+            }
+            return waitMs;
+        }
+
+        synchronized void onSuccess() {
+            backoffMs = 0;
+        }
+
+        synchronized void onRateLimited(long nowNanos, long retryAfterMs) {
+            rateLimited++;
+            long waitMs = retryAfterMs;
+            if (waitMs < 0) {
+                backoffMs = backoffMs == 0 ? INITIAL_BACKOFF_MS : Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                waitMs = backoffMs;
+            }
+            refill(nowNanos);
+            // Whatever burst was saved up is evidently more than the server will take right now
+            tokens = Math.min(tokens, 0);
+            blockedUntilNanos = Math.max(blockedUntilNanos, nowNanos + TimeUnit.MILLISECONDS.toNanos(waitMs));
+        }
+
+        private void refill(long nowNanos) {
+            // Nothing accrues while the endpoint is blocked
+            long from = Math.max(lastRefillNanos, blockedUntilNanos);
+            if (nowNanos > from) {
+                tokens = Math.min(burst, tokens + (nowNanos - from) * permitsPerNano);
+            }
+            lastRefillNanos = Math.max(lastRefillNanos, nowNanos);
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package com.example.twinmind;
 
 import android.Manifest;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.IBinder;
 import android.os.Looper;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.View;
 import android.widget.Button;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -19,25 +22,14 @@ import android.widget.Toast;
 import androidx.activity.EdgeToEdge;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-public class RecordingActivity extends AppCompatActivity implements TranscriptionManager.TranscriptionListener {
+public class RecordingActivity extends AppCompatActivity implements CaptureEngine.Listener {
 
     private static final String TAG = "RecordingActivity";
-    private static final int SAMPLE_RATE = 16000;
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
-    private static final int BUFFER_SIZE_FACTOR = 2;
-    private static final int TRANSCRIPTION_INTERVAL_MS = 30000; // 30 seconds
 
     // UI Components
     private TextView tvTimer;
@@ -53,15 +45,11 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     private LinearLayout transcriptionPreview;
     private LinearLayout audioVisualizer;
 
-    // Audio Recording
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
-    private boolean isPaused = false;
-    private ExecutorService recordingExecutor;
-    private ScheduledExecutorService transcriptionScheduler;
+    // Capture runs in RecordingService; this screen only observes and controls it
+    private RecordingService recordingService;
+    private CaptureEngine captureEngine;
+    private boolean serviceBound = false;
 
-    private TranscriptionManager transcriptionManager;
-    private AudioBufferManager audioBufferManager;
     private TranscriptionDatabaseHelper dbHelper;
 
     private String currentSessionId;
@@ -71,9 +59,41 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     // Timer
     private Handler timerHandler;
     private Runnable timerRunnable;
-    private long recordingStartTime;
-    private long totalPausedTime = 0;
-    private long pauseStartTime = 0;
+
+    // Interim transcripts are shown dimmed until their final result arrives
+    private static final float INTERIM_TEXT_ALPHA = 0.6f;
+
+    // Level meter, redrawn at most once per frame from the capture thread's published windows
+    private static final float MIN_BAR_LEVEL = 0.1f;
+    private boolean levelUpdatesRunning = false;
+    private boolean activityResumed = false;
+    private long lastDrawnWindow = -1;
+    private final Choreographer.FrameCallback levelFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!levelUpdatesRunning) {
+                return;
+            }
+            drawAudioLevels();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            recordingService = ((RecordingService.RecordingBinder) service).getService();
+            captureEngine = recordingService.getCaptureEngine();
+            captureEngine.addListener(RecordingActivity.this);
+            onStateChanged(captureEngine.getState());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            captureEngine = null;
+            recordingService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -117,15 +137,7 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     }
 
     private void initManagers() {
-        currentSessionId = "session_" + System.currentTimeMillis();
-        transcriptionManager = new TranscriptionManager(this);
-        transcriptionManager.setTranscriptionListener(this);
-        transcriptionManager.setCurrentSessionId(currentSessionId);
-
-        audioBufferManager = new AudioBufferManager(this);
         dbHelper = TranscriptionDatabaseHelper.getInstance(this);
-        recordingExecutor = Executors.newSingleThreadExecutor();
-        transcriptionScheduler = Executors.newScheduledThreadPool(2);
         timerHandler = new Handler(Looper.getMainLooper());
     }
 
@@ -140,15 +152,75 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
             goToSummaryScreen();
         });
 
+        // Hidden debug surface for dropped-audio reports
+        tvTimer.setOnLongClickListener(v -> {
+            showCaptureDebugInfo();
+            return true;
+        });
+
         btnPauseResume.setOnClickListener(v -> {
-            if (isRecording && !isPaused) {
+            if (captureEngine == null) return;
+            if (captureEngine.getState() == CaptureEngine.State.RECORDING) {
                 pauseRecording();
-            } else if (isPaused) {
+            } else if (captureEngine.getState() == CaptureEngine.State.PAUSED) {
                 resumeRecording();
             }
         });
     }
 
+    private void showCaptureDebugInfo() {
+        if (captureEngine == null) return;
+
+        CaptureStats stats = captureEngine.getCaptureStats();
+        AudioBufferManager buffer = captureEngine.getAudioBufferManager();
+        String message = "State: " + captureEngine.getState()
+                + "\n\nReads: " + stats.getReads()
+                + " (" + stats.getRequestedReadBytes() + " B requested, "
+                + stats.getMinReadBytes() + "-" + stats.getMaxReadBytes() + " B returned)"
+                + "\nShort reads: " + stats.getShortReads()
+                + "\nLate reads: " + stats.getLateReads()
+                + "\nRecorder overruns: " + stats.getOverruns()
+                + "\nRead errors: " + stats.getReadErrors()
+                + String.format(java.util.Locale.US, "\nJitter: %.2f ms (max %.1f ms)", stats.getJitterMs(), stats.getMaxJitterMs())
+                + String.format(java.util.Locale.US, "\nLongest gap: %.1f ms", stats.getMaxIntervalMs())
+                + "\n\nRing buffered: " + buffer.getBufferSize() + " B"
+                + "\nRing dropped: " + buffer.getDroppedBytes() + " B"
+                + "\n\n" + buffer.getChunkingMetrics().summary()
+                + "\n\n" + RateLimiter.getInstance().summary()
+                + "\n\n" + RetryPolicy.getInstance().summary()
+                + "\n\n" + LatencyTimeline.getInstance().summary()
+                + "\n\nHedging: " + captureEngine.getHedgingSummary()
+                + "\n\n" + LlmResponseCache.getInstance(this).summary();
+
+        // Hedging costs quota, so it is only switched on here to compare latencies
+        android.widget.CheckBox hedging = new android.widget.CheckBox(this);
+        hedging.setText("Hedge slow chunk requests");
+        hedging.setChecked(captureEngine.isHedging());
+        hedging.setOnCheckedChangeListener((button, checked) -> captureEngine.setHedging(checked));
+
+        new androidx.appcompat.app.AlertDialog.Builder(this)
+                .setTitle("Capture diagnostics")
+                .setMessage(message)
+                .setView(hedging)
+                .setPositiveButton("Close", null)
+                .setNeutralButton("Refresh", (dialog, which) -> showCaptureDebugInfo())
+                .setNegativeButton("Export latency", (dialog, which) -> exportLatencyTimeline())
+                .show();
+    }
+
+    // A few kilobytes of CSV, pulled with adb from the app's external files
+    private void exportLatencyTimeline() {
+        java.io.File file = new java.io.File(getExternalFilesDir("diagnostics"),
+                "latency_" + System.currentTimeMillis() + ".csv");
+        try {
+            LatencyTimeline.getInstance().exportTo(file);
+            Toast.makeText(this, "Saved " + file.getAbsolutePath(), Toast.LENGTH_LONG).show();
+        } catch (java.io.IOException e) {
+            Log.e(TAG, "Error exporting latency timeline", e);
+            Toast.makeText(this, "Export failed: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        }
+    }
+
     private boolean checkAllPermissions() {
         boolean micPermission = ContextCompat.checkSelfPermission(this,
                 Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
@@ -163,12 +235,7 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     }
 
     private void startRecording() {
-        if (isRecording) {
-            Log.w(TAG, "Recording already in progress");
-            return;
-        }
-
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
                 != PackageManager.PERMISSION_GRANTED) {
             Log.e(TAG, "RECORD_AUDIO permission not granted");
             Toast.makeText(this, "Microphone permission not available", Toast.LENGTH_LONG).show();
@@ -176,140 +243,41 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
             return;
         }
 
-        try {
-            int bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
-            if (bufferSize == AudioRecord.ERROR || bufferSize == AudioRecord.ERROR_BAD_VALUE) {
-                Log.e(TAG, "Invalid buffer size: " + bufferSize);
-                Toast.makeText(this, "Audio configuration not supported", Toast.LENGTH_LONG).show();
-                return;
-            }
-
-            bufferSize *= BUFFER_SIZE_FACTOR;
-
-            audioRecord = new AudioRecord(
-                    MediaRecorder.AudioSource.MIC,
-                    SAMPLE_RATE,
-                    CHANNEL_CONFIG,
-                    AUDIO_FORMAT,
-                    bufferSize
-            );
-
-            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                Log.e(TAG, "AudioRecord initialization failed - state: " + audioRecord.getState());
-                Toast.makeText(this, "Failed to initialize audio recording", Toast.LENGTH_LONG).show();
-                if (audioRecord != null) {
-                    audioRecord.release();
-                    audioRecord = null;
-                }
-                return;
-            }
-
-            audioRecord.startRecording();
-
-            if (audioRecord.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
-                Log.e(TAG, "AudioRecord failed to start recording - state: " + audioRecord.getRecordingState());
-                Toast.makeText(this, "Failed to start audio recording", Toast.LENGTH_LONG).show();
-                audioRecord.stop();
-                audioRecord.release();
-                audioRecord = null;
-                return;
-            }
-
-            isRecording = true;
-            isPaused = false;
-            recordingStartTime = System.currentTimeMillis();
-            totalPausedTime = 0;
-
-            Log.d(TAG, "Recording started successfully");
-
-            dbHelper.createRecordingSession(
-                    currentSessionId,
-                    "Recording Session",
-                    recordingStartTime,
-                    "Current Location"
-            );
-
-            updateUI();
-            startTimer();
-            startAudioCapture();
-            startPeriodicTranscription();
-
-        } catch (SecurityException e) {
-            Log.e(TAG, "Security exception when starting recording", e);
-            Toast.makeText(this, "Permission denied for audio recording", Toast.LENGTH_LONG).show();
-            finish();
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting recording", e);
-            Toast.makeText(this, "Failed to start recording: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            finish();
-        }
+        // A no-op if the service is already recording; the binding below re-attaches to it
+        Intent intent = new Intent(this, RecordingService.class);
+        intent.setAction(RecordingService.ACTION_START_RECORDING);
+        ContextCompat.startForegroundService(this, intent);
+        serviceBound = bindService(new Intent(this, RecordingService.class), serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
     private void pauseRecording() {
-        if (!isRecording || isPaused) return;
-
         Log.d(TAG, "Pausing recording...");
-        isPaused = true;
-        pauseStartTime = System.currentTimeMillis();
-
-        if (audioRecord != null && audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-            try {
-                audioRecord.stop();
-                Log.d(TAG, "AudioRecord paused");
-            } catch (Exception e) {
-                Log.e(TAG, "Error pausing audio record", e);
-            }
+        if (captureEngine.pause()) {
+            Toast.makeText(this, "Recording paused", Toast.LENGTH_SHORT).show();
         }
-        byte[] pauseChunk = audioBufferManager.getAndClearBuffer();
-        if (pauseChunk != null && pauseChunk.length > 0) {
-            transcriptionManager.transcribeAudioChunk(pauseChunk);
-        }
-
-        updateUI();
-        updatePauseResumeButton();
-        Toast.makeText(this, "Recording paused", Toast.LENGTH_SHORT).show();
     }
 
     private void resumeRecording() {
-        if (!isRecording || !isPaused) return;
-
         Log.d(TAG, "Resuming recording...");
-
-        if (pauseStartTime > 0) {
-            totalPausedTime += System.currentTimeMillis() - pauseStartTime;
-            pauseStartTime = 0;
+        if (captureEngine.resume()) {
+            Toast.makeText(this, "Recording resumed", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, "Failed to resume recording", Toast.LENGTH_SHORT).show();
         }
+    }
 
-        try {
-            if (audioRecord != null && audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                audioRecord.startRecording();
-
-                if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-                    isPaused = false;
-                    Log.d(TAG, "AudioRecord resumed");
-
-                    if (recordingExecutor.isShutdown()) {
-                        recordingExecutor = Executors.newSingleThreadExecutor();
-                        startAudioCapture();
-                    }
+    private boolean isRecording() {
+        return captureEngine != null && (captureEngine.getState() == CaptureEngine.State.RECORDING
+                || captureEngine.getState() == CaptureEngine.State.PAUSED);
+    }
 
-                    updateUI();
-                    updatePauseResumeButton();
-                    Toast.makeText(this, "Recording resumed", Toast.LENGTH_SHORT).show();
-                } else {
-                    Log.e(TAG, "Failed to resume recording");
-                    Toast.makeText(this, "Failed to resume recording", Toast.LENGTH_SHORT).show();
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error resuming recording", e);
-            Toast.makeText(this, "Error resuming recording", Toast.LENGTH_SHORT).show();
-        }
+    private boolean isPaused() {
+        return captureEngine != null && captureEngine.getState() == CaptureEngine.State.PAUSED;
     }
 
     private void updatePauseResumeButton() {
         runOnUiThread(() -> {
-            if (isPaused) {
+            if (isPaused()) {
                 tvPauseResume.setText("Resume");
             } else {
                 tvPauseResume.setText("Pause");
@@ -317,83 +285,73 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
         });
     }
 
-    private void startAudioCapture() {
-        recordingExecutor.execute(() -> {
-            byte[] audioBuffer = new byte[1024];
-            Log.d(TAG, "Audio capture thread started");
-
-            while (isRecording && audioRecord != null) {
-                if (isPaused) {
-                    try {
-                        Thread.sleep(100);
-                    } catch (InterruptedException e) {
-                        break;
-                    }
-                    continue;
-                }
-
-                if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-                    try {
-                        int bytesRead = audioRecord.read(audioBuffer, 0, audioBuffer.length);
-
-                        if (bytesRead > 0) {
-                            audioBufferManager.addAudioData(audioBuffer, bytesRead);
-                            Log.v(TAG, "Audio data captured: " + bytesRead + " bytes");
-                        } else if (bytesRead == AudioRecord.ERROR_INVALID_OPERATION) {
-                            Log.e(TAG, "AudioRecord read error: ERROR_INVALID_OPERATION");
-                            break;
-                        } else if (bytesRead == AudioRecord.ERROR_BAD_VALUE) {
-                            Log.e(TAG, "AudioRecord read error: ERROR_BAD_VALUE");
-                            break;
-                        } else if (bytesRead == AudioRecord.ERROR_DEAD_OBJECT) {
-                            Log.e(TAG, "AudioRecord read error: ERROR_DEAD_OBJECT");
-                            break;
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error reading audio data", e);
-                        break;
-                    }
-                }
-            }
-
-            Log.d(TAG, "Audio capture thread finished");
-        });
-    }
-
-    private void startPeriodicTranscription() {
-        transcriptionScheduler.scheduleAtFixedRate(() -> {
-            if (isRecording && !isPaused) {
-                byte[] audioChunk = audioBufferManager.getAndClearBuffer();
-                if (audioChunk != null && audioChunk.length > 0) {
-                    Log.d(TAG, "Sending audio chunk for transcription: " + audioChunk.length + " bytes");
-                    transcriptionManager.transcribeAudioChunk(audioChunk);
-                }
-            }
-        }, TRANSCRIPTION_INTERVAL_MS, TRANSCRIPTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
-    }
-
     private void startTimer() {
+        if (timerRunnable != null) {
+            return;
+        }
         timerRunnable = new Runnable() {
             @Override
             public void run() {
-                if (isRecording) {
-                    long currentTime = System.currentTimeMillis();
-                    long elapsedTime;
-
-                    if (isPaused && pauseStartTime > 0) {
-                        elapsedTime = (pauseStartTime - recordingStartTime) - totalPausedTime;
-                    } else {
-                        elapsedTime = (currentTime - recordingStartTime) - totalPausedTime;
-                    }
-
-                    updateTimerDisplay(elapsedTime);
+                if (isRecording()) {
+                    updateTimerDisplay(captureEngine.getElapsedMillis());
                     timerHandler.postDelayed(this, 1000);
+                } else {
+                    timerRunnable = null;
                 }
             }
         };
         timerHandler.post(timerRunnable);
     }
 
+    private void startLevelUpdates() {
+        if (levelUpdatesRunning || !activityResumed) {
+            return;
+        }
+        levelUpdatesRunning = true;
+        lastDrawnWindow = -1;
+        Choreographer.getInstance().postFrameCallback(levelFrameCallback);
+    }
+
+    private void stopLevelUpdates() {
+        if (!levelUpdatesRunning) {
+            return;
+        }
+        levelUpdatesRunning = false;
+        Choreographer.getInstance().removeFrameCallback(levelFrameCallback);
+        for (int i = 0; i < audioVisualizer.getChildCount(); i++) {
+            audioVisualizer.getChildAt(i).setScaleY(MIN_BAR_LEVEL);
+        }
+    }
+
+    // Bars scroll left to right through the most recent windows; scaleY avoids a layout pass per frame
+    private void drawAudioLevels() {
+        if (captureEngine == null) {
+            return;
+        }
+        AudioLevelMeter meter = captureEngine.getAudioBufferManager().getLevelMeter();
+        long count = meter.getWindowCount();
+        if (count == lastDrawnWindow) {
+            return;
+        }
+        lastDrawnWindow = count;
+
+        int bars = audioVisualizer.getChildCount();
+        int maxHeight = 0;
+        for (int i = 0; i < bars; i++) {
+            maxHeight = Math.max(maxHeight, audioVisualizer.getChildAt(i).getHeight());
+        }
+        if (maxHeight == 0) {
+            return;
+        }
+        for (int i = 0; i < bars; i++) {
+            View bar = audioVisualizer.getChildAt(i);
+            long index = count - bars + i;
+            float level = index < 0 ? 0f : AudioLevelMeter.toDisplayLevel(AudioLevelMeter.rms(meter.getWindow(index)));
+            float height = (MIN_BAR_LEVEL + (1f - MIN_BAR_LEVEL) * level) * maxHeight;
+            bar.setScaleY(height / Math.max(1, bar.getHeight()));
+        }
+    }
+
     private void updateTimerDisplay(long elapsedTime) {
         long seconds = elapsedTime / 1000;
         long minutes = seconds / 60;
@@ -409,8 +367,8 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
 
     private void updateUI() {
         runOnUiThread(() -> {
-            if (isRecording) {
-                if (isPaused) {
+            if (isRecording()) {
+                if (isPaused()) {
                     tvStatus.setText("Recording paused");
                 } else {
                     tvStatus.setText("TwinMind is listening and transcribing");
@@ -422,49 +380,16 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     }
 
     private void stopRecording() {
-        if (!isRecording) return;
+        if (!isRecording()) return;
 
         Log.d(TAG, "Stopping recording...");
-        isRecording = false;
-        isPaused = false;
-        long endTime = System.currentTimeMillis();
-        long totalDuration = endTime - recordingStartTime - totalPausedTime;
-
+        currentSessionId = captureEngine.getSessionId();
         if (timerHandler != null && timerRunnable != null) {
             timerHandler.removeCallbacks(timerRunnable);
+            timerRunnable = null;
         }
-
-        if (audioRecord != null) {
-            try {
-                if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-                    audioRecord.stop();
-                }
-                audioRecord.release();
-                Log.d(TAG, "AudioRecord stopped and released");
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping audio record", e);
-            }
-            audioRecord = null;
-        }
-        byte[] finalChunk = audioBufferManager.getAndClearBuffer();
-        if (finalChunk != null && finalChunk.length > 0) {
-            transcriptionManager.transcribeAudioChunk(finalChunk);
-        }
-
-        dbHelper.endRecordingSession(currentSessionId, endTime, totalDuration);
-
-        if (recordingExecutor != null && !recordingExecutor.isShutdown()) {
-            recordingExecutor.shutdown();
-        }
-        if (transcriptionScheduler != null && !transcriptionScheduler.isShutdown()) {
-            transcriptionScheduler.shutdown();
-        }
-
-        transcriptionManager.syncPendingTranscriptions();
-
-        audioBufferManager.clearTempFiles();
-
-        updateUI();
+        updateTimerDisplay(captureEngine.getElapsedMillis());
+        recordingService.stopRecording();
         Log.d(TAG, "Recording stopped successfully");
     }
 
@@ -477,28 +402,51 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
         finish();
     }
 
+    // CaptureEngine.Listener, called on the main thread
     @Override
-    public void onTranscriptionReceived(String transcription, long timestamp) {
-        runOnUiThread(() -> {
-            dbHelper.insertTranscription(currentSessionId, transcription, timestamp, transcriptionChunkIndex++);
-            showLatestTranscription(transcription);
+    public void onStateChanged(CaptureEngine.State state) {
+        if (captureEngine != null && captureEngine.getSessionId() != null) {
+            currentSessionId = captureEngine.getSessionId();
+            transcriptionChunkIndex = captureEngine.getTranscriptionCount();
             updateTranscriptionCount();
-            Toast.makeText(this, "Transcription received", Toast.LENGTH_SHORT).show();
-            Log.d(TAG, "Transcription: " + transcription);
-        });
+        }
+        if (state == CaptureEngine.State.RECORDING) {
+            startTimer();
+            startLevelUpdates();
+        } else {
+            stopLevelUpdates();
+        }
+        updateUI();
+        updatePauseResumeButton();
+    }
+
+    @Override
+    public void onTranscriptionReceived(String transcription, long timestamp) {
+        // TranscriptionManager has already persisted it under the chunk's session
+        transcriptionChunkIndex = captureEngine != null ? captureEngine.getTranscriptionCount() : transcriptionChunkIndex + 1;
+        showLatestTranscription(transcription);
+        updateTranscriptionCount();
+        Toast.makeText(this, "Transcription received", Toast.LENGTH_SHORT).show();
+        Log.d(TAG, "Transcription: " + transcription);
+    }
+
+    @Override
+    public void onInterimTranscription(String transcription) {
+        // Dimmed until the final result for the same speech replaces it
+        showLatestTranscription(transcription);
+        tvLatestTranscription.setAlpha(INTERIM_TEXT_ALPHA);
     }
 
     @Override
     public void onTranscriptionError(String error) {
-        runOnUiThread(() -> {
-            Toast.makeText(this, "Transcription error: " + error, Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "Transcription error: " + error);
-        });
+        Toast.makeText(this, "Transcription error: " + error, Toast.LENGTH_SHORT).show();
+        Log.e(TAG, "Transcription error: " + error);
     }
 
     private void showLatestTranscription(String transcription) {
         if (transcription != null && !transcription.trim().isEmpty()) {
             tvLatestTranscription.setText(transcription);
+            tvLatestTranscription.setAlpha(1f);
             transcriptionPreview.setVisibility(android.view.View.VISIBLE);
         }
     }
@@ -547,16 +495,35 @@ public class RecordingActivity extends AppCompatActivity implements Transcriptio
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        stopRecording();
+        if (timerHandler != null && timerRunnable != null) {
+            timerHandler.removeCallbacks(timerRunnable);
+        }
+        stopLevelUpdates();
+        // Recording carries on in the service; the notification can still stop it
+        if (captureEngine != null) {
+            captureEngine.removeListener(this);
+        }
+        if (serviceBound) {
+            unbindService(serviceConnection);
+            serviceBound = false;
+        }
+    }
 
-        if (transcriptionManager != null) {
-            transcriptionManager.cleanup();
+    @Override
+    protected void onResume() {
+        super.onResume();
+        activityResumed = true;
+        if (captureEngine != null && captureEngine.getState() == CaptureEngine.State.RECORDING) {
+            startLevelUpdates();
         }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        activityResumed = false;
+        // No frames to draw while hidden, so stop sampling the meter
+        stopLevelUpdates();
     }
 
     @Override
@@ -6,49 +6,27 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.media.AudioFormat;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
+import android.content.pm.ServiceInfo;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
 
-import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-public class RecordingService extends Service implements TranscriptionManager.TranscriptionListener {
+public class RecordingService extends Service implements CaptureEngine.Listener {
 
     private static final String TAG = "RecordingService";
     private static final String CHANNEL_ID = "RecordingServiceChannel";
     private static final int NOTIFICATION_ID = 1001;
 
-    private static final int SAMPLE_RATE = 16000;
-    private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
-    private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
-    private static final int BUFFER_SIZE_FACTOR = 2;
-    private static final int TRANSCRIPTION_INTERVAL_MS = 30000;
-
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
-    private ExecutorService recordingExecutor;
-    private ScheduledExecutorService transcriptionScheduler;
-
-    // Managers
-    private TranscriptionManager transcriptionManager;
-    private AudioBufferManager audioBufferManager;
-    private TranscriptionDatabaseHelper dbHelper;
-
-    private String currentSessionId;
-    private int transcriptionChunkIndex = 0;
-    private long recordingStartTime;
+    public static final String ACTION_START_RECORDING = "START_RECORDING";
+    public static final String ACTION_STOP_RECORDING = "STOP_RECORDING";
+
+    private CaptureEngine captureEngine;
     private final IBinder binder = new RecordingBinder();
+    // Start asked for while the previous session was still being saved; runs once it is IDLE
+    private boolean startPending;
 
     public class RecordingBinder extends Binder {
         RecordingService getService() {
@@ -61,7 +39,8 @@ public class RecordingService extends Service implements TranscriptionManager.Tr
         super.onCreate();
 
         createNotificationChannel();
-        initializeComponents();
+        captureEngine = new CaptureEngine(this);
+        captureEngine.addListener(this);
 
         Log.d(TAG, "Recording service created");
     }
@@ -82,171 +61,76 @@ public class RecordingService extends Service implements TranscriptionManager.Tr
         }
     }
 
-    private void initializeComponents() {
-        transcriptionManager = new TranscriptionManager(this);
-        transcriptionManager.setTranscriptionListener(this);
-        audioBufferManager = new AudioBufferManager(this);
-        dbHelper = TranscriptionDatabaseHelper.getInstance(this);
-        recordingExecutor = Executors.newSingleThreadExecutor();
-        transcriptionScheduler = Executors.newScheduledThreadPool(2);
-    }
-
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         String action = intent != null ? intent.getAction() : null;
 
-        if ("START_RECORDING".equals(action)) {
+        if (ACTION_START_RECORDING.equals(action)) {
             startRecording();
-        } else if ("STOP_RECORDING".equals(action)) {
+        } else if (ACTION_STOP_RECORDING.equals(action)) {
             stopRecording();
-            stopSelf();
         }
 
-        return START_STICKY;
+        return START_NOT_STICKY;
     }
 
     private void startRecording() {
-        if (isRecording) return;
-
-        try {
-            // Create unique session ID
-            currentSessionId = "session_" + System.currentTimeMillis();
-            recordingStartTime = System.currentTimeMillis();
-            transcriptionChunkIndex = 0;
-
-            // Initialize AudioRecord
-            int bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT)
-                    * BUFFER_SIZE_FACTOR;
-
-            if (ActivityCompat.checkSelfPermission(this, android.Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
-                // TODO: Consider calling
-                //    ActivityCompat#requestPermissions
-                // here to request the missing permissions, and then overriding
-                //   public void onRequestPermissionsResult(int requestCode, String[] permissions,
-                //                                          int[] grantResults)
-                // to handle the case where the user grants the permission. See the documentation
-                // for ActivityCompat#requestPermissions for more details.
-                return;
-            }
-            audioRecord = new AudioRecord(
-                    MediaRecorder.AudioSource.MIC,
-                    SAMPLE_RATE,
-                    CHANNEL_CONFIG,
-                    AUDIO_FORMAT,
-                    bufferSize
-            );
-
-            if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                Log.e(TAG, "AudioRecord initialization failed");
-                return;
-            }
-
-            audioRecord.startRecording();
-            isRecording = true;
-
-            dbHelper.createRecordingSession(
-                    currentSessionId,
-                    "Background Recording",
-                    recordingStartTime,
-                    "Background Location"
-            );
-
-            startForeground(NOTIFICATION_ID, createNotification());
-            startAudioCapture();
-            startPeriodicTranscription();
-
-            Log.d(TAG, "Recording started successfully");
-
-        } catch (Exception e) {
-            Log.e(TAG, "Error starting recording", e);
-            stopRecording();
+        // Every startForegroundService must be answered with startForeground, whatever the state;
+        // it must also come before the microphone is opened
+        startForeground(NOTIFICATION_ID, createNotification("Recording audio in background"),
+                ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE);
+
+        CaptureEngine.State state = captureEngine.getState();
+        if (state == CaptureEngine.State.STOPPING) {
+            // The last session is still being saved; onStateChanged starts this one after it
+            startPending = true;
+            return;
         }
-    }
-
-    private void startAudioCapture() {
-        recordingExecutor.execute(() -> {
-            byte[] audioBuffer = new byte[1024];
-
-            while (isRecording && audioRecord != null) {
-                try {
-                    int bytesRead = audioRecord.read(audioBuffer, 0, audioBuffer.length);
-
-                    if (bytesRead > 0) {
-                        audioBufferManager.addAudioData(audioBuffer, bytesRead);
-                    } else if (bytesRead == AudioRecord.ERROR_INVALID_OPERATION) {
-                        Log.e(TAG, "AudioRecord read error: INVALID_OPERATION");
-                        break;
-                    }
-
-                } catch (Exception e) {
-                    Log.e(TAG, "Error reading audio data", e);
-                    break;
-                }
-            }
-        });
-    }
-
-    private void startPeriodicTranscription() {
-        transcriptionScheduler.scheduleAtFixedRate(() -> {
-            if (isRecording) {
-                byte[] audioChunk = audioBufferManager.getAndClearBuffer();
-                if (audioChunk != null && audioChunk.length > 0) {
-                    transcriptionManager.transcribeAudioChunk(audioChunk);
-                }
-            }
-        }, TRANSCRIPTION_INTERVAL_MS, TRANSCRIPTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
-    }
-
-    private void stopRecording() {
-        if (!isRecording) return;
-
-        isRecording = false;
-        long endTime = System.currentTimeMillis();
-        long totalDuration = endTime - recordingStartTime;
-
-        if (audioRecord != null) {
-            try {
-                audioRecord.stop();
-                audioRecord.release();
-            } catch (Exception e) {
-                Log.e(TAG, "Error stopping audio record", e);
-            }
-            audioRecord = null;
-        }
-        byte[] finalChunk = audioBufferManager.getAndClearBuffer();
-        if (finalChunk != null && finalChunk.length > 0) {
-            transcriptionManager.transcribeAudioChunk(finalChunk);
+        if (state != CaptureEngine.State.IDLE) {
+            // Reopening the recording screen while a session runs just re-attaches to it
+            return;
         }
+        startCapture();
+    }
 
-        if (currentSessionId != null) {
-            dbHelper.endRecordingSession(currentSessionId, endTime, totalDuration);
+    private void startCapture() {
+        if (!captureEngine.start()) {
+            Log.e(TAG, "Error starting recording");
+            stopForegroundAndSelf();
         }
+    }
 
-        if (recordingExecutor != null) {
-            recordingExecutor.shutdown();
-        }
-        if (transcriptionScheduler != null) {
-            transcriptionScheduler.shutdown();
+    // The service stays in the foreground until the final chunk is saved and the engine is IDLE
+    public void stopRecording() {
+        startPending = false;
+        captureEngine.stop();
+        if (captureEngine.getState() == CaptureEngine.State.IDLE) {
+            stopForegroundAndSelf();
         }
+    }
 
-        audioBufferManager.clearTempFiles();
+    private void stopForegroundAndSelf() {
+        stopForeground(STOP_FOREGROUND_REMOVE);
+        stopSelf();
+    }
 
-        Log.d(TAG, "Recording stopped successfully");
+    public CaptureEngine getCaptureEngine() {
+        return captureEngine;
     }
 
-    private Notification createNotification() {
+    private Notification createNotification(String text) {
         Intent notificationIntent = new Intent(this, RecordingActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
         Intent stopIntent = new Intent(this, RecordingService.class);
-        stopIntent.setAction("STOP_RECORDING");
+        stopIntent.setAction(ACTION_STOP_RECORDING);
         PendingIntent stopPendingIntent = PendingIntent.getService(this, 0, stopIntent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
         return new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("TwinMind Recording")
-                .setContentText("Recording audio in background")
+                .setContentText(text)
                 .setSmallIcon(R.drawable.ic_record_dot)
                 .setContentIntent(pendingIntent)
                 .addAction(R.drawable.ic_stop, "Stop", stopPendingIntent)
@@ -256,6 +140,14 @@ public class RecordingService extends Service implements TranscriptionManager.Tr
                 .build();
     }
 
+    private void updateNotification(String text) {
+        if (captureEngine.getState() == CaptureEngine.State.IDLE) {
+            return;
+        }
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.notify(NOTIFICATION_ID, createNotification(text));
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return binder;
@@ -264,60 +156,59 @@ public class RecordingService extends Service implements TranscriptionManager.Tr
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopRecording();
-
-        if (transcriptionManager != null) {
-            transcriptionManager.cleanup();
-        }
+        captureEngine.release();
 
         Log.d(TAG, "Recording service destroyed");
     }
 
-    // TranscriptionListener
+    // CaptureEngine.Listener
     @Override
-    public void onTranscriptionReceived(String transcription, long timestamp) {
-        // Save transcription to database
-        if (currentSessionId != null) {
-            dbHelper.insertTranscription(currentSessionId, transcription, timestamp, transcriptionChunkIndex++);
-            Log.d(TAG, "Transcription saved: " + transcription.substring(0, Math.min(50, transcription.length())));
+    public void onStateChanged(CaptureEngine.State state) {
+        if (state == CaptureEngine.State.PAUSED) {
+            updateNotification("Recording paused");
+        } else if (state == CaptureEngine.State.RECORDING) {
+            updateNotification("Recording audio in background");
+        } else if (state == CaptureEngine.State.STOPPING) {
+            updateNotification("Saving recording");
+        } else if (state == CaptureEngine.State.IDLE && captureEngine.getState() == CaptureEngine.State.IDLE) {
+            // Posted; a start that ran before it was delivered has already moved the engine on
+            if (startPending) {
+                startPending = false;
+                startCapture();
+            } else {
+                stopForegroundAndSelf();
+            }
         }
-        updateNotificationWithTranscription(transcription);
     }
 
     @Override
-    public void onTranscriptionError(String error) {
-        Log.e(TAG, "Transcription error in service: " + error);
-    }
-
-    private void updateNotificationWithTranscription(String transcription) {
+    public void onTranscriptionReceived(String transcription, long timestamp) {
+        Log.d(TAG, "Transcription received: " + transcription.substring(0, Math.min(50, transcription.length())));
         String snippet = transcription.length() > 30 ?
                 transcription.substring(0, 30) + "..." : transcription;
+        updateNotification("Latest: " + snippet);
+    }
 
-        Notification updatedNotification = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("TwinMind Recording")
-                .setContentText("Latest: " + snippet)
-                .setSmallIcon(R.drawable.ic_record_dot)
-                .setOngoing(true)
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setCategory(NotificationCompat.CATEGORY_SERVICE)
-                .build();
+    @Override
+    public void onInterimTranscription(String transcription) {
+        // Interim text changes several times a second; the notification only shows finals
+    }
 
-        NotificationManager notificationManager = getSystemService(NotificationManager.class);
-        notificationManager.notify(NOTIFICATION_ID, updatedNotification);
+    @Override
+    public void onTranscriptionError(String error) {
+        Log.e(TAG, "Transcription error in service: " + error);
     }
 
     public boolean isRecording() {
-        return isRecording;
+        return captureEngine.getState() == CaptureEngine.State.RECORDING
+                || captureEngine.getState() == CaptureEngine.State.PAUSED;
     }
 
     public String getCurrentSessionId() {
-        return currentSessionId;
+        return captureEngine.getSessionId();
     }
 
     public long getRecordingDuration() {
-        if (isRecording && recordingStartTime > 0) {
-            return System.currentTimeMillis() - recordingStartTime;
-        }
-        return 0;
+        return isRecording() ? captureEngine.getElapsedMillis() : 0;
     }
-}
\ No newline at end of file
+}
@@ -7,6 +7,8 @@ public class RecordingSession {
     public long endTime;
     public long duration;
     public String location;
+    // Bumped each time the transcript is replaced, e.g. by the second transcription pass
+    public int transcriptVersion;
 
     public RecordingSession() {}
 
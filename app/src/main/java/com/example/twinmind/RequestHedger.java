@@ -0,0 +1,241 @@
+package com.example.twinmind;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Sends a duplicate of a request that is slower than most recent ones, and takes whichever
+ * response arrives first.
+ *
+ * The hedge goes out once the primary has been outstanding for the configured percentile of the
+ * last {@link #WINDOW} latencies. Whichever call answers first is handed to the callback and the
+ * other is cancelled. Each request earns {@code budget} of a hedge, so duplicates stay a bounded
+ * share of traffic however slow the endpoint gets. A due hedge is handed to the {@link Gate} first,
+ * which may hold it for a rate limit or drop it. Only use this for requests that are safe to send
+ * twice, with bodies that can be written more than once.
+ */
+public class RequestHedger {
+
+    // Recent latencies the threshold is drawn from
+    static final int WINDOW = 256;
+    // Too few samples give a percentile that is mostly noise
+    static final int MIN_SAMPLES = 20;
+    // Never hedge sooner than this, however fast recent requests were
+    static final long MIN_HEDGE_DELAY_MS = 250;
+    // Budget is kept in thousandths of a hedge, so a 10% budget adds up exactly
+    private static final long CREDIT_PER_HEDGE = 1000;
+    // Unspent budget saved for a burst of slow requests
+    private static final long MAX_CREDIT = 3 * CREDIT_PER_HEDGE;
+
+    // Decides when a due hedge goes out: runs send once it may, or never to drop it
+    public interface Gate {
+        void admit(Runnable send);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private volatile Gate gate = Runnable::run;
+    private volatile double percentile;
+    private final long creditPerRequest;
+
+    private final long[] latencies = new long[WINDOW];
+    private int latencyCount;
+    private int nextLatency;
+    private long credit;
+
+    private volatile long requests;
+    private volatile long hedges;
+    private volatile long hedgeWins;
+    private volatile long skippedForBudget;
+
+    // scheduler only starts hedges, which is quick, so it may be shared
+    public RequestHedger(ScheduledExecutorService scheduler, double percentile, double budget) {
+        this.scheduler = scheduler;
+        this.percentile = percentile;
+        this.creditPerRequest = Math.round(budget * CREDIT_PER_HEDGE);
+    }
+
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public void setGate(Gate gate) {
+        this.gate = gate;
+    }
+
+    public void enqueue(OkHttpClient client, Request request, Callback callback) {
+        Race race = new Race(callback, System.nanoTime());
+        synchronized (this) {
+            requests++;
+            credit = Math.min(MAX_CREDIT, credit + creditPerRequest);
+        }
+        race.start(client.newCall(request), false);
+
+        long delayMs = getHedgeDelayMs();
+        if (delayMs >= 0) {
+            race.setTimer(scheduler.schedule(() -> {
+                if (!race.isFinished()) {
+                    gate.admit(() -> race.hedge(client.newCall(request)));
+                }
+            }, delayMs, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    // How long the primary may run before it is hedged, or -1 while there is too little history
+    public synchronized long getHedgeDelayMs() {
+        if (latencyCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(latencyCount - 1, Math.ceil(percentile * latencyCount) - 1);
+        return Math.max(MIN_HEDGE_DELAY_MS, sorted[Math.max(0, index)]);
+    }
+
+    synchronized void recordLatency(long latencyMs) {
+        latencies[nextLatency] = latencyMs;
+        nextLatency = (nextLatency + 1) % WINDOW;
+        latencyCount = Math.min(WINDOW, latencyCount + 1);
+    }
+
+    private synchronized boolean takeCredit() {
+        if (credit < CREDIT_PER_HEDGE) {
+            return false;
+        }
+        credit -= CREDIT_PER_HEDGE;
+        return true;
+    }
+
+    public long getRequestCount() {
+        return requests;
+    }
+
+    public long getHedgeCount() {
+        return hedges;
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWins;
+    }
+
+    public long getSkippedForBudgetCount() {
+        return skippedForBudget;
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "requests=%d hedged=%d hedgeWins=%d overBudget=%d threshold=%dms",
+                requests, hedges, hedgeWins, skippedForBudget, getHedgeDelayMs());
+    }
+
+    // One logical request: the primary call and, if it was slow, its hedge
+    private class Race {
+        private final Callback callback;
+        private final long startNanos;
+        private final Call[] calls = new Call[2];
+        private int outstanding;
+        private boolean finished;
+        private ScheduledFuture<?> timer;
+
+        Race(Callback callback, long startNanos) {
+            this.callback = callback;
+            this.startNanos = startNanos;
+        }
+
+        synchronized void setTimer(ScheduledFuture<?> timer) {
+            if (finished) {
+                timer.cancel(false);
+            } else {
+                this.timer = timer;
+            }
+        }
+
+        synchronized boolean isFinished() {
+            return finished;
+        }
+
+        // Whatever thread the gate sends it on; the primary may have answered while it waited
+        synchronized void hedge(Call call) {
+            if (finished) {
+                return;
+            }
+            if (!takeCredit()) {
+                synchronized (RequestHedger.this) {
+                    skippedForBudget++;
+                }
+                return;
+            }
+            synchronized (RequestHedger.this) {
+                hedges++;
+            }
+            start(call, true);
+        }
+
+        synchronized void start(Call call, boolean hedge) {
+            calls[hedge ? 1 : 0] = call;
+            outstanding++;
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    if (!win(call)) {
+                        response.close();
+                        return;
+                    }
+                    recordLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                    if (hedge) {
+                        synchronized (RequestHedger.this) {
+                            hedgeWins++;
+                        }
+                    }
+                    callback.onResponse(call, response);
+                }
+
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    if (lose()) {
+                        callback.onFailure(call, e);
+                    }
+                }
+            });
+        }
+
+        // True for the first response; cancels everything else
+        private synchronized boolean win(Call winner) {
+            if (finished) {
+                return false;
+            }
+            finish();
+            for (Call call : calls) {
+                if (call != null && call != winner) {
+                    call.cancel();
+                }
+            }
+            return true;
+        }
+
+        // True when no call is left to answer. A failure is not hedged: retrying is RetryPolicy's job.
+        private synchronized boolean lose() {
+            outstanding--;
+            if (finished || outstanding > 0) {
+                return false;
+            }
+            finish();
+            return true;
+        }
+
+        private void finish() {
+            finished = true;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.twinmind;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Memory tier of {@link LlmResponseCache}: generated text by cache key, bounded by total
+ * characters and evicted least recently used first. Entries older than the TTL are dropped when
+ * looked up. Thread-safe.
+ */
+class ResponseLru {
+
+    private static class Entry {
+        final String response;
+        final String sessionId;
+        final long createdAt;
+
+        Entry(String response, String sessionId, long createdAt) {
+            this.response = response;
+            this.sessionId = sessionId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final long maxChars;
+    private final long ttlMs;
+    // Access order, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+    private long evictions;
+
+    ResponseLru(long maxChars, long ttlMs) {
+        this.maxChars = maxChars;
+        this.ttlMs = ttlMs;
+    }
+
+    synchronized String get(String key, long now) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (now - entry.createdAt >= ttlMs) {
+            remove(key);
+            return null;
+        }
+        return entry.response;
+    }
+
+    // createdAt is when the response was generated, so an entry promoted from disk keeps its age
+    synchronized void put(String key, String sessionId, String response, long createdAt) {
+        if (response.length() > maxChars) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry(response, sessionId, createdAt));
+        chars += response.length();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (chars > maxChars) {
+            chars -= eldest.next().response.length();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized void removeSession(String sessionId) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (Objects.equals(entry.sessionId, sessionId)) {
+                chars -= entry.response.length();
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        chars = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getChars() {
+        return chars;
+    }
+
+    synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            chars -= removed.response.length();
+        }
+    }
+}
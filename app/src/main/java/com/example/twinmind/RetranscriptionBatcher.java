@@ -0,0 +1,116 @@
+package com.example.twinmind;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Joins a session's archived chunks into a few long stretches of audio for the second
+ * transcription pass.
+ *
+ * Chunks repeat the tail of the previous one for the live stitcher; that overlap is cut here so
+ * every sample goes out once. Short gaps, where silence was dropped during capture, are filled
+ * back in so word times stay session times. A longer gap, or reaching the batch limit, starts a
+ * new batch. Only one chunk and the batch being encoded are held in memory at a time.
+ */
+class RetranscriptionBatcher {
+
+    static class Batch {
+        // Session sample of the batch's first sample
+        final long startSample;
+        final int sampleCount;
+        // Capture time of the first chunk in the batch, as in transcriptions.timestamp
+        final long timestamp;
+        final byte[] audio;
+
+        Batch(long startSample, int sampleCount, long timestamp, byte[] audio) {
+            this.startSample = startSample;
+            this.sampleCount = sampleCount;
+            this.timestamp = timestamp;
+            this.audio = audio;
+        }
+    }
+
+    private static final byte[] SILENCE = new byte[8 * 1024];
+
+    private final AudioArchive.Reader reader;
+    private final AudioEncoder encoder;
+    private final long maxBatchSamples;
+    private final long maxGapSamples;
+    private int nextEntry;
+    // Session sample up to which audio has been batched
+    private long batchedTo = -1;
+
+    RetranscriptionBatcher(AudioArchive.Reader reader, AudioEncoder encoder, long maxBatchSamples,
+                           long maxGapSamples) {
+        this.reader = reader;
+        this.encoder = encoder;
+        this.maxBatchSamples = maxBatchSamples;
+        this.maxGapSamples = maxGapSamples;
+    }
+
+    // The next batch, or null once the archive is used up
+    Batch next() throws IOException {
+        long startSample = -1;
+        long endSample = -1;
+        long timestamp = 0;
+        encoder.reset();
+        while (nextEntry < reader.size()) {
+            AudioArchive.Entry entry = reader.get(nextEntry);
+            long from = Math.max(entry.sampleOffset, batchedTo);
+            long to = entry.getEndSampleOffset();
+            if (to <= from) {
+                nextEntry++;
+                continue;
+            }
+            if (startSample >= 0) {
+                if (from - endSample > maxGapSamples || to - startSample > maxBatchSamples) {
+                    break;
+                }
+                writeSilence(from - endSample);
+            } else {
+                startSample = from;
+                timestamp = entry.timestamp + (from - entry.sampleOffset) * 1000 / reader.sampleRate;
+            }
+
+            byte[] pcm = decodePcm(reader.encoding, reader.readAudio(entry));
+            int skip = (int) (from - entry.sampleOffset) * 2;
+            int end = (int) Math.min(pcm.length, (to - entry.sampleOffset) * 2);
+            if (end > skip) {
+                encoder.encode(ByteBuffer.wrap(pcm, skip, end - skip));
+            }
+            endSample = to;
+            batchedTo = to;
+            nextEntry++;
+        }
+        if (startSample < 0) {
+            return null;
+        }
+        return new Batch(startSample, (int) (endSample - startSample), timestamp, encoder.finish());
+    }
+
+    private void writeSilence(long samples) {
+        long bytes = samples * 2;
+        while (bytes > 0) {
+            int length = (int) Math.min(bytes, SILENCE.length);
+            encoder.encode(ByteBuffer.wrap(SILENCE, 0, length));
+            bytes -= length;
+        }
+    }
+
+    // 16-bit little-endian PCM of an archived payload
+    static byte[] decodePcm(String encoding, byte[] payload) throws IOException {
+        if ("FLAC".equals(encoding)) {
+            return FlacDecoder.decode(payload);
+        }
+        if ("LINEAR16".equals(encoding)) {
+            // WavEncoder's canonical 44-byte header
+            if (payload.length < 44) {
+                throw new IOException("Truncated WAV payload");
+            }
+            byte[] pcm = new byte[payload.length - 44];
+            System.arraycopy(payload, 44, pcm, 0, pcm.length);
+            return pcm;
+        }
+        throw new IOException("Cannot decode archived " + encoding + " audio");
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.twinmind;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs {@link SessionRetranscriber} in the background once a session has ended. Two jobs cover the
+ * same work, one when the device is charging and one when it is idle, whichever comes first; both
+ * wait for an unmetered network, as a long meeting is tens of megabytes of audio to upload again.
+ */
+public class RetranscriptionJobService extends JobService {
+
+    private static final String TAG = "RetranscriptionJob";
+
+    private static final int JOB_ID_CHARGING = 1901;
+    private static final int JOB_ID_IDLE = 1902;
+    private static final long INITIAL_BACKOFF_MS = 5 * 60_000;
+
+    // One pass at a time; a second job queues behind the first and finds little left to do
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Map<Integer, Future<?>> running = new ConcurrentHashMap<>();
+
+    // Safe to call often: jobs already waiting are left alone
+    public static void schedule(Context context) {
+        JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+        if (scheduler == null) {
+            return;
+        }
+        ComponentName service = new ComponentName(context, RetranscriptionJobService.class);
+        if (scheduler.getPendingJob(JOB_ID_CHARGING) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_CHARGING, service)
+                    .setRequiresCharging(true)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setBackoffCriteria(INITIAL_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+                    .build());
+        }
+        // Idle jobs may not set a backoff; they simply run again in the next idle window
+        if (scheduler.getPendingJob(JOB_ID_IDLE) == null) {
+            scheduler.schedule(new JobInfo.Builder(JOB_ID_IDLE, service)
+                    .setRequiresDeviceIdle(true)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .build());
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        Context context = getApplicationContext();
+        running.put(params.getJobId(), executor.submit(() -> {
+            boolean remaining;
+            try {
+                remaining = new SessionRetranscriber(context).retranscribeAll();
+            } catch (InterruptedException e) {
+                // onStopJob already asked for a reschedule
+                return;
+            }
+            running.remove(params.getJobId());
+            if (!remaining) {
+                // Nothing left for the other job either
+                JobScheduler scheduler = context.getSystemService(JobScheduler.class);
+                int other = params.getJobId() == JOB_ID_CHARGING ? JOB_ID_IDLE : JOB_ID_CHARGING;
+                if (scheduler != null && !running.containsKey(other)) {
+                    scheduler.cancel(other);
+                }
+            }
+            Log.d(TAG, "Job " + params.getJobId() + " finished" + (remaining ? ", sessions remain" : ""));
+            jobFinished(params, remaining);
+        }));
+        return true;
+    }
+
+    // The constraints no longer hold; the running batch is abandoned and redone next time
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Future<?> future = running.remove(params.getJobId());
+        if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+}
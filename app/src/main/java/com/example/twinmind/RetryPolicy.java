@@ -0,0 +1,259 @@
+package com.example.twinmind;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide retries and circuit breakers for the cloud APIs, keyed by the same endpoints as
+ * {@link RateLimiter}.
+ *
+ * A failed request is retried only if resending it is safe: idempotent requests after any network
+ * error or server fault, others only when the request provably never reached the server. Retries
+ * wait a decorrelated-jitter backoff, so clients that failed together do not retry together.
+ *
+ * Network errors and server faults also count against the endpoint's breaker. After
+ * {@link #FAILURE_THRESHOLD} in a row it opens and requests fail at once instead of waiting out a
+ * connect timeout each. Once the open period ends a single probe goes through; its success closes
+ * the breaker, its failure reopens it for twice as long.
+ */
+public class RetryPolicy {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Per-request retry state; one per logical request, reused across its attempts
+    public static class Backoff {
+        int retries;
+        long previousDelayMs;
+    }
+
+    interface Clock {
+        long nanoTime();
+    }
+
+    static final int MAX_RETRIES = 2;
+    static final long BASE_DELAY_MS = 500;
+    static final long MAX_DELAY_MS = 10_000;
+    static final int FAILURE_THRESHOLD = 5;
+    static final long INITIAL_OPEN_MS = 30_000;
+    static final long MAX_OPEN_MS = 5 * 60_000;
+    // A probe that never reports back must not hold the breaker half-open forever
+    static final long PROBE_TIMEOUT_MS = 90_000;
+
+    private static RetryPolicy instance;
+
+    private final Clock clock;
+    private final Random random;
+    private final ScheduledExecutorService scheduler;
+    private final Map<RateLimiter.Endpoint, Breaker> breakers = new EnumMap<>(RateLimiter.Endpoint.class);
+
+    public static synchronized RetryPolicy getInstance() {
+        if (instance == null) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "RetryPolicy");
+                thread.setDaemon(true);
+                return thread;
+            });
+            instance = new RetryPolicy(System::nanoTime, new Random(), scheduler);
+        }
+        return instance;
+    }
+
+    RetryPolicy(Clock clock, Random random, ScheduledExecutorService scheduler) {
+        this.clock = clock;
+        this.random = random;
+        this.scheduler = scheduler;
+        for (RateLimiter.Endpoint endpoint : RateLimiter.Endpoint.values()) {
+            breakers.put(endpoint, new Breaker());
+        }
+    }
+
+    // Call right before sending. False means the endpoint is failing and the request should fail
+    // fast; true while half-open means this request is the probe and must report its outcome.
+    public boolean allowRequest(RateLimiter.Endpoint endpoint) {
+        return breakers.get(endpoint).allowRequest(clock.nanoTime());
+    }
+
+    public void onSuccess(RateLimiter.Endpoint endpoint) {
+        breakers.get(endpoint).onSuccess();
+    }
+
+    // Only for network errors and server faults; a 4xx says nothing about the endpoint's health
+    public void onFailure(RateLimiter.Endpoint endpoint) {
+        breakers.get(endpoint).onFailure(clock.nanoTime());
+    }
+
+    // For every HTTP error response. A server fault is a failure; any other status means the
+    // endpoint is up and answering, which closes the breaker, except that a 429 only ends a probe
+    // so the next request after the rate limiter's wait can probe again.
+    public void onResponse(RateLimiter.Endpoint endpoint, int code) {
+        if (isServerFault(code)) {
+            onFailure(endpoint);
+        } else if (code == 429) {
+            breakers.get(endpoint).endProbe();
+        } else {
+            onSuccess(endpoint);
+        }
+    }
+
+    // Schedules the task after the next backoff if the failure may be retried and the request has
+    // retries left. Returns false when the caller should report the failure instead.
+    public boolean retry(RateLimiter.Endpoint endpoint, Backoff backoff, boolean retryable,
+                         Executor executor, Runnable task) {
+        long delayMs = retryDelayMs(endpoint, backoff, retryable);
+        if (delayMs < 0) {
+            return false;
+        }
+        scheduler.schedule(() -> executor.execute(task), delayMs, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    // For callers on their own background thread: how long to wait before retrying, or -1 when the
+    // caller should report the failure instead. Counts as a retry like retry() does.
+    public long retryDelayMs(RateLimiter.Endpoint endpoint, Backoff backoff, boolean retryable) {
+        Breaker breaker = breakers.get(endpoint);
+        if (!retryable || backoff.retries >= MAX_RETRIES || breaker.getState(clock.nanoTime()) == State.OPEN) {
+            return -1;
+        }
+        long delayMs = nextDelayMs(backoff);
+        synchronized (breaker) {
+            breaker.retries++;
+        }
+        return delayMs;
+    }
+
+    // Decorrelated jitter: uniform between the base delay and three times the previous delay
+    long nextDelayMs(Backoff backoff) {
+        long upper = Math.min(MAX_DELAY_MS, Math.max(BASE_DELAY_MS, backoff.previousDelayMs * 3));
+        long delayMs;
+        synchronized (random) {
+            delayMs = BASE_DELAY_MS + (long) (random.nextDouble() * (upper - BASE_DELAY_MS));
+        }
+        backoff.previousDelayMs = delayMs;
+        backoff.retries++;
+        return delayMs;
+    }
+
+    public State getState(RateLimiter.Endpoint endpoint) {
+        return breakers.get(endpoint).getState(clock.nanoTime());
+    }
+
+    public long getRetryCount(RateLimiter.Endpoint endpoint) {
+        return breakers.get(endpoint).retries;
+    }
+
+    public long getRejectedCount(RateLimiter.Endpoint endpoint) {
+        return breakers.get(endpoint).rejected;
+    }
+
+    public long getTripCount(RateLimiter.Endpoint endpoint) {
+        return breakers.get(endpoint).trips;
+    }
+
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        long nowNanos = clock.nanoTime();
+        for (RateLimiter.Endpoint endpoint : RateLimiter.Endpoint.values()) {
+            Breaker breaker = breakers.get(endpoint);
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(String.format(Locale.US, "%s[%s retries=%d rejected=%d trips=%d]",
+                    endpoint.name().toLowerCase(Locale.US), breaker.getState(nowNanos).name().toLowerCase(Locale.US),
+                    breaker.retries, breaker.rejected, breaker.trips));
+        }
+        return builder.toString();
+    }
+
+    // Network errors and server faults say the endpoint is unhealthy; client errors do not
+    public static boolean isServerFault(int code) {
+        return code == 408 || code >= 500;
+    }
+
+    // 408, 429 and 503 mean the server did not act on the request; other 5xx may have been
+    // processed, so only idempotent requests are resent after them
+    public static boolean isRetryable(int code, boolean idempotent) {
+        if (code == 408 || code == 429 || code == 503) {
+            return true;
+        }
+        return idempotent && (code == 500 || code == 502 || code == 504);
+    }
+
+    // Failing to connect means nothing was sent; any later failure may have reached the server
+    public static boolean isRetryable(IOException error, boolean idempotent) {
+        return idempotent || error instanceof ConnectException || error instanceof UnknownHostException
+                || error instanceof NoRouteToHostException;
+    }
+
+    private static class Breaker {
+        private int consecutiveFailures;
+        private long openUntilNanos;
+        private long openMs;
+        // Open, or half-open once openUntilNanos has passed
+        private boolean tripped;
+        private long probeStartedNanos = -1;
+
+        volatile long retries;
+        volatile long rejected;
+        volatile long trips;
+
+        synchronized boolean allowRequest(long nowNanos) {
+            State state = getState(nowNanos);
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && (probeStartedNanos < 0
+                    || nowNanos - probeStartedNanos > TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS))) {
+                probeStartedNanos = nowNanos;
+                return true;
+            }
+            rejected++;
+            return false;
+        }
+
+        synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            openMs = 0;
+            tripped = false;
+            probeStartedNanos = -1;
+        }
+
+        synchronized void endProbe() {
+            probeStartedNanos = -1;
+        }
+
+        synchronized void onFailure(long nowNanos) {
+            consecutiveFailures++;
+            if (tripped && getState(nowNanos) == State.HALF_OPEN) {
+                // The probe failed: the endpoint is still down
+                open(nowNanos, Math.min(openMs * 2, MAX_OPEN_MS));
+            } else if (!tripped && consecutiveFailures >= FAILURE_THRESHOLD) {
+                open(nowNanos, INITIAL_OPEN_MS);
+            }
+        }
+
+        synchronized State getState(long nowNanos) {
+            if (!tripped) {
+                return State.CLOSED;
+            }
+            return nowNanos < openUntilNanos ? State.OPEN : State.HALF_OPEN;
+        }
+
+        private void open(long nowNanos, long durationMs) {
+            tripped = true;
+            openMs = durationMs;
+            openUntilNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(durationMs);
+            probeStartedNanos = -1;
+            trips++;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.twinmind;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a running summary of a meeting while it is recorded, so its notes are nearly written by
+ * the time it stops.
+ *
+ * Every {@link #DEFAULT_CHUNKS_PER_UPDATE} transcriptions, the rows saved since the last update are
+ * folded into the summary with one request that holds only the previous summary and the new text.
+ * Each row is read once and the summary is bounded, so the tokens sent grow linearly with the
+ * meeting instead of re-reading the transcript. Progress is a row id: everything up to it is in
+ * the summary, and the summary and that id are saved together after each update.
+ *
+ * {@link #finish} writes the notes from the summary and whatever was saved after it, which is a
+ * few minutes of text at most, once the results still in flight at stop have been saved. Updates
+ * and finish run one at a time on the given executor.
+ */
+public class RollingSummarizer {
+
+    private static final String TAG = "RollingSummarizer";
+
+    // At roughly 10s per transcription, an update every five minutes of speech
+    public static final int DEFAULT_CHUNKS_PER_UPDATE = 30;
+
+    // Notes being written at the end of a recording, by session, so the notes screen can wait for
+    // them instead of asking for the same notes again
+    private static final Map<String, CompletableFuture<String>> finishing = new ConcurrentHashMap<>();
+
+    public interface Store {
+        // The session's transcriptions with an id above afterId, in id order
+        List<TranscriptionEntry> getTranscriptionsAfter(String sessionId, long afterId);
+        void saveRollingSummary(String sessionId, String summary, long coveredId);
+        void saveSessionNotes(String sessionId, String notes, long coveredId);
+    }
+
+    private final String sessionId;
+    private final TranscriptSummarizer.Generator generator;
+    private final Store store;
+    private final ExecutorService executor;
+    private final int chunksPerUpdate;
+
+    // Only touched on the executor
+    private String summary;
+    private long coveredId;
+
+    private final AtomicInteger newChunks = new AtomicInteger();
+    private final AtomicBoolean updateQueued = new AtomicBoolean();
+    private final AtomicInteger updates = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong tokensSent = new AtomicLong();
+
+    public RollingSummarizer(String sessionId, TranscriptSummarizer.Generator generator, Store store,
+                             ExecutorService executor, int chunksPerUpdate) {
+        this.sessionId = sessionId;
+        this.generator = generator;
+        this.store = store;
+        this.executor = executor;
+        this.chunksPerUpdate = chunksPerUpdate;
+    }
+
+    // Once per transcription saved for the session; cheap enough for the main thread
+    public void onTranscription() {
+        if (newChunks.incrementAndGet() >= chunksPerUpdate && updateQueued.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    updateQueued.set(false);
+                    update();
+                });
+            } catch (RejectedExecutionException e) {
+                // Late results after the engine was released; the notes screen covers them
+                updateQueued.set(false);
+            }
+        }
+    }
+
+    // Null if no notes are being written for the session
+    public static CompletableFuture<String> getPendingNotes(String sessionId) {
+        return finishing.get(sessionId);
+    }
+
+    // Completes with the notes, which are also saved with the id of the last row they cover
+    public CompletableFuture<String> finish() {
+        return finish(CompletableFuture.completedFuture(null), 0);
+    }
+
+    // As finish(), but the notes are only written once transcriptSettled is done or settleTimeoutMs
+    // has passed. They are pending from now, so the notes screen waits for them rather than asking
+    // for its own.
+    public CompletableFuture<String> finish(Future<?> transcriptSettled, long settleTimeoutMs) {
+        CompletableFuture<String> notes = new CompletableFuture<>();
+        finishing.put(sessionId, notes);
+        notes.whenComplete((text, error) -> finishing.remove(sessionId, notes));
+        try {
+            executor.execute(() -> writeNotes(notes, transcriptSettled, settleTimeoutMs));
+        } catch (RejectedExecutionException e) {
+            notes.completeExceptionally(e);
+        }
+        return notes;
+    }
+
+    private void writeNotes(CompletableFuture<String> notes, Future<?> transcriptSettled, long settleTimeoutMs) {
+        try {
+            try {
+                transcriptSettled.get(settleTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // The notes screen adds whatever is saved after them
+                Log.w(TAG, "Writing notes for " + sessionId + " before its last results were saved");
+            }
+            List<TranscriptionEntry> rows = store.getTranscriptionsAfter(sessionId, coveredId);
+            if (summary == null && rows.isEmpty()) {
+                throw new IOException("Transcript is empty");
+            }
+            long lastId = rows.isEmpty() ? coveredId : rows.get(rows.size() - 1).id;
+            String text = generate(notesPrompt(summary, join(rows)));
+            store.saveSessionNotes(sessionId, text, lastId);
+            Log.d(TAG, "Notes written from " + updates.get() + " updates and " + rows.size() + " new rows");
+            notes.complete(text);
+        } catch (Exception e) {
+            Log.e(TAG, "Final notes failed for " + sessionId, e);
+            notes.completeExceptionally(e);
+        }
+    }
+
+    public int getUpdateCount() {
+        return updates.get();
+    }
+
+    public long getTokensSent() {
+        return tokensSent.get();
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "Rolling summary: updates=%d failures=%d tokens sent=%d",
+                updates.get(), failures.get(), tokensSent.get());
+    }
+
+    // A failed update leaves the summary as it was; its rows are picked up by the next one
+    private void update() {
+        List<TranscriptionEntry> rows = store.getTranscriptionsAfter(sessionId, coveredId);
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            summary = generate(updatePrompt(summary, join(rows)));
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            Log.w(TAG, "Rolling summary update failed, will retry with the next update", e);
+            return;
+        }
+        coveredId = rows.get(rows.size() - 1).id;
+        newChunks.updateAndGet(n -> Math.max(0, n - rows.size()));
+        store.saveRollingSummary(sessionId, summary, coveredId);
+        updates.incrementAndGet();
+    }
+
+    private String generate(String prompt) throws IOException, ExecutionException, InterruptedException {
+        tokensSent.addAndGet(TranscriptSummarizer.estimateTokens(prompt));
+        String text = generator.generate(prompt).get();
+        if (text == null || text.trim().isEmpty()) {
+            throw new IOException("Empty response");
+        }
+        return text.trim();
+    }
+
+    static String join(List<TranscriptionEntry> rows) {
+        StringBuilder text = new StringBuilder();
+        for (TranscriptionEntry row : rows) {
+            if (row.transcriptionText != null && !row.transcriptionText.trim().isEmpty()) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(row.transcriptionText.trim());
+            }
+        }
+        return text.toString();
+    }
+
+    static String updatePrompt(String summary, String newText) {
+        return "You are keeping running notes of a meeting that is still going on. Below are the notes so far " +
+                "and the transcript of what was said since they were written. Rewrite the notes to cover both, " +
+                "in at most 500 words, keeping every decision and action item, using this format:\n\n" +
+                TranscriptSummarizer.PARTIAL_FORMAT +
+                "Notes so far:\n" + (summary == null ? "(none, the meeting has just started)" : summary) + "\n\n" +
+                "New transcript:\n" + newText;
+    }
+
+    // With no summary yet this is the single-prompt notes request over the whole transcript
+    static String notesPrompt(String summary, String newText) {
+        if (summary == null) {
+            return TranscriptSummarizer.notesPrompt(newText);
+        }
+        StringBuilder prompt = new StringBuilder("The following are running notes of a meeting");
+        prompt.append(newText.isEmpty() ? ". " : ", followed by the end of its transcript, which the notes do not cover. ");
+        prompt.append("Using them, provide a structured summary of the whole meeting in the following format:\n\n")
+                .append(TranscriptSummarizer.NOTES_FORMAT)
+                .append("Running notes:\n").append(summary).append("\n\n");
+        if (!newText.isEmpty()) {
+            prompt.append("End of the transcript:\n").append(newText).append("\n\n");
+        }
+        prompt.append("Please ensure the response is well-formatted and easy to read.");
+        return prompt.toString();
+    }
+}
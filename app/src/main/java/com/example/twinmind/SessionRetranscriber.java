@@ -0,0 +1,142 @@
+package com.example.twinmind;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Second transcription pass over finished sessions. The live transcript comes from short chunks
+ * sent to the fast short-form model; afterwards the session's archived audio is joined into
+ * {@link #BATCH_SECONDS} batches and sent to the long-form model, which gets the context of whole
+ * sentences and paragraphs. The result replaces the live rows in one transaction, as a few large
+ * rows with word timings, and bumps the session's transcript version.
+ *
+ * Any failure keeps the live transcript: a session is only replaced once every batch has come
+ * back. Runs from {@link RetranscriptionJobService} while the device is charging or idle.
+ */
+public class SessionRetranscriber {
+
+    private static final String TAG = "SessionRetranscriber";
+
+    // Enough context for the long-form model, still a readable paragraph per row
+    static final int BATCH_SECONDS = 120;
+    // Pauses up to this long are sent as silence instead of ending the batch
+    static final int MAX_GAP_SECONDS = 10;
+    // Results for a session's last chunks may arrive as late as the reorder gap timeout after it
+    // ends; the extra minute covers the final drain and saving them
+    private static final long SETTLE_MS = TranscriptionManager.REORDER_GAP_TIMEOUT_MS + 60_000;
+    private static final String LANGUAGE_CODE = "en-US";
+
+    private final TranscriptionDatabaseHelper dbHelper;
+    private final AudioArchive archive;
+    private final LongRunningRecognizer recognizer;
+
+    public SessionRetranscriber(Context context) {
+        this.dbHelper = TranscriptionDatabaseHelper.getInstance(context);
+        this.archive = new AudioArchive(new File(context.getFilesDir(), AudioBufferManager.ARCHIVE_DIR));
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .build();
+        this.recognizer = new LongRunningRecognizer(httpClient, LongRunningRecognizer.DEFAULT_BASE_URL,
+                TranscriptionManager.API_KEY, RateLimiter.getInstance(), RetryPolicy.getInstance());
+    }
+
+    // Blocks until every waiting session is done or one fails; interrupt to stop early. Returns
+    // true if a session is left for a later run.
+    public boolean retranscribeAll() throws InterruptedException {
+        boolean remaining = false;
+        for (RecordingSession session : dbHelper.getSessionsToRetranscribe()) {
+            if (!isSettled(session)) {
+                remaining = true;
+                continue;
+            }
+            try {
+                retranscribe(session);
+            } catch (LongRunningRecognizer.RejectedException e) {
+                Log.e(TAG, "Keeping live transcript of " + session.sessionId + ": " + e.getMessage());
+                dbHelper.setRetranscribeState(session.sessionId, TranscriptionDatabaseHelper.RETRANSCRIBE_SKIPPED);
+            } catch (IOException e) {
+                // Most likely the network or the API, which later sessions would hit too
+                Log.w(TAG, "Second pass of " + session.sessionId + " failed, will retry: " + e.getMessage());
+                return true;
+            }
+        }
+        return remaining;
+    }
+
+    private boolean isSettled(RecordingSession session) {
+        if (System.currentTimeMillis() - session.endTime < SETTLE_MS) {
+            return false;
+        }
+        // A queued chunk would land in the replaced transcript once it finally goes through
+        for (PendingTranscription pending : dbHelper.getPendingTranscriptions()) {
+            if (pending.sessionId.equals(session.sessionId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void retranscribe(RecordingSession session) throws IOException, InterruptedException {
+        long startNanos = System.nanoTime();
+        List<TranscriptionDatabaseHelper.TimedTranscription> rows = new ArrayList<>();
+        long batches = 0;
+        long audioBytes = 0;
+        try (AudioArchive.Reader reader = archive.openReader(session.sessionId)) {
+            if (reader == null) {
+                Log.d(TAG, "No archived audio for " + session.sessionId + ", keeping live transcript");
+                dbHelper.setRetranscribeState(session.sessionId, TranscriptionDatabaseHelper.RETRANSCRIBE_SKIPPED);
+                return;
+            }
+            int sampleRate = reader.sampleRate;
+            RetranscriptionBatcher batcher = new RetranscriptionBatcher(reader, new FlacEncoder(sampleRate),
+                    (long) BATCH_SECONDS * sampleRate, (long) MAX_GAP_SECONDS * sampleRate);
+            RetranscriptionBatcher.Batch batch;
+            while ((batch = nextBatch(batcher)) != null) {
+                SpeechJson.Recognition recognition = recognizer.recognize(batch.audio, "FLAC", sampleRate,
+                        LANGUAGE_CODE);
+                batches++;
+                audioBytes += batch.audio.length;
+                if (!recognition.transcript.isEmpty()) {
+                    rows.add(new TranscriptionDatabaseHelper.TimedTranscription(recognition.transcript,
+                            batch.timestamp, batch.startSample * 1000 / sampleRate,
+                            WordTimings.align(recognition.transcript, recognition.words)));
+                }
+            }
+        }
+
+        if (rows.isEmpty()) {
+            // Never trade a transcript for nothing
+            Log.w(TAG, "Second pass of " + session.sessionId + " found no speech, keeping live transcript");
+            dbHelper.setRetranscribeState(session.sessionId, TranscriptionDatabaseHelper.RETRANSCRIBE_SKIPPED);
+            return;
+        }
+        if (!dbHelper.replaceTranscriptions(session.sessionId, session.transcriptVersion, rows)) {
+            throw new IOException("Transcript of " + session.sessionId + " changed during the second pass");
+        }
+        Log.d(TAG, "Retranscribed " + session.sessionId + ": " + batches + " batches, " + audioBytes
+                + " bytes, " + rows.size() + " rows in "
+                + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos) + "s");
+    }
+
+    // A damaged archive fails the same way every time, so it is not worth retrying
+    private static RetranscriptionBatcher.Batch nextBatch(RetranscriptionBatcher batcher) throws IOException {
+        try {
+            return batcher.next();
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            throw new LongRunningRecognizer.RejectedException("Unreadable archive: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.twinmind;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * JSON for the Speech API's speech:recognize and speech:longrunningrecognize calls, written and read
+ * as streams.
+ *
+ * The request body writes the config envelope and then base64-encodes the audio straight into
+ * OkHttp's sink, one block at a time, so a chunk is never held as a base64 String, a JSONObject or
+ * a UTF-8 copy of either. The response is read token by token from the body's reader.
+ */
+final class SpeechJson {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // 3 input bytes per 4 output characters; 48KB of audio per block written to the sink
+    private static final int BLOCK_INPUT_BYTES = 48 * 1024;
+    private static final byte[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private SpeechJson() {}
+
+    static class Recognition {
+        final String transcript;
+        // Timed words of every result, in order; times are relative to the start of the audio
+        final List<WordTimings.Word> words;
+
+        Recognition(String transcript, List<WordTimings.Word> words) {
+            this.transcript = transcript;
+            this.words = words;
+        }
+    }
+
+    // A speech:longrunningrecognize operation, as returned when it starts and by each poll
+    static class Operation {
+        final String name;
+        final boolean done;
+        // Set if the operation finished with an error
+        final String error;
+        // Set if the operation finished successfully
+        final Recognition recognition;
+
+        Operation(String name, boolean done, String error, Recognition recognition) {
+            this.name = name;
+            this.done = done;
+            this.error = error;
+            this.recognition = recognition;
+        }
+    }
+
+    // Also the body of speech:longrunningrecognize, which takes the same request
+    static RequestBody recognizeRequest(byte[] audio, String encoding, int sampleRate, String languageCode,
+                                        String model) {
+        // Only our own constants go into the envelope, so nothing in it needs escaping
+        String prefix = "{\"config\":{\"encoding\":\"" + encoding + "\",\"sampleRateHertz\":" + sampleRate
+                + ",\"languageCode\":\"" + languageCode + "\",\"enableAutomaticPunctuation\":true,"
+                + "\"enableWordTimeOffsets\":true,\"enableWordConfidence\":true,\"model\":\""
+                + model + "\"},\"audio\":{\"content\":\"";
+        return new RecognizeBody(prefix.getBytes(StandardCharsets.UTF_8), audio);
+    }
+
+    static String parseTranscript(Reader body) throws IOException {
+        return parse(body).transcript;
+    }
+
+    // Joins the top alternative of every result; long audio comes back as several consecutive
+    // results. The transcript is empty when nothing was recognized.
+    static Recognition parse(Reader body) throws IOException {
+        return readRecognition(new JsonReader(body));
+    }
+
+    static Operation parseOperation(Reader body) throws IOException {
+        String name = null;
+        boolean done = false;
+        String error = null;
+        Recognition recognition = null;
+        JsonReader reader = new JsonReader(body);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (field.equals("name")) {
+                name = reader.nextString();
+            } else if (field.equals("done")) {
+                done = reader.nextBoolean();
+            } else if (field.equals("error")) {
+                error = readStatus(reader);
+            } else if (field.equals("response")) {
+                recognition = readRecognition(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Operation(name, done, error, recognition);
+    }
+
+    // google.rpc.Status as "code: message"
+    private static String readStatus(JsonReader reader) throws IOException {
+        int code = 0;
+        String message = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (name.equals("code")) {
+                code = reader.nextInt();
+            } else if (name.equals("message")) {
+                message = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return code + ": " + message;
+    }
+
+    private static Recognition readRecognition(JsonReader reader) throws IOException {
+        StringBuilder transcript = new StringBuilder();
+        List<WordTimings.Word> words = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("results") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    String text = readResult(reader, words).trim();
+                    if (!text.isEmpty()) {
+                        if (transcript.length() > 0) {
+                            transcript.append(' ');
+                        }
+                        transcript.append(text);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Recognition(transcript.toString(), words);
+    }
+
+    private static String readResult(JsonReader reader, List<WordTimings.Word> words) throws IOException {
+        String transcript = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("alternatives") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (first) {
+                        transcript = readAlternative(reader, words);
+                        first = false;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return transcript;
+    }
+
+    private static String readAlternative(JsonReader reader, List<WordTimings.Word> words) throws IOException {
+        String transcript = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("transcript") && reader.peek() == JsonToken.STRING) {
+                transcript = reader.nextString();
+            } else if (name.equals("words") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    words.add(readWord(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return transcript;
+    }
+
+    private static WordTimings.Word readWord(JsonReader reader) throws IOException {
+        String word = "";
+        int startMs = 0;
+        int endMs = 0;
+        float confidence = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+            } else if (name.equals("word")) {
+                word = reader.nextString();
+            } else if (name.equals("startTime")) {
+                startMs = parseDurationMs(reader.nextString());
+            } else if (name.equals("endTime")) {
+                endMs = parseDurationMs(reader.nextString());
+            } else if (name.equals("confidence")) {
+                confidence = (float) reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new WordTimings.Word(word, startMs, endMs, confidence);
+    }
+
+    // Protobuf Duration in JSON form: decimal seconds with an "s" suffix, e.g. "1.300s"
+    static int parseDurationMs(String duration) {
+        String seconds = duration.endsWith("s") ? duration.substring(0, duration.length() - 1) : duration;
+        try {
+            return (int) Math.round(Double.parseDouble(seconds) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Base64 of src[offset, offset + length) into dst from index 0; returns the characters written
+    static int encodeBase64(byte[] src, int offset, int length, byte[] dst) {
+        int out = 0;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[out++] = BASE64[bits >>> 18];
+            dst[out++] = BASE64[(bits >>> 12) & 0x3f];
+            dst[out++] = BASE64[(bits >>> 6) & 0x3f];
+            dst[out++] = BASE64[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            dst[out++] = BASE64[bits >>> 18];
+            dst[out++] = BASE64[(bits >>> 12) & 0x3f];
+            dst[out++] = remaining == 2 ? BASE64[(bits >>> 6) & 0x3f] : (byte) '=';
+            dst[out++] = '=';
+        }
+        return out;
+    }
+
+    private static class RecognizeBody extends RequestBody {
+        private static final byte[] SUFFIX = "\"}}".getBytes(StandardCharsets.UTF_8);
+
+        private final byte[] prefix;
+        private final byte[] audio;
+
+        RecognizeBody(byte[] prefix, byte[] audio) {
+            this.prefix = prefix;
+            this.audio = audio;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return prefix.length + (audio.length + 2L) / 3 * 4 + SUFFIX.length;
+        }
+
+        // Called again if OkHttp retries, so nothing here may consume the audio
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.write(prefix);
+            byte[] block = new byte[BLOCK_INPUT_BYTES / 3 * 4];
+            for (int offset = 0; offset < audio.length; offset += BLOCK_INPUT_BYTES) {
+                int length = Math.min(BLOCK_INPUT_BYTES, audio.length - offset);
+                sink.write(block, 0, encodeBase64(audio, offset, length, block));
+            }
+            sink.write(SUFFIX);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.example.twinmind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written protobuf encoding for the few google.cloud.speech.v1 streaming messages we use,
+ * so streaming recognition needs no gRPC or protobuf runtime. Unknown fields are skipped.
+ */
+final class SpeechProto {
+
+    // StreamingRecognizeRequest
+    private static final int REQUEST_STREAMING_CONFIG = 1;
+    private static final int REQUEST_AUDIO_CONTENT = 2;
+    // StreamingRecognitionConfig
+    private static final int STREAMING_CONFIG_CONFIG = 1;
+    private static final int STREAMING_CONFIG_INTERIM_RESULTS = 3;
+    // RecognitionConfig
+    private static final int CONFIG_ENCODING = 1;
+    private static final int CONFIG_SAMPLE_RATE = 2;
+    private static final int CONFIG_LANGUAGE_CODE = 3;
+    private static final int CONFIG_AUTOMATIC_PUNCTUATION = 11;
+    private static final int CONFIG_MODEL = 13;
+    // StreamingRecognizeResponse
+    private static final int RESPONSE_ERROR = 1;
+    private static final int RESPONSE_RESULTS = 2;
+    // StreamingRecognitionResult
+    private static final int RESULT_ALTERNATIVES = 1;
+    private static final int RESULT_IS_FINAL = 2;
+    private static final int RESULT_STABILITY = 3;
+    private static final int RESULT_END_TIME = 4;
+    // SpeechRecognitionAlternative
+    private static final int ALTERNATIVE_TRANSCRIPT = 1;
+    // google.protobuf.Duration and google.rpc.Status share field numbers 1 and 2
+    private static final int DURATION_SECONDS = 1;
+    private static final int DURATION_NANOS = 2;
+    private static final int STATUS_CODE = 1;
+    private static final int STATUS_MESSAGE = 2;
+
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_FIXED64 = 1;
+    private static final int WIRE_LENGTH_DELIMITED = 2;
+    private static final int WIRE_FIXED32 = 5;
+
+    static final int ENCODING_LINEAR16 = 1;
+    static final int ENCODING_FLAC = 2;
+
+    static class Response {
+        public List<Result> results = new ArrayList<>();
+        public int errorCode;
+        public String errorMessage;
+    }
+
+    static class Result {
+        public String transcript = "";
+        public boolean isFinal;
+        public float stability;
+        public long endTimeMillis;
+    }
+
+    private SpeechProto() {}
+
+    static byte[] streamingConfigRequest(int encoding, int sampleRate, String languageCode,
+                                         boolean automaticPunctuation, String model, boolean interimResults) {
+        ByteArrayOutputStream config = new ByteArrayOutputStream();
+        writeVarintField(config, CONFIG_ENCODING, encoding);
+        writeVarintField(config, CONFIG_SAMPLE_RATE, sampleRate);
+        writeBytesField(config, CONFIG_LANGUAGE_CODE, languageCode.getBytes(StandardCharsets.UTF_8));
+        writeVarintField(config, CONFIG_AUTOMATIC_PUNCTUATION, automaticPunctuation ? 1 : 0);
+        writeBytesField(config, CONFIG_MODEL, model.getBytes(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream streamingConfig = new ByteArrayOutputStream();
+        writeBytesField(streamingConfig, STREAMING_CONFIG_CONFIG, config.toByteArray());
+        writeVarintField(streamingConfig, STREAMING_CONFIG_INTERIM_RESULTS, interimResults ? 1 : 0);
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        writeBytesField(request, REQUEST_STREAMING_CONFIG, streamingConfig.toByteArray());
+        return request.toByteArray();
+    }
+
+    // Size of a StreamingRecognizeRequest carrying this many audio bytes
+    static int audioRequestSize(int audioLength) {
+        return 1 + varintSize(audioLength) + audioLength;
+    }
+
+    // Writes the request prefix; the caller follows it with exactly audioLength bytes of audio
+    static int writeAudioRequestPrefix(byte[] dst, int audioLength) {
+        int offset = 0;
+        dst[offset++] = (byte) ((REQUEST_AUDIO_CONTENT << 3) | WIRE_LENGTH_DELIMITED);
+        long value = audioLength;
+        while ((value & ~0x7FL) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    static Response parseResponse(byte[] message) throws IOException {
+        Response response = new Response();
+        Reader reader = new Reader(message, 0, message.length);
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == field(RESPONSE_RESULTS, WIRE_LENGTH_DELIMITED)) {
+                response.results.add(parseResult(reader.readEmbedded()));
+            } else if (tag == field(RESPONSE_ERROR, WIRE_LENGTH_DELIMITED)) {
+                parseStatus(reader.readEmbedded(), response);
+            } else {
+                reader.skip(tag);
+            }
+        }
+        return response;
+    }
+
+    private static Result parseResult(Reader reader) throws IOException {
+        Result result = new Result();
+        boolean haveAlternative = false;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == field(RESULT_ALTERNATIVES, WIRE_LENGTH_DELIMITED)) {
+                Reader alternative = reader.readEmbedded();
+                // Only the top alternative is used
+                if (!haveAlternative) {
+                    result.transcript = parseTranscript(alternative);
+                    haveAlternative = true;
+                }
+            } else if (tag == field(RESULT_IS_FINAL, WIRE_VARINT)) {
+                result.isFinal = reader.readVarint() != 0;
+            } else if (tag == field(RESULT_STABILITY, WIRE_FIXED32)) {
+                result.stability = Float.intBitsToFloat(reader.readFixed32());
+            } else if (tag == field(RESULT_END_TIME, WIRE_LENGTH_DELIMITED)) {
+                result.endTimeMillis = parseDurationMillis(reader.readEmbedded());
+            } else {
+                reader.skip(tag);
+            }
+        }
+        return result;
+    }
+
+    private static String parseTranscript(Reader reader) throws IOException {
+        String transcript = "";
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == field(ALTERNATIVE_TRANSCRIPT, WIRE_LENGTH_DELIMITED)) {
+                transcript = reader.readString();
+            } else {
+                reader.skip(tag);
+            }
+        }
+        return transcript;
+    }
+
+    private static long parseDurationMillis(Reader reader) throws IOException {
+        long seconds = 0;
+        long nanos = 0;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == field(DURATION_SECONDS, WIRE_VARINT)) {
+                seconds = reader.readVarint();
+            } else if (tag == field(DURATION_NANOS, WIRE_VARINT)) {
+                nanos = reader.readVarint();
+            } else {
+                reader.skip(tag);
+            }
+        }
+        return seconds * 1000 + nanos / 1_000_000;
+    }
+
+    private static void parseStatus(Reader reader, Response response) throws IOException {
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == field(STATUS_CODE, WIRE_VARINT)) {
+                response.errorCode = (int) reader.readVarint();
+            } else if (tag == field(STATUS_MESSAGE, WIRE_LENGTH_DELIMITED)) {
+                response.errorMessage = reader.readString();
+            } else {
+                reader.skip(tag);
+            }
+        }
+    }
+
+    private static int field(int number, int wireType) {
+        return (number << 3) | wireType;
+    }
+
+    private static void writeVarintField(ByteArrayOutputStream out, int number, long value) {
+        writeVarint(out, field(number, WIRE_VARINT));
+        writeVarint(out, value);
+    }
+
+    private static void writeBytesField(ByteArrayOutputStream out, int number, byte[] value) {
+        writeVarint(out, field(number, WIRE_LENGTH_DELIMITED));
+        writeVarint(out, value.length);
+        out.write(value, 0, value.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int position;
+        private final int limit;
+
+        Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        boolean hasMore() {
+            return position < limit;
+        }
+
+        int readTag() throws IOException {
+            return (int) readVarint();
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw new IOException("Truncated varint");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readFixed32() throws IOException {
+            require(4);
+            int value = (data[position] & 0xff) | (data[position + 1] & 0xff) << 8
+                    | (data[position + 2] & 0xff) << 16 | (data[position + 3] & 0xff) << 24;
+            position += 4;
+            return value;
+        }
+
+        Reader readEmbedded() throws IOException {
+            int length = readLength();
+            Reader embedded = new Reader(data, position, length);
+            position += length;
+            return embedded;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 0x7) {
+                case WIRE_VARINT:
+                    readVarint();
+                    break;
+                case WIRE_FIXED64:
+                    require(8);
+                    position += 8;
+                    break;
+                case WIRE_LENGTH_DELIMITED:
+                    position += readLength();
+                    break;
+                case WIRE_FIXED32:
+                    require(4);
+                    position += 4;
+                    break;
+                default:
+                    throw new IOException("Unsupported wire type " + (tag & 0x7));
+            }
+        }
+
+        private int readLength() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > limit - position) {
+                throw new IOException("Field length " + length + " overruns message");
+            }
+            return (int) length;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (limit - position < bytes) {
+                throw new IOException("Truncated message");
+            }
+        }
+    }
+}
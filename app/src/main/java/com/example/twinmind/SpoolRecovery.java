@@ -0,0 +1,113 @@
+package com.example.twinmind;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class SpoolRecovery {
+
+    private static final String TAG = "SpoolRecovery";
+
+    // Orphans can only come from an earlier process, so one pass per process is enough
+    private static final AtomicBoolean recoveryStarted = new AtomicBoolean(false);
+
+    private final AudioSpool audioSpool;
+    private final TranscriptionManager transcriptionManager;
+    private final TranscriptionDatabaseHelper dbHelper;
+
+    public SpoolRecovery(Context context, AudioSpool audioSpool, TranscriptionManager transcriptionManager) {
+        this.audioSpool = audioSpool;
+        this.transcriptionManager = transcriptionManager;
+        this.dbHelper = TranscriptionDatabaseHelper.getInstance(context);
+    }
+
+    public void recoverAsync(String activeSessionId) {
+        if (!recoveryStarted.compareAndSet(false, true)) {
+            return;
+        }
+        new Thread(() -> recover(activeSessionId), "SpoolRecovery").start();
+    }
+
+    private void recover(String activeSessionId) {
+        try {
+            Map<String, Long> recordedDurations = replayOrphanedSegments(activeSessionId);
+            finalizeUnfinishedSessions(activeSessionId, recordedDurations);
+        } catch (Exception e) {
+            Log.e(TAG, "Error recovering spooled audio", e);
+        }
+    }
+
+    private Map<String, Long> replayOrphanedSegments(String activeSessionId) {
+        Map<String, Long> recordedDurations = new HashMap<>();
+
+        for (String sessionId : audioSpool.listSessionIds()) {
+            if (sessionId.equals(activeSessionId)) {
+                continue;
+            }
+
+            List<AudioSpool.Segment> segments = audioSpool.listSegments(sessionId);
+            RecordingSession session = dbHelper.getRecordingSession(sessionId);
+            long endSample = 0;
+            int replayed = 0;
+
+            for (AudioSpool.Segment segment : segments) {
+                endSample = Math.max(endSample, segment.getEndSampleOffset());
+                if (segment.hasPendingAudio() && replaySegment(segment, session)) {
+                    replayed++;
+                }
+            }
+            recordedDurations.put(sessionId, endSample * 1000 / AudioSpool.SAMPLE_RATE);
+
+            if (replayed == 0) {
+                audioSpool.deleteSession(sessionId);
+            }
+            Log.d(TAG, "Session " + sessionId + ": replaying " + replayed + " of " + segments.size() + " spooled chunks");
+        }
+
+        return recordedDurations;
+    }
+
+    private boolean replaySegment(AudioSpool.Segment segment, RecordingSession session) {
+        try {
+            AudioChunk chunk = new AudioChunk(segment.sessionId, segment.sequence, segment.sampleOffset,
+                    segment.readAudio());
+            chunk.segment = segment;
+            chunk.recovered = true;
+            chunk.timestamp = session != null
+                    ? session.startTime + segment.sampleOffset * 1000 / AudioSpool.SAMPLE_RATE
+                    : segment.file.lastModified();
+
+            transcriptionManager.transcribeAudioChunk(chunk);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Discarding unreadable spool segment " + segment.file.getName(), e);
+            segment.delete();
+            return false;
+        }
+    }
+
+    private void finalizeUnfinishedSessions(String activeSessionId, Map<String, Long> recordedDurations) {
+        for (RecordingSession session : dbHelper.getUnfinishedRecordingSessions()) {
+            if (session.sessionId.equals(activeSessionId)) {
+                continue;
+            }
+
+            Long duration = recordedDurations.get(session.sessionId);
+            if (duration == null) {
+                // Nothing left in the spool; the last transcript is the best record of how far it got
+                duration = 0L;
+                for (TranscriptionEntry entry : dbHelper.getTranscriptionsForSession(session.sessionId)) {
+                    duration = Math.max(duration, entry.timestamp - session.startTime);
+                }
+            }
+
+            dbHelper.endRecordingSession(session.sessionId, session.startTime + duration, duration);
+            Log.d(TAG, "Finalized interrupted session " + session.sessionId + " with duration " + duration + "ms");
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.twinmind;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * Continuous recognition over the Speech API's gRPC StreamingRecognize method, spoken directly as
+ * HTTP/2 with OkHttp: one duplex call per stream, length-prefixed protobuf messages each way.
+ *
+ * The capture thread feeds PCM into a ring without blocking. A sender thread ships whatever has
+ * arrived every {@link #FRAME_MS} and a reader thread per stream turns responses into interim and
+ * final callbacks. Audio stays in the ring until a final result covers it, so when a stream is
+ * rotated ahead of the server's duration limit, or dies with the network, the next stream starts
+ * by replaying the audio that never got a final result.
+ */
+public class StreamingRecognizer {
+
+    private static final String TAG = "StreamingRecognizer";
+
+    public static final String DEFAULT_URL =
+            "https://speech.googleapis.com/google.cloud.speech.v1.Speech/StreamingRecognize";
+    // The server ends a stream after about 305s of audio; rotating earlier keeps that from ever
+    // cutting a result in half
+    public static final long DEFAULT_ROTATION_MS = 290_000;
+
+    private static final MediaType GRPC = MediaType.get("application/grpc");
+    private static final int GRPC_OK = 0;
+    private static final int GRPC_RESOURCE_EXHAUSTED = 8;
+    private static final int GRPC_OUT_OF_RANGE = 11;
+
+    private static final long FRAME_MS = 100;
+    // Requests are limited to 25KB of audio each
+    private static final int MAX_AUDIO_PER_MESSAGE = 24 * 1024;
+    // 2MB holds ~65s of 16kHz audio while waiting for finals or a reconnect
+    private static final int RING_CAPACITY = 2 * 1024 * 1024;
+    private static final long MAX_REPLAY_MS = 30_000;
+    private static final long SINK_TIMEOUT_MS = 10_000;
+    private static final long FINAL_RESULTS_TIMEOUT_MS = 10_000;
+    private static final long INITIAL_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    public interface Callback {
+        void onInterim(String transcript);
+        void onFinal(String transcript);
+        void onError(String error);
+    }
+
+    private final OkHttpClient httpClient;
+    private final String url;
+    private final String apiKey;
+    private final int sampleRate;
+    private final String languageCode;
+    private final Callback callback;
+    private final PcmRingBuffer ringBuffer = new PcmRingBuffer(RING_CAPACITY);
+    private final byte[] audioPrefix = new byte[8];
+    private long rotationMs = DEFAULT_ROTATION_MS;
+    private RateLimiter rateLimiter;
+
+    private volatile boolean running;
+    private Thread senderThread;
+    // Ring position up to which audio has final results; advanced by the reader, released by the sender
+    private volatile long finalizedPosition;
+    private volatile int streamsOpened;
+
+    public StreamingRecognizer(OkHttpClient httpClient, String url, String apiKey, int sampleRate,
+                               String languageCode, Callback callback) {
+        // Results can be minutes apart in a quiet room, so only the server may end a stream
+        this.httpClient = httpClient.newBuilder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .callTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        this.url = url;
+        this.apiKey = apiKey;
+        this.sampleRate = sampleRate;
+        this.languageCode = languageCode;
+        this.callback = callback;
+    }
+
+    // Must be called before start
+    public void setRotationIntervalMs(long rotationMs) {
+        this.rotationMs = rotationMs;
+    }
+
+    // Must be called before start. Each stream opened then takes a Speech API token.
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        ringBuffer.clear();
+        finalizedPosition = ringBuffer.getWritePosition();
+        running = true;
+        senderThread = new Thread(this::run, TAG);
+        senderThread.start();
+    }
+
+    // Sends what has been fed, waits for its final results on the sender thread and ends the stream
+    public synchronized void stop() {
+        running = false;
+    }
+
+    public boolean awaitStopped(long timeoutMs) throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = senderThread;
+        }
+        if (thread == null) {
+            return true;
+        }
+        thread.join(timeoutMs);
+        return !thread.isAlive();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getStreamsOpened() {
+        return streamsOpened;
+    }
+
+    // Capture thread. Leaves the buffer's position where it was; audio that does not fit is dropped.
+    public void feed(ByteBuffer pcm) {
+        if (!running) {
+            return;
+        }
+        int position = pcm.position();
+        ringBuffer.write(pcm);
+        pcm.position(position);
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        if (running) {
+            ringBuffer.write(data, offset, length);
+        }
+    }
+
+    private void run() {
+        long backoffMs = INITIAL_BACKOFF_MS;
+        while (running) {
+            if (rateLimiter != null) {
+                // This is our own thread, and the ring keeps buffering while it waits
+                try {
+                    Thread.sleep(rateLimiter.reserve(RateLimiter.Endpoint.SPEECH));
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            // A new stream starts with the audio the previous one never finalized
+            releaseFinalized(ringBuffer.getWritePosition());
+            Stream stream = new Stream(ringBuffer.getReadPosition());
+            runStream(stream);
+            if (stream.error == null) {
+                backoffMs = INITIAL_BACKOFF_MS;
+                continue;
+            }
+
+            Log.e(TAG, "Stream failed: " + stream.error);
+            callback.onError(stream.error);
+            if (!running) {
+                break;
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+        Log.d(TAG, "Streaming stopped after " + streamsOpened + " streams");
+    }
+
+    private void runStream(Stream stream) {
+        streamsOpened++;
+        byte[] config = SpeechProto.streamingConfigRequest(SpeechProto.ENCODING_LINEAR16, sampleRate,
+                languageCode, true, "latest_long", true);
+        StreamBody body = new StreamBody(config);
+        Request request = new Request.Builder()
+                .url(url)
+                .header("x-goog-api-key", apiKey)
+                .header("te", "trailers")
+                .post(body)
+                .build();
+        Call call = httpClient.newCall(request);
+        Thread reader = new Thread(() -> readResponses(call, stream, body), TAG + "Reader");
+        reader.start();
+
+        try {
+            BufferedSink sink = body.awaitSink();
+            if (sink == null) {
+                stream.fail("Timed out opening stream");
+                call.cancel();
+                return;
+            }
+            long openedAt = System.nanoTime();
+            long rotationNanos = TimeUnit.MILLISECONDS.toNanos(rotationMs);
+            // The last pass after stop still sends everything that was fed
+            do {
+                Thread.sleep(FRAME_MS);
+                sendPending(sink, stream);
+            } while (running && !stream.ended && System.nanoTime() - openedAt < rotationNanos);
+
+            // Half-close: the server finalizes what it has and then ends the stream
+            sink.close();
+            reader.join(FINAL_RESULTS_TIMEOUT_MS);
+            if (reader.isAlive()) {
+                stream.fail("Timed out waiting for final results");
+            }
+        } catch (IOException e) {
+            stream.fail("Error sending audio: " + e.getMessage());
+        } catch (InterruptedException e) {
+            stream.fail("Interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            call.cancel();
+            try {
+                reader.join(FINAL_RESULTS_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void sendPending(BufferedSink sink, Stream stream) throws IOException {
+        long write = ringBuffer.getWritePosition();
+        releaseFinalized(stream.sentPosition);
+        while (stream.sentPosition < write && !stream.ended) {
+            int length = (int) Math.min(write - stream.sentPosition, MAX_AUDIO_PER_MESSAGE) & ~1;
+            if (length == 0) {
+                break;
+            }
+            PcmRingBuffer.PcmSlice slice = ringBuffer.slice(stream.sentPosition, length);
+            int prefixLength = SpeechProto.writeAudioRequestPrefix(audioPrefix, length);
+            sink.writeByte(0);
+            sink.writeInt(SpeechProto.audioRequestSize(length));
+            sink.write(audioPrefix, 0, prefixLength);
+            slice.writeTo(sink);
+            stream.sentPosition += length;
+        }
+        sink.flush();
+    }
+
+    // Lets go of audio that has final results, or that has waited too long for one
+    private void releaseFinalized(long upTo) {
+        long replayLimit = upTo - MAX_REPLAY_MS * sampleRate / 1000 * 2;
+        ringBuffer.releaseTo(Math.min(upTo, Math.max(finalizedPosition, replayLimit)));
+    }
+
+    private void readResponses(Call call, Stream stream, StreamBody body) {
+        try (Response response = call.execute()) {
+            if (response.code() != 200) {
+                if (response.code() == 429) {
+                    onRateLimited(response.header("Retry-After"));
+                }
+                stream.fail("HTTP " + response.code());
+                return;
+            }
+            BufferedSource source = response.body().source();
+            while (!source.exhausted()) {
+                if (source.readByte() != 0) {
+                    stream.fail("Compressed responses are not supported");
+                    return;
+                }
+                byte[] message = source.readByteArray(source.readInt() & 0xFFFFFFFFL);
+                handleResponse(SpeechProto.parseResponse(message), stream);
+            }
+
+            String status = response.trailers().get("grpc-status");
+            if (status == null) {
+                // Trailers-only responses carry the status in the headers
+                status = response.header("grpc-status");
+            }
+            int code = status != null ? Integer.parseInt(status) : GRPC_OK;
+            if (code == GRPC_RESOURCE_EXHAUSTED) {
+                onRateLimited(null);
+            }
+            if (code != GRPC_OK && code != GRPC_OUT_OF_RANGE) {
+                String message = response.trailers().get("grpc-message");
+                stream.fail("gRPC status " + code + (message != null ? ": " + message : ""));
+            }
+        } catch (IOException | NumberFormatException e) {
+            if (!call.isCanceled()) {
+                stream.fail("Stream error: " + e.getMessage());
+            }
+        } finally {
+            stream.ended = true;
+            // Wakes the sender if the call failed before the body was ever written
+            body.sinkReady.countDown();
+        }
+    }
+
+    private void onRateLimited(String retryAfter) {
+        if (rateLimiter != null) {
+            rateLimiter.onRateLimited(RateLimiter.Endpoint.SPEECH, retryAfter);
+        }
+    }
+
+    private void handleResponse(SpeechProto.Response response, Stream stream) {
+        if (response.errorCode != GRPC_OK) {
+            stream.fail("Recognition error " + response.errorCode + ": " + response.errorMessage);
+            return;
+        }
+        StringBuilder interim = null;
+        for (SpeechProto.Result result : response.results) {
+            String transcript = result.transcript.trim();
+            if (result.isFinal) {
+                long end = stream.startPosition + result.endTimeMillis * sampleRate / 1000 * 2;
+                finalizedPosition = Math.max(finalizedPosition, Math.min(end, stream.sentPosition));
+                if (!transcript.isEmpty()) {
+                    callback.onFinal(transcript);
+                }
+            } else if (!transcript.isEmpty()) {
+                // Interim hypotheses arrive split into a stable head and a volatile tail
+                if (interim == null) {
+                    interim = new StringBuilder(transcript);
+                } else {
+                    interim.append(' ').append(transcript);
+                }
+            }
+        }
+        if (interim != null) {
+            callback.onInterim(interim.toString());
+        }
+    }
+
+    private static class Stream {
+        final long startPosition;
+        volatile long sentPosition;
+        volatile boolean ended;
+        volatile String error;
+
+        Stream(long startPosition) {
+            this.startPosition = startPosition;
+            this.sentPosition = startPosition;
+        }
+
+        void fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+        }
+    }
+
+    // Duplex body: OkHttp hands over the sink once and the sender thread keeps writing to it
+    private static class StreamBody extends RequestBody {
+        private final byte[] config;
+        private final CountDownLatch sinkReady = new CountDownLatch(1);
+        private volatile BufferedSink sink;
+
+        StreamBody(byte[] config) {
+            this.config = config;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return GRPC;
+        }
+
+        @Override
+        public boolean isDuplex() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.writeByte(0);
+            sink.writeInt(config.length);
+            sink.write(config);
+            sink.flush();
+            this.sink = sink;
+            sinkReady.countDown();
+        }
+
+        BufferedSink awaitSink() throws InterruptedException {
+            sinkReady.await(SINK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return sink;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.twinmind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * BM25 retrieval over one session's transcript, so a chat question is sent with the passages it
+ * is about instead of the whole meeting.
+ *
+ * The transcript is cut into passages of {@link #PASSAGE_WORDS} words, each starting
+ * {@link #OVERLAP_WORDS} words before the previous one ends so a sentence on a boundary is whole
+ * in at least one of them. Segments are appended as they are transcribed; only the passages that
+ * were still short are re-indexed. Thread-safe.
+ */
+public class TranscriptIndex {
+
+    // About 40s of speech
+    static final int PASSAGE_WORDS = 120;
+    static final int OVERLAP_WORDS = 30;
+    private static final int STRIDE = PASSAGE_WORDS - OVERLAP_WORDS;
+
+    // Transcripts up to this size are cheap enough to send whole, and then nothing can be missed
+    public static final int FULL_TRANSCRIPT_TOKENS = 4000;
+    public static final int DEFAULT_CONTEXT_TOKENS = 2500;
+
+    // Usual BM25 parameters
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Question words carry no topic; dropped from queries and passages alike
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "did", "do", "does", "for", "from",
+            "how", "i", "in", "is", "it", "of", "on", "or", "so", "that", "the", "this", "to", "uh", "um",
+            "was", "we", "were", "what", "when", "where", "which", "who", "why", "with", "you"));
+
+    // What to put in the prompt for a question
+    public static class Selection {
+        public final String text;
+        // Whole transcript, because it is short or nothing matched
+        public final boolean full;
+        public final int passages;
+
+        Selection(String text, boolean full, int passages) {
+            this.text = text;
+            this.full = full;
+            this.passages = passages;
+        }
+    }
+
+    private final List<String> words = new ArrayList<>();
+    // Index terms of each word, null where the word has none
+    private final List<String> terms = new ArrayList<>();
+    private final List<Map<String, Integer>> termCounts = new ArrayList<>();
+    private final List<Integer> lengths = new ArrayList<>();
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+    private long totalLength;
+    private int chars;
+
+    public synchronized void add(String segment) {
+        String[] tokens = TranscriptStitcher.tokenize(segment);
+        if (tokens.length == 0) {
+            return;
+        }
+        // Passages that ended at the old end of the transcript grow to take the new words
+        int firstShort = words.size() < PASSAGE_WORDS ? 0 : (words.size() - PASSAGE_WORDS) / STRIDE + 1;
+        for (String token : tokens) {
+            words.add(token);
+            terms.add(term(token));
+            chars += token.length() + 1;
+        }
+        int count = passageCount(words.size());
+        for (int p = firstShort; p < count; p++) {
+            if (p < termCounts.size()) {
+                unindex(p);
+            }
+            index(p);
+        }
+    }
+
+    public synchronized void clear() {
+        words.clear();
+        terms.clear();
+        termCounts.clear();
+        lengths.clear();
+        documentFrequency.clear();
+        totalLength = 0;
+        chars = 0;
+    }
+
+    public synchronized int getPassageCount() {
+        return termCounts.size();
+    }
+
+    public synchronized int getWordCount() {
+        return words.size();
+    }
+
+    public synchronized int estimateTokens() {
+        return (chars + TranscriptSummarizer.CHARS_PER_TOKEN - 1) / TranscriptSummarizer.CHARS_PER_TOKEN;
+    }
+
+    public synchronized String getText() {
+        return String.join(" ", words);
+    }
+
+    // Passage numbers, best match first; passages sharing no term with the query are left out
+    public synchronized List<Integer> search(String query, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>();
+        for (String token : TranscriptStitcher.tokenize(query)) {
+            String term = term(token);
+            if (term != null && documentFrequency.containsKey(term)) {
+                queryTerms.add(term);
+            }
+        }
+        int n = termCounts.size();
+        if (queryTerms.isEmpty() || n == 0) {
+            return Collections.emptyList();
+        }
+        double averageLength = Math.max(1.0, (double) totalLength / n);
+        double[] scores = new double[n];
+        for (String term : queryTerms) {
+            int df = documentFrequency.get(term);
+            double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            for (int p = 0; p < n; p++) {
+                Integer tf = termCounts.get(p).get(term);
+                if (tf != null) {
+                    scores[p] += idf * tf * (K1 + 1)
+                            / (tf + K1 * (1 - B + B * lengths.get(p) / averageLength));
+                }
+            }
+        }
+        List<Integer> ranked = new ArrayList<>();
+        for (int p = 0; p < n; p++) {
+            if (scores[p] > 0) {
+                ranked.add(p);
+            }
+        }
+        ranked.sort((a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Integer.compare(a, b));
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+
+    // The transcript itself when it is short or the question matches nothing, else the best
+    // passages that fit in maxTokens, in transcript order, with "[...]" where text was skipped
+    public synchronized Selection select(String query, int maxTokens) {
+        if (estimateTokens() <= FULL_TRANSCRIPT_TOKENS) {
+            return new Selection(getText(), true, 0);
+        }
+        List<Integer> ranked = search(query, termCounts.size());
+        if (ranked.isEmpty()) {
+            return new Selection(getText(), true, 0);
+        }
+
+        BitSet included = new BitSet(words.size());
+        int budget = maxTokens * TranscriptSummarizer.CHARS_PER_TOKEN;
+        int used = 0;
+        int passages = 0;
+        for (int p : ranked) {
+            // Overlap with a passage already chosen costs nothing twice
+            int cost = 0;
+            for (int w = start(p); w < end(p); w++) {
+                if (!included.get(w)) {
+                    cost += words.get(w).length() + 1;
+                }
+            }
+            if (used + cost > budget) {
+                continue;
+            }
+            included.set(start(p), end(p));
+            used += cost;
+            passages++;
+        }
+        if (passages == 0) {
+            // Not even the best passage fits; send as much of it as does
+            int p = ranked.get(0);
+            for (int w = start(p); w < end(p) && used + words.get(w).length() + 1 <= budget; w++) {
+                included.set(w);
+                used += words.get(w).length() + 1;
+            }
+            passages = 1;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int w = included.nextSetBit(0); w >= 0; w = included.nextSetBit(w + 1)) {
+            if (text.length() > 0) {
+                text.append(w > 0 && !included.get(w - 1) ? "\n[...]\n" : " ");
+            }
+            text.append(words.get(w));
+        }
+        return new Selection(text.toString(), false, passages);
+    }
+
+    synchronized String getPassage(int p) {
+        return String.join(" ", words.subList(start(p), end(p)));
+    }
+
+    private static int passageCount(int wordCount) {
+        if (wordCount == 0) {
+            return 0;
+        }
+        return wordCount <= PASSAGE_WORDS ? 1 : 1 + (wordCount - PASSAGE_WORDS + STRIDE - 1) / STRIDE;
+    }
+
+    private static int start(int p) {
+        return p * STRIDE;
+    }
+
+    private int end(int p) {
+        return Math.min(start(p) + PASSAGE_WORDS, words.size());
+    }
+
+    private void index(int p) {
+        Map<String, Integer> counts = new HashMap<>();
+        int length = 0;
+        for (int w = start(p); w < end(p); w++) {
+            String term = terms.get(w);
+            if (term != null) {
+                counts.merge(term, 1, Integer::sum);
+                length++;
+            }
+        }
+        for (String term : counts.keySet()) {
+            documentFrequency.merge(term, 1, Integer::sum);
+        }
+        if (p < termCounts.size()) {
+            termCounts.set(p, counts);
+            lengths.set(p, length);
+        } else {
+            termCounts.add(counts);
+            lengths.add(length);
+        }
+        totalLength += length;
+    }
+
+    private void unindex(int p) {
+        for (String term : termCounts.get(p).keySet()) {
+            if (documentFrequency.merge(term, -1, Integer::sum) == 0) {
+                documentFrequency.remove(term);
+            }
+        }
+        totalLength -= lengths.get(p);
+    }
+
+    // Normalized, without a plural or possessive s, so "budget's" and "budgets" find "budget"
+    static String term(String token) {
+        String term = TranscriptStitcher.normalize(token);
+        if (term.endsWith("'s")) {
+            term = term.substring(0, term.length() - 2);
+        }
+        term = term.replace("'", "");
+        if (term.length() > 3 && term.endsWith("s") && !term.endsWith("ss")) {
+            term = term.substring(0, term.length() - 1);
+        }
+        return term.isEmpty() || STOP_WORDS.contains(term) ? null : term;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.twinmind;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Puts transcription results back into capture order when several chunks are in flight at once.
+ * Each session's chunks are numbered from 0 as they are cut; a result is released only after every
+ * lower sequence has been released or skipped. A chunk that failed is skipped straight away, and a
+ * chunk that never reports is given up on once the results queued behind it have waited
+ * {@code gapTimeoutMs}, so one stuck request cannot hold back the rest of the meeting. Once a
+ * session's capture has ended, nothing it is waiting for could be a chunk still being retried
+ * behind newer ones, so its gaps are given up on after the shorter {@code endedGapTimeoutMs}.
+ *
+ * Not thread-safe: all calls must come from one thread. Times are passed in so tests control them.
+ */
+public class TranscriptReorderBuffer<T> {
+
+    public interface Sink<T> {
+        // result is null for a sequence that was skipped. late is set for a result whose sequence
+        // had already been given up on, which is released as soon as it arrives.
+        void release(String sessionId, long sequence, T result, boolean late);
+    }
+
+    private static class Session<T> {
+        long nextSequence;
+        boolean ended;
+        // Results waiting for a lower sequence, with the time each one arrived
+        final TreeMap<Long, Pending<T>> pending = new TreeMap<>();
+    }
+
+    private static class Pending<T> {
+        final T result;
+        final long arrivedAtMs;
+
+        Pending(T result, long arrivedAtMs) {
+            this.result = result;
+            this.arrivedAtMs = arrivedAtMs;
+        }
+    }
+
+    private final long gapTimeoutMs;
+    private final long endedGapTimeoutMs;
+    private final Sink<T> sink;
+    private final Map<String, Session<T>> sessions = new HashMap<>();
+
+    private long gapsSkipped;
+    private long lateResults;
+    private int maxPending;
+
+    public TranscriptReorderBuffer(long gapTimeoutMs, Sink<T> sink) {
+        this(gapTimeoutMs, gapTimeoutMs, sink);
+    }
+
+    public TranscriptReorderBuffer(long gapTimeoutMs, long endedGapTimeoutMs, Sink<T> sink) {
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.endedGapTimeoutMs = endedGapTimeoutMs;
+        this.sink = sink;
+    }
+
+    public void offer(String sessionId, long sequence, T result, long nowMs) {
+        Session<T> session = session(sessionId);
+        if (sequence < session.nextSequence) {
+            lateResults++;
+            sink.release(sessionId, sequence, result, true);
+            return;
+        }
+        session.pending.put(sequence, new Pending<>(result, nowMs));
+        drain(sessionId, session);
+        maxPending = Math.max(maxPending, session.pending.size());
+    }
+
+    // The chunk produced no result (failed, or nothing was recognized)
+    public void skip(String sessionId, long sequence, long nowMs) {
+        offer(sessionId, sequence, null, nowMs);
+    }
+
+    // No chunk after the ones already cut will come for the session
+    public void endSession(String sessionId) {
+        Session<T> session = sessions.get(sessionId);
+        if (session != null) {
+            session.ended = true;
+        }
+    }
+
+    public int getPendingCount(String sessionId) {
+        Session<T> session = sessions.get(sessionId);
+        return session != null ? session.pending.size() : 0;
+    }
+
+    // Skips any gap whose queued results have waited too long. Returns how long until the next gap
+    // could expire, or -1 if nothing is waiting.
+    public long releaseExpired(long nowMs) {
+        long nextDeadline = -1;
+        for (Map.Entry<String, Session<T>> entry : sessions.entrySet()) {
+            Session<T> session = entry.getValue();
+            if (session.pending.isEmpty()) {
+                continue;
+            }
+            long timeoutMs = session.ended ? endedGapTimeoutMs : gapTimeoutMs;
+            long waitingSince = oldestArrival(session);
+            if (nowMs - waitingSince >= timeoutMs) {
+                skipTo(entry.getKey(), session, session.pending.firstKey());
+                drain(entry.getKey(), session);
+            }
+            if (!session.pending.isEmpty()) {
+                long deadline = oldestArrival(session) + timeoutMs - nowMs;
+                nextDeadline = nextDeadline < 0 ? deadline : Math.min(nextDeadline, deadline);
+            }
+        }
+        return nextDeadline;
+    }
+
+    // Releases everything still queued for the session in sequence order and forgets it
+    public void flush(String sessionId) {
+        Session<T> session = sessions.remove(sessionId);
+        if (session == null) {
+            return;
+        }
+        while (!session.pending.isEmpty()) {
+            skipTo(sessionId, session, session.pending.firstKey());
+            drain(sessionId, session);
+        }
+    }
+
+    public int getPendingCount() {
+        int count = 0;
+        for (Session<T> session : sessions.values()) {
+            count += session.pending.size();
+        }
+        return count;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public long getGapsSkipped() {
+        return gapsSkipped;
+    }
+
+    public long getLateResults() {
+        return lateResults;
+    }
+
+    private Session<T> session(String sessionId) {
+        Session<T> session = sessions.get(sessionId);
+        if (session == null) {
+            session = new Session<>();
+            sessions.put(sessionId, session);
+        }
+        return session;
+    }
+
+    private void drain(String sessionId, Session<T> session) {
+        Pending<T> next;
+        while ((next = session.pending.remove(session.nextSequence)) != null) {
+            sink.release(sessionId, session.nextSequence, next.result, false);
+            session.nextSequence++;
+        }
+    }
+
+    private void skipTo(String sessionId, Session<T> session, long sequence) {
+        while (session.nextSequence < sequence) {
+            gapsSkipped++;
+            sink.release(sessionId, session.nextSequence, null, false);
+            session.nextSequence++;
+        }
+    }
+
+    private static <T> long oldestArrival(Session<T> session) {
+        long oldest = Long.MAX_VALUE;
+        for (Pending<T> pending : session.pending.values()) {
+            oldest = Math.min(oldest, pending.arrivedAtMs);
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.twinmind;
+
+import java.util.Locale;
+
+/**
+ * Removes the words a chunk repeats from the previous chunk's transcript when chunks are sent with
+ * an audio overlap. The overlap is the longest prefix of the new transcript that is also a suffix
+ * of the previous one, found with a KMP prefix function over normalized tokens, so each boundary
+ * costs time linear in the number of tokens compared.
+ *
+ * A boundary word clipped at the start of the new chunk ("ting" for "meeting") is also tolerated:
+ * the rest of the prefix must still match exactly.
+ */
+public class TranscriptStitcher {
+
+    // Roughly 3 words/s of speech over a 2s overlap, with slack for recognizer disagreement
+    public static final int DEFAULT_MAX_OVERLAP_TOKENS = 12;
+    // A lone matching token is only trusted when it is long enough not to be a filler word
+    private static final int MIN_SINGLE_TOKEN_LENGTH = 4;
+
+    private final int maxOverlapTokens;
+
+    private String lastSessionId;
+    private long lastSequence = -1;
+    private String lastTranscript;
+
+    public TranscriptStitcher() {
+        this(DEFAULT_MAX_OVERLAP_TOKENS);
+    }
+
+    public TranscriptStitcher(int maxOverlapTokens) {
+        this.maxOverlapTokens = maxOverlapTokens;
+    }
+
+    // Returns the chunk's transcript without the words it shares with the previous chunk, which
+    // may be empty. Chunks that do not directly follow the previous one are passed through.
+    public synchronized String stitch(AudioChunk chunk, String transcript) {
+        String result = transcript;
+        boolean follows = chunk.sessionId != null && chunk.sessionId.equals(lastSessionId)
+                && chunk.sequence == lastSequence + 1;
+        if (follows && chunk.overlapSamples > 0 && lastTranscript != null) {
+            result = removeOverlap(lastTranscript, transcript, maxOverlapTokens);
+        }
+        lastSessionId = chunk.sessionId;
+        lastSequence = chunk.sequence;
+        lastTranscript = transcript;
+        return result;
+    }
+
+    public synchronized void reset() {
+        lastSessionId = null;
+        lastSequence = -1;
+        lastTranscript = null;
+    }
+
+    public static String removeOverlap(String previous, String current, int maxOverlapTokens) {
+        String[] currentTokens = tokenize(current);
+        int drop = overlapLength(tokenize(previous), currentTokens, maxOverlapTokens);
+        if (drop == 0) {
+            return current;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = drop; i < currentTokens.length; i++) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(currentTokens[i]);
+        }
+        return builder.toString();
+    }
+
+    // Number of leading tokens of current that repeat the end of previous
+    static int overlapLength(String[] previous, String[] current, int maxOverlapTokens) {
+        int window = Math.min(maxOverlapTokens, Math.min(previous.length, current.length));
+        if (window == 0) {
+            return 0;
+        }
+        String[] tail = new String[window];
+        for (int i = 0; i < window; i++) {
+            tail[i] = normalize(previous[previous.length - window + i]);
+        }
+        String[] head = new String[Math.min(window + 1, current.length)];
+        for (int i = 0; i < head.length; i++) {
+            head[i] = normalize(current[i]);
+        }
+
+        int exact = Math.min(window, longestPrefixSuffix(head, 0, tail, tail.length));
+        if (isTrusted(head, 0, exact)) {
+            return exact;
+        }
+
+        // A clipped first word: the rest of the head lines up with the tail, and the clipped piece
+        // ends the word just before that alignment
+        if (head.length > 1) {
+            int rest = longestPrefixSuffix(head, 1, tail, tail.length);
+            if (rest > 0 && rest < window && isTrusted(head, 1, rest)) {
+                String clipped = head[0];
+                String whole = tail[tail.length - 1 - rest];
+                if (!clipped.isEmpty() && whole.length() > clipped.length() && whole.endsWith(clipped)) {
+                    return rest + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // Longest k such that pattern[from, from + k) equals text[textLength - k, textLength)
+    private static int longestPrefixSuffix(String[] pattern, int from, String[] text, int textLength) {
+        int patternLength = pattern.length - from;
+        if (patternLength <= 0 || textLength <= 0) {
+            return 0;
+        }
+        int[] failure = new int[patternLength];
+        for (int i = 1, k = 0; i < patternLength; i++) {
+            while (k > 0 && !pattern[from + i].equals(pattern[from + k])) {
+                k = failure[k - 1];
+            }
+            if (pattern[from + i].equals(pattern[from + k])) {
+                k++;
+            }
+            failure[i] = k;
+        }
+
+        int matched = 0;
+        for (int i = 0; i < textLength; i++) {
+            while (matched > 0 && (matched == patternLength || !text[i].equals(pattern[from + matched]))) {
+                matched = failure[matched - 1];
+            }
+            if (text[i].equals(pattern[from + matched])) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    private static boolean isTrusted(String[] tokens, int from, int length) {
+        if (length >= 2) {
+            return true;
+        }
+        return length == 1 && tokens[from].length() >= MIN_SINGLE_TOKEN_LENGTH;
+    }
+
+    static String[] tokenize(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    // Recognizers re-punctuate and re-capitalize the same words differently per chunk
+    static String normalize(String token) {
+        StringBuilder builder = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '\'') {
+                builder.append(c);
+            }
+        }
+        return builder.toString().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.twinmind;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Meeting notes for transcripts of any length. A transcript that fits in one window of
+ * {@link #DEFAULT_WINDOW_TOKENS} is sent as a single notes prompt, which is faster than splitting
+ * it: one long prefill beats several queued requests plus a merge.
+ *
+ * Only a transcript beyond that is summarized by map-reduce. It is split into windows, each
+ * summarized on its own with at most {@link #DEFAULT_CONCURRENCY} requests in flight. The partial
+ * summaries are then merged a group at a time, level by level, until one group fits a final
+ * request that writes the notes in the Summary / Meeting Process Overview / Action Items / Your
+ * Notes layout.
+ *
+ * Window summaries are kept as they complete, so after a failure {@link #summarize} re-runs only
+ * the windows that failed. With a caching generator, such as OpenAIManager's, the same holds
+ * across instances until the transcript changes.
+ */
+public class TranscriptSummarizer {
+
+    private static final String TAG = "TranscriptSummarizer";
+
+    // Well inside gemini-2.0-flash's 1M-token input, leaving room for the estimate being rough.
+    // About forty hours of conversation, so in practice every meeting is one prompt.
+    static final int DEFAULT_WINDOW_TOKENS = 500_000;
+    // Input budget of one merge request
+    static final int DEFAULT_REDUCE_TOKENS = 12000;
+    // RateLimiter's Gemini burst; more in flight would only queue there
+    static final int DEFAULT_CONCURRENCY = 2;
+    // Rough for English text; nothing here needs an exact count
+    static final int CHARS_PER_TOKEN = 4;
+
+    static final String NOTES_FORMAT =
+            "## Summary\n" +
+            "[Provide a concise 2-3 sentence overview of the main topics discussed]\n\n" +
+            "## Meeting Process Overview\n" +
+            "[Outline the flow and structure of the meeting/conversation]\n\n" +
+            "## Action Items\n" +
+            "[List specific action items, tasks, or next steps mentioned]\n\n" +
+            "## Your Notes\n" +
+            "[Provide detailed notes organized by topic or speaker, including key decisions, important points, and any other relevant information]\n\n";
+
+    static final String PARTIAL_FORMAT =
+            "Topics: [what was discussed, in order]\n" +
+            "Decisions: [decisions made, or none]\n" +
+            "Action items: [tasks with owners and deadlines if mentioned, or none]\n" +
+            "Details: [names, numbers, dates and other specifics worth keeping]\n\n";
+
+    public interface Generator {
+        CompletableFuture<String> generate(String prompt);
+    }
+
+    private final Generator generator;
+    private final int reduceTokens;
+    private final int concurrency;
+    private final List<String> windows;
+    // Checkpoint: null until the window's summary has come back
+    private final String[] partials;
+
+    public TranscriptSummarizer(List<String> segments, Generator generator) {
+        this(segments, generator, DEFAULT_WINDOW_TOKENS, DEFAULT_REDUCE_TOKENS, DEFAULT_CONCURRENCY);
+    }
+
+    TranscriptSummarizer(List<String> segments, Generator generator, int windowTokens, int reduceTokens,
+                         int concurrency) {
+        this.generator = generator;
+        this.reduceTokens = reduceTokens;
+        this.concurrency = concurrency;
+        this.windows = split(segments, windowTokens);
+        this.partials = new String[windows.size()];
+    }
+
+    public int getWindowCount() {
+        return windows.size();
+    }
+
+    public int getCompletedWindows() {
+        int completed = 0;
+        for (String partial : partials) {
+            if (partial != null) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    // Blocks until the notes are written. On failure the windows that did finish are kept.
+    public synchronized String summarize() throws IOException, InterruptedException {
+        if (windows.isEmpty()) {
+            throw new IOException("Transcript is empty");
+        }
+        long startNanos = System.nanoTime();
+        if (windows.size() == 1) {
+            return await(notesPrompt(windows.get(0)));
+        }
+
+        List<String> mapPrompts = new ArrayList<>();
+        for (int i = 0; i < windows.size(); i++) {
+            mapPrompts.add(windowPrompt(windows.get(i), i + 1, windows.size()));
+        }
+        runAll(mapPrompts, partials);
+        Log.d(TAG, "Summarized " + windows.size() + " windows in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+
+        List<String> level = Arrays.asList(partials);
+        int depth = 0;
+        while (true) {
+            List<List<String>> groups = group(level, reduceTokens);
+            if (groups.size() == 1) {
+                String notes = await(finalPrompt(groups.get(0)));
+                Log.d(TAG, "Notes written after " + depth + " merge levels in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms");
+                return notes;
+            }
+            List<String> mergePrompts = new ArrayList<>();
+            for (List<String> group : groups) {
+                mergePrompts.add(mergePrompt(group));
+            }
+            String[] merged = new String[groups.size()];
+            runAll(mergePrompts, merged);
+            level = Arrays.asList(merged);
+            depth++;
+        }
+    }
+
+    // Sends every prompt whose result is still null, at most concurrency at a time, and fills in
+    // results as they arrive. Throws once all are done if any failed.
+    private void runAll(List<String> prompts, String[] results) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(concurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int todo = 0;
+        for (String result : results) {
+            if (result == null) {
+                todo++;
+            }
+        }
+        CountDownLatch done = new CountDownLatch(todo);
+        for (int i = 0; i < prompts.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            permits.acquire();
+            int index = i;
+            generate(prompts.get(i)).whenComplete((text, error) -> {
+                if (error == null && text != null && !text.trim().isEmpty()) {
+                    results[index] = text.trim();
+                } else {
+                    failure.compareAndSet(null, error != null ? error : new IOException("Empty response"));
+                }
+                permits.release();
+                done.countDown();
+            });
+        }
+        done.await();
+
+        Throwable error = failure.get();
+        if (error != null) {
+            int failed = 0;
+            for (String result : results) {
+                if (result == null) {
+                    failed++;
+                }
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            throw new IOException(failed + " of " + results.length + " parts failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private String await(String prompt) throws IOException, InterruptedException {
+        String[] result = new String[1];
+        runAll(Collections.singletonList(prompt), result);
+        return result[0];
+    }
+
+    private CompletableFuture<String> generate(String prompt) {
+        try {
+            return generator.generate(prompt);
+        } catch (RuntimeException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    // Joins segments in order into windows of at most maxTokens, breaking between segments where
+    // possible and between words inside a segment that is too long on its own
+    static List<String> split(List<String> segments, int maxTokens) {
+        int maxChars = maxTokens * CHARS_PER_TOKEN;
+        List<String> windows = new ArrayList<>();
+        StringBuilder window = new StringBuilder();
+        for (String segment : segments) {
+            String text = segment == null ? "" : segment.trim();
+            while (!text.isEmpty()) {
+                int room = maxChars - window.length() - (window.length() > 0 ? 1 : 0);
+                if (text.length() <= room) {
+                    if (window.length() > 0) {
+                        window.append(' ');
+                    }
+                    window.append(text);
+                    break;
+                }
+                if (window.length() > 0) {
+                    windows.add(window.toString());
+                    window.setLength(0);
+                    continue;
+                }
+                int cut = text.lastIndexOf(' ', maxChars);
+                if (cut <= 0) {
+                    cut = maxChars;
+                }
+                windows.add(text.substring(0, cut).trim());
+                text = text.substring(cut).trim();
+            }
+        }
+        if (window.length() > 0) {
+            windows.add(window.toString());
+        }
+        return windows;
+    }
+
+    // Consecutive summaries in groups of at most maxTokens, and at least two per group so every
+    // level shrinks
+    static List<List<String>> group(List<String> summaries, int maxTokens) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        int tokens = 0;
+        for (String summary : summaries) {
+            int size = estimateTokens(summary);
+            if (group.size() >= 2 && tokens + size > maxTokens) {
+                groups.add(group);
+                group = new ArrayList<>();
+                tokens = 0;
+            }
+            group.add(summary);
+            tokens += size;
+        }
+        if (!group.isEmpty()) {
+            if (group.size() == 1 && !groups.isEmpty()) {
+                groups.get(groups.size() - 1).add(group.get(0));
+            } else {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    static String notesPrompt(String transcriptText) {
+        return "Please analyze the following meeting/conversation transcript and provide a structured summary in the following format:\n\n" +
+                NOTES_FORMAT +
+                "Transcript:\n" + transcriptText + "\n\n" +
+                "Please ensure the response is well-formatted and easy to read. If the transcript is unclear or incomplete, work with what's available and note any limitations.";
+    }
+
+    static String windowPrompt(String windowText, int part, int parts) {
+        return "The following is part " + part + " of " + parts + " of a meeting transcript. " +
+                "Summarize only this part, in at most 400 words, using this format:\n\n" +
+                PARTIAL_FORMAT +
+                "Transcript part " + part + ":\n" + windowText;
+    }
+
+    static String mergePrompt(List<String> summaries) {
+        StringBuilder prompt = new StringBuilder("The following are summaries of consecutive parts of one meeting. " +
+                "Merge them into a single summary of at most 500 words, keeping every decision and action item, " +
+                "using this format:\n\n").append(PARTIAL_FORMAT);
+        appendParts(prompt, summaries);
+        return prompt.toString();
+    }
+
+    static String finalPrompt(List<String> summaries) {
+        StringBuilder prompt = new StringBuilder("The following are summaries of consecutive parts of one meeting, " +
+                "in order. Using them, provide a structured summary of the whole meeting in the following format:\n\n")
+                .append(NOTES_FORMAT);
+        appendParts(prompt, summaries);
+        prompt.append("\nPlease ensure the response is well-formatted and easy to read.");
+        return prompt.toString();
+    }
+
+    private static void appendParts(StringBuilder prompt, List<String> summaries) {
+        for (int i = 0; i < summaries.size(); i++) {
+            prompt.append("Part ").append(i + 1).append(":\n").append(summaries.get(i)).append("\n\n");
+        }
+    }
+}
@@ -7,16 +7,21 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
-public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
+public class TranscriptionDatabaseHelper extends SQLiteOpenHelper implements RollingSummarizer.Store {
 
     private static final String TAG = "TranscriptionDB";
     private static final String DATABASE_NAME = "twinmind_transcriptions.db";
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 7;
     private static final String TABLE_RECORDING_SESSIONS = "recording_sessions";
     private static final String TABLE_TRANSCRIPTIONS = "transcriptions";
+    private static final String TABLE_PENDING_TRANSCRIPTIONS = "pending_transcriptions";
+    private static final String TABLE_WORD_TIMINGS = "word_timings";
+    private static final String TABLE_LLM_RESPONSES = "llm_responses";
+    private static final String TABLE_ROLLING_SUMMARIES = "rolling_summaries";
 
     private static final String COLUMN_SESSION_ID = "session_id";
     private static final String COLUMN_TITLE = "title";
@@ -24,11 +29,87 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
     private static final String COLUMN_END_TIME = "end_time";
     private static final String COLUMN_DURATION = "duration";
     private static final String COLUMN_LOCATION = "location";
+    private static final String COLUMN_TRANSCRIPT_VERSION = "transcript_version";
+    private static final String COLUMN_RETRANSCRIBE_STATE = "retranscribe_state";
 
     private static final String COLUMN_TRANSCRIPTION_TEXT = "transcription_text";
     private static final String COLUMN_TIMESTAMP = "timestamp";
     private static final String COLUMN_CHUNK_INDEX = "chunk_index";
 
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_SEQUENCE = "sequence";
+    private static final String COLUMN_SAMPLE_OFFSET = "sample_offset";
+    private static final String COLUMN_ENCODING = "encoding";
+    private static final String COLUMN_AUDIO_PATH = "audio_path";
+    private static final String COLUMN_ATTEMPTS = "attempts";
+    private static final String COLUMN_LAST_ERROR = "last_error";
+    private static final String COLUMN_NEXT_ATTEMPT_TIME = "next_attempt_time";
+    private static final String COLUMN_CREATED_AT = "created_at";
+
+    private static final String COLUMN_TRANSCRIPTION_ID = "transcription_id";
+    private static final String COLUMN_CHUNK_START_MS = "chunk_start_ms";
+    private static final String COLUMN_WORD_COUNT = "word_count";
+    private static final String COLUMN_WORD_DATA = "word_data";
+
+    private static final String COLUMN_CACHE_KEY = "cache_key";
+    private static final String COLUMN_RESPONSE = "response";
+    private static final String COLUMN_SIZE_BYTES = "size_bytes";
+    private static final String COLUMN_LAST_ACCESS = "last_access";
+
+    private static final String COLUMN_SUMMARY = "summary";
+    private static final String COLUMN_COVERED_ID = "covered_id";
+    private static final String COLUMN_NOTES = "notes";
+    private static final String COLUMN_NOTES_COVERED_ID = "notes_covered_id";
+    private static final String COLUMN_UPDATED_AT = "updated_at";
+
+    // retranscribe_state: waiting for the second pass, replaced by it, or left as the live transcript
+    public static final int RETRANSCRIBE_PENDING = 0;
+    public static final int RETRANSCRIBE_DONE = 1;
+    public static final int RETRANSCRIBE_SKIPPED = 2;
+
+    public static class CachedResponse {
+        public final String response;
+        public final String sessionId;
+        public final long createdAt;
+
+        CachedResponse(String response, String sessionId, long createdAt) {
+            this.response = response;
+            this.sessionId = sessionId;
+            this.createdAt = createdAt;
+        }
+    }
+
+    public static class RollingSummary {
+        // Null if no update has finished yet
+        public final String summary;
+        public final long coveredId;
+        // Null until the notes are written
+        public final String notes;
+        public final long notesCoveredId;
+
+        RollingSummary(String summary, long coveredId, String notes, long notesCoveredId) {
+            this.summary = summary;
+            this.coveredId = coveredId;
+            this.notes = notes;
+            this.notesCoveredId = notesCoveredId;
+        }
+    }
+
+    // A row of a transcript replacing a session's live one, with its words' timings
+    public static class TimedTranscription {
+        public final String text;
+        public final long timestamp;
+        public final long chunkStartMs;
+        public final WordTimings timings;
+
+        public TimedTranscription(String text, long timestamp, long chunkStartMs, WordTimings timings) {
+            this.text = text;
+            this.timestamp = timestamp;
+            this.chunkStartMs = chunkStartMs;
+            this.timings = timings;
+        }
+    }
+
     private static TranscriptionDatabaseHelper instance;
 
     public static synchronized TranscriptionDatabaseHelper getInstance(Context context) {
@@ -50,6 +131,24 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
         Log.d(TAG, "Upgrading database from version " + oldVersion + " to " + newVersion);
+        if (oldVersion >= 2) {
+            // Versions 3 to 7 only add tables and columns; existing transcripts are kept
+            createPendingTranscriptionsTable(db);
+            createWordTimingsTable(db);
+            createLlmResponsesTable(db);
+            createRollingSummariesTable(db);
+            if (oldVersion < 5) {
+                db.execSQL("ALTER TABLE " + TABLE_RECORDING_SESSIONS + " ADD COLUMN " +
+                        COLUMN_TRANSCRIPT_VERSION + " INTEGER DEFAULT 0");
+                db.execSQL("ALTER TABLE " + TABLE_RECORDING_SESSIONS + " ADD COLUMN " +
+                        COLUMN_RETRANSCRIBE_STATE + " INTEGER DEFAULT " + RETRANSCRIBE_PENDING);
+            }
+            return;
+        }
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ROLLING_SUMMARIES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LLM_RESPONSES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_WORD_TIMINGS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PENDING_TRANSCRIPTIONS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_TRANSCRIPTIONS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_RECORDING_SESSIONS);
 
@@ -64,7 +163,9 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
                 COLUMN_START_TIME + " INTEGER, " +
                 COLUMN_END_TIME + " INTEGER, " +
                 COLUMN_DURATION + " INTEGER, " +
-                COLUMN_LOCATION + " TEXT" +
+                COLUMN_LOCATION + " TEXT, " +
+                COLUMN_TRANSCRIPT_VERSION + " INTEGER DEFAULT 0, " +
+                COLUMN_RETRANSCRIBE_STATE + " INTEGER DEFAULT " + RETRANSCRIBE_PENDING +
                 ")";
 
         // Create transcriptions table
@@ -80,10 +181,69 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
 
         db.execSQL(createSessionsTable);
         db.execSQL(createTranscriptionsTable);
+        createPendingTranscriptionsTable(db);
+        createWordTimingsTable(db);
+        createLlmResponsesTable(db);
+        createRollingSummariesTable(db);
 
         Log.d(TAG, "Tables created successfully");
     }
 
+    private void createPendingTranscriptionsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING_TRANSCRIPTIONS + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_SESSION_ID + " TEXT, " +
+                COLUMN_SEQUENCE + " INTEGER, " +
+                COLUMN_SAMPLE_OFFSET + " INTEGER, " +
+                COLUMN_TIMESTAMP + " INTEGER, " +
+                COLUMN_ENCODING + " TEXT, " +
+                COLUMN_AUDIO_PATH + " TEXT, " +
+                COLUMN_ATTEMPTS + " INTEGER DEFAULT 0, " +
+                COLUMN_LAST_ERROR + " TEXT, " +
+                COLUMN_NEXT_ATTEMPT_TIME + " INTEGER DEFAULT 0, " +
+                COLUMN_CREATED_AT + " INTEGER" +
+                ")");
+    }
+
+    // One row per transcription with all its words packed by WordTimings
+    private void createWordTimingsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_WORD_TIMINGS + " (" +
+                COLUMN_TRANSCRIPTION_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_CHUNK_START_MS + " INTEGER, " +
+                COLUMN_WORD_COUNT + " INTEGER, " +
+                COLUMN_WORD_DATA + " BLOB, " +
+                "FOREIGN KEY(" + COLUMN_TRANSCRIPTION_ID + ") REFERENCES " +
+                TABLE_TRANSCRIPTIONS + "(id)" +
+                ")");
+    }
+
+    // Disk tier of LlmResponseCache
+    private void createLlmResponsesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_LLM_RESPONSES + " (" +
+                COLUMN_CACHE_KEY + " TEXT PRIMARY KEY, " +
+                COLUMN_SESSION_ID + " TEXT, " +
+                COLUMN_RESPONSE + " TEXT, " +
+                COLUMN_SIZE_BYTES + " INTEGER, " +
+                COLUMN_CREATED_AT + " INTEGER, " +
+                COLUMN_LAST_ACCESS + " INTEGER" +
+                ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_llm_responses_session ON " + TABLE_LLM_RESPONSES +
+                "(" + COLUMN_SESSION_ID + ")");
+    }
+
+    // RollingSummarizer's progress: the running summary covers rows up to covered_id, and the notes
+    // written from it cover rows up to notes_covered_id
+    private void createRollingSummariesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_ROLLING_SUMMARIES + " (" +
+                COLUMN_SESSION_ID + " TEXT PRIMARY KEY, " +
+                COLUMN_SUMMARY + " TEXT, " +
+                COLUMN_COVERED_ID + " INTEGER DEFAULT 0, " +
+                COLUMN_NOTES + " TEXT, " +
+                COLUMN_NOTES_COVERED_ID + " INTEGER DEFAULT 0, " +
+                COLUMN_UPDATED_AT + " INTEGER" +
+                ")");
+    }
+
     public void createRecordingSession(String sessionId, String title, long startTime, String location) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
@@ -135,6 +295,7 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
             session.endTime = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_END_TIME));
             session.duration = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_DURATION));
             session.location = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCATION));
+            session.transcriptVersion = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TRANSCRIPT_VERSION));
 
             cursor.close();
         }
@@ -142,9 +303,107 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
         return session;
     }
 
-    public void insertTranscription(String sessionId, String transcriptionText, long timestamp, int chunkIndex) {
+    // Bumped whenever the session's transcript is replaced, so anything derived from it can tell
+    // it is stale
+    public int getTranscriptVersion(String sessionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_RECORDING_SESSIONS, new String[]{COLUMN_TRANSCRIPT_VERSION},
+                COLUMN_SESSION_ID + " = ?", new String[]{sessionId}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    // Whether a row for the chunk captured at this time is already saved
+    public boolean hasTranscriptionAt(String sessionId, long timestamp) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_TRANSCRIPTIONS, new String[]{COLUMN_ID},
+                COLUMN_SESSION_ID + " = ? AND " + COLUMN_TIMESTAMP + " = ?",
+                new String[]{sessionId, String.valueOf(timestamp)}, null, null, null, "1")) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    // Finished sessions still waiting for the second transcription pass, oldest first
+    public List<RecordingSession> getSessionsToRetranscribe() {
+        List<RecordingSession> sessions = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_RECORDING_SESSIONS, null,
+                COLUMN_END_TIME + " IS NOT NULL AND " + COLUMN_RETRANSCRIBE_STATE + " = ?",
+                new String[]{String.valueOf(RETRANSCRIBE_PENDING)}, null, null, COLUMN_START_TIME + " ASC")) {
+            while (cursor.moveToNext()) {
+                RecordingSession session = new RecordingSession();
+                session.sessionId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SESSION_ID));
+                session.title = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TITLE));
+                session.startTime = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_START_TIME));
+                session.endTime = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_END_TIME));
+                session.transcriptVersion = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TRANSCRIPT_VERSION));
+                sessions.add(session);
+            }
+        }
+        return sessions;
+    }
+
+    public int getRetranscribeState(String sessionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_RECORDING_SESSIONS, new String[]{COLUMN_RETRANSCRIBE_STATE},
+                COLUMN_SESSION_ID + " = ?", new String[]{sessionId}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : RETRANSCRIBE_PENDING;
+        }
+    }
+
+    public void setRetranscribeState(String sessionId, int state) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
+        values.put(COLUMN_RETRANSCRIBE_STATE, state);
+        db.update(TABLE_RECORDING_SESSIONS, values, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
+    }
+
+    // Swaps the session's transcript and word timings for the given rows in one transaction, so
+    // readers see either the old transcript or the new one, and bumps its transcript version.
+    // Fails, changing nothing, if the version is no longer expectedVersion.
+    public boolean replaceTranscriptions(String sessionId, int expectedVersion, List<TimedTranscription> rows) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (getTranscriptVersion(sessionId) != expectedVersion) {
+                return false;
+            }
+            String[] args = {sessionId};
+            db.delete(TABLE_WORD_TIMINGS, COLUMN_TRANSCRIPTION_ID + " IN (SELECT id FROM " + TABLE_TRANSCRIPTIONS +
+                    " WHERE " + COLUMN_SESSION_ID + " = ?)", args);
+            db.delete(TABLE_TRANSCRIPTIONS, COLUMN_SESSION_ID + " = ?", args);
+            // Its covered ids refer to the rows just deleted
+            db.delete(TABLE_ROLLING_SUMMARIES, COLUMN_SESSION_ID + " = ?", args);
+            for (int i = 0; i < rows.size(); i++) {
+                TimedTranscription row = rows.get(i);
+                long id = insertTranscription(sessionId, row.text, row.timestamp, i);
+                if (id == -1) {
+                    return false;
+                }
+                if (!row.timings.isEmpty()) {
+                    insertWordTimings(id, row.chunkStartMs, row.timings);
+                }
+            }
+            db.execSQL("UPDATE " + TABLE_RECORDING_SESSIONS + " SET " + COLUMN_TRANSCRIPT_VERSION + " = " +
+                    COLUMN_TRANSCRIPT_VERSION + " + 1, " + COLUMN_RETRANSCRIBE_STATE + " = " + RETRANSCRIBE_DONE +
+                    " WHERE " + COLUMN_SESSION_ID + " = ?", args);
+            db.setTransactionSuccessful();
+            Log.d(TAG, "Replaced transcript of session " + sessionId + " with " + rows.size() + " rows");
+            return true;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Returns the new row's id, or -1 on failure. A live result for a session whose transcript the
+    // second pass has replaced is dropped: that transcript already covers its audio.
+    public long insertTranscription(String sessionId, String transcriptionText, long timestamp, int chunkIndex) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        if (getRetranscribeState(sessionId) == RETRANSCRIBE_DONE) {
+            Log.w(TAG, "Dropping late transcription for re-transcribed session: " + sessionId);
+            return -1;
+        }
+        ContentValues values = new ContentValues();
 
         values.put(COLUMN_SESSION_ID, sessionId);
         values.put(COLUMN_TRANSCRIPTION_TEXT, transcriptionText);
@@ -154,23 +413,184 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
         long result = db.insert(TABLE_TRANSCRIPTIONS, null, values);
 
         if (result != -1) {
+            onTranscriptChanged(sessionId);
             Log.d(TAG, "Transcription inserted for session: " + sessionId + ", chunk: " + chunkIndex);
         } else {
             Log.e(TAG, "Failed to insert transcription for session: " + sessionId);
         }
+        return result;
+    }
+
+    // For results that arrive after later ones were saved: slots the row in by capture time and
+    // shifts the rows after it, so chunk_index order stays transcript order
+    public long insertTranscriptionInOrder(String sessionId, String transcriptionText, long timestamp) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (getRetranscribeState(sessionId) == RETRANSCRIBE_DONE) {
+                Log.w(TAG, "Dropping late transcription for re-transcribed session: " + sessionId);
+                return -1;
+            }
+            long id;
+            int chunkIndex;
+            try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + TABLE_TRANSCRIPTIONS +
+                            " WHERE " + COLUMN_SESSION_ID + " = ? AND " + COLUMN_TIMESTAMP + " <= ?",
+                    new String[]{sessionId, String.valueOf(timestamp)})) {
+                chunkIndex = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            }
+            db.execSQL("UPDATE " + TABLE_TRANSCRIPTIONS + " SET " + COLUMN_CHUNK_INDEX + " = " +
+                            COLUMN_CHUNK_INDEX + " + 1 WHERE " + COLUMN_SESSION_ID + " = ? AND " +
+                            COLUMN_CHUNK_INDEX + " >= ?",
+                    new Object[]{sessionId, chunkIndex});
+            id = insertTranscription(sessionId, transcriptionText, timestamp, chunkIndex);
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // chunkStartMs is where the chunk's audio starts in the session; word times are relative to it
+    public void insertWordTimings(long transcriptionId, long chunkStartMs, WordTimings timings) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(COLUMN_TRANSCRIPTION_ID, transcriptionId);
+        values.put(COLUMN_CHUNK_START_MS, chunkStartMs);
+        values.put(COLUMN_WORD_COUNT, timings.size());
+        values.put(COLUMN_WORD_DATA, timings.encode());
+
+        if (db.insertWithOnConflict(TABLE_WORD_TIMINGS, null, values, SQLiteDatabase.CONFLICT_REPLACE) == -1) {
+            Log.e(TAG, "Failed to insert word timings for transcription: " + transcriptionId);
+        }
+    }
+
+    // Null if the transcription has no word timings
+    public WordTimings getWordTimings(long transcriptionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_WORD_TIMINGS, new String[]{COLUMN_WORD_COUNT, COLUMN_WORD_DATA},
+                COLUMN_TRANSCRIPTION_ID + " = ?", new String[]{String.valueOf(transcriptionId)},
+                null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return WordTimings.decode(cursor.getBlob(1), cursor.getInt(0));
+        }
+    }
+
+    // Session time in ms, {start, end}, of the words covering characters [charStart, charEnd) of a
+    // transcription's text, e.g. for seeking playback to a search hit. Null if no timed word does.
+    public long[] findTimeRange(long transcriptionId, int charStart, int charEnd) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_WORD_TIMINGS,
+                new String[]{COLUMN_CHUNK_START_MS, COLUMN_WORD_COUNT, COLUMN_WORD_DATA},
+                COLUMN_TRANSCRIPTION_ID + " = ?", new String[]{String.valueOf(transcriptionId)},
+                null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            long chunkStartMs = cursor.getLong(0);
+            int[] range = WordTimings.decode(cursor.getBlob(2), cursor.getInt(1)).timeRange(charStart, charEnd);
+            return range == null ? null : new long[]{chunkStartMs + range[0], chunkStartMs + range[1]};
+        }
+    }
+
+    // Anything generated from the session's transcript no longer matches it
+    private void onTranscriptChanged(String sessionId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_LLM_RESPONSES, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
+        LlmResponseCache.onTranscriptChanged(sessionId);
+    }
+
+    // Null on a miss or if the entry was created before createdAfter; a hit counts as a use for eviction
+    public CachedResponse getCachedResponse(String key, long createdAfter, long now) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        CachedResponse cached;
+        try (Cursor cursor = db.query(TABLE_LLM_RESPONSES,
+                new String[]{COLUMN_RESPONSE, COLUMN_SESSION_ID, COLUMN_CREATED_AT},
+                COLUMN_CACHE_KEY + " = ? AND " + COLUMN_CREATED_AT + " >= ?",
+                new String[]{key, String.valueOf(createdAfter)}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            cached = new CachedResponse(cursor.getString(0), cursor.getString(1), cursor.getLong(2));
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_LAST_ACCESS, now);
+        db.update(TABLE_LLM_RESPONSES, values, COLUMN_CACHE_KEY + " = ?", new String[]{key});
+        return cached;
+    }
+
+    public void putCachedResponse(String key, String sessionId, String response, long now) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CACHE_KEY, key);
+        values.put(COLUMN_SESSION_ID, sessionId);
+        values.put(COLUMN_RESPONSE, response);
+        values.put(COLUMN_SIZE_BYTES, response.getBytes(StandardCharsets.UTF_8).length);
+        values.put(COLUMN_CREATED_AT, now);
+        values.put(COLUMN_LAST_ACCESS, now);
+        if (db.insertWithOnConflict(TABLE_LLM_RESPONSES, null, values, SQLiteDatabase.CONFLICT_REPLACE) == -1) {
+            Log.e(TAG, "Failed to cache response for session: " + sessionId);
+        }
+    }
+
+    // Drops entries created before createdAfter, then the least recently used until the rest fit
+    // in maxBytes. Returns the number of entries dropped.
+    public int trimCachedResponses(long maxBytes, long createdAfter) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            int deleted = db.delete(TABLE_LLM_RESPONSES, COLUMN_CREATED_AT + " < ?",
+                    new String[]{String.valueOf(createdAfter)});
+            List<String> evicted = new ArrayList<>();
+            long total = 0;
+            try (Cursor cursor = db.query(TABLE_LLM_RESPONSES, new String[]{COLUMN_CACHE_KEY, COLUMN_SIZE_BYTES},
+                    null, null, null, null, COLUMN_LAST_ACCESS + " DESC")) {
+                while (cursor.moveToNext()) {
+                    total += cursor.getLong(1);
+                    if (total > maxBytes) {
+                        evicted.add(cursor.getString(0));
+                    }
+                }
+            }
+            for (String key : evicted) {
+                deleted += db.delete(TABLE_LLM_RESPONSES, COLUMN_CACHE_KEY + " = ?", new String[]{key});
+            }
+            db.setTransactionSuccessful();
+            return deleted;
+        } finally {
+            db.endTransaction();
+        }
     }
 
     public List<TranscriptionEntry> getTranscriptionsForSession(String sessionId) {
-        List<TranscriptionEntry> transcriptions = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
 
         Cursor cursor = db.query(TABLE_TRANSCRIPTIONS, null,
                 COLUMN_SESSION_ID + " = ?", new String[]{sessionId},
                 null, null, COLUMN_CHUNK_INDEX + " ASC");
+        List<TranscriptionEntry> transcriptions = readTranscriptions(cursor);
+
+        Log.d(TAG, "Retrieved " + transcriptions.size() + " transcriptions for session: " + sessionId);
+        return transcriptions;
+    }
 
+    // In id order, which is the order they were saved in
+    @Override
+    public List<TranscriptionEntry> getTranscriptionsAfter(String sessionId, long afterId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return readTranscriptions(db.query(TABLE_TRANSCRIPTIONS, null,
+                COLUMN_SESSION_ID + " = ? AND id > ?", new String[]{sessionId, String.valueOf(afterId)},
+                null, null, "id ASC"));
+    }
+
+    private List<TranscriptionEntry> readTranscriptions(Cursor cursor) {
+        List<TranscriptionEntry> transcriptions = new ArrayList<>();
         if (cursor != null) {
             while (cursor.moveToNext()) {
                 TranscriptionEntry entry = new TranscriptionEntry();
+                entry.id = cursor.getLong(cursor.getColumnIndexOrThrow("id"));
                 entry.sessionId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SESSION_ID));
                 entry.transcriptionText = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TRANSCRIPTION_TEXT));
                 entry.timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP));
@@ -180,11 +600,119 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
             }
             cursor.close();
         }
-
-        Log.d(TAG, "Retrieved " + transcriptions.size() + " transcriptions for session: " + sessionId);
         return transcriptions;
     }
 
+    // Null if the session has no rolling summary
+    public RollingSummary getRollingSummary(String sessionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        try (Cursor cursor = db.query(TABLE_ROLLING_SUMMARIES,
+                new String[]{COLUMN_SUMMARY, COLUMN_COVERED_ID, COLUMN_NOTES, COLUMN_NOTES_COVERED_ID},
+                COLUMN_SESSION_ID + " = ?", new String[]{sessionId}, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new RollingSummary(cursor.getString(0), cursor.getLong(1), cursor.getString(2), cursor.getLong(3));
+        }
+    }
+
+    @Override
+    public void saveRollingSummary(String sessionId, String summary, long coveredId) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SUMMARY, summary);
+        values.put(COLUMN_COVERED_ID, coveredId);
+        upsertRollingSummary(sessionId, values);
+    }
+
+    @Override
+    public void saveSessionNotes(String sessionId, String notes, long coveredId) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NOTES, notes);
+        values.put(COLUMN_NOTES_COVERED_ID, coveredId);
+        upsertRollingSummary(sessionId, values);
+    }
+
+    // Summary and notes are written separately, so each keeps the other's columns
+    private void upsertRollingSummary(String sessionId, ContentValues values) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        values.put(COLUMN_UPDATED_AT, System.currentTimeMillis());
+        if (db.update(TABLE_ROLLING_SUMMARIES, values, COLUMN_SESSION_ID + " = ?", new String[]{sessionId}) == 0) {
+            values.put(COLUMN_SESSION_ID, sessionId);
+            if (db.insert(TABLE_ROLLING_SUMMARIES, null, values) == -1) {
+                Log.e(TAG, "Failed to save rolling summary for session: " + sessionId);
+            }
+        }
+    }
+
+    public long insertPendingTranscription(PendingTranscription pending) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(COLUMN_SESSION_ID, pending.sessionId);
+        values.put(COLUMN_SEQUENCE, pending.sequence);
+        values.put(COLUMN_SAMPLE_OFFSET, pending.sampleOffset);
+        values.put(COLUMN_TIMESTAMP, pending.timestamp);
+        values.put(COLUMN_ENCODING, pending.encoding);
+        values.put(COLUMN_AUDIO_PATH, pending.audioPath);
+        values.put(COLUMN_ATTEMPTS, pending.attempts);
+        values.put(COLUMN_LAST_ERROR, pending.lastError);
+        values.put(COLUMN_NEXT_ATTEMPT_TIME, pending.nextAttemptTime);
+        values.put(COLUMN_CREATED_AT, pending.createdAt);
+
+        pending.id = db.insert(TABLE_PENDING_TRANSCRIPTIONS, null, values);
+        if (pending.id == -1) {
+            Log.e(TAG, "Failed to queue pending transcription for session: " + pending.sessionId);
+        }
+        return pending.id;
+    }
+
+    // Oldest first within each session
+    public List<PendingTranscription> getPendingTranscriptions() {
+        List<PendingTranscription> pending = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        Cursor cursor = db.query(TABLE_PENDING_TRANSCRIPTIONS, null, null, null,
+                null, null, COLUMN_SESSION_ID + " ASC, " + COLUMN_TIMESTAMP + " ASC, " + COLUMN_ID + " ASC");
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                PendingTranscription entry = new PendingTranscription();
+                entry.id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID));
+                entry.sessionId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SESSION_ID));
+                entry.sequence = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SEQUENCE));
+                entry.sampleOffset = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_SAMPLE_OFFSET));
+                entry.timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_TIMESTAMP));
+                entry.encoding = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_ENCODING));
+                entry.audioPath = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_AUDIO_PATH));
+                entry.attempts = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ATTEMPTS));
+                entry.lastError = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LAST_ERROR));
+                entry.nextAttemptTime = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_NEXT_ATTEMPT_TIME));
+                entry.createdAt = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_CREATED_AT));
+
+                pending.add(entry);
+            }
+            cursor.close();
+        }
+
+        return pending;
+    }
+
+    public void updatePendingAttempt(long id, int attempts, String lastError, long nextAttemptTime) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+
+        values.put(COLUMN_ATTEMPTS, attempts);
+        values.put(COLUMN_LAST_ERROR, lastError);
+        values.put(COLUMN_NEXT_ATTEMPT_TIME, nextAttemptTime);
+
+        db.update(TABLE_PENDING_TRANSCRIPTIONS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
+    public void deletePendingTranscription(long id) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_PENDING_TRANSCRIPTIONS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
     public List<RecordingSession> getAllRecordingSessions() {
         List<RecordingSession> sessions = new ArrayList<>();
         SQLiteDatabase db = this.getReadableDatabase();
@@ -210,9 +738,39 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
         return sessions;
     }
 
+    public List<RecordingSession> getUnfinishedRecordingSessions() {
+        List<RecordingSession> sessions = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        Cursor cursor = db.query(TABLE_RECORDING_SESSIONS, null,
+                COLUMN_END_TIME + " IS NULL", null,
+                null, null, COLUMN_START_TIME + " ASC");
+
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                RecordingSession session = new RecordingSession();
+                session.sessionId = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_SESSION_ID));
+                session.title = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_TITLE));
+                session.startTime = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_START_TIME));
+                session.location = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_LOCATION));
+
+                sessions.add(session);
+            }
+            cursor.close();
+        }
+
+        return sessions;
+    }
+
     public void deleteRecordingSession(String sessionId) {
         SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_WORD_TIMINGS, COLUMN_TRANSCRIPTION_ID + " IN (SELECT id FROM " + TABLE_TRANSCRIPTIONS +
+                " WHERE " + COLUMN_SESSION_ID + " = ?)", new String[]{sessionId});
         db.delete(TABLE_TRANSCRIPTIONS, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
+        // Their audio files are swept up by PendingTranscriptionQueue
+        db.delete(TABLE_PENDING_TRANSCRIPTIONS, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
+        db.delete(TABLE_ROLLING_SUMMARIES, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
+        onTranscriptChanged(sessionId);
 
         int rowsAffected = db.delete(TABLE_RECORDING_SESSIONS, COLUMN_SESSION_ID + " = ?", new String[]{sessionId});
 
@@ -225,8 +783,13 @@ public class TranscriptionDatabaseHelper extends SQLiteOpenHelper {
 
     public void clearAllData() {
         SQLiteDatabase db = this.getWritableDatabase();
+        db.delete(TABLE_WORD_TIMINGS, null, null);
         db.delete(TABLE_TRANSCRIPTIONS, null, null);
+        db.delete(TABLE_PENDING_TRANSCRIPTIONS, null, null);
         db.delete(TABLE_RECORDING_SESSIONS, null, null);
+        db.delete(TABLE_LLM_RESPONSES, null, null);
+        db.delete(TABLE_ROLLING_SUMMARIES, null, null);
+        LlmResponseCache.onAllCleared();
         Log.d(TAG, "All data cleared");
     }
 
@@ -1,6 +1,7 @@
 package com.example.twinmind;
 
 public class TranscriptionEntry {
+    public long id;
     public String sessionId;
     public String transcriptionText;
     public long timestamp;
@@ -0,0 +1,227 @@
+package com.example.twinmind;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frame-based voice activity detector for 16-bit little-endian mono PCM.
+ *
+ * Each frame is classified from its mean energy (against an adaptive noise floor) and its
+ * zero-crossing rate, then smoothed with an onset count and a hangover so short gaps between
+ * words do not split speech. Runs on the capture thread without allocating. Detected speech
+ * regions are published as absolute sample positions for the chunk consumer to query.
+ */
+public class VoiceActivityDetector {
+
+    private static final double FULL_SCALE_SQUARED = 32768.0 * 32768.0;
+    private static final int REGION_CAPACITY = 1024; // power of two
+
+    public static class Config {
+        public int sampleRate = 16000;
+        public int frameMs = 20;
+        // Frames quieter than this are never speech, whatever the noise floor
+        public double minSpeechDbfs = -50;
+        // Speech must be this far above the tracked noise floor
+        public double noiseMarginDb = 9;
+        // Loud frames above this rate are treated as noise (fans, hiss, fricatives inside hangover)
+        public double maxZeroCrossingRate = 0.35;
+        public int onsetFrames = 3;
+        public int hangoverFrames = 15;
+        public double noiseAdaptRate = 0.05;
+        // Floor creeps up during speech so a steady hum cannot hold the detector open forever
+        public double noiseRiseDbPerSecond = 0.1;
+        // Silence kept around trimmed speech so word edges are not clipped
+        public int paddingMs = 200;
+    }
+
+    private final Config config;
+    private final int frameSamples;
+    private final double minSpeechEnergy;
+    private final double noiseMargin;
+    private final double noiseRisePerFrame;
+
+    // Capture-thread state
+    private long samplePosition;
+    private long frameEnergy;
+    private int frameCrossings;
+    private int frameFill;
+    private int previousSample;
+    private double noiseFloor;
+    private int consecutiveSpeechFrames;
+    private int hangoverLeft;
+    private volatile boolean inSpeech;
+    private long framesProcessed;
+    private long speechFrames;
+
+    // Published speech regions: [start, end) in samples. The last region may still be growing.
+    private final AtomicLongArray regionStarts = new AtomicLongArray(REGION_CAPACITY);
+    private final AtomicLongArray regionEnds = new AtomicLongArray(REGION_CAPACITY);
+    private volatile long regionCount;
+
+    public VoiceActivityDetector() {
+        this(new Config());
+    }
+
+    public VoiceActivityDetector(Config config) {
+        this.config = config;
+        this.frameSamples = config.sampleRate * config.frameMs / 1000;
+        this.minSpeechEnergy = FULL_SCALE_SQUARED * Math.pow(10, config.minSpeechDbfs / 10);
+        this.noiseMargin = Math.pow(10, config.noiseMarginDb / 10);
+        this.noiseRisePerFrame = Math.pow(10, config.noiseRiseDbPerSecond * config.frameMs / 1000.0 / 10);
+        reset(0);
+    }
+
+    public void reset(long startSample) {
+        samplePosition = startSample;
+        frameEnergy = 0;
+        frameCrossings = 0;
+        frameFill = 0;
+        previousSample = 0;
+        noiseFloor = minSpeechEnergy / noiseMargin;
+        consecutiveSpeechFrames = 0;
+        hangoverLeft = 0;
+        inSpeech = false;
+        framesProcessed = 0;
+        speechFrames = 0;
+        regionCount = 0;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    // Capture thread
+
+    public void process(byte[] pcm, int offset, int length) {
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            processSample((short) ((pcm[i] & 0xff) | (pcm[i + 1] << 8)));
+        }
+    }
+
+    // Absolute reads, so the buffer's position and byte order are left alone
+    public void process(ByteBuffer pcm, int offset, int length) {
+        int end = offset + (length & ~1);
+        for (int i = offset; i < end; i += 2) {
+            processSample((short) ((pcm.get(i) & 0xff) | (pcm.get(i + 1) << 8)));
+        }
+    }
+
+    private void processSample(int sample) {
+        frameEnergy += (long) sample * sample;
+        if ((sample < 0) != (previousSample < 0)) {
+            frameCrossings++;
+        }
+        previousSample = sample;
+        samplePosition++;
+
+        if (++frameFill == frameSamples) {
+            finishFrame();
+        }
+    }
+
+    private void finishFrame() {
+        double energy = (double) frameEnergy / frameSamples;
+        double crossingRate = (double) frameCrossings / frameSamples;
+        frameEnergy = 0;
+        frameCrossings = 0;
+        frameFill = 0;
+        framesProcessed++;
+
+        double threshold = Math.max(minSpeechEnergy, noiseFloor * noiseMargin);
+        boolean speechLike = energy >= threshold && crossingRate <= config.maxZeroCrossingRate;
+
+        if (speechLike) {
+            noiseFloor *= noiseRisePerFrame;
+        } else {
+            noiseFloor += (energy - noiseFloor) * config.noiseAdaptRate;
+        }
+
+        long frameEnd = samplePosition;
+        if (speechLike) {
+            speechFrames++;
+            consecutiveSpeechFrames++;
+            if (!inSpeech && consecutiveSpeechFrames >= config.onsetFrames) {
+                inSpeech = true;
+                openRegion(frameEnd - (long) consecutiveSpeechFrames * frameSamples, frameEnd);
+            } else if (inSpeech) {
+                extendRegion(frameEnd);
+            }
+            hangoverLeft = config.hangoverFrames;
+        } else {
+            consecutiveSpeechFrames = 0;
+            if (inSpeech) {
+                if (hangoverLeft > 0) {
+                    hangoverLeft--;
+                    extendRegion(frameEnd);
+                } else {
+                    inSpeech = false;
+                }
+            }
+        }
+    }
+
+    private void openRegion(long start, long end) {
+        long index = regionCount;
+        int slot = (int) (index & (REGION_CAPACITY - 1));
+        regionStarts.lazySet(slot, start);
+        regionEnds.lazySet(slot, end);
+        regionCount = index + 1;
+    }
+
+    private void extendRegion(long end) {
+        int slot = (int) ((regionCount - 1) & (REGION_CAPACITY - 1));
+        regionEnds.lazySet(slot, end);
+    }
+
+    // Consumer side
+
+    public boolean isSpeaking() {
+        return inSpeech;
+    }
+
+    public long getSpeechStart(long fromSample, long toSample) {
+        long count = regionCount;
+        long first = Math.max(0, count - REGION_CAPACITY);
+        for (long i = first; i < count; i++) {
+            int slot = (int) (i & (REGION_CAPACITY - 1));
+            long end = regionEnds.get(slot);
+            long start = regionStarts.get(slot);
+            if (end > fromSample && start < toSample) {
+                return Math.max(start, fromSample);
+            }
+        }
+        return -1;
+    }
+
+    public long getSpeechEnd(long fromSample, long toSample) {
+        long count = regionCount;
+        long first = Math.max(0, count - REGION_CAPACITY);
+        for (long i = count - 1; i >= first; i--) {
+            int slot = (int) (i & (REGION_CAPACITY - 1));
+            long start = regionStarts.get(slot);
+            long end = regionEnds.get(slot);
+            if (start < toSample && end > fromSample) {
+                return Math.min(end, toSample);
+            }
+        }
+        return -1;
+    }
+
+    public long getLastSpeechEnd() {
+        long count = regionCount;
+        return count == 0 ? -1 : regionEnds.get((int) ((count - 1) & (REGION_CAPACITY - 1)));
+    }
+
+    public int getPaddingSamples() {
+        return config.sampleRate * config.paddingMs / 1000;
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.twinmind;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class WavEncoder implements AudioEncoder {
+
+    private static final int HEADER_LENGTH = 44;
+
+    private final int sampleRate;
+    private byte[] buffer;
+    private int length;
+
+    public WavEncoder(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.buffer = new byte[64 * 1024];
+        this.length = HEADER_LENGTH;
+    }
+
+    @Override
+    public String getSpeechEncoding() {
+        return "LINEAR16";
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void encode(ByteBuffer pcm) {
+        int count = pcm.remaining();
+        if (length + count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+        }
+        pcm.get(buffer, length, count);
+        length += count;
+    }
+
+    @Override
+    public byte[] finish() {
+        int dataLength = length - HEADER_LENGTH;
+        int channels = 1;
+        int byteRate = sampleRate * channels * 2;
+        byte[] header = buffer;
+
+        header[0] = 'R'; header[1] = 'I'; header[2] = 'F'; header[3] = 'F';
+        putInt(header, 4, dataLength + 36);
+        header[8] = 'W'; header[9] = 'A'; header[10] = 'V'; header[11] = 'E';
+
+        header[12] = 'f'; header[13] = 'm'; header[14] = 't'; header[15] = ' ';
+        putInt(header, 16, 16);
+        header[20] = 1; header[21] = 0;
+        header[22] = (byte) channels; header[23] = 0;
+        putInt(header, 24, sampleRate);
+        putInt(header, 28, byteRate);
+        header[32] = (byte) (channels * 2); header[33] = 0;
+        header[34] = 16; header[35] = 0;
+
+        header[36] = 'd'; header[37] = 'a'; header[38] = 't'; header[39] = 'a';
+        putInt(header, 40, dataLength);
+
+        byte[] wavFile = Arrays.copyOf(buffer, length);
+        reset();
+        return wavFile;
+    }
+
+    @Override
+    public void reset() {
+        length = HEADER_LENGTH;
+    }
+
+    private static void putInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value & 0xff);
+        dst[offset + 1] = (byte) ((value >> 8) & 0xff);
+        dst[offset + 2] = (byte) ((value >> 16) & 0xff);
+        dst[offset + 3] = (byte) ((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.twinmind;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-word timing for one transcription row: where each word sits in the row's text, when it was
+ * spoken relative to the start of the chunk's audio, and how sure the recognizer was.
+ *
+ * Stored as one blob per row rather than a row per word. Every value is a varint delta from the
+ * previous word (character gap, word length, silence before the word, its duration) plus one byte
+ * of confidence. A two-hour meeting averages 6.5 bytes a word, about the size of its text.
+ */
+public class WordTimings {
+
+    // A word as the Speech API reports it, times relative to the start of the request's audio
+    public static class Word {
+        public final String text;
+        public final int startMs;
+        public final int endMs;
+        public final float confidence;
+
+        public Word(String text, int startMs, int endMs, float confidence) {
+            this.text = text;
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.confidence = confidence;
+        }
+    }
+
+    private static final WordTimings EMPTY = new WordTimings(new int[0], new int[0], new int[0], new int[0], new byte[0]);
+
+    private final int[] charStarts;
+    private final int[] charEnds;
+    private final int[] startMs;
+    private final int[] endMs;
+    // 0-255 for confidence 0.0-1.0
+    private final byte[] confidence;
+
+    private WordTimings(int[] charStarts, int[] charEnds, int[] startMs, int[] endMs, byte[] confidence) {
+        this.charStarts = charStarts;
+        this.charEnds = charEnds;
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.confidence = confidence;
+    }
+
+    // Pairs the words with the whitespace-separated tokens of the saved text. Stitching only drops
+    // leading words repeated from the previous chunk, so the text's tokens are the last words.
+    public static WordTimings align(String text, List<Word> words) {
+        if (text == null || words == null || words.isEmpty()) {
+            return EMPTY;
+        }
+        List<int[]> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                tokens.add(new int[]{start, i});
+            }
+        }
+        int count = Math.min(tokens.size(), words.size());
+        int tokenOffset = tokens.size() - count;
+        int wordOffset = words.size() - count;
+        int[] charStarts = new int[count];
+        int[] charEnds = new int[count];
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        byte[] confidence = new byte[count];
+        int previousStart = 0;
+        for (int w = 0; w < count; w++) {
+            int[] token = tokens.get(tokenOffset + w);
+            Word word = words.get(wordOffset + w);
+            charStarts[w] = token[0];
+            charEnds[w] = token[1];
+            // Offsets must not go backwards for the deltas; the API's are already ordered
+            starts[w] = Math.max(previousStart, word.startMs);
+            ends[w] = Math.max(starts[w], word.endMs);
+            confidence[w] = (byte) Math.round(Math.max(0f, Math.min(1f, word.confidence)) * 255);
+            previousStart = starts[w];
+        }
+        return new WordTimings(charStarts, charEnds, starts, ends, confidence);
+    }
+
+    public int size() {
+        return charStarts.length;
+    }
+
+    public boolean isEmpty() {
+        return charStarts.length == 0;
+    }
+
+    public int getCharStart(int index) {
+        return charStarts[index];
+    }
+
+    public int getCharEnd(int index) {
+        return charEnds[index];
+    }
+
+    public int getStartMs(int index) {
+        return startMs[index];
+    }
+
+    public int getEndMs(int index) {
+        return endMs[index];
+    }
+
+    public float getConfidence(int index) {
+        return (confidence[index] & 0xff) / 255f;
+    }
+
+    // Start and end in ms from the chunk start of the words overlapping characters [charStart,
+    // charEnd) of the text, or null if none do
+    public int[] timeRange(int charStart, int charEnd) {
+        // Words are in text order, so the first word ending after charStart begins the range
+        int low = 0;
+        int high = charEnds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (charEnds[mid] <= charStart) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low == charEnds.length || charStarts[low] >= charEnd) {
+            return null;
+        }
+        int start = startMs[low];
+        int end = endMs[low];
+        for (int w = low + 1; w < charStarts.length && charStarts[w] < charEnd; w++) {
+            end = Math.max(end, endMs[w]);
+        }
+        return new int[]{start, end};
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(charStarts.length * 6);
+        int previousCharEnd = 0;
+        int previousEndMs = 0;
+        for (int w = 0; w < charStarts.length; w++) {
+            writeVarint(out, charStarts[w] - previousCharEnd);
+            writeVarint(out, charEnds[w] - charStarts[w]);
+            // Words may overlap the previous one's end, so the gap is signed
+            writeVarint(out, zigzag(startMs[w] - previousEndMs));
+            writeVarint(out, endMs[w] - startMs[w]);
+            out.write(confidence[w]);
+            previousCharEnd = charEnds[w];
+            previousEndMs = endMs[w];
+        }
+        return out.toByteArray();
+    }
+
+    public static WordTimings decode(byte[] data, int count) {
+        int[] charStarts = new int[count];
+        int[] charEnds = new int[count];
+        int[] starts = new int[count];
+        int[] ends = new int[count];
+        byte[] confidence = new byte[count];
+        int[] position = {0};
+        int previousCharEnd = 0;
+        int previousEndMs = 0;
+        for (int w = 0; w < count; w++) {
+            charStarts[w] = previousCharEnd + readVarint(data, position);
+            charEnds[w] = charStarts[w] + readVarint(data, position);
+            starts[w] = previousEndMs + unzigzag(readVarint(data, position));
+            ends[w] = starts[w] + readVarint(data, position);
+            confidence[w] = data[position[0]++];
+            previousCharEnd = charEnds[w];
+            previousEndMs = ends[w];
+        }
+        return new WordTimings(charStarts, charEnds, starts, ends, confidence);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] position) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = data[position[0]++];
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+}
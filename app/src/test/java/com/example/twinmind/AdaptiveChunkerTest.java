@@ -0,0 +1,132 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveChunkerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static short[] silence(double seconds) {
+        return new short[(int) (seconds * SAMPLE_RATE)];
+    }
+
+    private static short[] speech(double seconds) {
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        double amplitude = 32768 * Math.pow(10, -20 / 20.0);
+        for (int i = 0; i < samples.length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double voiced = 0;
+            for (int k = 1; k <= 8; k++) {
+                voiced += Math.sin(2 * Math.PI * 140 * k * t) / k;
+            }
+            double envelope = 0.35 + 0.65 * Math.abs(Math.sin(2 * Math.PI * 4 * t));
+            samples[i] = (short) (amplitude * 0.6 * voiced * envelope);
+        }
+        return samples;
+    }
+
+    private static byte[] toPcm(short[]... parts) {
+        int length = 0;
+        for (short[] part : parts) {
+            length += part.length;
+        }
+        byte[] pcm = new byte[length * 2];
+        int offset = 0;
+        for (short[] part : parts) {
+            for (short sample : part) {
+                pcm[offset++] = (byte) sample;
+                pcm[offset++] = (byte) (sample >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    private static List<AdaptiveChunker.Cut> feed(byte[] pcm, AdaptiveChunker chunker) throws Exception {
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        List<AdaptiveChunker.Cut> cuts = new ArrayList<>();
+        long samples = 0;
+        for (int offset = 0; offset < pcm.length; offset += 1024) {
+            int length = Math.min(1024, pcm.length - offset);
+            vad.process(pcm, offset, length);
+            samples += length / 2;
+            chunker.onAudio(samples, vad);
+            AdaptiveChunker.Cut cut;
+            while ((cut = chunker.awaitCut(0)) != null) {
+                cuts.add(cut);
+            }
+        }
+        return cuts;
+    }
+
+    private static long ms(long samples) {
+        return samples * 1000 / SAMPLE_RATE;
+    }
+
+    @Test
+    public void testCutsAtPauseBetweenUtterances() throws Exception {
+        // Given
+        byte[] pcm = toPcm(speech(3), silence(1.5), speech(3), silence(0.2));
+
+        // When
+        List<AdaptiveChunker.Cut> cuts = feed(pcm, new AdaptiveChunker());
+
+        // Then
+        assertEquals("Should cut once at the pause", 1, cuts.size());
+        assertEquals("Cut should be a pause cut", AdaptiveChunker.CutReason.PAUSE, cuts.get(0).reason);
+        long cutMs = ms(cuts.get(0).endSample);
+        assertTrue("Cut should fall inside the pause, was " + cutMs, cutMs > 3000 && cutMs < 4500);
+    }
+
+    @Test
+    public void testLongMonologueIsCutAtMaxDuration() throws Exception {
+        // Given
+        AdaptiveChunker.Config config = new AdaptiveChunker.Config();
+        config.maxChunkMs = 5000;
+        byte[] pcm = toPcm(speech(12));
+
+        // When
+        List<AdaptiveChunker.Cut> cuts = feed(pcm, new AdaptiveChunker(config));
+
+        // Then
+        assertEquals("Should cut twice", 2, cuts.size());
+        for (AdaptiveChunker.Cut cut : cuts) {
+            assertEquals("Cuts should be forced", AdaptiveChunker.CutReason.MAX_DURATION, cut.reason);
+        }
+        assertTrue("First cut should be near 5000ms", Math.abs(ms(cuts.get(0).endSample) - 5000) <= 40);
+    }
+
+    @Test
+    public void testShortPausesDoNotProduceTinyChunks() throws Exception {
+        // Given - pauses long enough to cut, but the utterances are shorter than the minimum
+        byte[] pcm = toPcm(speech(0.5), silence(0.8), speech(0.5), silence(0.8), speech(0.5), silence(1));
+
+        // When
+        List<AdaptiveChunker.Cut> cuts = feed(pcm, new AdaptiveChunker());
+
+        // Then
+        assertFalse("Should cut eventually", cuts.isEmpty());
+        assertTrue("First chunk should respect the minimum", ms(cuts.get(0).endSample) >= 2000);
+    }
+
+    @Test
+    public void testFlushMovesChunkStart() throws Exception {
+        // Given
+        AdaptiveChunker chunker = new AdaptiveChunker();
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        byte[] pcm = toPcm(speech(1.5));
+        vad.process(pcm, 0, pcm.length);
+        chunker.onAudio(pcm.length / 2, vad);
+
+        // When
+        chunker.markFlushed(pcm.length / 2);
+        chunker.onAudio(pcm.length / 2 + SAMPLE_RATE, vad);
+
+        // Then
+        assertNull("A flushed chunk should not be cut again", chunker.awaitCut(0));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AudioArchiveTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final String SESSION_ID = "session_1700000000000";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private AudioArchive archive;
+
+    @Before
+    public void setUp() {
+        archive = new AudioArchive(tempFolder.getRoot());
+    }
+
+    private static AudioChunk chunk(long sequence, long sampleOffset, long timestamp, int samples, byte[] payload) {
+        AudioChunk chunk = new AudioChunk(SESSION_ID, sequence, sampleOffset, new byte[samples * 2]);
+        chunk.timestamp = timestamp;
+        chunk.encodedAudio = payload;
+        chunk.encoding = "FLAC";
+        return chunk;
+    }
+
+    private static byte[] payload(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * seed + seed);
+        }
+        return data;
+    }
+
+    // Chunk i covers [i * 10s, i * 10s + 8s) and was created at 1000 + i * 10000ms
+    private void writeChunks(int count) throws Exception {
+        try (AudioArchive.Writer writer = archive.openWriter(SESSION_ID, "FLAC", SAMPLE_RATE)) {
+            for (int i = 0; i < count; i++) {
+                writer.append(chunk(i, i * 10L * SAMPLE_RATE, 1000 + i * 10_000L, 8 * SAMPLE_RATE,
+                        payload(100 + i % 50, i + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesRoundTrip() throws Exception {
+        // Given
+        writeChunks(3);
+
+        // When
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            // Then
+            assertEquals("Should index every chunk", 3, reader.size());
+            assertEquals("Encoding should be kept", "FLAC", reader.encoding);
+            assertEquals("Sample rate should be kept", SAMPLE_RATE, reader.sampleRate);
+            AudioArchive.Entry entry = reader.get(2);
+            assertEquals("Sequence should match", 2, entry.sequence);
+            assertEquals("Sample offset should match", 20L * SAMPLE_RATE, entry.sampleOffset);
+            assertEquals("Sample count should match", 8 * SAMPLE_RATE, entry.sampleCount);
+            assertEquals("Timestamp should match", 21_000L, entry.timestamp);
+            assertEquals("Payloads should be packed back to back", 100 + 101, entry.byteOffset);
+            assertArrayEquals("Payload should round trip", payload(102, 3), reader.readAudio(entry));
+        }
+    }
+
+    @Test
+    public void testLookupsOnLongSession() throws Exception {
+        // Given - roughly 14 hours of 10s chunks
+        int count = 5000;
+        writeChunks(count);
+
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            // When / Then
+            for (int i = 0; i < count; i += 97) {
+                assertEquals("Sequence lookup for " + i, i, reader.findBySequence(i));
+                assertEquals("Sample inside chunk " + i, i, reader.findBySample(i * 10L * SAMPLE_RATE + 5));
+                assertEquals("Exact timestamp for " + i, i, reader.findByTimestamp(1000 + i * 10_000L));
+                assertEquals("Timestamp between chunks maps to the earlier one", i,
+                        reader.findByTimestamp(1000 + i * 10_000L + 9_999));
+            }
+            assertEquals("Unknown sequence", -1, reader.findBySequence(count + 1));
+            assertEquals("Sample in dropped silence", -1, reader.findBySample(9L * SAMPLE_RATE));
+            assertEquals("Timestamp before the session", -1, reader.findByTimestamp(999));
+            assertEquals("Last sample of the last chunk", count - 1,
+                    reader.findBySample((count - 1) * 10L * SAMPLE_RATE + 8 * SAMPLE_RATE - 1));
+            assertEquals("Past the end of the session", -1, reader.findBySample(count * 10L * SAMPLE_RATE));
+        }
+    }
+
+    @Test
+    public void testFlacPayloadDecodesToChunkAudio() throws Exception {
+        // Given
+        byte[] pcm = new byte[SAMPLE_RATE * 2];
+        for (int i = 0; i < SAMPLE_RATE; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE);
+        encoder.encode(ByteBuffer.wrap(pcm));
+        AudioChunk chunk = new AudioChunk(SESSION_ID, 0, 0, pcm);
+        chunk.encodedAudio = encoder.finish();
+
+        // When
+        try (AudioArchive.Writer writer = archive.openWriter(SESSION_ID, "FLAC", SAMPLE_RATE)) {
+            writer.append(chunk);
+        }
+        byte[] stored;
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            stored = reader.readAudio(reader.get(reader.findBySample(SAMPLE_RATE / 2)));
+        }
+
+        // Then
+        assertArrayEquals("Archived FLAC should decode to the chunk's PCM", pcm, FlacReader.decode(stored).pcm);
+        assertTrue("Archive should be smaller than the PCM", archive.getSessionBytes(SESSION_ID) < pcm.length);
+    }
+
+    @Test
+    public void testTornWritesAreIgnored() throws Exception {
+        // Given - a record whose payload never landed, and half of a further record
+        writeChunks(4);
+        File sessionDir = new File(tempFolder.getRoot(), SESSION_ID);
+        File audio = new File(sessionDir, "audio.dat");
+        try (java.io.RandomAccessFile file = new java.io.RandomAccessFile(audio, "rw")) {
+            file.setLength(file.length() - 10);
+        }
+        try (FileOutputStream index = new FileOutputStream(new File(sessionDir, "index.dat"), true)) {
+            index.write(new byte[AudioArchive.RECORD_SIZE / 2]);
+        }
+
+        // When
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            // Then
+            assertEquals("Only complete chunks should be visible", 3, reader.size());
+            assertEquals("Lookups should stop at the last complete chunk", 2, reader.findBySequence(2));
+            assertEquals("Torn chunk should not be found", -1, reader.findBySequence(3));
+        }
+    }
+
+    @Test
+    public void testMissingSessionHasNoReader() throws Exception {
+        assertNull("No archive should mean no reader", archive.openReader("session_missing"));
+    }
+
+    @Test
+    public void testDeleteSessionRemovesFiles() throws Exception {
+        // Given
+        writeChunks(2);
+
+        // When
+        archive.deleteSession(SESSION_ID);
+
+        // Then
+        assertFalse("Session directory should be gone", new File(tempFolder.getRoot(), SESSION_ID).exists());
+        assertEquals("Nothing should be left on disk", 0, archive.getSessionBytes(SESSION_ID));
+    }
+}
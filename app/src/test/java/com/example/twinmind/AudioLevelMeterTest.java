@@ -0,0 +1,116 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AudioLevelMeterTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int WINDOW_SAMPLES = 800; // 50ms
+
+    private AudioLevelMeter meter;
+
+    @Before
+    public void setUp() {
+        meter = new AudioLevelMeter(SAMPLE_RATE);
+    }
+
+    @Test
+    public void testSineWindowReportsRmsAndPeak() {
+        // Given - a 500Hz sine at half scale
+        byte[] pcm = sine(WINDOW_SAMPLES, 16384);
+
+        // When
+        meter.process(pcm, 0, pcm.length);
+
+        // Then
+        assertEquals("One window should be published", 1, meter.getWindowCount());
+        long window = meter.getLatest();
+        assertEquals("RMS of a sine is amplitude / sqrt(2)", 0.5 / Math.sqrt(2), AudioLevelMeter.rms(window), 0.005);
+        assertEquals("Peak should be the amplitude", 0.5, AudioLevelMeter.peak(window), 0.005);
+    }
+
+    @Test
+    public void testWindowsDoNotDependOnReadSize() {
+        // Given
+        byte[] pcm = sine(WINDOW_SAMPLES * 10, 8000);
+        AudioLevelMeter whole = new AudioLevelMeter(SAMPLE_RATE);
+        whole.process(pcm, 0, pcm.length);
+
+        // When - odd-sized direct-buffer reads that straddle window boundaries
+        ByteBuffer direct = ByteBuffer.allocateDirect(pcm.length);
+        direct.put(pcm).flip();
+        int offset = 0;
+        while (offset < pcm.length) {
+            int length = Math.min(326, pcm.length - offset);
+            meter.process(direct, offset, length);
+            offset += length;
+        }
+
+        // Then
+        assertEquals("Same number of windows", whole.getWindowCount(), meter.getWindowCount());
+        for (long i = 0; i < meter.getWindowCount(); i++) {
+            assertEquals("Window " + i + " should match", whole.getWindow(i), meter.getWindow(i));
+        }
+        assertEquals("Buffer position should be untouched", 0, direct.position());
+    }
+
+    @Test
+    public void testPartialWindowIsNotPublished() {
+        // Given
+        byte[] pcm = sine(WINDOW_SAMPLES - 1, 8000);
+
+        // When
+        meter.process(pcm, 0, pcm.length);
+
+        // Then
+        assertEquals("An incomplete window should not be published", 0, meter.getWindowCount());
+        assertEquals("Latest should be empty", 0L, meter.getLatest());
+    }
+
+    @Test
+    public void testDisplayLevelMapsDecibelRange() {
+        assertEquals("Full scale should fill the bar", 1f, AudioLevelMeter.toDisplayLevel(1f), 0.001f);
+        assertEquals("-30 dBFS should be half", 0.5f, AudioLevelMeter.toDisplayLevel(0.0316228f), 0.001f);
+        assertEquals("Below -60 dBFS should be empty", 0f, AudioLevelMeter.toDisplayLevel(0.0001f), 0.001f);
+        assertEquals("Silence should be empty", 0f, AudioLevelMeter.toDisplayLevel(0f), 0.001f);
+    }
+
+    @Test
+    public void testProcessDoesNotAllocate() {
+        // Given
+        ByteBuffer direct = ByteBuffer.allocateDirect(1280);
+        direct.put(sine(640, 12000)).flip();
+        for (int i = 0; i < 10_000; i++) {
+            meter.process(direct, 0, 1280);
+        }
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // When
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            meter.process(direct, 0, 1280);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        assertTrue("Metering should not allocate, allocated " + allocated, allocated < 1024);
+    }
+
+    private static byte[] sine(int samples, int amplitude) {
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short value = (short) Math.round(amplitude * Math.sin(2 * Math.PI * 500 * i / SAMPLE_RATE));
+            pcm[2 * i] = (byte) value;
+            pcm[2 * i + 1] = (byte) (value >> 8);
+        }
+        return pcm;
+    }
+}
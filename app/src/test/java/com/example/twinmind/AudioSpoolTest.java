@@ -0,0 +1,106 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AudioSpoolTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private AudioSpool spool;
+    private String testSessionId = "session_1700000000000";
+
+    @Before
+    public void setUp() {
+        spool = new AudioSpool(tempFolder.getRoot());
+    }
+
+    private static byte[] pcm(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * seed);
+        }
+        return data;
+    }
+
+    @Test
+    public void testCommittedSegmentIsListedWithHeaderAndAudio() throws Exception {
+        // Given
+        byte[] audio = pcm(3200, 7);
+        AudioSpool.Segment segment = spool.openSegment(testSessionId, 3, 48000);
+
+        // When
+        segment.append(audio, 0, audio.length);
+        segment.commit();
+        List<AudioSpool.Segment> segments = spool.listSegments(testSessionId);
+
+        // Then
+        assertEquals("Should find one segment", 1, segments.size());
+        AudioSpool.Segment recovered = segments.get(0);
+        assertEquals("Session ID should match", testSessionId, recovered.sessionId);
+        assertEquals("Sequence should match", 3, recovered.sequence);
+        assertEquals("Sample offset should match", 48000, recovered.sampleOffset);
+        assertEquals("Sample count should match", 1600, recovered.getSampleCount());
+        assertTrue("Segment should still need transcribing", recovered.hasPendingAudio());
+        assertArrayEquals("Audio should round-trip", audio, recovered.readAudio());
+    }
+
+    @Test
+    public void testAcknowledgedSegmentKeepsLengthButDropsAudio() throws Exception {
+        // Given
+        AudioSpool.Segment segment = spool.openSegment(testSessionId, 0, 0);
+        segment.append(pcm(32000, 3), 0, 32000);
+        segment.commit();
+
+        // When
+        segment.acknowledge();
+        AudioSpool.Segment recovered = spool.listSegments(testSessionId).get(0);
+
+        // Then
+        assertFalse("Acknowledged segment should have no pending audio", recovered.hasPendingAudio());
+        assertEquals("Recorded length should survive acknowledgement", 16000, recovered.getEndSampleOffset());
+    }
+
+    @Test
+    public void testUncommittedSegmentRecoversWholeSamples() throws Exception {
+        // Given - simulate a crash after a torn write
+        AudioSpool.Segment segment = spool.openSegment(testSessionId, 1, 16000);
+        segment.append(pcm(1001, 5), 0, 1001);
+
+        // When
+        AudioSpool.Segment recovered = spool.listSegments(testSessionId).get(0);
+
+        // Then
+        assertEquals("Sample count should come from the file length", 500, recovered.getSampleCount());
+        assertEquals("Only whole samples should be replayed", 1000, recovered.readAudio().length);
+        segment.delete();
+    }
+
+    @Test
+    public void testCorruptSegmentsAreDiscarded() throws Exception {
+        // Given
+        File sessionDir = new File(tempFolder.getRoot(), testSessionId);
+        sessionDir.mkdirs();
+        File corrupt = new File(sessionDir, "0000000000.seg");
+        try (FileOutputStream out = new FileOutputStream(corrupt)) {
+            out.write(new byte[]{1, 2, 3});
+        }
+
+        // When
+        List<AudioSpool.Segment> segments = spool.listSegments(testSessionId);
+
+        // Then
+        assertTrue("Corrupt segment should be skipped", segments.isEmpty());
+        assertFalse("Corrupt segment should be deleted", corrupt.exists());
+        assertEquals("Session directory should still be listed", 1, spool.listSessionIds().size());
+    }
+}
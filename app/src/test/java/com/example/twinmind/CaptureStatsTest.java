@@ -0,0 +1,102 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class CaptureStatsTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int READ_BYTES = 1280; // 40ms
+    private static final int RECORDER_BYTES = 2560; // 80ms
+    private static final long READ_NANOS = 40_000_000L;
+
+    private CaptureStats stats;
+
+    @Before
+    public void setUp() {
+        stats = new CaptureStats();
+        stats.reset(SAMPLE_RATE, READ_BYTES, RECORDER_BYTES);
+    }
+
+    @Test
+    public void testSteadyReadsHaveNoLatenessOrJitter() {
+        // Given
+        long now = 1_000_000_000L;
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            stats.onRead(now, READ_BYTES);
+            now += READ_NANOS;
+        }
+
+        // Then
+        assertEquals("All reads should be counted", 100, stats.getReads());
+        assertEquals("No read should be late", 0, stats.getLateReads());
+        assertEquals("No overruns expected", 0, stats.getOverruns());
+        assertEquals("Jitter should be zero", 0.0, stats.getJitterMs(), 0.001);
+        assertEquals("Min read size should be tracked", READ_BYTES, stats.getMinReadBytes());
+    }
+
+    @Test
+    public void testLateReadAndOverrunAreClassifiedByGap() {
+        // Given
+        long now = 1_000_000_000L;
+        stats.onRead(now, READ_BYTES);
+
+        // When - 70ms gap is late but within the recorder buffer, 120ms overflows it
+        now += 70_000_000L;
+        stats.onRead(now, READ_BYTES);
+        now += 120_000_000L;
+        stats.onRead(now, READ_BYTES);
+
+        // Then
+        assertEquals("70ms gap should be a late read", 1, stats.getLateReads());
+        assertEquals("120ms gap should be an overrun", 1, stats.getOverruns());
+        assertEquals("Longest gap should be tracked", 120.0, stats.getMaxIntervalMs(), 0.001);
+        assertEquals("Max jitter is the worst deviation", 80.0, stats.getMaxJitterMs(), 0.001);
+    }
+
+    @Test
+    public void testShortReadsAndResume() {
+        // Given
+        long now = 1_000_000_000L;
+        stats.onRead(now, READ_BYTES / 2);
+
+        // When - a long pause followed by resume must not count as an overrun
+        stats.onResume();
+        now += 5_000_000_000L;
+        stats.onRead(now, READ_BYTES);
+
+        // Then
+        assertEquals("Half read should be short", 1, stats.getShortReads());
+        assertEquals("Pause should not be an overrun", 0, stats.getOverruns());
+        assertEquals("Min read should be the short one", READ_BYTES / 2, stats.getMinReadBytes());
+        assertEquals("Max read should be a full one", READ_BYTES, stats.getMaxReadBytes());
+    }
+
+    @Test
+    public void testOnReadDoesNotAllocate() {
+        // Given
+        long now = 1_000_000_000L;
+        for (int i = 0; i < 10_000; i++) {
+            stats.onRead(now += READ_NANOS + (i % 7) * 1_000_000L, READ_BYTES);
+        }
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // When
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++) {
+            stats.onRead(now += READ_NANOS + (i % 7) * 1_000_000L, READ_BYTES - (i % 3) * 2);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        assertTrue("Counting reads should not allocate, allocated " + allocated, allocated < 1024);
+    }
+}
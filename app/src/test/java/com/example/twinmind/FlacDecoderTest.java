@@ -0,0 +1,90 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlacDecoderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static byte[] toPcm(short[] samples) {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[i * 2] = (byte) samples[i];
+            pcm[i * 2 + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+
+    private static byte[] encode(AudioEncoder encoder, byte[] pcm) {
+        encoder.encode(ByteBuffer.wrap(pcm));
+        return encoder.finish();
+    }
+
+    @Test
+    public void testRoundTripOfSpeechLikeAudio() throws Exception {
+        // Given - harmonics under a syllable envelope plus noise, 7.7s so the last block is short
+        Random random = new Random(3);
+        short[] samples = new short[(int) (7.7 * SAMPLE_RATE)];
+        for (int i = 0; i < samples.length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double voiced = Math.sin(2 * Math.PI * 160 * t) + 0.5 * Math.sin(2 * Math.PI * 320 * t);
+            double envelope = Math.abs(Math.sin(2 * Math.PI * 3 * t));
+            samples[i] = (short) (6000 * voiced * envelope + random.nextGaussian() * 40);
+        }
+        byte[] pcm = toPcm(samples);
+
+        // When
+        byte[] decoded = FlacDecoder.decode(encode(new FlacEncoder(SAMPLE_RATE), pcm));
+
+        // Then
+        assertArrayEquals("Decoding should give back the encoded PCM", pcm, decoded);
+    }
+
+    @Test
+    public void testRoundTripOfEdgeSignals() throws Exception {
+        // Given - silence, a full-scale square wave, white noise and a non-standard block size
+        short[] samples = new short[1000 * 5 + 17];
+        Random random = new Random(9);
+        for (int i = 1000; i < 2000; i++) {
+            samples[i] = (i / 7) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        for (int i = 2000; i < samples.length; i++) {
+            samples[i] = (short) random.nextInt();
+        }
+        byte[] pcm = toPcm(samples);
+
+        // When
+        byte[] decoded = FlacDecoder.decode(encode(new FlacEncoder(SAMPLE_RATE, 1000), pcm));
+
+        // Then
+        assertArrayEquals("Constant, verbatim and fixed subframes should all decode", pcm, decoded);
+    }
+
+    @Test
+    public void testEmptyStreamDecodesToNothing() throws Exception {
+        // When
+        byte[] decoded = FlacDecoder.decode(new FlacEncoder(SAMPLE_RATE).finish());
+
+        // Then
+        assertEquals("A stream with no frames should have no samples", 0, decoded.length);
+    }
+
+    @Test
+    public void testRejectsOtherData() {
+        // Given
+        byte[] wav = new WavEncoder(SAMPLE_RATE).finish();
+        byte[] flac = encode(new FlacEncoder(SAMPLE_RATE), toPcm(new short[5000]));
+        byte[] truncated = new byte[flac.length - 3];
+        System.arraycopy(flac, 0, truncated, 0, truncated.length);
+
+        // Then
+        assertThrows("WAV is not FLAC", IOException.class, () -> FlacDecoder.decode(wav));
+        assertThrows("A truncated stream should fail", IOException.class, () -> FlacDecoder.decode(truncated));
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FlacEncoderTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    private static short[] speechWithNoise(double seconds, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        double amplitude = 32768 * Math.pow(10, -20 / 20.0);
+        double noise = 32768 * Math.pow(10, -50 / 20.0);
+        for (int i = 0; i < samples.length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double voiced = 0;
+            for (int k = 1; k <= 8; k++) {
+                voiced += Math.sin(2 * Math.PI * 140 * k * t) / k;
+            }
+            // Syllables with pauses between phrases
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 0.4 * t)) * Math.abs(Math.sin(2 * Math.PI * 4 * t));
+            samples[i] = (short) (amplitude * 0.6 * voiced * envelope + random.nextGaussian() * noise);
+        }
+        return samples;
+    }
+
+    private static byte[] toPcm(short[] samples) {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[i * 2] = (byte) samples[i];
+            pcm[i * 2 + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+
+    private static byte[] encodeInReads(AudioEncoder encoder, byte[] pcm, int readSize) {
+        for (int offset = 0; offset < pcm.length; offset += readSize) {
+            encoder.encode(ByteBuffer.wrap(pcm, offset, Math.min(readSize, pcm.length - offset)));
+        }
+        return encoder.finish();
+    }
+
+    private static String requestJson(AudioEncoder encoder, byte[] payload) {
+        return "{\"config\":{\"encoding\":\"" + encoder.getSpeechEncoding() + "\",\"sampleRateHertz\":16000,"
+                + "\"languageCode\":\"en-US\",\"enableAutomaticPunctuation\":true,\"model\":\"latest_short\"},"
+                + "\"audio\":{\"content\":\"" + Base64.getEncoder().encodeToString(payload) + "\"}}";
+    }
+
+    @Test
+    public void testRoundTripIsLossless() throws Exception {
+        // Given
+        byte[] pcm = toPcm(speechWithNoise(10.3, 1));
+
+        // When
+        byte[] flac = encodeInReads(new FlacEncoder(SAMPLE_RATE), pcm, 1024);
+        FlacReader.Stream decoded = FlacReader.decode(flac);
+
+        // Then
+        assertEquals("Sample rate should be in STREAMINFO", SAMPLE_RATE, decoded.sampleRate);
+        assertEquals("Total samples should be in STREAMINFO", pcm.length / 2, decoded.totalSamples);
+        assertArrayEquals("Decoded audio should match the input", pcm, decoded.pcm);
+        assertArrayEquals("MD5 signature should match the input",
+                MessageDigest.getInstance("MD5").digest(pcm), decoded.md5);
+    }
+
+    @Test
+    public void testOddReadSplitsAndEdgeSignals() throws Exception {
+        // Given - silence, a full-scale square wave and a few leftover samples
+        short[] samples = new short[4096 * 2 + 3];
+        for (int i = 4096; i < 8192; i++) {
+            samples[i] = (i / 20) % 2 == 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+        }
+        samples[8192] = 1;
+        samples[8193] = -32768;
+        samples[8194] = 32767;
+        byte[] pcm = toPcm(samples);
+
+        // When
+        byte[] flac = encodeInReads(new FlacEncoder(SAMPLE_RATE), pcm, 333);
+
+        // Then
+        assertArrayEquals("Decoded audio should match the input", pcm, FlacReader.decode(flac).pcm);
+    }
+
+    @Test
+    public void testEncoderIsReusableAcrossChunks() throws Exception {
+        // Given
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE);
+        byte[] first = toPcm(speechWithNoise(2, 2));
+        byte[] second = toPcm(speechWithNoise(3, 3));
+
+        // When
+        encodeInReads(encoder, first, 2048);
+        byte[] flac = encodeInReads(encoder, second, 2048);
+
+        // Then
+        FlacReader.Stream decoded = FlacReader.decode(flac);
+        assertEquals("Frame numbers should restart per chunk", second.length / 2, decoded.totalSamples);
+        assertArrayEquals("Second chunk should decode on its own", second, decoded.pcm);
+    }
+
+    @Test
+    public void testBenchmarkAgainstWav() throws Exception {
+        // Given - a 30s chunk, the longest the chunker produces
+        byte[] pcm = toPcm(speechWithNoise(30, 4));
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        AudioEncoder wav = new WavEncoder(SAMPLE_RATE);
+        AudioEncoder flac = new FlacEncoder(SAMPLE_RATE);
+        for (int i = 0; i < 5; i++) {
+            encodeInReads(wav, pcm, 1024);
+            encodeInReads(flac, pcm, 1024);
+        }
+
+        // When
+        int runs = 10;
+        long wavCpu = threadBean.getCurrentThreadCpuTime();
+        byte[] wavPayload = null;
+        for (int i = 0; i < runs; i++) {
+            wavPayload = encodeInReads(wav, pcm, 1024);
+        }
+        wavCpu = (threadBean.getCurrentThreadCpuTime() - wavCpu) / runs;
+
+        long flacCpu = threadBean.getCurrentThreadCpuTime();
+        byte[] flacPayload = null;
+        for (int i = 0; i < runs; i++) {
+            flacPayload = encodeInReads(flac, pcm, 1024);
+        }
+        flacCpu = (threadBean.getCurrentThreadCpuTime() - flacCpu) / runs;
+
+        int wavWire = requestJson(wav, wavPayload).length();
+        int flacWire = requestJson(flac, flacPayload).length();
+        System.out.printf("30s chunk: WAV %d bytes on the wire, %.2f ms CPU; FLAC %d bytes on the wire (%.0f%%), %.2f ms CPU%n",
+                wavWire, wavCpu / 1e6, flacWire, 100.0 * flacWire / wavWire, flacCpu / 1e6);
+
+        // Then
+        assertTrue("FLAC should cut the upload by at least a third, was " + flacWire + " vs " + wavWire,
+                flacWire < wavWire * 2 / 3);
+        assertTrue("FLAC should encode a 30s chunk well within real time, took " + flacCpu / 1_000_000 + "ms",
+                flacCpu < 3_000_000_000L);
+    }
+
+    @Test
+    public void testSteadyStateEncodingDoesNotAllocate() {
+        // Given
+        byte[] pcm = toPcm(speechWithNoise(5, 5));
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE);
+        encodeInReads(encoder, pcm, 1024); // warm up and size the frame buffer
+        encodeInReads(encoder, pcm, 1024);
+        ByteBuffer view = ByteBuffer.wrap(pcm);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // When
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int offset = 0; offset < pcm.length; offset += 1024) {
+            view.limit(Math.min(offset + 1024, pcm.length)).position(offset);
+            encoder.encode(view);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        assertTrue("Block encoding should not allocate, allocated " + allocated, allocated < 4096);
+    }
+}
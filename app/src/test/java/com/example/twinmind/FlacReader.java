@@ -0,0 +1,219 @@
+package com.example.twinmind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Minimal FLAC decoder used to check the encoder's output: mono 16-bit streams with CONSTANT,
+ * VERBATIM and FIXED subframes. Frame CRCs are verified.
+ */
+final class FlacReader {
+
+    static final class Stream {
+        int sampleRate;
+        long totalSamples;
+        byte[] md5;
+        byte[] pcm;
+    }
+
+    private final byte[] data;
+    private int bitPosition;
+
+    private FlacReader(byte[] data) {
+        this.data = data;
+    }
+
+    static Stream decode(byte[] flac) throws IOException {
+        return new FlacReader(flac).decodeStream();
+    }
+
+    private Stream decodeStream() throws IOException {
+        if (readBits(32) != 0x664C6143) {
+            throw new IOException("Missing fLaC marker");
+        }
+        Stream stream = new Stream();
+        boolean last;
+        do {
+            last = readBits(1) == 1;
+            int type = readBits(7);
+            int length = readBits(24);
+            if (type == 0) {
+                readBits(16); // min block size
+                readBits(16); // max block size
+                readBits(24);
+                readBits(24);
+                stream.sampleRate = readBits(20);
+                if (readBits(3) != 0 || readBits(5) != 15) {
+                    throw new IOException("Expected mono 16-bit");
+                }
+                stream.totalSamples = ((long) readBits(4) << 32) | (readBits(32) & 0xFFFFFFFFL);
+                stream.md5 = Arrays.copyOfRange(data, bitPosition / 8, bitPosition / 8 + 16);
+                bitPosition += 128;
+            } else {
+                bitPosition += length * 8;
+            }
+        } while (!last);
+
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        long expectedFrame = 0;
+        while (bitPosition / 8 < data.length) {
+            int frameStart = bitPosition / 8;
+            if (readBits(16) != 0xFFF8) {
+                throw new IOException("Lost frame sync at byte " + frameStart);
+            }
+            int blockSizeCode = readBits(4);
+            readBits(4); // sample rate code
+            if (readBits(8) != 0x08) {
+                throw new IOException("Unexpected channel or sample size");
+            }
+            long frameNumber = readUtf8();
+            if (frameNumber != expectedFrame++) {
+                throw new IOException("Frame " + frameNumber + " out of order");
+            }
+            int samples;
+            if (blockSizeCode == 6) {
+                samples = readBits(8) + 1;
+            } else if (blockSizeCode == 7) {
+                samples = readBits(16) + 1;
+            } else if (blockSizeCode == 1) {
+                samples = 192;
+            } else if (blockSizeCode <= 5) {
+                samples = 576 << (blockSizeCode - 2);
+            } else {
+                samples = 256 << (blockSizeCode - 8);
+            }
+            int headerCrc = crc8(frameStart, bitPosition / 8);
+            if (readBits(8) != headerCrc) {
+                throw new IOException("Header CRC mismatch in frame " + frameNumber);
+            }
+
+            int[] block = readSubframe(samples);
+
+            bitPosition = (bitPosition + 7) & ~7;
+            int frameCrc = crc16(frameStart, bitPosition / 8);
+            if (readBits(16) != frameCrc) {
+                throw new IOException("Frame CRC mismatch in frame " + frameNumber);
+            }
+            for (int sample : block) {
+                pcm.write(sample);
+                pcm.write(sample >> 8);
+            }
+        }
+        stream.pcm = pcm.toByteArray();
+        return stream;
+    }
+
+    private int[] readSubframe(int samples) throws IOException {
+        if (readBits(1) != 0) {
+            throw new IOException("Bad subframe padding");
+        }
+        int type = readBits(6);
+        if (readBits(1) != 0) {
+            throw new IOException("Wasted bits not supported");
+        }
+        int[] block = new int[samples];
+        if (type == 0) {
+            Arrays.fill(block, readSigned(16));
+        } else if (type == 1) {
+            for (int i = 0; i < samples; i++) {
+                block[i] = readSigned(16);
+            }
+        } else if ((type & 0x38) == 0x08) {
+            int order = type & 0x07;
+            for (int i = 0; i < order; i++) {
+                block[i] = readSigned(16);
+            }
+            readResidual(block, order, samples);
+            restore(block, order, samples);
+        } else {
+            throw new IOException("Unsupported subframe type " + type);
+        }
+        return block;
+    }
+
+    private void readResidual(int[] block, int order, int samples) throws IOException {
+        if (readBits(2) != 0) {
+            throw new IOException("Only 4-bit Rice parameters are expected");
+        }
+        int partitionOrder = readBits(4);
+        int partitionSize = samples >> partitionOrder;
+        int index = order;
+        for (int p = 0; p < (1 << partitionOrder); p++) {
+            int parameter = readBits(4);
+            int count = p == 0 ? partitionSize - order : partitionSize;
+            for (int i = 0; i < count; i++) {
+                int quotient = 0;
+                while (readBits(1) == 0) {
+                    quotient++;
+                }
+                int value = (quotient << parameter) | (parameter > 0 ? readBits(parameter) : 0);
+                block[index++] = (value >>> 1) ^ -(value & 1);
+            }
+        }
+    }
+
+    private static void restore(int[] x, int order, int samples) {
+        for (int i = order; i < samples; i++) {
+            switch (order) {
+                case 1: x[i] += x[i - 1]; break;
+                case 2: x[i] += 2 * x[i - 1] - x[i - 2]; break;
+                case 3: x[i] += 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3]; break;
+                case 4: x[i] += 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4]; break;
+                default: break;
+            }
+        }
+    }
+
+    private long readUtf8() {
+        int lead = readBits(8);
+        if (lead < 0x80) {
+            return lead;
+        }
+        int continuation = 0;
+        while ((lead & (0x40 >> continuation)) != 0) {
+            continuation++;
+        }
+        long value = lead & (0x3F >> continuation);
+        for (int i = 0; i < continuation; i++) {
+            value = (value << 6) | (readBits(8) & 0x3F);
+        }
+        return value;
+    }
+
+    private int readSigned(int count) {
+        return (readBits(count) << (32 - count)) >> (32 - count);
+    }
+
+    private int readBits(int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            int bit = (data[bitPosition >> 3] >> (7 - (bitPosition & 7))) & 1;
+            value = (value << 1) | bit;
+            bitPosition++;
+        }
+        return (int) value;
+    }
+
+    private int crc8(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= data[i] & 0xff;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xff : (crc << 1) & 0xff;
+            }
+        }
+        return crc;
+    }
+
+    private int crc16(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (data[i] & 0xff) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xffff : (crc << 1) & 0xffff;
+            }
+        }
+        return crc;
+    }
+}
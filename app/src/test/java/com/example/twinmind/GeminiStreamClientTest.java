@@ -0,0 +1,217 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class GeminiStreamClientTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService executor;
+    private GeminiStreamClient streamClient;
+
+    private static class RecordingCallback implements GeminiStreamClient.Callback {
+        final List<String> deltas = new CopyOnWriteArrayList<>();
+        final List<Long> deltaNanos = new CopyOnWriteArrayList<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String completed;
+        volatile String error;
+        volatile long doneNanos;
+
+        @Override
+        public void onDelta(String text) {
+            deltas.add(text);
+            deltaNanos.add(System.nanoTime());
+        }
+
+        @Override
+        public void onComplete(String text) {
+            completed = text;
+            doneNanos = System.nanoTime();
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            doneNanos = System.nanoTime();
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("The stream should finish", done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static String event(String text) {
+        return "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + text + "\"}],\"role\":\"model\"}}]}\r\n\r\n";
+    }
+
+    private static MockResponse sse(String body) {
+        return new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(body);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        executor = Executors.newCachedThreadPool();
+        streamClient = new GeminiStreamClient(client, server.url("/v1beta/models/").toString(), "test-key",
+                new RateLimiter(System::nanoTime, scheduler), new RetryPolicy(System::nanoTime, new Random(1), scheduler),
+                executor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+    }
+
+    @Test
+    public void testDeltasArriveInOrderAndCompleteWithTheWholeText() throws Exception {
+        // Given
+        server.enqueue(sse(event("The team ") + event("agreed to ship ") + ": keep-alive\n\n"
+                + "data: {\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"on Friday.\"}]},"
+                + "\"finishReason\":\"STOP\"}],\"usageMetadata\":{\"totalTokenCount\":42}}\n\n"));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        streamClient.stream("Summarize", callback);
+        callback.await();
+
+        // Then
+        assertEquals("Each event should be one delta", List.of("The team ", "agreed to ship ", "on Friday."),
+                callback.deltas);
+        assertEquals("Completion should carry the whole text", "The team agreed to ship on Friday.", callback.completed);
+        RecordedRequest request = server.takeRequest();
+        assertEquals("Should use the streaming endpoint with SSE",
+                "/v1beta/models/gemini-2.0-flash:streamGenerateContent?alt=sse", request.getPath());
+        assertEquals("Should authenticate with the key header", "test-key", request.getHeader("x-goog-api-key"));
+        assertTrue("Should send the prompt", request.getBody().readUtf8().contains("\"text\":\"Summarize\""));
+    }
+
+    @Test
+    public void testFirstDeltaIsDeliveredBeforeTheStreamEnds() throws Exception {
+        // Given - the rest of the answer trickles in after the first event
+        String first = event("Hello");
+        server.enqueue(sse(first + event(" there") + event(", everyone"))
+                .throttleBody(first.length(), 300, TimeUnit.MILLISECONDS));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        streamClient.stream("Greet", callback);
+        callback.await();
+
+        // Then
+        assertEquals("All text should arrive", "Hello there, everyone", callback.completed);
+        long leadMs = TimeUnit.NANOSECONDS.toMillis(callback.doneNanos - callback.deltaNanos.get(0));
+        assertTrue("First words should not wait for the rest, lead was " + leadMs + "ms", leadMs >= 200);
+    }
+
+    @Test
+    public void testFailureBeforeAnyTextIsRetried() throws Exception {
+        // Given
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(sse(event("Recovered")));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        streamClient.stream("Summarize", callback);
+        callback.await();
+
+        // Then
+        assertEquals("The retried stream should deliver", "Recovered", callback.completed);
+        assertEquals("Failed request and retry", 2, server.getRequestCount());
+    }
+
+    @Test
+    public void testDroppedStreamAfterTextIsNotResent() throws Exception {
+        // Given - the connection drops halfway through the body
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            body.append(event("word" + i + " "));
+        }
+        server.enqueue(sse(body.toString()).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        server.enqueue(sse(event("duplicate")));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        streamClient.stream("Summarize", callback);
+        callback.await();
+
+        // Then
+        assertNotNull("The drop should be reported, completed with " + callback.completed, callback.error);
+        assertFalse("Some text should have arrived first", callback.deltas.isEmpty());
+        assertEquals("The request must not be resent", 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testBlockedPromptIsReportedWithoutRetry() throws Exception {
+        // Given
+        server.enqueue(sse("data: {\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}\n\n"));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        streamClient.stream("Summarize", callback);
+        callback.await();
+
+        // Then
+        assertEquals("The block reason should be reported", "Prompt blocked: SAFETY", callback.error);
+        assertEquals("A blocked prompt should not be resent", 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testCancelledStreamMakesNoMoreCallbacks() throws Exception {
+        // Given
+        String first = event("Partial");
+        server.enqueue(sse(first + event(" answer")).throttleBody(first.length(), 2, TimeUnit.SECONDS));
+        RecordingCallback callback = new RecordingCallback();
+
+        // When
+        GeminiStreamClient.Generation generation = streamClient.stream("Summarize", callback);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (callback.deltas.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        generation.cancel();
+
+        // Then
+        assertFalse("Nothing should follow a cancel", callback.done.await(500, TimeUnit.MILLISECONDS));
+        assertEquals("Only the first delta should have arrived", List.of("Partial"), callback.deltas);
+    }
+
+    @Test
+    public void testCacheKeyFollowsThePrompt() {
+        // Given
+        String key = GeminiStreamClient.cacheKey("Summarize: hello");
+
+        // Then
+        assertEquals("Key should be a hex SHA-256", 64, key.length());
+        assertEquals("The same request should give the same key", key, GeminiStreamClient.cacheKey("Summarize: hello"));
+        assertNotEquals("A changed transcript should give a new key", key,
+                GeminiStreamClient.cacheKey("Summarize: hello there"));
+    }
+}
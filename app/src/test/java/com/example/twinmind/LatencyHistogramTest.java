@@ -0,0 +1,104 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testBucketsCoverEveryValueWithBoundedError() {
+        // Given - values across the whole range, including each bucket edge
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT - 1; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+
+            // Then
+            assertEquals("Lower bound of bucket " + i + " should map back to it", i,
+                    LatencyHistogram.bucketIndex(lower));
+            assertEquals("Upper bound of bucket " + i + " should map back to it", i,
+                    LatencyHistogram.bucketIndex(upper));
+            assertEquals("Buckets should be contiguous", upper + 1, LatencyHistogram.bucketLowerBound(i + 1));
+            assertTrue("Bucket " + i + " should be within 12.5% of its values",
+                    upper - lower <= Math.max(0, lower / LatencyHistogram.SUB_BUCKETS));
+        }
+        assertEquals("Hours should share the last bucket", LatencyHistogram.BUCKET_COUNT - 1,
+                LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesAreTheUpperBoundOfTheirBucket() {
+        // Given - 1ms to 100ms in 1ms steps
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.record(ms * 1000L);
+        }
+
+        // Then
+        assertEquals("All values should be counted", 100, histogram.getCount());
+        assertEquals("Mean should be exact", 50_500, histogram.getMeanMicros());
+        assertEquals("Max should be exact", 100_000, histogram.getMaxMicros());
+        long p50 = histogram.getPercentileMicros(0.5);
+        assertTrue("p50 should be at or just above 50ms, was " + p50, p50 >= 50_000 && p50 <= 50_000 * 9 / 8);
+        long p99 = histogram.getPercentileMicros(0.99);
+        assertTrue("p99 should be at or just above 99ms, was " + p99, p99 >= 99_000 && p99 <= 100_000);
+        assertEquals("p100 should not pass the max", 100_000, histogram.getPercentileMicros(1.0));
+    }
+
+    @Test
+    public void testEmptyAndResetHistogramsReportZero() {
+        // Given
+        histogram.record(-5);
+
+        // When
+        long negative = histogram.getMaxMicros();
+        histogram.reset();
+
+        // Then
+        assertEquals("Clock steps should count as zero", 0, negative);
+        assertEquals("Reset should clear the count", 0, histogram.getCount());
+        assertEquals("Empty histogram should have no percentiles", 0, histogram.getPercentileMicros(0.5));
+        assertEquals("Empty histogram should have no mean", 0, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void testConcurrentRecordsAreAllCounted() throws Exception {
+        // Given
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i + offset);
+                }
+            }));
+        }
+
+        // When
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        long bucketTotal = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            bucketTotal += histogram.getBucketCount(i);
+        }
+        assertEquals("No record should be lost", 40_000, histogram.getCount());
+        assertEquals("Buckets should add up to the count", 40_000, bucketTotal);
+        assertEquals("Max should be the largest value from any thread", 10_002, histogram.getMaxMicros());
+    }
+}
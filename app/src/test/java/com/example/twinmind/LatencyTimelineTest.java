@@ -0,0 +1,130 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class LatencyTimelineTest {
+
+    private static final long MS = 1_000_000L;
+
+    private LatencyTimeline timeline;
+
+    @Before
+    public void setUp() {
+        timeline = new LatencyTimeline();
+    }
+
+    private static LatencyTimeline.Trace trace(long... stageMs) {
+        LatencyTimeline.Trace trace = new LatencyTimeline.Trace();
+        LatencyTimeline.Stage[] stages = LatencyTimeline.Stage.values();
+        for (int i = 0; i < stageMs.length; i++) {
+            if (stageMs[i] >= 0) {
+                trace.set(stages[i], 1_000 * MS + stageMs[i] * MS);
+            }
+        }
+        return trace;
+    }
+
+    @Test
+    public void testEachStageHoldsTheTimeSinceThePreviousOne() {
+        // Given - capture end, dequeue, encode, send, first byte, parse, commit, delivery
+        LatencyTimeline.Trace trace = trace(0, 2, 12, 20, 320, 321, 325, 340);
+
+        // When
+        timeline.record(7, trace);
+
+        // Then
+        assertEquals("Dequeue should be timed from capture end", 2_000,
+                timeline.getHistogram(LatencyTimeline.Stage.DEQUEUED).getMaxMicros());
+        assertEquals("Network wait should be timed from the request", 300_000,
+                timeline.getHistogram(LatencyTimeline.Stage.FIRST_BYTE).getMaxMicros());
+        assertEquals("Delivery should be timed from the commit", 15_000,
+                timeline.getHistogram(LatencyTimeline.Stage.DELIVERED).getMaxMicros());
+        assertEquals("Total should run from capture end to delivery", 340_000,
+                timeline.getTotalHistogram().getMaxMicros());
+    }
+
+    @Test
+    public void testMissingStagesAreSkippedAndUntracedChunksIgnored() {
+        // Given - an empty transcript is never committed or delivered; a replayed chunk has no capture end
+        LatencyTimeline.Trace silent = trace(0, 1, 5, 6, 106, 107);
+        LatencyTimeline.Trace replayed = trace(-1, -1, -1, 0, 100, 101, 102);
+
+        // When
+        timeline.record(1, silent);
+        timeline.record(2, replayed);
+
+        // Then
+        assertEquals("Only the traced chunk should count", 1, timeline.getTotalHistogram().getCount());
+        assertEquals("Total should end at the last stage reached", 107_000,
+                timeline.getTotalHistogram().getMaxMicros());
+        assertEquals("Stages never reached should not be recorded", 0,
+                timeline.getHistogram(LatencyTimeline.Stage.DB_COMMITTED).getCount());
+    }
+
+    @Test
+    public void testRetryClearsOnlyTheNetworkStages() {
+        // Given
+        LatencyTimeline.Trace trace = trace(0, 1, 5, 6, 106);
+
+        // When
+        trace.clearFrom(LatencyTimeline.Stage.REQUEST_SENT);
+        trace.markFirst(LatencyTimeline.Stage.REQUEST_SENT);
+        long sent = trace.get(LatencyTimeline.Stage.REQUEST_SENT);
+        trace.markFirst(LatencyTimeline.Stage.REQUEST_SENT);
+
+        // Then
+        assertEquals("Encoding time should be kept", 1_005 * MS, trace.get(LatencyTimeline.Stage.ENCODED));
+        assertEquals("The failed request's first byte should be gone", 0,
+                trace.get(LatencyTimeline.Stage.FIRST_BYTE));
+        assertEquals("A hedge should not move the send time", sent, trace.get(LatencyTimeline.Stage.REQUEST_SENT));
+    }
+
+    @Test
+    public void testExportHasStageRowsAndRecentTraces() throws Exception {
+        // Given
+        timeline.record(3, trace(0, 2, 12, 20, 320, 321, 325, 340));
+        timeline.record(4, trace(0, 1, 5, 6, 106, 107));
+        StringWriter out = new StringWriter();
+
+        // When
+        timeline.export(out);
+
+        // Then
+        String[] lines = out.toString().split("\n");
+        assertEquals("Stage header should come first", "stage,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms", lines[0]);
+        assertTrue("Each stage after capture end should have a row", lines[1].startsWith("dequeued,2,"));
+        assertTrue("Total row should close the section", lines[8].startsWith("total,2,"));
+        assertEquals("Sections should be separated", "", lines[9]);
+        assertEquals("Trace header should name every stage",
+                "sequence,capture_end_ms,dequeued_ms,encoded_ms,request_sent_ms,first_byte_ms,parsed_ms,"
+                        + "db_committed_ms,delivered_ms", lines[10]);
+        assertEquals("Traces should be relative to capture end",
+                "3,0.000,2.000,12.000,20.000,320.000,321.000,325.000,340.000", lines[11]);
+        assertEquals("Unreached stages should be marked",
+                "4,0.000,1.000,5.000,6.000,106.000,107.000,-1,-1", lines[12]);
+    }
+
+    @Test
+    public void testOnlyTheMostRecentTracesAreKept() throws Exception {
+        // Given
+        for (int i = 0; i < LatencyTimeline.RECENT_TRACES + 10; i++) {
+            timeline.record(i, trace(0, 1));
+        }
+        StringWriter out = new StringWriter();
+
+        // When
+        timeline.export(out);
+
+        // Then
+        String[] lines = out.toString().split("\n");
+        assertEquals("Histograms should count every trace", LatencyTimeline.RECENT_TRACES + 10,
+                timeline.getTotalHistogram().getCount());
+        assertEquals("Export should hold one window of traces", 11 + LatencyTimeline.RECENT_TRACES, lines.length);
+        assertTrue("The oldest traces should be dropped", lines[11].startsWith("10,"));
+    }
+}
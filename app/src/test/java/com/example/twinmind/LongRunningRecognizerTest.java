@@ -0,0 +1,126 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class LongRunningRecognizerTest {
+
+    private static final String RUNNING = "{\"name\":\"4711\",\"metadata\":{\"progressPercent\":40}}";
+    private static final String DONE = "{\"name\":\"4711\",\"done\":true,\"response\":{\"results\":["
+            + "{\"alternatives\":[{\"transcript\":\"good morning everyone\",\"words\":["
+            + "{\"startTime\":\"0.200s\",\"endTime\":\"0.500s\",\"word\":\"good\",\"confidence\":0.9},"
+            + "{\"startTime\":\"0.500s\",\"endTime\":\"0.900s\",\"word\":\"morning\",\"confidence\":0.8},"
+            + "{\"startTime\":\"0.900s\",\"endTime\":\"1.400s\",\"word\":\"everyone\",\"confidence\":0.95}]}]},"
+            + "{\"alternatives\":[{\"transcript\":\" let's begin\"}]}]}}";
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private ScheduledExecutorService scheduler;
+    private LongRunningRecognizer recognizer;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        recognizer = new LongRunningRecognizer(client, server.url("/v1/").toString(), "test-key",
+                new RateLimiter(System::nanoTime, scheduler), new RetryPolicy(System::nanoTime, new Random(1), scheduler));
+        recognizer.setPollIntervalMs(10, 20);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+    }
+
+    @Test
+    public void testPollsUntilTheOperationIsDone() throws Exception {
+        // Given
+        server.enqueue(new MockResponse().setBody("{\"name\":\"4711\"}"));
+        server.enqueue(new MockResponse().setBody(RUNNING));
+        server.enqueue(new MockResponse().setBody(DONE));
+
+        // When
+        SpeechJson.Recognition recognition = recognizer.recognize(new byte[]{1, 2, 3}, "FLAC", 16000, "en-US");
+
+        // Then
+        assertEquals("Results should be joined", "good morning everyone let's begin", recognition.transcript);
+        assertEquals("Words should be kept", 3, recognition.words.size());
+        RecordedRequest start = server.takeRequest();
+        assertEquals("Should start a long-running operation", "/v1/speech:longrunningrecognize", start.getPath());
+        assertEquals("Should authenticate with the key header", "test-key", start.getHeader("x-goog-api-key"));
+        assertTrue("Should ask for the long-form model", start.getBody().readUtf8().contains("\"model\":\"latest_long\""));
+        assertEquals("Should poll the operation", "/v1/operations/4711", server.takeRequest().getPath());
+        assertEquals("Should poll until done", "GET", server.takeRequest().getMethod());
+    }
+
+    @Test
+    public void testPollsAreRetriedAfterServerFaults() throws Exception {
+        // Given
+        server.enqueue(new MockResponse().setBody("{\"name\":\"4711\"}"));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody(DONE));
+
+        // When
+        SpeechJson.Recognition recognition = recognizer.recognize(new byte[]{1, 2, 3}, "FLAC", 16000, "en-US");
+
+        // Then
+        assertEquals("The retried poll should deliver the result", "good morning everyone let's begin",
+                recognition.transcript);
+        assertEquals("Start, failed poll and retry", 3, server.getRequestCount());
+    }
+
+    @Test
+    public void testStartIsNotResentAfterAnAmbiguousFault() {
+        // Given - a 500 may have started an operation
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        // Then
+        assertThrows("The failure should be reported", IOException.class,
+                () -> recognizer.recognize(new byte[]{1}, "FLAC", 16000, "en-US"));
+        assertEquals("A second operation must not be started", 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testFailedOperationIsRejected() {
+        // Given
+        server.enqueue(new MockResponse().setBody("{\"name\":\"4711\"}"));
+        server.enqueue(new MockResponse().setBody(
+                "{\"name\":\"4711\",\"done\":true,\"error\":{\"code\":3,\"message\":\"Invalid audio\"}}"));
+
+        // Then
+        LongRunningRecognizer.RejectedException error = assertThrows("A failed operation is final",
+                LongRunningRecognizer.RejectedException.class,
+                () -> recognizer.recognize(new byte[]{1}, "FLAC", 16000, "en-US"));
+        assertTrue("The API's message should be kept", error.getMessage().contains("3: Invalid audio"));
+    }
+
+    @Test
+    public void testSilenceGivesAnEmptyTranscript() throws Exception {
+        // Given
+        server.enqueue(new MockResponse().setBody("{\"name\":\"4711\",\"done\":true,\"response\":{}}"));
+
+        // When
+        SpeechJson.Recognition recognition = recognizer.recognize(new byte[]{1}, "FLAC", 16000, "en-US");
+
+        // Then
+        assertEquals("No results should mean no transcript", "", recognition.transcript);
+        assertTrue("No results should mean no words", recognition.words.isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class PcmRingBufferTest {
+
+    private static byte patternAt(long position) {
+        return (byte) ((position * 31 + (position >>> 9)) & 0xff);
+    }
+
+    @Test
+    public void testCapacityRoundsUpToPowerOfTwo() {
+        assertEquals("Capacity should round up", 1024, new PcmRingBuffer(1000).capacity());
+        assertEquals("Exact power of two should be kept", 4096, new PcmRingBuffer(4096).capacity());
+    }
+
+    @Test
+    public void testWrapAroundPreservesBytes() {
+        // Given
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        byte[] first = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12};
+        byte[] second = {13, 14, 15, 16, 17, 18, 19, 20};
+
+        // When
+        ring.write(first, 0, first.length);
+        byte[] out = new byte[10];
+        ring.read(out, 0, 10);
+        ring.write(second, 0, second.length);
+        PcmRingBuffer.PcmSlice slice = ring.slice(ring.available());
+
+        // Then
+        assertEquals("Should have 10 buffered bytes", 10, slice.length());
+        assertNotNull("Wrapped slice should have a tail view", slice.tail());
+        byte[] wrapped = new byte[slice.length()];
+        slice.copyTo(wrapped, 0);
+        assertArrayEquals("Wrapped data should be contiguous",
+                new byte[]{11, 12, 13, 14, 15, 16, 17, 18, 19, 20}, wrapped);
+    }
+
+    @Test
+    public void testFullRingDropsOverflowOnSampleBoundary() {
+        // Given
+        PcmRingBuffer ring = new PcmRingBuffer(16);
+        byte[] data = new byte[13];
+
+        // When
+        int firstWrite = ring.write(data, 0, 13);
+        int secondWrite = ring.write(data, 0, 13);
+
+        // Then
+        assertEquals("Odd length should be truncated to whole samples", 12, firstWrite);
+        assertEquals("Only the remaining free space should be written", 4, secondWrite);
+        assertEquals("Dropped bytes should be counted", 1 + 9, ring.getDroppedBytes());
+        assertEquals("Ring should be full", 16, ring.available());
+    }
+
+    @Test
+    public void testSliceIsReadOnlyView() {
+        PcmRingBuffer ring = new PcmRingBuffer(8);
+        ring.write(new byte[]{1, 2, 3, 4}, 0, 4);
+
+        PcmRingBuffer.PcmSlice slice = ring.slice(4);
+
+        assertTrue("Slice should not be writable", slice.head().isReadOnly());
+        assertEquals("Peeking should not consume data", 4, ring.available());
+        ring.release(slice.length());
+        assertEquals("Release should consume data", 0, ring.available());
+    }
+
+    @Test
+    public void testConcurrentProducerConsumerIntegrity() throws Exception {
+        // Given
+        final long totalBytes = 32L * 1024 * 1024;
+        final PcmRingBuffer ring = new PcmRingBuffer(64 * 1024);
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            Random random = new Random(42);
+            byte[] chunk = new byte[4096];
+            long position = 0;
+            while (position < totalBytes) {
+                int length = Math.min((1 + random.nextInt(chunk.length / 2)) * 2, (int) (totalBytes - position));
+                for (int i = 0; i < length; i++) {
+                    chunk[i] = patternAt(position + i);
+                }
+                int offset = 0;
+                while (offset < length) {
+                    // Retry instead of dropping so every byte reaches the consumer
+                    int written = ring.write(chunk, offset, Math.min(length - offset, ring.capacity() - ring.available()));
+                    offset += written;
+                    if (written == 0) {
+                        Thread.yield();
+                    }
+                }
+                position += length;
+            }
+        }, "producer");
+
+        Thread consumer = new Thread(() -> {
+            Random random = new Random(7);
+            long position = 0;
+            while (position < totalBytes && failure.get() == null) {
+                PcmRingBuffer.PcmSlice slice = ring.slice(1 + random.nextInt(16 * 1024));
+                if (slice.isEmpty()) {
+                    Thread.yield();
+                    continue;
+                }
+                if (slice.position() != position) {
+                    failure.set("Slice position " + slice.position() + " != " + position);
+                    return;
+                }
+                byte[] copy = new byte[slice.length()];
+                slice.copyTo(copy, 0);
+                for (int i = 0; i < copy.length; i++) {
+                    if (copy[i] != patternAt(position + i)) {
+                        failure.set("Mismatch at byte " + (position + i));
+                        return;
+                    }
+                }
+                ring.release(slice.length());
+                position += slice.length();
+            }
+        }, "consumer");
+
+        // When
+        producer.start();
+        consumer.start();
+        producer.join(60000);
+        consumer.join(60000);
+
+        // Then
+        assertNull(failure.get(), failure.get());
+        assertFalse("Threads should finish", producer.isAlive() || consumer.isAlive());
+        assertEquals("No bytes should be dropped", 0, ring.getDroppedBytes());
+        assertEquals("All bytes should be consumed", totalBytes, ring.getReadPosition());
+    }
+}
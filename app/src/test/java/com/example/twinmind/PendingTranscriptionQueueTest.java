@@ -0,0 +1,95 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PendingTranscriptionQueueTest {
+
+    private static PendingTranscription pending(long id, String sessionId, long timestamp, long nextAttemptTime) {
+        PendingTranscription pending = new PendingTranscription();
+        pending.id = id;
+        pending.sessionId = sessionId;
+        pending.timestamp = timestamp;
+        pending.nextAttemptTime = nextAttemptTime;
+        return pending;
+    }
+
+    private static List<Long> ids(List<PendingTranscription> entries) {
+        List<Long> ids = new ArrayList<>();
+        for (PendingTranscription entry : entries) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void testOldestDueEntriesAreTakenUpToTheLimit() {
+        // Given - in the order the database returns them: by session, then capture time
+        List<PendingTranscription> queued = Arrays.asList(
+                pending(1, "a", 100, 0),
+                pending(2, "a", 200, 0),
+                pending(3, "b", 50, 0));
+
+        // When
+        List<PendingTranscription> ready = PendingTranscriptionQueue.selectReady(queued,
+                Collections.emptySet(), 2, 1000, false);
+
+        // Then
+        assertEquals(Arrays.asList(1L, 2L), ids(ready));
+    }
+
+    @Test
+    public void testEntriesInFlightCountAgainstTheLimit() {
+        // Given
+        List<PendingTranscription> queued = Arrays.asList(
+                pending(1, "a", 100, 0),
+                pending(2, "a", 200, 0),
+                pending(3, "a", 300, 0));
+        Set<Long> inFlight = new HashSet<>(Collections.singletonList(1L));
+
+        // When
+        List<PendingTranscription> ready = PendingTranscriptionQueue.selectReady(queued, inFlight, 2, 1000, false);
+        List<PendingTranscription> full = PendingTranscriptionQueue.selectReady(queued,
+                new HashSet<>(Arrays.asList(1L, 2L)), 2, 1000, false);
+
+        // Then
+        assertEquals(Collections.singletonList(2L), ids(ready));
+        assertTrue("Nothing more should go out while the limit is used", full.isEmpty());
+    }
+
+    @Test
+    public void testEntriesBackingOffWaitUnlessTheNetworkReturned() {
+        // Given
+        List<PendingTranscription> queued = Arrays.asList(
+                pending(1, "a", 100, 5000),
+                pending(2, "a", 200, 500));
+
+        // When
+        List<PendingTranscription> due = PendingTranscriptionQueue.selectReady(queued,
+                Collections.emptySet(), 2, 1000, false);
+        List<PendingTranscription> forced = PendingTranscriptionQueue.selectReady(queued,
+                Collections.emptySet(), 2, 1000, true);
+
+        // Then
+        assertEquals(Collections.singletonList(2L), ids(due));
+        assertEquals(Arrays.asList(1L, 2L), ids(forced));
+    }
+
+    @Test
+    public void testBackoffDoublesUpToTheCap() {
+        // Then
+        assertEquals(PendingTranscriptionQueue.INITIAL_RETRY_MS, PendingTranscriptionQueue.backoffMs(1));
+        assertEquals(PendingTranscriptionQueue.INITIAL_RETRY_MS * 2, PendingTranscriptionQueue.backoffMs(2));
+        assertEquals(PendingTranscriptionQueue.INITIAL_RETRY_MS * 8, PendingTranscriptionQueue.backoffMs(4));
+        assertEquals(PendingTranscriptionQueue.MAX_RETRY_MS, PendingTranscriptionQueue.backoffMs(20));
+        assertEquals(PendingTranscriptionQueue.MAX_RETRY_MS, PendingTranscriptionQueue.backoffMs(Integer.MAX_VALUE));
+    }
+}
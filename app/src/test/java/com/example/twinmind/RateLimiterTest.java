@@ -0,0 +1,151 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final long MS = 1_000_000;
+
+    private long nowNanos = 1_000_000_000L;
+    private ScheduledExecutorService scheduler;
+    private RateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        limiter = new RateLimiter(() -> nowNanos, scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testBurstIsServedWithoutWaiting() {
+        // When - Speech allows a burst of 3 at 1/s
+        long first = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        long second = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        long third = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+
+        // Then
+        assertEquals(0, first);
+        assertEquals(0, second);
+        assertEquals(0, third);
+        assertEquals("No request should count as delayed", 0, limiter.getDelayedCount(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testRequestsBeyondBurstQueueAtTheRefillRate() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        }
+
+        // When
+        long fourth = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        long fifth = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+
+        // Then - each caller waits behind the one before it
+        assertEquals(1000, fourth);
+        assertEquals(2000, fifth);
+        assertEquals(2, limiter.getDelayedCount(RateLimiter.Endpoint.SPEECH));
+        assertEquals(3000, limiter.getTotalWaitMs(RateLimiter.Endpoint.SPEECH));
+        assertEquals(2000, limiter.getMaxWaitMs(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testTokensRefillOverTime() {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        }
+
+        // When
+        nowNanos += 1500 * MS;
+
+        // Then
+        assertEquals("One token should have refilled", 0, limiter.reserve(RateLimiter.Endpoint.SPEECH));
+        assertEquals("The half token left needs another 500ms", 500, limiter.reserve(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testEndpointsAreLimitedIndependently() {
+        // Given - Gemini's burst is used up
+        limiter.reserve(RateLimiter.Endpoint.GEMINI);
+        limiter.reserve(RateLimiter.Endpoint.GEMINI);
+
+        // Then
+        assertTrue("Gemini should now wait", limiter.reserve(RateLimiter.Endpoint.GEMINI) > 0);
+        assertEquals("Calendar is unaffected", 0, limiter.reserve(RateLimiter.Endpoint.CALENDAR));
+    }
+
+    @Test
+    public void testRetryAfterBlocksEndpoint() {
+        // When
+        limiter.onRateLimited(RateLimiter.Endpoint.CALENDAR, "5");
+
+        // Then - the saved-up burst is gone and nothing goes out for 5s, then tokens accrue at 2/s
+        assertEquals(5500, limiter.reserve(RateLimiter.Endpoint.CALENDAR));
+        assertEquals(6000, limiter.reserve(RateLimiter.Endpoint.CALENDAR));
+        assertEquals(1, limiter.getRateLimitedCount(RateLimiter.Endpoint.CALENDAR));
+    }
+
+    @Test
+    public void testBackoffDoublesWithoutRetryAfterAndResetsOnSuccess() {
+        // When
+        limiter.onRateLimited(RateLimiter.Endpoint.SPEECH, null);
+        long firstBlock = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        nowNanos += 10_000 * MS;
+        limiter.onRateLimited(RateLimiter.Endpoint.SPEECH, null);
+        long secondBlock = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+        nowNanos += 10_000 * MS;
+        limiter.onSuccess(RateLimiter.Endpoint.SPEECH);
+        limiter.onRateLimited(RateLimiter.Endpoint.SPEECH, null);
+        long afterSuccess = limiter.reserve(RateLimiter.Endpoint.SPEECH);
+
+        // Then - block plus the one-second refill each reservation needs
+        assertEquals(1000 + 1000, firstBlock);
+        assertEquals(2000 + 1000, secondBlock);
+        assertEquals(1000 + 1000, afterSuccess);
+    }
+
+    @Test
+    public void testRetryAfterDateIsParsed() {
+        // Given
+        long now = 1_700_000_000_000L;
+        String date = "Tue, 14 Nov 2023 22:13:50 GMT"; // now + 30s
+
+        // Then
+        assertEquals(30_000, RateLimiter.parseRetryAfterMs(date, now));
+        assertEquals(120_000, RateLimiter.parseRetryAfterMs("120", now));
+        assertEquals(-1, RateLimiter.parseRetryAfterMs("soon", now));
+        assertEquals(-1, RateLimiter.parseRetryAfterMs(null, now));
+    }
+
+    @Test
+    public void testScheduleRunsTaskOnCallersExecutor() throws Exception {
+        // Given
+        CountDownLatch ran = new CountDownLatch(1);
+        String[] threadName = new String[1];
+
+        // When
+        limiter.schedule(RateLimiter.Endpoint.GEMINI, runnable -> new Thread(runnable, "caller").start(), () -> {
+            threadName[0] = Thread.currentThread().getName();
+            ran.countDown();
+        });
+
+        // Then
+        assertTrue("Task should run", ran.await(5, TimeUnit.SECONDS));
+        assertEquals("Task should run on the caller's executor", "caller", threadName[0]);
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+public class RequestHedgerTest {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdownNow();
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+    }
+
+    // Serves the n-th request (from 0) with the latency the function gives
+    private void injectLatency(LatencyFunction latency) {
+        AtomicInteger count = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                int n = count.getAndIncrement();
+                return new MockResponse().setBody("response " + n)
+                        .setHeadersDelay(latency.delayMs(n), TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    private interface LatencyFunction {
+        long delayMs(int request);
+    }
+
+    private Request request() {
+        return new Request.Builder().url(server.url("/recognize")).build();
+    }
+
+    private String send(RequestHedger hedger) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> result = new AtomicReference<>();
+        AtomicInteger callbacks = new AtomicInteger();
+        hedger.enqueue(client, request(), new Callback() {
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                callbacks.incrementAndGet();
+                result.set(response.body().string());
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Call call, IOException e) {
+                callbacks.incrementAndGet();
+                result.set("failed");
+                done.countDown();
+            }
+        });
+        assertTrue("Request should complete", done.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals("Callback should run exactly once", 1, callbacks.get());
+        return result.get();
+    }
+
+    private void prime(RequestHedger hedger) throws Exception {
+        for (int i = 0; i < RequestHedger.MIN_SAMPLES; i++) {
+            send(hedger);
+        }
+    }
+
+    @Test
+    public void testNoHedgingWithoutHistory() throws Exception {
+        // Given
+        injectLatency(n -> 300);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.5, 1.0);
+
+        // When
+        send(hedger);
+
+        // Then
+        assertEquals(-1, hedger.getHedgeDelayMs());
+        assertEquals(0, hedger.getHedgeCount());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testStalledRequestIsHedgedAndHedgeWins() throws Exception {
+        // Given - fast history, then a request that stalls for 5s while its duplicate is fast
+        int stalled = RequestHedger.MIN_SAMPLES;
+        injectLatency(n -> n == stalled ? 5000 : 10);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.95, 0.5);
+        prime(hedger);
+
+        // When
+        long start = System.nanoTime();
+        String result = send(hedger);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertEquals("response " + (stalled + 1), result);
+        assertTrue("Should finish long before the stall ends, took " + elapsedMs + "ms", elapsedMs < 2000);
+        assertEquals(1, hedger.getHedgeCount());
+        assertEquals(1, hedger.getHedgeWinCount());
+        assertEquals(stalled + 2, server.getRequestCount());
+    }
+
+    @Test
+    public void testHedgeDroppedByTheGateIsNotSent() throws Exception {
+        // Given - a stalled request, and a gate that refuses hedges as an open breaker would
+        int stalled = RequestHedger.MIN_SAMPLES;
+        injectLatency(n -> n == stalled ? 1000 : 10);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.95, 1.0);
+        prime(hedger);
+        AtomicInteger asked = new AtomicInteger();
+        hedger.setGate(send -> asked.incrementAndGet());
+
+        // When
+        String result = send(hedger);
+
+        // Then - the primary's answer, and no duplicate on the wire
+        assertEquals("response " + stalled, result);
+        assertEquals(1, asked.get());
+        assertEquals(0, hedger.getHedgeCount());
+        assertEquals(stalled + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testHedgeWaitsForTheGate() throws Exception {
+        // Given - a stalled request, and a gate that holds hedges for 200ms as a rate limiter would
+        int stalled = RequestHedger.MIN_SAMPLES;
+        injectLatency(n -> n == stalled ? 5000 : 10);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.95, 1.0);
+        prime(hedger);
+        hedger.setGate(send -> scheduler.schedule(send, 200, TimeUnit.MILLISECONDS));
+
+        // When
+        long start = System.nanoTime();
+        String result = send(hedger);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // Then
+        assertEquals("response " + (stalled + 1), result);
+        assertTrue("Hedge should wait for the gate, took " + elapsedMs + "ms",
+                elapsedMs >= RequestHedger.MIN_HEDGE_DELAY_MS + 200);
+        assertEquals(1, hedger.getHedgeWinCount());
+    }
+
+    @Test
+    public void testFastPrimaryIsNotHedged() throws Exception {
+        // Given
+        injectLatency(n -> 10);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.95, 1.0);
+        prime(hedger);
+
+        // When
+        send(hedger);
+        Thread.sleep(RequestHedger.MIN_HEDGE_DELAY_MS * 2);
+
+        // Then
+        assertEquals(0, hedger.getHedgeCount());
+        assertEquals(RequestHedger.MIN_SAMPLES + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void testHedgesStayWithinBudget() throws Exception {
+        // Given - after priming, every request is slow, so every one would like a hedge. The median
+        // stays fast, so the threshold does not move.
+        injectLatency(n -> n < RequestHedger.MIN_SAMPLES ? 10 : 400);
+        RequestHedger hedger = new RequestHedger(scheduler, 0.5, 0.1);
+        prime(hedger);
+
+        // When
+        int slow = 20;
+        for (int i = 0; i < slow; i++) {
+            send(hedger);
+        }
+
+        // Then - the 2 hedges earned while priming plus one per 10 requests since
+        assertEquals(4, hedger.getHedgeCount());
+        assertEquals(slow - 4, hedger.getSkippedForBudgetCount());
+    }
+
+    @Test
+    public void testFailureIsReportedOnce() throws Exception {
+        // Given
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        RequestHedger hedger = new RequestHedger(scheduler, 0.95, 1.0);
+
+        // Then
+        assertEquals("failed", send(hedger));
+    }
+
+    @Test
+    public void testThresholdIsThePercentileOfRecentLatencies() {
+        // Given
+        RequestHedger hedger = new RequestHedger(scheduler, 0.9, 0.1);
+
+        // When
+        for (int i = 1; i <= 100; i++) {
+            hedger.recordLatency(i * 100);
+        }
+
+        // Then
+        assertEquals(9000, hedger.getHedgeDelayMs());
+        hedger.setPercentile(0.5);
+        assertEquals(5000, hedger.getHedgeDelayMs());
+    }
+
+    @Test
+    public void testOldLatenciesAgeOut() {
+        // Given
+        RequestHedger hedger = new RequestHedger(scheduler, 0.99, 0.1);
+        for (int i = 0; i < RequestHedger.WINDOW; i++) {
+            hedger.recordLatency(60_000);
+        }
+
+        // When
+        for (int i = 0; i < RequestHedger.WINDOW; i++) {
+            hedger.recordLatency(1_000);
+        }
+
+        // Then
+        assertEquals(1_000, hedger.getHedgeDelayMs());
+    }
+}
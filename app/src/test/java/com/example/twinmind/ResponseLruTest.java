@@ -0,0 +1,81 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResponseLruTest {
+
+    private static final long TTL_MS = 60_000;
+
+    private ResponseLru lru;
+
+    @Before
+    public void setUp() {
+        lru = new ResponseLru(10, TTL_MS);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvictedFirst() {
+        // Given
+        lru.put("a", "s1", "aaaa", 0);
+        lru.put("b", "s1", "bbbb", 0);
+        lru.get("a", 1);
+
+        // When - over the 10 character limit
+        lru.put("c", "s2", "cccc", 2);
+
+        // Then
+        assertNull("The entry not read since should go", lru.get("b", 3));
+        assertEquals("The entry just read should stay", "aaaa", lru.get("a", 3));
+        assertEquals("The new entry should be kept", "cccc", lru.get("c", 3));
+        assertEquals("Size should track what is kept", 8, lru.getChars());
+        assertEquals("The eviction should be counted", 1, lru.getEvictions());
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() {
+        // Given
+        lru.put("a", "s1", "aaaa", 1_000);
+
+        // Then
+        assertEquals("A fresh entry should hit", "aaaa", lru.get("a", 1_000 + TTL_MS - 1));
+        assertNull("An expired entry should miss", lru.get("a", 1_000 + TTL_MS));
+        assertEquals("An expired entry should be dropped", 0, lru.size());
+    }
+
+    @Test
+    public void testSessionInvalidationLeavesOtherSessions() {
+        // Given
+        lru.put("a", "s1", "aa", 0);
+        lru.put("b", "s2", "bb", 0);
+        lru.put("c", null, "cc", 0);
+
+        // When
+        lru.removeSession("s1");
+        lru.removeSession(null);
+
+        // Then
+        assertNull("The changed session's entry should go", lru.get("a", 1));
+        assertNull("Entries without a session should go with null", lru.get("c", 1));
+        assertEquals("Other sessions should be kept", "bb", lru.get("b", 1));
+        assertEquals("Size should follow removals", 2, lru.getChars());
+    }
+
+    @Test
+    public void testReplacingAndOversizedEntries() {
+        // Given
+        lru.put("a", "s1", "aaaa", 0);
+
+        // When
+        lru.put("a", "s1", "aaaaaa", 1);
+        lru.put("huge", "s1", "hhhhhhhhhhhh", 1);
+
+        // Then
+        assertEquals("A put should replace the entry", "aaaaaa", lru.get("a", 2));
+        assertEquals("The old text should not be counted", 6, lru.getChars());
+        assertNull("An entry over the limit should not be kept", lru.get("huge", 2));
+        assertEquals("It should not push others out", 0, lru.getEvictions());
+    }
+}
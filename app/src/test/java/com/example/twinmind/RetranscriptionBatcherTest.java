@@ -0,0 +1,133 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class RetranscriptionBatcherTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final String SESSION_ID = "session_1700000000000";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private AudioArchive archive;
+
+    @Before
+    public void setUp() {
+        archive = new AudioArchive(tempFolder.getRoot());
+    }
+
+    // Every session sample has its own value, so overlap and gaps show up in the batch audio
+    private static short sampleAt(long sessionSample) {
+        return (short) (sessionSample % 30000 + 1);
+    }
+
+    private static AudioChunk chunk(long sequence, long sampleOffset, int samples) {
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short value = sampleAt(sampleOffset + i);
+            pcm[i * 2] = (byte) value;
+            pcm[i * 2 + 1] = (byte) (value >> 8);
+        }
+        FlacEncoder encoder = new FlacEncoder(SAMPLE_RATE);
+        encoder.encode(ByteBuffer.wrap(pcm));
+        AudioChunk chunk = new AudioChunk(SESSION_ID, sequence, sampleOffset, pcm);
+        chunk.timestamp = 1_000 + sampleOffset * 1000 / SAMPLE_RATE;
+        chunk.encodedAudio = encoder.finish();
+        chunk.encoding = "FLAC";
+        return chunk;
+    }
+
+    private static short[] samples(byte[] flac) throws Exception {
+        ByteBuffer pcm = ByteBuffer.wrap(FlacDecoder.decode(flac)).order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[pcm.remaining() / 2];
+        pcm.asShortBuffer().get(samples);
+        return samples;
+    }
+
+    @Test
+    public void testOverlapIsSentOnceAndShortGapsAreFilled() throws Exception {
+        // Given - chunk 1 repeats the last second of chunk 0, chunk 2 starts after a 2s pause
+        try (AudioArchive.Writer writer = archive.openWriter(SESSION_ID, "FLAC", SAMPLE_RATE)) {
+            writer.append(chunk(0, 0, 10 * SAMPLE_RATE));
+            writer.append(chunk(1, 9L * SAMPLE_RATE, 10 * SAMPLE_RATE));
+            writer.append(chunk(2, 21L * SAMPLE_RATE, 5 * SAMPLE_RATE));
+        }
+
+        // When
+        RetranscriptionBatcher.Batch batch;
+        RetranscriptionBatcher.Batch end;
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            RetranscriptionBatcher batcher = new RetranscriptionBatcher(reader, new FlacEncoder(SAMPLE_RATE),
+                    120L * SAMPLE_RATE, 10L * SAMPLE_RATE);
+            batch = batcher.next();
+            end = batcher.next();
+        }
+
+        // Then
+        assertNotNull("The chunks should form a batch", batch);
+        assertNull("Everything should fit in one batch", end);
+        assertEquals("Batch should start with the session", 0, batch.startSample);
+        assertEquals("Batch should start at the first chunk's time", 1_000, batch.timestamp);
+        assertEquals("Batch should run to the last chunk's end", 26 * SAMPLE_RATE, batch.sampleCount);
+        short[] audio = samples(batch.audio);
+        assertEquals("Audio should match the session timeline", 26 * SAMPLE_RATE, audio.length);
+        for (int i = 0; i < audio.length; i++) {
+            boolean inGap = i >= 19 * SAMPLE_RATE && i < 21 * SAMPLE_RATE;
+            assertEquals("Sample " + i + " should be " + (inGap ? "silence" : "the session's"),
+                    inGap ? 0 : sampleAt(i), audio[i]);
+        }
+    }
+
+    @Test
+    public void testLongGapsAndBatchLimitStartNewBatches() throws Exception {
+        // Given - three 10s chunks back to back, then one after a minute of dropped silence
+        try (AudioArchive.Writer writer = archive.openWriter(SESSION_ID, "FLAC", SAMPLE_RATE)) {
+            writer.append(chunk(0, 0, 10 * SAMPLE_RATE));
+            writer.append(chunk(1, 10L * SAMPLE_RATE, 10 * SAMPLE_RATE));
+            writer.append(chunk(2, 20L * SAMPLE_RATE, 10 * SAMPLE_RATE));
+            writer.append(chunk(3, 90L * SAMPLE_RATE, 10 * SAMPLE_RATE));
+        }
+
+        // When - batches of at most 25s
+        try (AudioArchive.Reader reader = archive.openReader(SESSION_ID)) {
+            RetranscriptionBatcher batcher = new RetranscriptionBatcher(reader, new FlacEncoder(SAMPLE_RATE),
+                    25L * SAMPLE_RATE, 10L * SAMPLE_RATE);
+            RetranscriptionBatcher.Batch first = batcher.next();
+            RetranscriptionBatcher.Batch second = batcher.next();
+            RetranscriptionBatcher.Batch third = batcher.next();
+
+            // Then
+            assertEquals("First batch should stop before passing the limit", 20 * SAMPLE_RATE, first.sampleCount);
+            assertEquals("Second batch should start where the first stopped", 20L * SAMPLE_RATE, second.startSample);
+            assertEquals("The long gap should end the second batch", 10 * SAMPLE_RATE, second.sampleCount);
+            assertEquals("Third batch should start after the gap", 90L * SAMPLE_RATE, third.startSample);
+            assertEquals("Third batch should carry its chunk's time", 91_000, third.timestamp);
+            assertEquals("Third batch should hold the session's audio", sampleAt(90L * SAMPLE_RATE),
+                    samples(third.audio)[0]);
+            assertNull("The archive should be used up", batcher.next());
+        }
+    }
+
+    @Test
+    public void testLinear16PayloadsAreUnwrapped() throws Exception {
+        // Given
+        WavEncoder encoder = new WavEncoder(SAMPLE_RATE);
+        byte[] pcm = {1, 2, 3, 4, 5, 6};
+        encoder.encode(ByteBuffer.wrap(pcm));
+
+        // When
+        byte[] decoded = RetranscriptionBatcher.decodePcm("LINEAR16", encoder.finish());
+
+        // Then
+        assertArrayEquals("The WAV header should be dropped", pcm, decoded);
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    private static final long MS = 1_000_000;
+
+    private long nowNanos = 1_000_000_000L;
+    private ScheduledExecutorService scheduler;
+    private RetryPolicy policy;
+
+    @Before
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        policy = new RetryPolicy(() -> nowNanos, new Random(42), scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private void failRepeatedly(RateLimiter.Endpoint endpoint, int times) {
+        for (int i = 0; i < times; i++) {
+            policy.onFailure(endpoint);
+        }
+    }
+
+    @Test
+    public void testBreakerOpensAfterConsecutiveFailures() {
+        // When
+        failRepeatedly(RateLimiter.Endpoint.SPEECH, RetryPolicy.FAILURE_THRESHOLD - 1);
+        boolean beforeThreshold = policy.allowRequest(RateLimiter.Endpoint.SPEECH);
+        policy.onFailure(RateLimiter.Endpoint.SPEECH);
+
+        // Then
+        assertTrue(beforeThreshold);
+        assertEquals(RetryPolicy.State.OPEN, policy.getState(RateLimiter.Endpoint.SPEECH));
+        assertFalse("Requests should fail fast", policy.allowRequest(RateLimiter.Endpoint.SPEECH));
+        assertEquals(1, policy.getRejectedCount(RateLimiter.Endpoint.SPEECH));
+        assertEquals(1, policy.getTripCount(RateLimiter.Endpoint.SPEECH));
+        assertEquals("Other endpoints are unaffected", RetryPolicy.State.CLOSED,
+                policy.getState(RateLimiter.Endpoint.GEMINI));
+    }
+
+    @Test
+    public void testSuccessResetsTheFailureCount() {
+        // When
+        failRepeatedly(RateLimiter.Endpoint.SPEECH, RetryPolicy.FAILURE_THRESHOLD - 1);
+        policy.onSuccess(RateLimiter.Endpoint.SPEECH);
+        failRepeatedly(RateLimiter.Endpoint.SPEECH, RetryPolicy.FAILURE_THRESHOLD - 1);
+
+        // Then
+        assertEquals(RetryPolicy.State.CLOSED, policy.getState(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testHalfOpenLetsOneProbeThrough() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.GEMINI, RetryPolicy.FAILURE_THRESHOLD);
+
+        // When
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        boolean probe = policy.allowRequest(RateLimiter.Endpoint.GEMINI);
+        boolean second = policy.allowRequest(RateLimiter.Endpoint.GEMINI);
+        policy.onSuccess(RateLimiter.Endpoint.GEMINI);
+
+        // Then
+        assertTrue("The first request after the open period is the probe", probe);
+        assertFalse("Others wait for the probe's outcome", second);
+        assertEquals(RetryPolicy.State.CLOSED, policy.getState(RateLimiter.Endpoint.GEMINI));
+        assertTrue(policy.allowRequest(RateLimiter.Endpoint.GEMINI));
+    }
+
+    @Test
+    public void testFailedProbeReopensForLonger() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.GEMINI, RetryPolicy.FAILURE_THRESHOLD);
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        policy.allowRequest(RateLimiter.Endpoint.GEMINI);
+
+        // When
+        policy.onFailure(RateLimiter.Endpoint.GEMINI);
+
+        // Then
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        assertEquals("Still open after the first period", RetryPolicy.State.OPEN,
+                policy.getState(RateLimiter.Endpoint.GEMINI));
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        assertEquals(RetryPolicy.State.HALF_OPEN, policy.getState(RateLimiter.Endpoint.GEMINI));
+        assertEquals(2, policy.getTripCount(RateLimiter.Endpoint.GEMINI));
+    }
+
+    @Test
+    public void testStuckProbeIsReplaced() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.SPEECH, RetryPolicy.FAILURE_THRESHOLD);
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        policy.allowRequest(RateLimiter.Endpoint.SPEECH);
+
+        // When
+        nowNanos += (RetryPolicy.PROBE_TIMEOUT_MS + 1) * MS;
+
+        // Then
+        assertTrue(policy.allowRequest(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testClientErrorOnProbeClosesBreaker() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.GEMINI, RetryPolicy.FAILURE_THRESHOLD);
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        policy.allowRequest(RateLimiter.Endpoint.GEMINI);
+
+        // When - the probe is answered with a 400
+        policy.onResponse(RateLimiter.Endpoint.GEMINI, 400);
+
+        // Then
+        assertEquals(RetryPolicy.State.CLOSED, policy.getState(RateLimiter.Endpoint.GEMINI));
+        assertTrue(policy.allowRequest(RateLimiter.Endpoint.GEMINI));
+    }
+
+    @Test
+    public void testRateLimitedProbeLetsAnotherProbeThrough() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.GEMINI, RetryPolicy.FAILURE_THRESHOLD);
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        policy.allowRequest(RateLimiter.Endpoint.GEMINI);
+
+        // When
+        policy.onResponse(RateLimiter.Endpoint.GEMINI, 429);
+
+        // Then - still half-open, but the next request may probe without waiting out the timeout
+        assertEquals(RetryPolicy.State.HALF_OPEN, policy.getState(RateLimiter.Endpoint.GEMINI));
+        assertTrue(policy.allowRequest(RateLimiter.Endpoint.GEMINI));
+    }
+
+    @Test
+    public void testServerFaultResponseReopensBreaker() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.SPEECH, RetryPolicy.FAILURE_THRESHOLD);
+        nowNanos += RetryPolicy.INITIAL_OPEN_MS * MS;
+        policy.allowRequest(RateLimiter.Endpoint.SPEECH);
+
+        // When
+        policy.onResponse(RateLimiter.Endpoint.SPEECH, 503);
+
+        // Then
+        assertEquals(RetryPolicy.State.OPEN, policy.getState(RateLimiter.Endpoint.SPEECH));
+    }
+
+    @Test
+    public void testJitteredDelaysStayWithinBounds() {
+        // Given
+        RetryPolicy.Backoff backoff = new RetryPolicy.Backoff();
+
+        // When / Then - each delay lies between the base and three times the one before it
+        long previous = RetryPolicy.BASE_DELAY_MS;
+        for (int i = 0; i < 50; i++) {
+            long delay = policy.nextDelayMs(backoff);
+            assertTrue("Delay " + delay + " below base", delay >= RetryPolicy.BASE_DELAY_MS);
+            assertTrue("Delay " + delay + " above cap", delay <= RetryPolicy.MAX_DELAY_MS);
+            assertTrue("Delay " + delay + " grew too fast from " + previous, delay <= Math.max(previous * 3,
+                    RetryPolicy.BASE_DELAY_MS));
+            previous = delay;
+        }
+    }
+
+    @Test
+    public void testRetriesAreClassified() {
+        // Then - statuses the server did not act on are always safe to resend
+        assertTrue(RetryPolicy.isRetryable(503, false));
+        assertTrue(RetryPolicy.isRetryable(429, false));
+        assertFalse("A 500 may have been processed", RetryPolicy.isRetryable(500, false));
+        assertTrue(RetryPolicy.isRetryable(500, true));
+        assertFalse(RetryPolicy.isRetryable(400, true));
+        assertFalse(RetryPolicy.isRetryable(403, true));
+
+        // And a request that timed out waiting for its response may have been delivered
+        assertTrue(RetryPolicy.isRetryable(new ConnectException(), false));
+        assertFalse(RetryPolicy.isRetryable(new SocketTimeoutException(), false));
+        assertTrue(RetryPolicy.isRetryable(new IOException(), true));
+    }
+
+    @Test
+    public void testRetryRunsUntilAttemptsRunOut() throws Exception {
+        // Given
+        RetryPolicy.Backoff backoff = new RetryPolicy.Backoff();
+        CountDownLatch ran = new CountDownLatch(RetryPolicy.MAX_RETRIES);
+
+        // When
+        int scheduled = 0;
+        while (policy.retry(RateLimiter.Endpoint.SPEECH, backoff, true, Runnable::run, ran::countDown)) {
+            scheduled++;
+        }
+
+        // Then
+        assertEquals(RetryPolicy.MAX_RETRIES, scheduled);
+        assertTrue("Retries should run", ran.await(30, TimeUnit.SECONDS));
+        assertEquals(RetryPolicy.MAX_RETRIES, policy.getRetryCount(RateLimiter.Endpoint.SPEECH));
+        assertFalse("Non-retryable failures are not retried",
+                policy.retry(RateLimiter.Endpoint.SPEECH, new RetryPolicy.Backoff(), false, Runnable::run, () -> {}));
+    }
+
+    @Test
+    public void testNoRetriesWhileOpen() {
+        // Given
+        failRepeatedly(RateLimiter.Endpoint.CALENDAR, RetryPolicy.FAILURE_THRESHOLD);
+
+        // Then
+        assertFalse(policy.retry(RateLimiter.Endpoint.CALENDAR, new RetryPolicy.Backoff(), true,
+                Runnable::run, () -> {}));
+    }
+}
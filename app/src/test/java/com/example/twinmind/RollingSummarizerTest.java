@@ -0,0 +1,265 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RollingSummarizerTest {
+
+    private static final String SESSION = "session_1";
+    // About the 500 words the update prompt allows
+    private static final String SUMMARY = "Topics: " + "word ".repeat(500);
+
+    // The transcription table for one session
+    private static class FakeStore implements RollingSummarizer.Store {
+        final List<TranscriptionEntry> rows = Collections.synchronizedList(new ArrayList<>());
+        volatile String summary;
+        volatile long coveredId;
+        volatile String notes;
+        volatile long notesCoveredId;
+
+        void add(String text) {
+            TranscriptionEntry entry = new TranscriptionEntry(SESSION, text, System.currentTimeMillis(), rows.size());
+            entry.id = rows.size() + 1;
+            rows.add(entry);
+        }
+
+        @Override
+        public List<TranscriptionEntry> getTranscriptionsAfter(String sessionId, long afterId) {
+            List<TranscriptionEntry> after = new ArrayList<>();
+            synchronized (rows) {
+                for (TranscriptionEntry row : rows) {
+                    if (row.id > afterId) {
+                        after.add(row);
+                    }
+                }
+            }
+            return after;
+        }
+
+        @Override
+        public void saveRollingSummary(String sessionId, String summary, long coveredId) {
+            this.summary = summary;
+            this.coveredId = coveredId;
+        }
+
+        @Override
+        public void saveSessionNotes(String sessionId, String notes, long coveredId) {
+            this.notes = notes;
+            this.notesCoveredId = coveredId;
+        }
+    }
+
+    private ExecutorService executor;
+    private FakeStore store;
+    private List<String> prompts;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        store = new FakeStore();
+        prompts = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<String> answer(String prompt) {
+        prompts.add(prompt);
+        return CompletableFuture.completedFuture(prompt.startsWith("You are keeping") ? SUMMARY : "## Summary\nDone");
+    }
+
+    private void transcribe(RollingSummarizer summarizer, String text) throws Exception {
+        store.add(text);
+        summarizer.onTranscription();
+        // Lets a queued update run before the next row, as the minutes between them would
+        executor.submit(() -> { }).get();
+    }
+
+    @Test
+    public void testEachUpdateSendsOnlyTheSummaryAndNewRows() throws Exception {
+        // Given
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor, 3);
+
+        // When
+        for (int i = 1; i <= 7; i++) {
+            transcribe(summarizer, "row" + i);
+        }
+
+        // Then
+        assertEquals(2, summarizer.getUpdateCount());
+        assertEquals(2, prompts.size());
+        assertTrue(prompts.get(0).contains("(none, the meeting has just started)"));
+        assertTrue(prompts.get(0).endsWith("New transcript:\nrow1 row2 row3"));
+        assertTrue("The second update should build on the first", prompts.get(1).contains(SUMMARY.trim()));
+        assertTrue(prompts.get(1).endsWith("New transcript:\nrow4 row5 row6"));
+        assertEquals("Progress should be saved with the summary", 6, store.coveredId);
+        assertEquals(SUMMARY.trim(), store.summary);
+    }
+
+    @Test
+    public void testFinishOnlyReadsRowsAfterTheLastUpdate() throws Exception {
+        // Given
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor, 3);
+        for (int i = 1; i <= 7; i++) {
+            transcribe(summarizer, "row" + i);
+        }
+        prompts.clear();
+
+        // When
+        String notes = summarizer.finish().get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals("## Summary\nDone", notes);
+        assertEquals(1, prompts.size());
+        assertTrue(prompts.get(0).contains("## Action Items"));
+        assertTrue(prompts.get(0).contains("Running notes:\n" + SUMMARY.trim()));
+        assertTrue(prompts.get(0).contains("End of the transcript:\nrow7\n"));
+        assertFalse("Rows in the summary should not be sent again", prompts.get(0).contains("row6"));
+        assertEquals(notes, store.notes);
+        assertEquals(7, store.notesCoveredId);
+        assertNull("Nothing should be left pending", RollingSummarizer.getPendingNotes(SESSION));
+    }
+
+    @Test
+    public void testShortMeetingGetsTheUsualNotesPrompt() throws Exception {
+        // Given - fewer rows than one update
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor, 30);
+        transcribe(summarizer, "hello there");
+        transcribe(summarizer, "goodbye");
+
+        // When
+        summarizer.finish().get(5, TimeUnit.SECONDS);
+
+        // Then - the same request NotesFragment would send, so either answer serves the other
+        assertEquals(Collections.singletonList(TranscriptSummarizer.notesPrompt("hello there goodbye")), prompts);
+    }
+
+    @Test
+    public void testFailedUpdateIsFoldedIntoTheNextOne() throws Exception {
+        // Given - the first request fails
+        AtomicInteger calls = new AtomicInteger();
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, prompt -> {
+            if (calls.getAndIncrement() == 0) {
+                prompts.add(prompt);
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new java.io.IOException("Rate limit exceeded"));
+                return failed;
+            }
+            return answer(prompt);
+        }, store, executor, 2);
+
+        // When
+        for (int i = 1; i <= 3; i++) {
+            transcribe(summarizer, "row" + i);
+        }
+
+        // Then
+        assertEquals(1, summarizer.getUpdateCount());
+        assertTrue(prompts.get(1).endsWith("New transcript:\nrow1 row2 row3"));
+        assertEquals(3, store.coveredId);
+    }
+
+    @Test
+    public void testPendingNotesCanBeAwaitedByTheNotesScreen() throws Exception {
+        // Given - a notes request that has not come back yet
+        CompletableFuture<String> response = new CompletableFuture<>();
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, prompt -> response, store, executor, 30);
+        store.add("hello");
+
+        // When
+        CompletableFuture<String> notes = summarizer.finish();
+
+        // Then
+        assertSame(notes, RollingSummarizer.getPendingNotes(SESSION));
+        response.complete("## Summary\nHello");
+        assertEquals("## Summary\nHello", notes.get(5, TimeUnit.SECONDS));
+        assertNull(RollingSummarizer.getPendingNotes(SESSION));
+    }
+
+    @Test
+    public void testNotesWaitForResultsStillInFlight() throws Exception {
+        // Given - stopped with a result not saved yet
+        CompletableFuture<Void> settled = new CompletableFuture<>();
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor, 30);
+        store.add("hello");
+
+        // When
+        CompletableFuture<String> notes = summarizer.finish(settled, 5000);
+        Thread.sleep(100);
+        store.add("goodbye");
+        assertSame("The notes screen should wait for these", notes, RollingSummarizer.getPendingNotes(SESSION));
+        settled.complete(null);
+
+        // Then - pending all along, and written over both rows
+        notes.get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(TranscriptSummarizer.notesPrompt("hello goodbye")), prompts);
+        assertEquals(2, store.notesCoveredId);
+    }
+
+    @Test
+    public void testNotesAreWrittenWhenResultsDoNotSettleInTime() throws Exception {
+        // Given - a result that never comes back
+        RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor, 30);
+        store.add("hello");
+
+        // When
+        String notes = summarizer.finish(new CompletableFuture<Void>(), 100).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals("## Summary\nDone", notes);
+        assertEquals(1, store.notesCoveredId);
+    }
+
+    @Test
+    public void testTokensGrowLinearlyAndStopIsSmall() throws Exception {
+        // 10s segments as in TranscriptSummarizerTest
+        String segment = "so the plan for the next release is to finish the export work, "
+                + "then ship the calendar sync once QA has signed off on it";
+        StringBuilder report = new StringBuilder("Tokens sent (rolling summary vs one request at stop)");
+        long[] totals = new long[3];
+        for (int hours = 1; hours <= 3; hours++) {
+            // Given
+            setUp();
+            RollingSummarizer summarizer = new RollingSummarizer(SESSION, this::answer, store, executor,
+                    RollingSummarizer.DEFAULT_CHUNKS_PER_UPDATE);
+
+            // When - stopping partway to the next update
+            for (int i = 0; i < hours * 360 + 17; i++) {
+                transcribe(summarizer, segment);
+            }
+            long duringRecording = summarizer.getTokensSent();
+            summarizer.finish().get(5, TimeUnit.SECONDS);
+            long atStop = summarizer.getTokensSent() - duringRecording;
+            int transcript = TranscriptSummarizer.estimateTokens(RollingSummarizer.join(store.rows));
+            executor.shutdownNow();
+
+            // Then
+            totals[hours - 1] = summarizer.getTokensSent();
+            assertTrue("Stop should only send the summary and the last few minutes, sent " + atStop,
+                    atStop < 3000);
+            report.append(String.format(Locale.US, "\n%dh, %d transcript tokens: %d updates, %d tokens while "
+                            + "recording, %d at stop (single prompt at stop: %d)", hours, transcript,
+                    summarizer.getUpdateCount(), duringRecording, atStop,
+                    TranscriptSummarizer.estimateTokens(TranscriptSummarizer.notesPrompt(RollingSummarizer.join(store.rows)))));
+        }
+        System.out.println(report);
+        // Linear: three hours cost about three times one hour
+        assertEquals(3.0, (double) totals[2] / totals[0], 0.2);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.twinmind;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Base64;
+import java.util.Random;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class SpeechJsonTest {
+
+    // 30s of 16kHz LINEAR16, the largest chunk the chunker produces
+    private static final int CHUNK_BYTES = 30 * 16000 * 2;
+
+    private static byte[] payload(int length) {
+        byte[] data = new byte[length];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    private static String write(RequestBody body) throws Exception {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    // What TranscriptionManager used to do: base64 String, JSON String, then UTF-8 bytes
+    private static RequestBody stringRequest(byte[] audio) {
+        String encoded = Base64.getEncoder().encodeToString(audio);
+        String json = "{\"config\":{\"encoding\":\"LINEAR16\",\"sampleRateHertz\":16000,"
+                + "\"languageCode\":\"en-US\",\"enableAutomaticPunctuation\":true,\"model\":\"latest_short\"},"
+                + "\"audio\":{\"content\":\"" + encoded + "\"}}";
+        return RequestBody.create(json, MediaType.get("application/json; charset=utf-8"));
+    }
+
+    @Test
+    public void testRequestMatchesSpeechApiShape() throws Exception {
+        // Given
+        byte[] audio = payload(1000);
+
+        // When
+        RequestBody body = SpeechJson.recognizeRequest(audio, "FLAC", 16000, "en-US", "latest_short");
+        String json = write(body);
+
+        // Then
+        JsonObject request = JsonParser.parseString(json).getAsJsonObject();
+        JsonObject config = request.getAsJsonObject("config");
+        assertEquals("FLAC", config.get("encoding").getAsString());
+        assertEquals(16000, config.get("sampleRateHertz").getAsInt());
+        assertEquals("en-US", config.get("languageCode").getAsString());
+        assertTrue(config.get("enableAutomaticPunctuation").getAsBoolean());
+        assertEquals("latest_short", config.get("model").getAsString());
+        assertTrue(config.get("enableWordTimeOffsets").getAsBoolean());
+        assertTrue(config.get("enableWordConfidence").getAsBoolean());
+        assertArrayEquals("Audio should round-trip through base64", audio,
+                Base64.getDecoder().decode(request.getAsJsonObject("audio").get("content").getAsString()));
+        assertEquals("Content length should be exact", json.length(), body.contentLength());
+        assertEquals("Body should be writable again for retries", json, write(body));
+    }
+
+    @Test
+    public void testBase64MatchesJdkForEveryPaddingCase() {
+        for (int length = 0; length < 10; length++) {
+            // Given
+            byte[] audio = payload(length + 5);
+            byte[] dst = new byte[(length + 2) / 3 * 4];
+
+            // When
+            int written = SpeechJson.encodeBase64(audio, 5, length, dst);
+
+            // Then
+            byte[] slice = java.util.Arrays.copyOfRange(audio, 5, 5 + length);
+            assertEquals("Length " + length, Base64.getEncoder().encodeToString(slice), new String(dst, 0, written));
+        }
+    }
+
+    @Test
+    public void testBlocksJoinIntoOneBase64String() throws Exception {
+        // Given - not a multiple of the block size, so the last block is short and padded
+        byte[] audio = payload(CHUNK_BYTES + 1);
+
+        // When
+        String json = write(SpeechJson.recognizeRequest(audio, "LINEAR16", 16000, "en-US", "latest_short"));
+
+        // Then
+        String content = JsonParser.parseString(json).getAsJsonObject()
+                .getAsJsonObject("audio").get("content").getAsString();
+        assertEquals(Base64.getEncoder().encodeToString(audio), content);
+    }
+
+    @Test
+    public void testTranscriptJoinsAllResults() throws Exception {
+        // Given - extra fields and alternatives are skipped
+        String response = "{\"results\":["
+                + "{\"alternatives\":[{\"transcript\":\"Hello there.\",\"confidence\":0.9},{\"transcript\":\"Hello their\"}],"
+                + "\"resultEndTime\":\"4.5s\",\"languageCode\":\"en-us\"},"
+                + "{\"alternatives\":[{\"transcript\":\" How are you?\",\"words\":[{\"word\":\"How\"}]}]}"
+                + "],\"totalBilledTime\":\"15s\",\"requestId\":\"123\"}";
+
+        // When
+        String transcript = SpeechJson.parseTranscript(new StringReader(response));
+
+        // Then
+        assertEquals("Hello there. How are you?", transcript);
+    }
+
+    @Test
+    public void testWordsOfAllResultsAreTimed() throws Exception {
+        // Given
+        String response = "{\"results\":["
+                + "{\"alternatives\":[{\"transcript\":\"Hello there.\",\"words\":["
+                + "{\"startTime\":\"0s\",\"endTime\":\"0.400s\",\"word\":\"Hello\",\"confidence\":0.95},"
+                + "{\"startTime\":\"0.400s\",\"endTime\":\"1.100s\",\"word\":\"there.\",\"confidence\":0.8}]}]},"
+                + "{\"alternatives\":[{\"transcript\":\" Bye.\",\"words\":["
+                + "{\"startTime\":\"14.250s\",\"endTime\":\"14.9s\",\"word\":\"Bye.\"}]}]}"
+                + "]}";
+
+        // When
+        SpeechJson.Recognition recognition = SpeechJson.parse(new StringReader(response));
+
+        // Then
+        assertEquals("Hello there. Bye.", recognition.transcript);
+        assertEquals(3, recognition.words.size());
+        assertEquals("there.", recognition.words.get(1).text);
+        assertEquals(400, recognition.words.get(1).startMs);
+        assertEquals(1100, recognition.words.get(1).endMs);
+        assertEquals(0.8f, recognition.words.get(1).confidence, 1e-6);
+        assertEquals(14250, recognition.words.get(2).startMs);
+        assertEquals(14900, recognition.words.get(2).endMs);
+    }
+
+    @Test
+    public void testSilenceHasNoTranscript() throws Exception {
+        // Given
+        String response = "{\"totalBilledTime\":\"15s\",\"requestId\":\"123\"}";
+
+        // Then
+        assertEquals("", SpeechJson.parseTranscript(new StringReader(response)));
+        assertEquals("", SpeechJson.parseTranscript(new StringReader("{\"results\":[{}]}")));
+    }
+
+    @Test
+    public void testBenchmarkAgainstStringRequest() throws Exception {
+        // Given
+        byte[] audio = payload(CHUNK_BYTES);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        BufferedSink wire = Okio.buffer(Okio.blackhole());
+        for (int i = 0; i < 5; i++) {
+            stringRequest(audio).writeTo(wire);
+            SpeechJson.recognizeRequest(audio, "LINEAR16", 16000, "en-US", "latest_short").writeTo(wire);
+        }
+
+        // When
+        int runs = 10;
+        long[] before = new long[2];
+        long[] after = new long[2];
+        measure(threadBean, threadId, runs, before, () -> stringRequest(audio).writeTo(wire));
+        measure(threadBean, threadId, runs, after,
+                () -> SpeechJson.recognizeRequest(audio, "LINEAR16", 16000, "en-US", "latest_short").writeTo(wire));
+        System.out.printf("1 MB chunk request: string path %d KB allocated, %d KB peak heap; "
+                        + "streamed %d KB allocated, %d KB peak heap%n",
+                before[0] / 1024, before[1] / 1024, after[0] / 1024, after[1] / 1024);
+
+        // Then - the old path holds at least the base64 text twice over; the stream holds one block
+        assertTrue("String path should allocate several payload copies, was " + before[0],
+                before[0] > CHUNK_BYTES * 3L);
+        assertTrue("Streamed request should allocate under 100KB, was " + after[0], after[0] < 100 * 1024);
+    }
+
+    private interface Request {
+        void run() throws Exception;
+    }
+
+    // Fills result with allocated bytes per request and the heap's peak rise over the runs
+    private static void measure(com.sun.management.ThreadMXBean threadBean, long threadId, int runs,
+                                long[] result, Request request) throws Exception {
+        System.gc();
+        long baseline = heapUsed();
+        resetHeapPeaks();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < runs; i++) {
+            request.run();
+        }
+        result[0] = (threadBean.getThreadAllocatedBytes(threadId) - allocated) / runs;
+        result[1] = Math.max(0, heapPeak() - baseline);
+    }
+
+    private static long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long heapPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+}
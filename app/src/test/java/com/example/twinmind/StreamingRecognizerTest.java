@@ -0,0 +1,317 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.internal.http2.Http2Stream;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.internal.duplex.DuplexResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class StreamingRecognizerTest {
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private StreamingRecognizer recognizer;
+    private final List<String> interims = new CopyOnWriteArrayList<>();
+    private final List<String> finals = new CopyOnWriteArrayList<>();
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        server.start();
+        client = new OkHttpClient.Builder()
+                .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                .build();
+        recognizer = new StreamingRecognizer(client, server.url("/stream").toString(), "test-key",
+                SAMPLE_RATE, "en-US", new StreamingRecognizer.Callback() {
+                    @Override
+                    public void onInterim(String transcript) {
+                        interims.add(transcript);
+                    }
+
+                    @Override
+                    public void onFinal(String transcript) {
+                        finals.add(transcript);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        errors.add(error);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        recognizer.stop();
+        recognizer.awaitStopped(5000);
+        server.shutdown();
+    }
+
+    @Test
+    public void testInterimAndFinalResultsAreDelivered() throws Exception {
+        // Given - a server that answers the first audio with interim hypotheses, and the half-close
+        // with a final result
+        ScriptedStream script = new ScriptedStream() {
+            @Override
+            void onAudio(BufferedSink out, int totalAudioBytes, int messageCount) throws IOException {
+                if (messageCount == 1) {
+                    writeMessage(out, response(result("hello", false, 0.9f, 0), result("wor", false, 0.1f, 0)));
+                }
+            }
+
+            @Override
+            void onHalfClose(BufferedSink out, int totalAudioBytes) throws IOException {
+                writeMessage(out, response(result("Hello world.", true, 0f, 1000)));
+            }
+        };
+        server.enqueue(new MockResponse().removeHeader("Content-Length").setBody(script));
+        byte[] audio = pcm(BYTES_PER_SECOND);
+
+        // When
+        recognizer.start();
+        recognizer.feed(audio, 0, audio.length);
+        assertTrue("Interim result should arrive while streaming", script.awaitInterimSent());
+        recognizer.stop();
+        assertTrue("Recognizer should stop", recognizer.awaitStopped(5000));
+
+        // Then
+        RecordedRequest request = server.takeRequest();
+        assertEquals("Content type should be gRPC", "application/grpc", request.getHeader("content-type"));
+        assertEquals("API key should be sent as a header", "test-key", request.getHeader("x-goog-api-key"));
+        assertTrue("First message should be the streaming config", script.configs.size() == 1 && script.configs.get(0).length > 0);
+        assertArrayEquals("All fed audio should be streamed", audio, script.audio(0));
+        assertEquals("Interim text should join the partial results", "hello wor", interims.get(0));
+        assertEquals("Final result should be delivered once", Collections.singletonList("Hello world."), finals);
+        assertTrue("No errors expected, got " + errors, errors.isEmpty());
+    }
+
+    @Test
+    public void testRotationReplaysAudioWithoutFinalResult() throws Exception {
+        // Given - each stream finalizes only its first half second
+        ScriptedStream first = new FinalizingStream(500);
+        ScriptedStream second = new FinalizingStream(500);
+        server.enqueue(new MockResponse().removeHeader("Content-Length").setBody(first));
+        server.enqueue(new MockResponse().removeHeader("Content-Length").setBody(second));
+        recognizer.setRotationIntervalMs(300);
+        byte[] audio = pcm(BYTES_PER_SECOND);
+
+        // When
+        recognizer.start();
+        recognizer.feed(audio, 0, audio.length);
+        assertTrue("Second stream should open after rotation", second.awaitOpened());
+        recognizer.stop();
+        assertTrue("Recognizer should stop", recognizer.awaitStopped(5000));
+
+        // Then
+        assertArrayEquals("First stream gets everything fed", audio, first.audio(0));
+        byte[] replayed = second.audio(0);
+        byte[] unfinalized = new byte[audio.length - BYTES_PER_SECOND / 2];
+        System.arraycopy(audio, BYTES_PER_SECOND / 2, unfinalized, 0, unfinalized.length);
+        assertArrayEquals("Second stream should start with the audio after the last final", unfinalized,
+                java.util.Arrays.copyOf(replayed, unfinalized.length));
+        assertTrue("Both streams should report their finals", finals.size() >= 2);
+        assertTrue("Rotation is not an error, got " + errors, errors.isEmpty());
+    }
+
+    @Test
+    public void testErrorStatusIsReportedAndStreamReopened() throws Exception {
+        // Given - the first stream fails with UNAVAILABLE, the second works
+        server.enqueue(new MockResponse().removeHeader("Content-Length").setBody((request, stream) -> {
+            stream.enqueueTrailers(Headers.of("grpc-status", "14", "grpc-message", "unavailable"));
+            Okio.buffer(stream.getSink()).close();
+        }));
+        FinalizingStream second = new FinalizingStream(1000);
+        server.enqueue(new MockResponse().removeHeader("Content-Length").setBody(second));
+        byte[] audio = pcm(BYTES_PER_SECOND);
+
+        // When
+        recognizer.start();
+        recognizer.feed(audio, 0, audio.length);
+        assertTrue("Stream should be reopened after backoff", second.awaitOpened());
+        recognizer.stop();
+        assertTrue("Recognizer should stop", recognizer.awaitStopped(5000));
+
+        // Then
+        assertEquals("Failure should be reported once", 1, errors.size());
+        assertTrue("Error should carry the gRPC status, got " + errors.get(0), errors.get(0).contains("14"));
+        assertArrayEquals("Audio fed during the outage should reach the new stream", audio, second.audio(0));
+        assertEquals("Two streams should have been opened", 2, recognizer.getStreamsOpened());
+    }
+
+    @Test
+    public void testResponseParsingSkipsUnknownFields() throws Exception {
+        // Given
+        Buffer message = new Buffer();
+        message.write(new byte[]{(byte) 0x28, 0x05}); // field 5 varint, unknown to the parser
+        message.write(response(result("kept", true, 0.5f, 2500)));
+
+        // When
+        SpeechProto.Response response = SpeechProto.parseResponse(message.readByteArray());
+
+        // Then
+        assertEquals("One result expected", 1, response.results.size());
+        assertEquals("Transcript should be read", "kept", response.results.get(0).transcript);
+        assertTrue("Final flag should be read", response.results.get(0).isFinal);
+        assertEquals("Result end time should be read", 2500, response.results.get(0).endTimeMillis);
+    }
+
+    // Scripted stand-in for the server side of StreamingRecognize
+
+    abstract static class ScriptedStream implements DuplexResponseBody {
+        final List<byte[]> configs = new ArrayList<>();
+        final List<ByteArrayOutputStream> audioPerStream = new ArrayList<>();
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private final CountDownLatch interimSent = new CountDownLatch(1);
+
+        @Override
+        public void onRequest(RecordedRequest request, Http2Stream stream) throws IOException {
+            BufferedSource in = Okio.buffer(stream.getSource());
+            BufferedSink out = Okio.buffer(stream.getSink());
+            ByteArrayOutputStream audio = new ByteArrayOutputStream();
+            synchronized (this) {
+                audioPerStream.add(audio);
+            }
+            opened.countDown();
+            int messages = 0;
+            while (!in.exhausted()) {
+                assertEquals("Messages should be uncompressed", 0, in.readByte());
+                byte[] message = in.readByteArray(in.readInt());
+                if (message[0] == 0x0A) {
+                    configs.add(message);
+                    continue;
+                }
+                // Field 2 (audio_content): tag, varint length, bytes
+                int offset = 1;
+                while ((message[offset] & 0x80) != 0) {
+                    offset++;
+                }
+                offset++;
+                synchronized (this) {
+                    audio.write(message, offset, message.length - offset);
+                }
+                messages++;
+                onAudio(out, audio.size(), messages);
+                out.flush();
+                interimSent.countDown();
+            }
+            onHalfClose(out, audio.size());
+            stream.enqueueTrailers(Headers.of("grpc-status", "0"));
+            out.close();
+        }
+
+        void onAudio(BufferedSink out, int totalAudioBytes, int messageCount) throws IOException {
+        }
+
+        abstract void onHalfClose(BufferedSink out, int totalAudioBytes) throws IOException;
+
+        synchronized byte[] audio(int stream) {
+            return audioPerStream.get(stream).toByteArray();
+        }
+
+        boolean awaitOpened() throws InterruptedException {
+            return opened.await(10, TimeUnit.SECONDS);
+        }
+
+        boolean awaitInterimSent() throws InterruptedException {
+            return interimSent.await(5, TimeUnit.SECONDS);
+        }
+    }
+
+    static class FinalizingStream extends ScriptedStream {
+        private final long finalEndMillis;
+
+        FinalizingStream(long finalEndMillis) {
+            this.finalEndMillis = finalEndMillis;
+        }
+
+        @Override
+        void onHalfClose(BufferedSink out, int totalAudioBytes) throws IOException {
+            writeMessage(out, response(result("part", true, 0f, finalEndMillis)));
+        }
+    }
+
+    static void writeMessage(BufferedSink out, byte[] message) throws IOException {
+        out.writeByte(0);
+        out.writeInt(message.length);
+        out.write(message);
+        out.flush();
+    }
+
+    static byte[] response(byte[]... results) {
+        Buffer response = new Buffer();
+        for (byte[] result : results) {
+            lengthDelimited(response, 2, result);
+        }
+        return response.readByteArray();
+    }
+
+    static byte[] result(String transcript, boolean isFinal, float stability, long endMillis) {
+        Buffer alternative = new Buffer();
+        lengthDelimited(alternative, 1, transcript.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        Buffer duration = new Buffer();
+        varintField(duration, 1, endMillis / 1000);
+        varintField(duration, 2, endMillis % 1000 * 1_000_000);
+
+        Buffer result = new Buffer();
+        lengthDelimited(result, 1, alternative.readByteArray());
+        varintField(result, 2, isFinal ? 1 : 0);
+        result.writeByte((3 << 3) | 5);
+        result.writeIntLe(Float.floatToIntBits(stability));
+        lengthDelimited(result, 4, duration.readByteArray());
+        return result.readByteArray();
+    }
+
+    private static void lengthDelimited(Buffer out, int field, byte[] value) {
+        varint(out, (field << 3) | 2);
+        varint(out, value.length);
+        out.write(value);
+    }
+
+    private static void varintField(Buffer out, int field, long value) {
+        varint(out, field << 3);
+        varint(out, value);
+    }
+
+    private static void varint(Buffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static byte[] pcm(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        return data;
+    }
+}
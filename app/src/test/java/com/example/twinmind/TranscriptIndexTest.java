@@ -0,0 +1,185 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TranscriptIndexTest {
+
+    private static final String[] NAMES = {"Priya", "Marco", "Dana", "Sam", "Lee", "Jordan"};
+    private static final String[] TOPICS = {"budget", "hiring", "roadmap", "launch", "design review",
+            "customer feedback", "office move", "vendor contract", "onboarding", "analytics", "security audit",
+            "mobile app", "billing service", "pricing"};
+    private static final String[] STATUSES = {"on track", "a bit behind", "blocked on review", "mostly done",
+            "still being scoped"};
+    private static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+
+    // Facts planted in the filler, each with a question asked the way a user would
+    private static final String[][] FACTS = {
+            {"Dana confirmed the Denver office lease will cost forty two thousand dollars a year.",
+                    "How much will the Denver office lease cost?"},
+            {"Marco will migrate the billing service to Postgres before the March freeze.",
+                    "Who is migrating the billing service to Postgres, and by when?"},
+            {"The security audit found three expired certificates on the staging cluster.",
+                    "What did the security audit find?"},
+            {"Priya decided to hire two contractors for the onboarding redesign.",
+                    "What was decided about contractors?"},
+            {"Customer churn dropped to four percent after the pricing change.",
+                    "What happened to customer churn?"},
+            {"The mobile app launch moved from June to September because of the payments SDK.",
+                    "Why was the mobile app launch moved to September?"},
+            {"Jordan owns the vendor contract renewal with Acme and needs legal sign off by Friday.",
+                    "Who owns the Acme renewal?"},
+            {"Analytics dashboards will switch to hourly refresh to cut warehouse costs.",
+                    "How will the analytics dashboards change?"},
+            {"Lee asked for a retrospective on the outage last Tuesday that took down checkout.",
+                    "What outage took down checkout?"},
+            {"The design review approved the dark mode palette with one accessibility fix.",
+                    "What did the design review approve for dark mode?"},
+    };
+
+    // About 10s of speech per segment, on the same topics as the facts so keywords alone are not enough
+    private static List<String> meeting(int minutes, long seed) {
+        Random random = new Random(seed);
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < minutes * 6; i++) {
+            segments.add(String.format(Locale.US, "%s said the %s work is %s and we should check it again on %s.",
+                    NAMES[random.nextInt(NAMES.length)], TOPICS[random.nextInt(TOPICS.length)],
+                    STATUSES[random.nextInt(STATUSES.length)], DAYS[random.nextInt(DAYS.length)]));
+        }
+        for (String[] fact : FACTS) {
+            segments.add(random.nextInt(segments.size()), fact[0]);
+        }
+        return segments;
+    }
+
+    private static TranscriptIndex index(List<String> segments) {
+        TranscriptIndex index = new TranscriptIndex();
+        for (String segment : segments) {
+            index.add(segment);
+        }
+        return index;
+    }
+
+    @Test
+    public void testTermsIgnoreCasePunctuationAndPlurals() {
+        assertEquals("budget", TranscriptIndex.term("Budgets,"));
+        assertEquals("budget", TranscriptIndex.term("budget's"));
+        assertEquals("address", TranscriptIndex.term("address"));
+        assertNull("Stop words are not indexed", TranscriptIndex.term("The"));
+        assertNull(TranscriptIndex.term("--"));
+    }
+
+    @Test
+    public void testPassagesOverlap() {
+        // Given
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            segments.add("w" + i);
+        }
+
+        // When
+        TranscriptIndex index = index(segments);
+
+        // Then
+        List<String> first = Arrays.asList(index.getPassage(0).split(" "));
+        List<String> second = Arrays.asList(index.getPassage(1).split(" "));
+        assertEquals(TranscriptIndex.PASSAGE_WORDS, first.size());
+        assertEquals(first.subList(first.size() - TranscriptIndex.OVERLAP_WORDS, first.size()),
+                second.subList(0, TranscriptIndex.OVERLAP_WORDS));
+        String last = index.getPassage(index.getPassageCount() - 1);
+        assertTrue("The last passage should reach the end", last.endsWith("w399"));
+    }
+
+    @Test
+    public void testIncrementalAddIndexesLikeBuildingAtOnce() {
+        // Given
+        List<String> segments = meeting(60, 7);
+        TranscriptIndex incremental = index(segments);
+        TranscriptIndex atOnce = new TranscriptIndex();
+
+        // When
+        atOnce.add(String.join(" ", segments));
+
+        // Then
+        assertEquals(atOnce.getPassageCount(), incremental.getPassageCount());
+        assertEquals(atOnce.getText(), incremental.getText());
+        for (String[] fact : FACTS) {
+            assertEquals(atOnce.search(fact[1], 10), incremental.search(fact[1], 10));
+            assertEquals(atOnce.select(fact[1], 1000).text, incremental.select(fact[1], 1000).text);
+        }
+    }
+
+    @Test
+    public void testShortTranscriptIsSentWhole() {
+        // Given
+        TranscriptIndex index = index(meeting(5, 3));
+
+        // When
+        TranscriptIndex.Selection selection = index.select("What did the security audit find?", 100);
+
+        // Then
+        assertTrue(selection.full);
+        assertEquals(index.getText(), selection.text);
+    }
+
+    @Test
+    public void testQuestionMatchingNothingGetsTheWholeTranscript() {
+        // Given
+        TranscriptIndex index = index(meeting(60, 5));
+
+        // When
+        TranscriptIndex.Selection selection = index.select("Give me an overview", 1000);
+
+        // Then
+        assertTrue(selection.full);
+        assertEquals(index.getText(), selection.text);
+    }
+
+    @Test
+    public void testCoverageMatchesFullTranscriptOnLongMeetings() {
+        StringBuilder report = new StringBuilder("Chat context, retrieval vs full transcript");
+        for (int hours = 1; hours <= 3; hours++) {
+            // Given
+            TranscriptIndex index = index(meeting(hours * 60, hours));
+            int fullTokens = index.estimateTokens();
+            int fullCovered = 0;
+            int covered = 0;
+            long tokens = 0;
+
+            // When
+            for (String[] fact : FACTS) {
+                if (index.getText().contains(fact[0])) {
+                    fullCovered++;
+                }
+                TranscriptIndex.Selection selection = index.select(fact[1], TranscriptIndex.DEFAULT_CONTEXT_TOKENS);
+                assertFalse(selection.full);
+                int selected = TranscriptSummarizer.estimateTokens(selection.text);
+                assertTrue("Over budget: " + selected, selected <= TranscriptIndex.DEFAULT_CONTEXT_TOKENS + 20);
+                tokens += selected;
+                if (selection.text.contains(fact[0])) {
+                    covered++;
+                } else {
+                    report.append("\nmissed: ").append(fact[1]);
+                }
+            }
+
+            // Then
+            assertEquals(FACTS.length, fullCovered);
+            // A question that shares only common words with its answer, such as "find" for "found",
+            // can rank below passages that repeat those words
+            assertTrue("Retrieval should find nearly every fact the full transcript has: " + report,
+                    covered >= fullCovered - 1);
+            report.append(String.format(Locale.US, "\n%dh: full %d tokens covers %d/%d, retrieval %d tokens "
+                    + "on average covers %d/%d", hours, fullTokens, fullCovered, FACTS.length,
+                    tokens / FACTS.length, covered, FACTS.length));
+        }
+        System.out.println(report);
+    }
+}
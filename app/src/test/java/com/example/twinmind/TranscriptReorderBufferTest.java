@@ -0,0 +1,134 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TranscriptReorderBufferTest {
+
+    private static final long GAP_TIMEOUT_MS = 1000;
+    private static final long ENDED_GAP_TIMEOUT_MS = 200;
+    private static final String SESSION = "session_1";
+
+    private final List<String> released = new ArrayList<>();
+    private TranscriptReorderBuffer<String> buffer;
+
+    @Before
+    public void setUp() {
+        buffer = new TranscriptReorderBuffer<>(GAP_TIMEOUT_MS, ENDED_GAP_TIMEOUT_MS, (sessionId, sequence, result, late) ->
+                released.add(sequence + ":" + (result != null ? result : "-") + (late ? ":late" : "")));
+    }
+
+    @Test
+    public void testInOrderResultsAreReleasedImmediately() {
+        // When
+        buffer.offer(SESSION, 0, "a", 0);
+        buffer.offer(SESSION, 1, "b", 0);
+
+        // Then
+        assertEquals(Arrays.asList("0:a", "1:b"), released);
+        assertEquals("Nothing should be left waiting", 0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testOutOfOrderResultsWaitForLowerSequence() {
+        // When - responses come back 2, 1, 0
+        buffer.offer(SESSION, 2, "c", 0);
+        buffer.offer(SESSION, 1, "b", 10);
+        assertTrue("Nothing may be released before chunk 0", released.isEmpty());
+        buffer.offer(SESSION, 0, "a", 20);
+
+        // Then
+        assertEquals(Arrays.asList("0:a", "1:b", "2:c"), released);
+        assertEquals("Peak queue depth should be recorded", 2, buffer.getMaxPending());
+    }
+
+    @Test
+    public void testSkippedChunkDoesNotBlockLaterResults() {
+        // When - chunk 0 failed
+        buffer.offer(SESSION, 1, "b", 0);
+        buffer.skip(SESSION, 0, 5);
+
+        // Then
+        assertEquals(Arrays.asList("0:-", "1:b"), released);
+        assertEquals("An explicit skip is not a timed-out gap", 0, buffer.getGapsSkipped());
+    }
+
+    @Test
+    public void testGapIsSkippedAfterTimeout() {
+        // Given - chunk 0 never reports
+        buffer.offer(SESSION, 1, "b", 100);
+        buffer.offer(SESSION, 2, "c", 300);
+
+        // When
+        long untilExpiry = buffer.releaseExpired(600);
+        assertTrue("Nothing should be released before the timeout", released.isEmpty());
+        assertEquals("Next check should be due when the oldest result times out", 500, untilExpiry);
+        long afterExpiry = buffer.releaseExpired(1100);
+
+        // Then
+        assertEquals(Arrays.asList("0:-", "1:b", "2:c"), released);
+        assertEquals(1, buffer.getGapsSkipped());
+        assertEquals("Nothing left to wait for", -1, afterExpiry);
+    }
+
+    @Test
+    public void testResultArrivingAfterItsGapWasSkippedIsReleasedAsLate() {
+        // Given
+        buffer.offer(SESSION, 1, "b", 0);
+        buffer.releaseExpired(GAP_TIMEOUT_MS);
+
+        // When
+        buffer.offer(SESSION, 0, "a", 2000);
+
+        // Then
+        assertEquals(Arrays.asList("0:-", "1:b", "0:a:late"), released);
+        assertEquals(1, buffer.getLateResults());
+    }
+
+    @Test
+    public void testSessionsAreOrderedIndependently() {
+        // When
+        buffer.offer("other", 1, "x", 0);
+        buffer.offer(SESSION, 0, "a", 0);
+
+        // Then
+        assertEquals(Arrays.asList("0:a"), released);
+        assertEquals("The other session should still be waiting for its chunk 0", 1, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testEndedSessionGivesUpOnGapsSooner() {
+        // Given - chunk 0 is stuck and the recording has stopped
+        buffer.offer(SESSION, 1, "b", 0);
+        buffer.offer("other", 1, "x", 0);
+        buffer.endSession(SESSION);
+
+        // When
+        buffer.releaseExpired(ENDED_GAP_TIMEOUT_MS);
+
+        // Then
+        assertEquals(Arrays.asList("0:-", "1:b"), released);
+        assertEquals(0, buffer.getPendingCount(SESSION));
+        assertEquals("A session still recording keeps the full timeout", 1, buffer.getPendingCount("other"));
+    }
+
+    @Test
+    public void testFlushReleasesEverythingInOrder() {
+        // Given
+        buffer.offer(SESSION, 3, "d", 0);
+        buffer.offer(SESSION, 1, "b", 0);
+
+        // When
+        buffer.flush(SESSION);
+
+        // Then
+        assertEquals(Arrays.asList("0:-", "1:b", "2:-", "3:d"), released);
+        assertEquals(0, buffer.getPendingCount());
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.twinmind;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranscriptStitcherTest {
+
+    private static final int MAX_TOKENS = TranscriptStitcher.DEFAULT_MAX_OVERLAP_TOKENS;
+
+    private TranscriptStitcher stitcher;
+
+    @Before
+    public void setUp() {
+        stitcher = new TranscriptStitcher();
+    }
+
+    @Test
+    public void testRepeatedWordsAreRemoved() {
+        // Given
+        String previous = "let's review the budget for next quarter";
+        String current = "for next quarter and then the roadmap";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("Overlapping words should be dropped", "and then the roadmap", stitched);
+    }
+
+    @Test
+    public void testCaseAndPunctuationAreIgnoredWhenAligning() {
+        // Given - the recognizer re-punctuates the overlap differently in each chunk
+        String previous = "We should ship it. On Friday,";
+        String current = "on friday. The team agreed";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("Overlap should match regardless of case and punctuation", "The team agreed", stitched);
+    }
+
+    @Test
+    public void testClippedFirstWordIsRemoved() {
+        // Given - the overlap started in the middle of "meeting"
+        String previous = "see you at the meeting tomorrow";
+        String current = "ting tomorrow morning at nine";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("Clipped word and overlap should be dropped", "morning at nine", stitched);
+    }
+
+    @Test
+    public void testNoOverlapLeavesTranscriptAlone() {
+        // Given
+        String previous = "that covers the first item";
+        String current = "moving on to hiring";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("Unrelated transcripts should pass through", current, stitched);
+    }
+
+    @Test
+    public void testSingleShortWordIsNotTreatedAsOverlap() {
+        // Given - "the" ending one chunk and starting the next is a coincidence, not an overlap
+        String previous = "we looked at the";
+        String current = "the numbers again";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("A lone filler word should not be dropped", current, stitched);
+    }
+
+    @Test
+    public void testLongestOverlapWinsOverPartialRepeats() {
+        // Given - "go go go" could align at one, two or three tokens
+        String previous = "ready set go go go";
+        String current = "go go go and we are off";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("The longest prefix/suffix alignment should be used", "and we are off", stitched);
+    }
+
+    @Test
+    public void testOverlapBeyondWindowIsNotSearched() {
+        // Given
+        String previous = "one two three four five six";
+        String current = "one two three four five six seven";
+
+        // When - a window of three tokens cannot see a six-token repeat
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, 3);
+
+        // Then
+        assertEquals("Only the window should be compared", current, stitched);
+    }
+
+    @Test
+    public void testFullyRepeatedChunkBecomesEmpty() {
+        // Given
+        String previous = "thanks everyone for joining";
+        String current = "for joining";
+
+        // When
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, MAX_TOKENS);
+
+        // Then
+        assertEquals("A chunk with nothing new should stitch to empty", "", stitched);
+    }
+
+    @Test
+    public void testStitchOnlyAppliesToConsecutiveOverlappingChunks() {
+        // Given
+        stitcher.stitch(chunk("s1", 0, 0), "we will review the budget today");
+
+        // When
+        String overlapping = stitcher.stitch(chunk("s1", 1, 24000), "budget today and hiring");
+        String gap = stitcher.stitch(chunk("s1", 3, 24000), "and hiring next week");
+        String noOverlap = stitcher.stitch(chunk("s1", 4, 0), "next week we launch");
+
+        // Then
+        assertEquals("Consecutive overlapping chunk should be stitched", "and hiring", overlapping);
+        assertEquals("A skipped sequence should not be stitched", "and hiring next week", gap);
+        assertEquals("A chunk without audio overlap should not be stitched", "next week we launch", noOverlap);
+    }
+
+    @Test
+    public void testStitchIsLinearOnLongTranscripts() {
+        // Given - long, highly repetitive transcripts are the worst case for naive alignment
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            builder.append("la ");
+        }
+        String previous = builder.toString() + "end";
+        String current = builder.toString() + "more";
+
+        // When
+        long start = System.nanoTime();
+        String stitched = TranscriptStitcher.removeOverlap(previous, current, 200_001);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertEquals("Nothing lines up with the final token", current, stitched);
+        assertTrue("Alignment of 200k tokens should be fast, took " + elapsedMs + "ms", elapsedMs < 2000);
+    }
+
+    private static AudioChunk chunk(String sessionId, long sequence, int overlapSamples) {
+        AudioChunk chunk = new AudioChunk(sessionId, sequence, 0, new byte[0]);
+        chunk.overlapSamples = overlapSamples;
+        return chunk;
+    }
+}
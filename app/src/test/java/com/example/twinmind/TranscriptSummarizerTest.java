@@ -0,0 +1,260 @@
+package com.example.twinmind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TranscriptSummarizerTest {
+
+    private ScheduledExecutorService timer;
+
+    @Before
+    public void setUp() {
+        timer = Executors.newScheduledThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    // About ten seconds of speech
+    private static final String SEGMENT = "so the plan for the next release is to finish the export work, "
+            + "then ship the calendar sync once QA has signed off on it";
+
+    private static List<String> meeting(int minutes) {
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < minutes * 6; i++) {
+            segments.add(SEGMENT);
+        }
+        return segments;
+    }
+
+    private static String kind(String prompt) {
+        if (prompt.startsWith("The following is part")) {
+            return "window";
+        }
+        return prompt.contains("Merge them") ? "merge" : "notes";
+    }
+
+    @Test
+    public void testWindowsAreTokenBoundedAndKeepEveryWord() {
+        // Given
+        List<String> segments = Arrays.asList("one two three", "four five six seven eight nine ten",
+                "eleven", "twelve thirteen fourteen fifteen sixteen seventeen eighteen nineteen twenty");
+
+        // When - 5 tokens is 20 characters
+        List<String> windows = TranscriptSummarizer.split(segments, 5);
+
+        // Then
+        for (String window : windows) {
+            assertTrue("Window over budget: " + window, window.length() <= 20);
+        }
+        assertEquals("Nothing should be lost or reordered", String.join(" ", segments), String.join(" ", windows));
+        assertEquals("Short segments should share a window", "one two three", windows.get(0));
+    }
+
+    @Test
+    public void testMergeGroupsAlwaysShrinkTheLevel() {
+        // Given - every summary alone is over the budget
+        List<String> summaries = Collections.nCopies(5, "x".repeat(400));
+
+        // When
+        List<List<String>> groups = TranscriptSummarizer.group(summaries, 50);
+
+        // Then
+        assertEquals("Groups of two, the odd one joining the last", 2, groups.size());
+        assertEquals(2, groups.get(0).size());
+        assertEquals(3, groups.get(1).size());
+    }
+
+    @Test
+    public void testShortTranscriptIsOneNotesPrompt() throws Exception {
+        // Given
+        List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+        TranscriptSummarizer summarizer = new TranscriptSummarizer(meeting(10), prompt -> {
+            prompts.add(prompt);
+            return CompletableFuture.completedFuture("## Summary\nShort meeting");
+        });
+
+        // When
+        String notes = summarizer.summarize();
+
+        // Then
+        assertEquals("## Summary\nShort meeting", notes);
+        assertEquals("One request should do", 1, prompts.size());
+        assertTrue("It should be the notes prompt", prompts.get(0).contains("## Action Items"));
+    }
+
+    @Test
+    public void testMeetingWithinContextIsOnePrompt() throws Exception {
+        // Given - three hours of conversation
+        List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+        TranscriptSummarizer summarizer = new TranscriptSummarizer(meeting(180), prompt -> {
+            prompts.add(prompt);
+            return CompletableFuture.completedFuture("notes");
+        });
+
+        // When
+        summarizer.summarize();
+
+        // Then
+        assertEquals(1, summarizer.getWindowCount());
+        assertEquals("No map-reduce below the context limit", 1, prompts.size());
+        assertEquals("notes", kind(prompts.get(0)));
+    }
+
+    @Test
+    public void testWindowsAreSummarizedWithBoundedConcurrencyThenReduced() throws Exception {
+        // Given
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        List<String> kinds = Collections.synchronizedList(new ArrayList<>());
+        TranscriptSummarizer summarizer = new TranscriptSummarizer(meeting(60), prompt -> {
+            kinds.add(kind(prompt));
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<String> future = new CompletableFuture<>();
+            timer.schedule(() -> {
+                inFlight.decrementAndGet();
+                future.complete(kind(prompt) + " summary " + "y".repeat(600));
+            }, 20, TimeUnit.MILLISECONDS);
+            return future;
+        }, 1000, 1000, 3);
+
+        // When
+        String notes = summarizer.summarize();
+
+        // Then
+        int windows = summarizer.getWindowCount();
+        assertTrue("An hour in 1000-token windows should need several", windows >= 10);
+        assertEquals("Every window should be summarized", windows, Collections.frequency(kinds, "window"));
+        assertTrue("Partial summaries over the budget should be merged first", kinds.contains("merge"));
+        assertEquals("One final notes request", "notes", kinds.get(kinds.size() - 1));
+        assertEquals(1, Collections.frequency(kinds, "notes"));
+        assertTrue("No more than 3 requests in flight, saw " + maxInFlight.get(), maxInFlight.get() <= 3);
+        assertTrue("Windows should overlap", maxInFlight.get() > 1);
+        assertTrue(notes.startsWith("notes summary"));
+    }
+
+    @Test
+    public void testRetryOnlyResendsFailedWindows() throws Exception {
+        // Given - the second window fails once
+        List<String> prompts = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger();
+        TranscriptSummarizer.Generator generator = prompt -> {
+            prompts.add(prompt);
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (prompt.startsWith("The following is part 2 of") && failures.getAndIncrement() == 0) {
+                future.completeExceptionally(new IOException("Rate limit exceeded"));
+            } else {
+                future.complete(kind(prompt) + " summary");
+            }
+            return future;
+        };
+        TranscriptSummarizer summarizer = new TranscriptSummarizer(meeting(30), generator, 1000, 10_000, 2);
+
+        // When
+        IOException error = assertThrows(IOException.class, summarizer::summarize);
+        int windows = summarizer.getWindowCount();
+        int completed = summarizer.getCompletedWindows();
+        prompts.clear();
+        String notes = summarizer.summarize();
+
+        // Then
+        assertTrue("The error should say what failed: " + error.getMessage(),
+                error.getMessage().startsWith("1 of " + windows + " parts failed: Rate limit exceeded"));
+        assertEquals("The other windows should be checkpointed", windows - 1, completed);
+        assertEquals("The retry should send the failed window and the final request", 2, prompts.size());
+        assertTrue(prompts.get(0).startsWith("The following is part 2 of"));
+        assertEquals("notes summary", notes);
+    }
+
+    /**
+     * Simulated Gemini, for comparing end-to-end latency of the two paths on long meetings. A
+     * request takes 0.5s plus prefill at 20k tokens/s plus decoding at 150 tokens/s. Requests go
+     * through a model of RateLimiter's Gemini bucket, a token every 4s with a burst of two. One
+     * simulated second runs in 10ms.
+     */
+    private class SimulatedGemini implements TranscriptSummarizer.Generator {
+        static final double REAL_MS_PER_SECOND = 10;
+        final long startNanos = System.nanoTime();
+        double tokens = 2;
+        double refilledAt;
+
+        double now() {
+            return (System.nanoTime() - startNanos) / 1e6 / REAL_MS_PER_SECOND;
+        }
+
+        synchronized double reserve(double now) {
+            tokens = Math.min(2, tokens + (now - refilledAt) * 0.25);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : -tokens / 0.25;
+        }
+
+        @Override
+        public CompletableFuture<String> generate(String prompt) {
+            int outputTokens = kind(prompt).equals("window") ? 550 : kind(prompt).equals("merge") ? 700 : 1500;
+            double seconds = reserve(now()) + 0.5 + TranscriptSummarizer.estimateTokens(prompt) / 20_000.0
+                    + outputTokens / 150.0;
+            CompletableFuture<String> future = new CompletableFuture<>();
+            timer.schedule(() -> future.complete("z".repeat(outputTokens * TranscriptSummarizer.CHARS_PER_TOKEN)),
+                    (long) (seconds * REAL_MS_PER_SECOND * 1000), TimeUnit.MICROSECONDS);
+            return future;
+        }
+    }
+
+    // Hour-long windows, to show what map-reduce would cost on meetings that fit in one prompt
+    private static final int BENCHMARK_WINDOW_TOKENS = 12000;
+
+    @Test
+    public void testBenchmarkAgainstSinglePrompt() throws Exception {
+        // Warm up, so class loading is not counted as simulated time
+        new TranscriptSummarizer(meeting(120), new SimulatedGemini(), BENCHMARK_WINDOW_TOKENS,
+                TranscriptSummarizer.DEFAULT_REDUCE_TOKENS, TranscriptSummarizer.DEFAULT_CONCURRENCY).summarize();
+        StringBuilder report = new StringBuilder("Notes latency, simulated seconds (single prompt vs map-reduce)");
+        for (int hours = 1; hours <= 3; hours++) {
+            List<String> meeting = meeting(hours * 60);
+
+            // Given
+            SimulatedGemini single = new SimulatedGemini();
+
+            // When
+            single.generate(TranscriptSummarizer.notesPrompt(String.join(" ", meeting))).get();
+            double singleSeconds = single.now();
+            SimulatedGemini mapReduce = new SimulatedGemini();
+            TranscriptSummarizer summarizer = new TranscriptSummarizer(meeting, mapReduce, BENCHMARK_WINDOW_TOKENS,
+                    TranscriptSummarizer.DEFAULT_REDUCE_TOKENS, TranscriptSummarizer.DEFAULT_CONCURRENCY);
+            summarizer.summarize();
+            double mapReduceSeconds = mapReduce.now();
+
+            // Then
+            int tokens = TranscriptSummarizer.estimateTokens(String.join(" ", meeting));
+            int largest = 0;
+            for (String window : TranscriptSummarizer.split(meeting, BENCHMARK_WINDOW_TOKENS)) {
+                largest = Math.max(largest, TranscriptSummarizer.estimateTokens(window));
+            }
+            assertTrue("No request should exceed the window budget", largest <= BENCHMARK_WINDOW_TOKENS);
+            assertEquals("The default is a single prompt at this length", 1,
+                    new TranscriptSummarizer(meeting, mapReduce).getWindowCount());
+            report.append(String.format(Locale.US, "\n%dh, %d tokens: single %.1fs (one %d-token request), "
+                            + "map-reduce %.1fs (%d windows, largest request %d tokens)", hours, tokens, singleSeconds,
+                    tokens, mapReduceSeconds, summarizer.getWindowCount(), largest));
+        }
+        System.out.println(report);
+    }
+}
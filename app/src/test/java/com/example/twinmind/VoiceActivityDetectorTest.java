@@ -0,0 +1,221 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VoiceActivityDetectorTest {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    // Synthetic PCM fixtures
+
+    private static short[] silence(double seconds) {
+        return new short[(int) (seconds * SAMPLE_RATE)];
+    }
+
+    private static short[] noise(double seconds, double dbfs, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        double amplitude = 32768 * Math.pow(10, dbfs / 20);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (random.nextGaussian() * amplitude);
+        }
+        return samples;
+    }
+
+    // Voiced speech stand-in: a 140 Hz glottal-like harmonic stack with a 4 Hz syllable envelope
+    private static short[] speech(double seconds, double dbfs) {
+        short[] samples = new short[(int) (seconds * SAMPLE_RATE)];
+        double amplitude = 32768 * Math.pow(10, dbfs / 20);
+        for (int i = 0; i < samples.length; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double voiced = 0;
+            for (int k = 1; k <= 8; k++) {
+                voiced += Math.sin(2 * Math.PI * 140 * k * t) / k;
+            }
+            double envelope = 0.35 + 0.65 * Math.abs(Math.sin(2 * Math.PI * 4 * t));
+            samples[i] = (short) (amplitude * 0.6 * voiced * envelope);
+        }
+        return samples;
+    }
+
+    private static short[] concat(short[]... parts) {
+        int length = 0;
+        for (short[] part : parts) {
+            length += part.length;
+        }
+        short[] out = new short[length];
+        int offset = 0;
+        for (short[] part : parts) {
+            System.arraycopy(part, 0, out, offset, part.length);
+            offset += part.length;
+        }
+        return out;
+    }
+
+    private static short[] mix(short[] a, short[] b) {
+        short[] out = new short[a.length];
+        for (int i = 0; i < a.length; i++) {
+            out[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, a[i] + b[i]));
+        }
+        return out;
+    }
+
+    private static byte[] toPcm(short[] samples) {
+        byte[] pcm = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            pcm[i * 2] = (byte) samples[i];
+            pcm[i * 2 + 1] = (byte) (samples[i] >> 8);
+        }
+        return pcm;
+    }
+
+    private static VoiceActivityDetector runVad(byte[] pcm, int readSize) {
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        for (int offset = 0; offset < pcm.length; offset += readSize) {
+            vad.process(pcm, offset, Math.min(readSize, pcm.length - offset));
+        }
+        return vad;
+    }
+
+    private static long ms(long samples) {
+        return samples * 1000 / SAMPLE_RATE;
+    }
+
+    @Test
+    public void testSilenceAndLowNoiseHaveNoSpeech() {
+        // Given
+        byte[] pcm = toPcm(concat(silence(2), noise(3, -60, 1)));
+
+        // When
+        VoiceActivityDetector vad = runVad(pcm, 1024);
+
+        // Then
+        assertEquals("Silence should contain no speech", -1, vad.getSpeechStart(0, pcm.length / 2));
+        assertEquals("No speech frames should be counted", 0, vad.getSpeechFrames());
+    }
+
+    @Test
+    public void testSpeechBurstBoundaries() {
+        // Given
+        byte[] pcm = toPcm(concat(silence(1), speech(2, -20), silence(2)));
+
+        // When
+        VoiceActivityDetector vad = runVad(pcm, 1024);
+        long start = vad.getSpeechStart(0, pcm.length / 2);
+        long end = vad.getSpeechEnd(0, pcm.length / 2);
+
+        // Then
+        assertTrue("Speech should start near 1000ms, was " + ms(start), Math.abs(ms(start) - 1000) <= 40);
+        assertTrue("Speech should end after 3000ms, was " + ms(end), ms(end) >= 3000);
+        assertTrue("Hangover should stay bounded, was " + ms(end), ms(end) <= 3000 + 15 * 20 + 20);
+    }
+
+    @Test
+    public void testLoudHissIsNotSpeech() {
+        // Given
+        byte[] pcm = toPcm(noise(3, -30, 2));
+
+        // When
+        VoiceActivityDetector vad = runVad(pcm, 640);
+
+        // Then
+        assertEquals("Broadband noise should be rejected", -1, vad.getSpeechStart(0, pcm.length / 2));
+    }
+
+    @Test
+    public void testSpeechOverBackgroundNoiseIsDetected() {
+        // Given
+        short[] background = noise(6, -45, 3);
+        short[] foreground = concat(silence(2), speech(2, -20), silence(2));
+        byte[] pcm = toPcm(mix(background, foreground));
+
+        // When
+        VoiceActivityDetector vad = runVad(pcm, 1024);
+        long start = vad.getSpeechStart(0, pcm.length / 2);
+
+        // Then
+        assertTrue("Speech should be found", start >= 0);
+        assertTrue("Speech should start near 2000ms, was " + ms(start), Math.abs(ms(start) - 2000) <= 60);
+        assertEquals("Leading noise should not be speech", -1, vad.getSpeechStart(0, SAMPLE_RATE * 3 / 2));
+    }
+
+    @Test
+    public void testHangoverBridgesShortPause() {
+        // Given
+        byte[] pcm = toPcm(concat(silence(0.5), speech(1, -20), silence(0.15), speech(1, -20), silence(1)));
+        long gapStart = (long) (1.5 * SAMPLE_RATE);
+        long gapEnd = (long) (1.65 * SAMPLE_RATE);
+
+        // When
+        VoiceActivityDetector vad = runVad(pcm, 1024);
+
+        // Then
+        assertEquals("Gap should be inside the speech region", gapStart, vad.getSpeechStart(gapStart, gapEnd));
+        assertEquals("Gap should be inside the speech region", gapEnd, vad.getSpeechEnd(gapStart, gapEnd));
+    }
+
+    @Test
+    public void testResultsDoNotDependOnReadSize() {
+        // Given
+        byte[] pcm = toPcm(concat(silence(1), speech(1.3, -25), silence(1.2), speech(0.7, -18), silence(1)));
+
+        // When
+        VoiceActivityDetector small = runVad(pcm, 34);
+        VoiceActivityDetector large = runVad(pcm, 4096);
+
+        // Then
+        assertEquals("Speech start should match", large.getSpeechStart(0, pcm.length / 2),
+                small.getSpeechStart(0, pcm.length / 2));
+        assertEquals("Speech end should match", large.getSpeechEnd(0, pcm.length / 2),
+                small.getSpeechEnd(0, pcm.length / 2));
+        assertEquals("Speech frame count should match", large.getSpeechFrames(), small.getSpeechFrames());
+    }
+
+    @Test
+    public void testDirectBufferInputMatchesArrayInput() {
+        // Given
+        byte[] pcm = toPcm(concat(silence(1), speech(1.5, -22), silence(1)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(pcm.length);
+        direct.put(pcm).flip();
+
+        // When
+        VoiceActivityDetector fromArray = runVad(pcm, 1280);
+        VoiceActivityDetector fromBuffer = new VoiceActivityDetector();
+        for (int offset = 0; offset < pcm.length; offset += 1280) {
+            fromBuffer.process(direct, offset, Math.min(1280, pcm.length - offset));
+        }
+
+        // Then
+        assertEquals("Speech start should match", fromArray.getSpeechStart(0, pcm.length / 2),
+                fromBuffer.getSpeechStart(0, pcm.length / 2));
+        assertEquals("Speech frame count should match", fromArray.getSpeechFrames(), fromBuffer.getSpeechFrames());
+        assertEquals("Buffer position should be untouched", 0, direct.position());
+    }
+
+    @Test
+    public void testProcessingDoesNotAllocate() {
+        // Given
+        byte[] pcm = toPcm(concat(speech(5, -20), noise(5, -40, 4)));
+        VoiceActivityDetector vad = new VoiceActivityDetector();
+        vad.process(pcm, 0, pcm.length); // warm up
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // When
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int offset = 0; offset < pcm.length; offset += 1024) {
+            vad.process(pcm, offset, Math.min(1024, pcm.length - offset));
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        // Then
+        assertTrue("Frame processing should not allocate, allocated " + allocated, allocated < 1024);
+    }
+}
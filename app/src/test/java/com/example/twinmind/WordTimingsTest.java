@@ -0,0 +1,138 @@
+package com.example.twinmind;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WordTimingsTest {
+
+    private static List<WordTimings.Word> words(String... spec) {
+        // Each word is "text@startMs-endMs"
+        List<WordTimings.Word> words = new ArrayList<>();
+        for (String word : spec) {
+            String[] parts = word.split("[@-]");
+            words.add(new WordTimings.Word(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), 0.9f));
+        }
+        return words;
+    }
+
+    @Test
+    public void testWordsAlignWithTheirCharacters() {
+        // Given
+        String text = "Hello there, team.";
+        List<WordTimings.Word> words = words("Hello@0-400", "there,@450-800", "team.@900-1300");
+
+        // When
+        WordTimings timings = WordTimings.align(text, words);
+
+        // Then
+        assertEquals(3, timings.size());
+        assertEquals("there,", text.substring(timings.getCharStart(1), timings.getCharEnd(1)));
+        assertEquals(450, timings.getStartMs(1));
+        assertEquals(800, timings.getEndMs(1));
+        assertEquals(0.9f, timings.getConfidence(1), 1 / 255f);
+    }
+
+    @Test
+    public void testStitchedWordsAreSkipped() {
+        // Given - stitching dropped the two words repeated from the previous chunk's overlap
+        String text = "the budget review";
+        List<WordTimings.Word> words = words("about@0-300", "it@320-400", "the@500-600", "budget@620-1000",
+                "review@1050-1500");
+
+        // When
+        WordTimings timings = WordTimings.align(text, words);
+
+        // Then
+        assertEquals(3, timings.size());
+        assertEquals(500, timings.getStartMs(0));
+        assertEquals(0, timings.getCharStart(0));
+    }
+
+    @Test
+    public void testCharacterRangeMapsToTimeRange() {
+        // Given
+        String text = "We ship on Friday after the review.";
+        WordTimings timings = WordTimings.align(text, words("We@0-200", "ship@250-500", "on@520-600",
+                "Friday@650-1100", "after@1200-1400", "the@1420-1500", "review.@1550-2000"));
+        int hit = text.indexOf("Friday after");
+
+        // Then
+        assertArrayEquals(new int[]{650, 1400}, timings.timeRange(hit, hit + "Friday after".length()));
+        assertArrayEquals("Part of a word selects the word", new int[]{250, 500}, timings.timeRange(4, 5));
+        assertArrayEquals("Whitespace before a word belongs to nothing", new int[]{650, 1100},
+                timings.timeRange(10, 12));
+        assertNull(timings.timeRange(text.length(), text.length() + 5));
+    }
+
+    @Test
+    public void testEncodingRoundTrips() {
+        // Given - including overlapping words and a long pause
+        WordTimings timings = WordTimings.align("a bb ccc dddd", words("a@0-300", "bb@250-400",
+                "ccc@90000-90500", "dddd@90500-90500"));
+
+        // When
+        WordTimings decoded = WordTimings.decode(timings.encode(), timings.size());
+
+        // Then
+        for (int i = 0; i < timings.size(); i++) {
+            assertEquals(timings.getCharStart(i), decoded.getCharStart(i));
+            assertEquals(timings.getCharEnd(i), decoded.getCharEnd(i));
+            assertEquals(timings.getStartMs(i), decoded.getStartMs(i));
+            assertEquals(timings.getEndMs(i), decoded.getEndMs(i));
+            assertEquals(timings.getConfidence(i), decoded.getConfidence(i), 0f);
+        }
+    }
+
+    @Test
+    public void testMissingWordsGiveNoTimings() {
+        assertTrue(WordTimings.align("Hello", new ArrayList<>()).isEmpty());
+        assertTrue(WordTimings.align("Hello", null).isEmpty());
+        assertEquals(0, WordTimings.align("Hello", new ArrayList<>()).encode().length);
+    }
+
+    @Test
+    public void testStorageOverheadOnTwoHourMeeting() {
+        // Given - 2 hours in 30s chunks at ~150 words a minute: short gaps, 120-700ms words
+        Random random = new Random(11);
+        int chunks = 2 * 60 * 2;
+        long textBytes = 0;
+        long packedBytes = 0;
+        int totalWords = 0;
+        for (int c = 0; c < chunks; c++) {
+            StringBuilder text = new StringBuilder();
+            List<WordTimings.Word> words = new ArrayList<>();
+            int timeMs = random.nextInt(300);
+            while (timeMs < 29_000) {
+                char[] letters = new char[2 + random.nextInt(8)];
+                Arrays.fill(letters, 'w');
+                String word = new String(letters);
+                int start = timeMs + (random.nextInt(10) == 0 ? 300 + random.nextInt(900) : random.nextInt(120));
+                int end = start + 120 + random.nextInt(580);
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(word);
+                words.add(new WordTimings.Word(word, start, end, 0.5f + random.nextFloat() / 2));
+                timeMs = end;
+            }
+
+            // When
+            byte[] packed = WordTimings.align(text.toString(), words).encode();
+            textBytes += text.length();
+            packedBytes += packed.length;
+            totalWords += words.size();
+        }
+
+        // Then - a row per word would cost an id, a foreign key and four integers, 20+ bytes each
+        double bytesPerWord = (double) packedBytes / totalWords;
+        System.out.printf("2h meeting: %d words, %d KB text, %d KB word timings (%.2f bytes/word, %.0f%% of text)%n",
+                totalWords, textBytes / 1024, packedBytes / 1024, bytesPerWord, 100.0 * packedBytes / textBytes);
+        assertTrue("Should be well under a row per word, was " + bytesPerWord, bytesPerWord < 8);
+    }
+}